@@ -246,8 +246,10 @@ dependencies {
     implementation(libs.androidx.lifecycle.runtime.ktx)
     implementation(libs.apng)
     implementation(libs.datastore.preferences)
+    implementation(libs.jetbrains.kotlinx.cbor)
     implementation(libs.jetbrains.kotlinx.json)
     implementation(libs.kotlin.coroutines)
+    implementation(libs.okhttp.coroutines)
     implementation(libs.timber)
     implementation(libs.zxing)
 
@@ -0,0 +1,121 @@
+package app.gamenative.service.epic.manifest.test
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import app.gamenative.service.epic.manifest.CompactManifest
+import app.gamenative.service.epic.manifest.ManifestUtils
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import timber.log.Timber
+
+/**
+ * Verifies the columnar [CompactManifest] matches the object-model parser field by field,
+ * and logs parse time and retained heap of both representations for the fixtures.
+ */
+@RunWith(AndroidJUnit4::class)
+class CompactManifestTest {
+
+    private val testManifests = listOf(
+        "test-manifest.json",
+        "test-v3-manifest.json",
+        "binary-control-file.manifest"
+    )
+
+    private fun getManifestBytes(assetName: String): ByteArray {
+        return InstrumentationRegistry.getInstrumentation().context.assets.open(assetName).use { inputStream ->
+            inputStream.readBytes()
+        }
+    }
+
+    @Test
+    fun testCompactManifestMatchesObjectModel() {
+        testManifests.forEach { manifestAsset ->
+            val manifestBytes = getManifestBytes(manifestAsset)
+            val expected = ManifestUtils.loadFromBytes(manifestBytes)
+            val compact = CompactManifest.readAll(manifestBytes)
+
+            assertEquals("$manifestAsset: version", expected.version, compact.version)
+            assertEquals("$manifestAsset: chunk dir", expected.getChunkDir(), compact.getChunkDir())
+
+            val chunks = expected.chunkDataList!!.elements
+            assertEquals("$manifestAsset: chunk count", chunks.size, compact.chunks.size)
+            chunks.forEachIndexed { i, chunk ->
+                val ref = compact.chunks[i]
+                assertEquals("$manifestAsset: chunk $i guid", chunk.guidStr, ref.guidStr)
+                assertEquals("$manifestAsset: chunk $i hash", chunk.hash, ref.hash)
+                assertEquals("$manifestAsset: chunk $i group", chunk.groupNum, ref.groupNum)
+                assertEquals("$manifestAsset: chunk $i window size", chunk.windowSize, ref.windowSize)
+                assertEquals("$manifestAsset: chunk $i file size", chunk.fileSize, ref.fileSize)
+                assertEquals("$manifestAsset: chunk $i path", chunk.getPath(expected.getChunkDir()), ref.getPath(compact.getChunkDir()))
+                assertEquals("$manifestAsset: chunk $i lookup", i, compact.chunks.indexOf(chunk.guidStr))
+                if (chunk.shaHash.size == 20) {
+                    assertArrayEquals("$manifestAsset: chunk $i sha", chunk.shaHash, ref.shaHash)
+                }
+            }
+
+            val files = expected.fileManifestList!!.elements
+            assertEquals("$manifestAsset: file count", files.size, compact.files.size)
+            files.forEachIndexed { i, file ->
+                val ref = compact.files[i]
+                assertEquals("$manifestAsset: file $i name", file.filename, ref.filename)
+                assertEquals("$manifestAsset: file $i size", file.fileSize, ref.fileSize)
+                assertEquals("$manifestAsset: file $i flags", file.flags, ref.flags)
+                assertEquals("$manifestAsset: file $i tags", file.installTags, ref.installTags)
+                assertEquals("$manifestAsset: file $i lookup", i, compact.files.indexOf(file.filename))
+                assertEquals("$manifestAsset: file $i parts", file.chunkParts, ref.toFileManifest(compact.chunks).chunkParts)
+            }
+
+            assertEquals(
+                "$manifestAsset: download size",
+                ManifestUtils.getTotalDownloadSize(expected),
+                compact.getRequiredDownloadSize()
+            )
+        }
+    }
+
+    @Test
+    fun benchmarkParseTimeAndRetainedHeap() {
+        val runtime = Runtime.getRuntime()
+
+        fun usedHeap(): Long {
+            runtime.gc()
+            Thread.sleep(100)
+            return runtime.totalMemory() - runtime.freeMemory()
+        }
+
+        testManifests.forEach { manifestAsset ->
+            val manifestBytes = getManifestBytes(manifestAsset)
+
+            // Warm up both parsers
+            repeat(2) {
+                ManifestUtils.loadFromBytes(manifestBytes)
+                CompactManifest.readAll(manifestBytes)
+            }
+
+            val before = usedHeap()
+            var start = System.nanoTime()
+            val objectModel = ManifestUtils.loadFromBytes(manifestBytes)
+            // Force the lazy lookup maps the downloader relies on
+            objectModel.chunkDataList?.getChunkByGuid("")
+            objectModel.fileManifestList?.getFileByPath("")
+            val objectModelMs = (System.nanoTime() - start) / 1_000_000.0
+            val objectModelHeap = usedHeap() - before
+
+            start = System.nanoTime()
+            val compact = CompactManifest.readAll(manifestBytes)
+            compact.files.indexOf("")
+            val compactMs = (System.nanoTime() - start) / 1_000_000.0
+            val compactHeap = usedHeap() - before - objectModelHeap
+
+            Timber.i(
+                "$manifestAsset: object model ${"%.1f".format(objectModelMs)} ms / ${objectModelHeap / 1024} KB, " +
+                    "compact ${"%.1f".format(compactMs)} ms / ${compactHeap / 1024} KB",
+            )
+
+            // Keep both alive until after the measurements
+            assertNotNull(objectModel)
+            assertNotNull(compact)
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package app.gamenative
+
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.MutablePreferences
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.emptyPreferences
+import androidx.datastore.preferences.core.mutablePreferencesOf
+import java.io.IOException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import timber.log.Timber
+
+/**
+ * Keeps the latest [Preferences] of a [DataStore] in memory so reads don't suspend.
+ *
+ * One long-lived collector keeps the snapshot current and reads are a volatile load. Writes land in
+ * the snapshot at once and go to the DataStore in the background; edits made while a write is running
+ * are coalesced into the next single edit.
+ */
+internal class CachedPreferences(
+    private val dataStore: DataStore<Preferences>,
+    private val scope: CoroutineScope,
+) {
+    // Marks a key removed in a batch of edits
+    private object Removed
+
+    private class Edits(val clear: Boolean, val values: Map<Preferences.Key<*>, Any>) {
+        fun applyTo(base: Preferences): Preferences {
+            if (!clear && values.isEmpty()) return base
+            val out = if (clear) mutablePreferencesOf() else base.toMutablePreferences()
+            applyTo(out)
+            return out.toPreferences()
+        }
+
+        /** Whether [prefs] already contains these values, i.e. isn't from before they were written. */
+        fun isReflectedIn(prefs: Preferences): Boolean {
+            val current = prefs.asMap()
+            // After a clear, only keys written in the same batch can be left
+            if (clear && current.keys.any { key -> values[key].let { it == null || it === Removed } }) return false
+            return values.all { (key, value) ->
+                val stored = current[key]
+                when (value) {
+                    Removed -> stored == null
+                    is ByteArray -> stored is ByteArray && value.contentEquals(stored)
+                    else -> stored == value
+                }
+            }
+        }
+
+        fun applyTo(out: MutablePreferences) {
+            if (clear) out.clear()
+            for ((key, value) in values) {
+                if (value === Removed) {
+                    out.remove(key)
+                } else {
+                    @Suppress("UNCHECKED_CAST")
+                    out[key as Preferences.Key<Any>] = value
+                }
+            }
+        }
+    }
+
+    private val lock = Any()
+
+    @Volatile
+    private var snapshot: Preferences? = null
+
+    // Edits not yet handed to the DataStore, and the batch being written right now
+    private var pendingClear = false
+    private val pending = LinkedHashMap<Preferences.Key<*>, Any>()
+    private var inFlight: Edits? = null
+
+    // Our last written batch. Emissions from before it may still reach the collector and are skipped.
+    private var awaiting: Edits? = null
+
+    private var writeScheduled = false
+    private val writeMutex = Mutex()
+    private var collector: Job? = null
+
+    fun start() {
+        synchronized(lock) {
+            if (collector != null) return
+            collector = scope.launch {
+                dataStore.data.collect { onEmitted(it) }
+            }
+        }
+    }
+
+    private fun onEmitted(prefs: Preferences) {
+        synchronized(lock) {
+            awaiting?.let {
+                if (!it.isReflectedIn(prefs)) return
+                awaiting = null
+            }
+            snapshot = overlay(prefs)
+        }
+    }
+
+    /** [base] with the edits that haven't been written yet. Call while holding [lock]. */
+    private fun overlay(base: Preferences): Preferences {
+        var out = inFlight?.applyTo(base) ?: base
+        if (pendingClear || pending.isNotEmpty()) {
+            out = Edits(pendingClear, pending).applyTo(out)
+        }
+        return out
+    }
+
+    /**
+     * The current preferences. Only the very first read, if it comes before the collector's first
+     * value, waits for the DataStore.
+     */
+    val current: Preferences
+        get() = snapshot ?: load()
+
+    private fun load(): Preferences {
+        val prefs = runBlocking { dataStore.data.first() }
+        return synchronized(lock) {
+            snapshot ?: overlay(prefs).also { snapshot = it }
+        }
+    }
+
+    operator fun <T> get(key: Preferences.Key<T>): T? = current[key]
+
+    operator fun <T> set(key: Preferences.Key<T>, value: T) = edit(key, value as Any)
+
+    fun remove(key: Preferences.Key<*>) = edit(key, Removed)
+
+    fun clear() {
+        synchronized(lock) {
+            pendingClear = true
+            pending.clear()
+            if (snapshot != null) snapshot = emptyPreferences()
+        }
+        scheduleWrite()
+    }
+
+    private fun edit(key: Preferences.Key<*>, value: Any) {
+        synchronized(lock) {
+            pending[key] = value
+            snapshot = snapshot?.let { Edits(false, mapOf(key to value)).applyTo(it) }
+        }
+        scheduleWrite()
+    }
+
+    private fun scheduleWrite() {
+        synchronized(lock) {
+            if (writeScheduled) return
+            writeScheduled = true
+        }
+        scope.launch { flush() }
+    }
+
+    /**
+     * Writes all outstanding edits to the DataStore as one edit and waits for it to finish
+     */
+    suspend fun flush() {
+        writeMutex.withLock {
+            val edits = synchronized(lock) {
+                writeScheduled = false
+                if (!pendingClear && pending.isEmpty()) return
+                Edits(pendingClear, LinkedHashMap(pending)).also {
+                    inFlight = it
+                    pendingClear = false
+                    pending.clear()
+                }
+            }
+            try {
+                val result = dataStore.edit { edits.applyTo(it) }
+                synchronized(lock) {
+                    inFlight = null
+                    awaiting = edits
+                    snapshot = overlay(result)
+                }
+            } catch (e: IOException) {
+                Timber.e(e, "Failed to write preferences, will retry with the next change")
+                synchronized(lock) {
+                    inFlight = null
+                    // Keep anything that wasn't changed or cleared since, so the next write carries it
+                    if (!pendingClear) {
+                        pendingClear = edits.clear
+                        edits.values.forEach { (key, value) -> pending.putIfAbsent(key, value) }
+                    }
+                }
+            }
+        }
+    }
+}
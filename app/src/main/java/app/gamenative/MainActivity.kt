@@ -38,6 +38,7 @@ import app.gamenative.service.epic.EpicService
 import app.gamenative.ui.PluviaMain
 import app.gamenative.ui.enums.Orientation
 import app.gamenative.utils.AnimatedPngDecoder
+import app.gamenative.utils.ArtworkTiles
 import app.gamenative.utils.ContainerUtils
 import app.gamenative.utils.IconDecoder
 import app.gamenative.utils.IntentLaunchManager
@@ -183,6 +184,8 @@ class MainActivity : ComponentActivity() {
                     .components {
                         add(IconDecoder.Factory())
                         add(AnimatedPngDecoder.Factory())
+                        add(ArtworkTiles.TileFetcher.Factory(ArtworkTiles.cache(context)))
+                        add(ArtworkTiles.TileKeyer())
                     }
                     // .logger(logger)
                     .build()
@@ -6,7 +6,6 @@ import androidx.datastore.core.handlers.ReplaceFileCorruptionHandler
 import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.core.booleanPreferencesKey
 import androidx.datastore.preferences.core.byteArrayPreferencesKey
-import androidx.datastore.preferences.core.edit
 import androidx.datastore.preferences.core.emptyPreferences
 import androidx.datastore.preferences.core.intPreferencesKey
 import androidx.datastore.preferences.core.longPreferencesKey
@@ -27,9 +26,6 @@ import java.util.EnumSet
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
-import kotlinx.coroutines.flow.first
-import kotlinx.coroutines.launch
-import kotlinx.coroutines.runBlocking
 import kotlinx.serialization.json.Json
 import timber.log.Timber
 
@@ -51,8 +47,12 @@ object PrefManager {
 
     private lateinit var dataStore: DataStore<Preferences>
 
+    // Reads come from this snapshot instead of collecting dataStore.data each time
+    private lateinit var prefs: CachedPreferences
+
     fun init(context: Context) {
         dataStore = context.datastore
+        prefs = CachedPreferences(dataStore, scope).apply { start() }
 
         // Note: Should remove after a few release versions. we've moved to encrypted values.
         val oldPassword = stringPreferencesKey("password")
@@ -74,12 +74,23 @@ object PrefManager {
                 removePref(oldRefreshToken)
             }
         }
+
+        // Note: Should remove after a few release versions. Compatibility responses moved to the database.
+        val oldCompatibilityCache = stringPreferencesKey("game_compatibility_cache")
+        if (getPref(oldCompatibilityCache, "").isNotEmpty()) {
+            removePref(oldCompatibilityCache)
+        }
     }
 
     fun clearPreferences() {
-        scope.launch {
-            dataStore.edit { it.clear() }
-        }
+        prefs.clear()
+    }
+
+    /**
+     * Waits until every preference change so far is written to disk
+     */
+    suspend fun flush() {
+        prefs.flush()
     }
 
     fun getBoolean(key: String, defaultValue: Boolean): Boolean =
@@ -95,21 +106,24 @@ object PrefManager {
         setPref(floatPreferencesKey(key), value)
 
     @Suppress("SameParameterValue")
-    private fun <T> getPref(key: Preferences.Key<T>, defaultValue: T): T = runBlocking {
-        dataStore.data.first()[key] ?: defaultValue
-    }
+    private fun <T> getPref(key: Preferences.Key<T>, defaultValue: T): T = prefs[key] ?: defaultValue
+
+    // Primitive overloads, so reading with a default doesn't box the default on every call
+    private fun getPref(key: Preferences.Key<Int>, defaultValue: Int): Int = prefs[key] ?: defaultValue
+
+    private fun getPref(key: Preferences.Key<Long>, defaultValue: Long): Long = prefs[key] ?: defaultValue
+
+    private fun getPref(key: Preferences.Key<Float>, defaultValue: Float): Float = prefs[key] ?: defaultValue
+
+    private fun getPref(key: Preferences.Key<Boolean>, defaultValue: Boolean): Boolean = prefs[key] ?: defaultValue
 
     @Suppress("SameParameterValue")
     private fun <T> setPref(key: Preferences.Key<T>, value: T) {
-        scope.launch {
-            dataStore.edit { pref -> pref[key] = value }
-        }
+        prefs[key] = value
     }
 
     private fun <T> removePref(key: Preferences.Key<T>) {
-        scope.launch {
-            dataStore.edit { pref -> pref.remove(key) }
-        }
+        prefs.remove(key)
     }
 
     /* Manifest Cache */
@@ -562,11 +576,9 @@ object PrefManager {
     // Special: Because null value.
     private val CLIENT_ID = longPreferencesKey("client_id")
     var clientId: Long?
-        get() = runBlocking { dataStore.data.first()[CLIENT_ID] }
+        get() = prefs[CLIENT_ID]
         set(value) {
-            scope.launch {
-                dataStore.edit { pref -> pref[CLIENT_ID] = value!! }
-            }
+            setPref(CLIENT_ID, value!!)
         }
 
     private val LIBRARY_LAYOUT = intPreferencesKey("library_layout")
@@ -906,11 +918,27 @@ object PrefManager {
         get() = getPref(APP_LANGUAGE, "")
         set(value) = setPref(APP_LANGUAGE, value)
 
-    // Game compatibility cache (JSON string)
-    private val GAME_COMPATIBILITY_CACHE = stringPreferencesKey("game_compatibility_cache")
-    var gameCompatibilityCache: String
-        get() = getPref(GAME_COMPATIBILITY_CACHE, "{}")
-        set(value) {
-            setPref(GAME_COMPATIBILITY_CACHE, value)
-        }
+    // Copy Epic chunks shared with already installed games instead of downloading them
+    private val EPIC_CHUNK_REUSE = booleanPreferencesKey("epic_chunk_reuse")
+    var epicChunkReuse: Boolean
+        get() = getPref(EPIC_CHUNK_REUSE, true)
+        set(value) = setPref(EPIC_CHUNK_REUSE, value)
+
+    // Per-host CDN health scores (JSON string), see CdnSelector
+    private val CDN_HOST_SCORES = stringPreferencesKey("cdn_host_scores")
+    var cdnHostScores: String
+        get() = getPref(CDN_HOST_SCORES, "{}")
+        set(value) = setPref(CDN_HOST_SCORES, value)
+
+    // Download rate limit in KiB/s shared by all downloads, 0 = unlimited
+    private val DOWNLOAD_SPEED_LIMIT_KBPS = intPreferencesKey("download_speed_limit_kbps")
+    var downloadSpeedLimitKbps: Int
+        get() = getPref(DOWNLOAD_SPEED_LIMIT_KBPS, 0)
+        set(value) = setPref(DOWNLOAD_SPEED_LIMIT_KBPS, value)
+
+    // Download rate limit in KiB/s while a game is running, 0 = same as downloadSpeedLimitKbps
+    private val GAMEPLAY_DOWNLOAD_SPEED_LIMIT_KBPS = intPreferencesKey("gameplay_download_speed_limit_kbps")
+    var gameplayDownloadSpeedLimitKbps: Int
+        get() = getPref(GAMEPLAY_DOWNLOAD_SPEED_LIMIT_KBPS, 2048)
+        set(value) = setPref(GAMEPLAY_DOWNLOAD_SPEED_LIMIT_KBPS, value)
 }
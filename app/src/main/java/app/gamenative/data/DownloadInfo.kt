@@ -1,5 +1,6 @@
 package app.gamenative.data
 
+import app.gamenative.utils.TransferRateMeter
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -7,6 +8,8 @@ import kotlinx.coroutines.flow.StateFlow
 import timber.log.Timber
 import java.io.File
 import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
 
 data class DownloadInfo(
     val jobCount: Int = 1,
@@ -14,23 +17,24 @@ data class DownloadInfo(
     var downloadingAppIds: CopyOnWriteArrayList<Int>,
 ) {
     private var downloadJob: Job? = null
-    private val downloadProgressListeners = mutableListOf<((Float) -> Unit)>()
+    private val downloadProgressListeners = CopyOnWriteArrayList<((Float) -> Unit)>()
     private val progresses: Array<Float> = Array(jobCount) { 0f }
 
     private val weights    = FloatArray(jobCount) { 1f }     // ⇐ new
     private var weightSum  = jobCount.toFloat()
 
     // === Bytes / speed tracking for more stable ETA ===
-    private var totalExpectedBytes: Long = 0L
-    private var bytesDownloaded: Long = 0L
-    private var persistencePath: String? = null
-
-    private data class SpeedSample(val timeMs: Long, val bytes: Long)
-
-    private val speedSamples = CopyOnWriteArrayList<SpeedSample>()
-    private var emaSpeedBytesPerSec: Double = 0.0
-    private var hasEmaSpeed: Boolean = false
-    private var isActive: Boolean = true
+    // Updated from many download coroutines at once, so the counter is striped (LongAdder)
+    // and the speed window is a fixed ring of time buckets rather than a growing sample list.
+    @Volatile private var totalExpectedBytes: Long = 0L
+    private val bytesDownloaded = LongAdder()
+    @Volatile private var persistencePath: String? = null
+
+    private val speedMeter = TransferRateMeter(SPEED_WINDOW_SECONDS)
+    @Volatile private var emaSpeedBytesPerSec: Double = 0.0
+    @Volatile private var hasEmaSpeed: Boolean = false
+    @Volatile private var isActive: Boolean = true
+    private val lastProgressEmitMs = AtomicLong(0L)
     private val statusMessage = MutableStateFlow<String?>(null)
 
     fun cancel() {
@@ -58,7 +62,7 @@ data class DownloadInfo(
     fun getProgress(): Float {
         // Always use bytes-based progress when available for accuracy
         if (totalExpectedBytes > 0L) {
-            val bytesProgress = (bytesDownloaded.toFloat() / totalExpectedBytes.toFloat()).coerceIn(0f, 1f)
+            val bytesProgress = (getBytesDownloaded().toFloat() / totalExpectedBytes.toFloat()).coerceIn(0f, 1f)
             return bytesProgress
         }
 
@@ -73,7 +77,12 @@ data class DownloadInfo(
 
     fun setProgress(amount: Float, jobIndex: Int = 0) {
         progresses[jobIndex] = amount
-        emitProgressChange()
+        // Completion and failure must always reach listeners; intermediate updates are coalesced.
+        if (amount >= 1f || amount < 0f) {
+            emitProgressChange()
+        } else {
+            emitProgressChangeThrottled()
+        }
     }
 
     fun setWeight(jobIndex: Int, weightBytes: Long) {        // tiny helper
@@ -91,7 +100,8 @@ data class DownloadInfo(
      * Initialize bytesDownloaded with a persisted value (used on resume).
      */
     fun initializeBytesDownloaded(value: Long) {
-        bytesDownloaded = if (value < 0L) 0L else value
+        bytesDownloaded.reset()
+        bytesDownloaded.add(if (value < 0L) 0L else value)
     }
 
     /**
@@ -110,15 +120,23 @@ data class DownloadInfo(
         if (!isActive) return
         if (deltaBytes <= 0L) {
             // Still record a sample to advance the time window, but do not change the count.
-            addSpeedSample(timestampMs)
+            speedMeter.record(0L, timestampMs)
             return
         }
 
-        bytesDownloaded += deltaBytes
-        if (bytesDownloaded < 0L) {
-            bytesDownloaded = 0L
-        }
-        addSpeedSample(timestampMs)
+        bytesDownloaded.add(deltaBytes)
+        speedMeter.record(deltaBytes, timestampMs)
+        emitProgressChangeThrottled(timestampMs)
+    }
+
+    /**
+     * Record [deltaBytes] that were copied from files already on disk rather than downloaded:
+     * they count toward progress but not toward download speed.
+     */
+    fun updateBytesReused(deltaBytes: Long, timestampMs: Long = System.currentTimeMillis()) {
+        if (!isActive || deltaBytes <= 0L) return
+        bytesDownloaded.add(deltaBytes)
+        emitProgressChangeThrottled(timestampMs)
     }
 
     fun updateStatusMessage(message: String?) {
@@ -127,20 +145,8 @@ data class DownloadInfo(
 
     fun getStatusMessageFlow(): StateFlow<String?> = statusMessage
 
-    private fun addSpeedSample(timestampMs: Long) {
-        speedSamples.add(SpeedSample(timestampMs, bytesDownloaded))
-        trimOldSamples(timestampMs)
-    }
-
-    private fun trimOldSamples(nowMs: Long, windowMs: Long = 30_000L) {
-        val cutoff = nowMs - windowMs
-        while (speedSamples.isNotEmpty() && speedSamples.first().timeMs < cutoff) {
-            speedSamples.removeAt(0)
-        }
-    }
-
     fun resetSpeedTracking() {
-        speedSamples.clear()
+        speedMeter.reset()
         emaSpeedBytesPerSec = 0.0
         hasEmaSpeed = false
     }
@@ -162,7 +168,7 @@ data class DownloadInfo(
     /**
      * Returns the cumulative bytes downloaded so far.
      */
-    fun getBytesDownloaded(): Long = bytesDownloaded
+    fun getBytesDownloaded(): Long = bytesDownloaded.sum().coerceAtLeast(0L)
 
     /**
      * Returns a pair of (downloaded bytes, total expected bytes).
@@ -170,7 +176,7 @@ data class DownloadInfo(
      */
     fun getBytesProgress(): Pair<Long, Long> {
         return if (totalExpectedBytes > 0L) {
-            bytesDownloaded.coerceAtMost(totalExpectedBytes) to totalExpectedBytes
+            getBytesDownloaded().coerceAtMost(totalExpectedBytes) to totalExpectedBytes
         } else {
             0L to 0L
         }
@@ -180,25 +186,16 @@ data class DownloadInfo(
      * Returns an ETA in milliseconds based on recent download speed, or null if
      * there is not enough information yet (e.g. just started) or download is inactive.
      */
-    fun getEstimatedTimeRemaining(windowSeconds: Int = 30): Long? {
+    fun getEstimatedTimeRemaining(
+        windowSeconds: Int = SPEED_WINDOW_SECONDS,
+        nowMs: Long = System.currentTimeMillis(),
+    ): Long? {
         if (!isActive) return null
         if (totalExpectedBytes <= 0L) return null
-        if (bytesDownloaded >= totalExpectedBytes) return null
-
-        val now = System.currentTimeMillis()
-        trimOldSamples(now, windowSeconds * 1000L)
-
-        if (speedSamples.size < 2) return null
-
-        val first = speedSamples.first()
-        val last = speedSamples.last()
-        val elapsedMs = last.timeMs - first.timeMs
-        if (elapsedMs <= 0L) return null
+        val downloaded = getBytesDownloaded()
+        if (downloaded >= totalExpectedBytes) return null
 
-        val bytesDelta = last.bytes - first.bytes
-        if (bytesDelta <= 0L) return null
-
-        val currentSpeedBytesPerSec = bytesDelta.toDouble() / (elapsedMs.toDouble() / 1000.0)
+        val currentSpeedBytesPerSec = speedMeter.bytesPerSecond(nowMs, windowSeconds)
         if (currentSpeedBytesPerSec <= 0.0) return null
 
         // Exponential moving average to smooth fluctuations.
@@ -214,7 +211,7 @@ data class DownloadInfo(
 
         if (smoothedSpeed <= 0.0) return null
 
-        val remainingBytes = totalExpectedBytes - bytesDownloaded
+        val remainingBytes = totalExpectedBytes - downloaded
         if (remainingBytes <= 0L) return null
 
         val etaSeconds = remainingBytes / smoothedSpeed
@@ -232,8 +229,30 @@ data class DownloadInfo(
     }
 
     fun emitProgressChange() {
+        lastProgressEmitMs.set(System.currentTimeMillis())
+        val progress = getProgress()
+        for (listener in downloadProgressListeners) {
+            listener(progress)
+        }
+    }
+
+    /**
+     * Notify listeners at most once per [PROGRESS_EMIT_INTERVAL_MS], so per-read byte updates
+     * from many coroutines do not turn into one UI recomposition each.
+     */
+    private fun emitProgressChangeThrottled(nowMs: Long = System.currentTimeMillis()) {
+        if (downloadProgressListeners.isEmpty()) return
+        val progress = getProgress()
+        // The update that completes the download is never coalesced away.
+        if (progress >= 1f) {
+            lastProgressEmitMs.set(nowMs)
+        } else {
+            val last = lastProgressEmitMs.get()
+            if (nowMs - last < PROGRESS_EMIT_INTERVAL_MS) return
+            if (!lastProgressEmitMs.compareAndSet(last, nowMs)) return
+        }
         for (listener in downloadProgressListeners) {
-            listener(getProgress())
+            listener(progress)
         }
     }
 
@@ -242,6 +261,8 @@ data class DownloadInfo(
     companion object {
         private const val PERSISTENCE_DIR = ".DownloadInfo"
         private const val PERSISTENCE_FILE = "bytes_downloaded.txt"
+        private const val SPEED_WINDOW_SECONDS = 30
+        internal const val PROGRESS_EMIT_INTERVAL_MS = 250L
     }
 
     /**
@@ -254,7 +275,7 @@ data class DownloadInfo(
                 dir.mkdirs()
             }
             val file = File(dir, PERSISTENCE_FILE)
-            file.writeText(bytesDownloaded.toString())
+            file.writeText(getBytesDownloaded().toString())
         } catch (e: Exception) {
             Timber.e(e, "Failed to persist bytes downloaded to $appDirPath")
         }
@@ -3,6 +3,8 @@ package app.gamenative.data
 import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.PrimaryKey
+import androidx.room.TypeConverters
+import app.gamenative.db.converters.ByteArrayConverter
 import `in`.dragonbra.javasteam.enums.EResult
 
 @Entity("encrypted_app_ticket")
@@ -26,7 +28,9 @@ data class EncryptedAppTicket(
     @ColumnInfo("cb_encrypted_app_ownership_ticket")
     val cbEncryptedAppOwnershipTicket: Int,
     
+    // Kept as Base64 text; other byte array columns are plain BLOBs
     @ColumnInfo("encrypted_ticket")
+    @TypeConverters(ByteArrayConverter::class)
     val encryptedTicket: ByteArray,
     
     @ColumnInfo("timestamp")
@@ -0,0 +1,35 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * A cached compatibility report for one game on one GPU.
+ * [cachedAt] drives expiry and [lastAccess] drives LRU eviction.
+ */
+@Entity(
+    tableName = "game_compatibility",
+    primaryKeys = ["game_name", "gpu_name"],
+    indices = [Index("last_access")],
+)
+data class GameCompatibilityEntry(
+    @ColumnInfo("game_name")
+    val gameName: String,
+    @ColumnInfo("gpu_name")
+    val gpuName: String,
+    @ColumnInfo("total_playable_count")
+    val totalPlayableCount: Int,
+    @ColumnInfo("gpu_playable_count")
+    val gpuPlayableCount: Int,
+    @ColumnInfo("avg_rating")
+    val avgRating: Float,
+    @ColumnInfo("has_been_tried")
+    val hasBeenTried: Boolean,
+    @ColumnInfo("is_not_working")
+    val isNotWorking: Boolean,
+    @ColumnInfo("cached_at")
+    val cachedAt: Long,
+    @ColumnInfo("last_access")
+    val lastAccess: Long,
+)
@@ -0,0 +1,38 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import kotlinx.serialization.Serializable
+
+/**
+ * The launch executable picked for an installed Steam app, and the candidates it was picked from.
+ * Valid while the app's depot manifests are the ones in [manifestKey].
+ */
+@Entity("installed_exe")
+data class InstalledExe(
+    @PrimaryKey
+    @ColumnInfo("app_id")
+    val appId: Int,
+    /** The depot manifests the pick was made from, as sorted depotId:gid pairs */
+    @ColumnInfo("manifest_key")
+    val manifestKey: String,
+    /** Path relative to the install dir, or empty when nothing in the manifests qualified */
+    @ColumnInfo("executable")
+    val executable: String,
+    @ColumnInfo("candidates")
+    val candidates: List<ExeCandidate>,
+)
+
+/**
+ * An executable listed in a depot manifest with the score it got when picking the launch target
+ */
+@Serializable
+data class ExeCandidate(
+    val path: String,
+    val size: Long,
+    val depotSize: Long,
+    val exeFlag: Boolean,
+    val stub: Boolean,
+    val score: Int,
+)
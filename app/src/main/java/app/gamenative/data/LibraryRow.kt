@@ -0,0 +1,88 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import app.gamenative.enums.AppType
+
+/**
+ * Slim library entry read straight from the store tables, so the library never decodes full
+ * [SteamApp], [GOGGame] or [EpicGame] rows.
+ */
+data class LibraryRow(
+    val source: GameSource,
+    val id: String,
+    val name: String,
+    @ColumnInfo("icon_hash")
+    val iconHash: String,
+    val installed: Boolean,
+    val shared: Boolean,
+) {
+    fun toLibraryItem(index: Int) = LibraryItem(
+        index = index,
+        appId = "${source.name}_$id",
+        name = name,
+        iconHash = iconHash,
+        isShared = shared,
+        gameSource = source,
+    )
+
+    companion object {
+        /**
+         * The library order: installed first, then by name. Matches the ORDER BY of
+         * [app.gamenative.db.dao.LibraryDao.page], including SQLite's ASCII-only LOWER(), so rows
+         * that don't come from the db can be merged into a page.
+         */
+        val ORDER: Comparator<LibraryRow> = compareBy<LibraryRow>(
+            { if (it.installed) 0 else 1 },
+            { sqliteLower(it.name) },
+            { it.source.name },
+            { it.id },
+        )
+
+        fun fromLibraryItem(item: LibraryItem, installed: Boolean) = LibraryRow(
+            source = item.gameSource,
+            id = item.appId.removePrefix("${item.gameSource.name}_"),
+            name = item.name,
+            iconHash = item.iconHash,
+            installed = installed,
+            shared = item.isShared,
+        )
+
+        private fun sqliteLower(value: String): String {
+            val chars = value.toCharArray()
+            for (i in chars.indices) {
+                if (chars[i] in 'A'..'Z') chars[i] = chars[i] + ('a' - 'A')
+            }
+            return String(chars)
+        }
+    }
+}
+
+/**
+ * Number of library entries of one store, and how many of them are installed.
+ */
+data class LibrarySourceCount(
+    val source: GameSource,
+    val total: Int,
+    val installed: Int,
+)
+
+/**
+ * What the library screen currently shows. Turned into SQL by [app.gamenative.db.dao.LibraryDao].
+ */
+data class LibraryFilter(
+    val query: String = "",
+    val sources: Set<GameSource> = setOf(GameSource.STEAM, GameSource.GOG, GameSource.EPIC),
+    val appTypes: Set<AppType> = emptySet(),
+    val installedOnly: Boolean = false,
+    // Show apps shared by family members, not just the account's own
+    val includeShared: Boolean = true,
+    // Account id of the signed in user, 0 when unknown
+    val accountId: Int = 0,
+    // Apps must be owned by one of these accounts; empty to not filter by owner
+    val ownerIds: List<Int> = emptyList(),
+    // Folder names present in the Steam install directories
+    val installedSteamDirs: Collection<String> = emptyList(),
+    // Only games whose stored compatibility report for gpuName has one of these statuses; empty to not filter
+    val compatibility: Set<GameCompatibilityStatus> = emptySet(),
+    val gpuName: String = "",
+)
@@ -0,0 +1,21 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * One app granted by a [SteamLicense]; the normalized form of [SteamLicense.appIds] so ownership
+ * lookups by app id can use an index.
+ */
+@Entity(
+    tableName = "license_app",
+    primaryKeys = ["package_id", "app_id"],
+    indices = [Index("app_id", "package_id")],
+)
+data class LicenseApp(
+    @ColumnInfo("package_id")
+    val packageId: Int,
+    @ColumnInfo("app_id")
+    val appId: Int,
+)
@@ -0,0 +1,20 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * One depot granted by a [SteamLicense]; the normalized form of [SteamLicense.depotIds].
+ */
+@Entity(
+    tableName = "license_depot",
+    primaryKeys = ["package_id", "depot_id"],
+    indices = [Index("depot_id", "package_id")],
+)
+data class LicenseDepot(
+    @ColumnInfo("package_id")
+    val packageId: Int,
+    @ColumnInfo("depot_id")
+    val depotId: Int,
+)
@@ -0,0 +1,37 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import `in`.dragonbra.javasteam.enums.ELicenseFlags
+import java.util.EnumSet
+
+/**
+ * Projection of [SteamApp] with just what PICS sync needs to decide whether an app changed,
+ * so change checks don't decode the app's depots and branches.
+ */
+data class AppChangeNumber(
+    val id: Int,
+    @ColumnInfo("package_id")
+    val packageId: Int,
+    @ColumnInfo("last_change_number")
+    val lastChangeNumber: Int,
+)
+
+/**
+ * Projection of [SteamLicense] with its PICS change number.
+ */
+data class LicenseChangeNumber(
+    val packageId: Int,
+    @ColumnInfo("last_change_number")
+    val lastChangeNumber: Int,
+)
+
+/**
+ * Projection of [SteamLicense] with the fields copied onto apps received from PICS.
+ */
+data class LicenseOwnership(
+    val packageId: Int,
+    @ColumnInfo("owner_account_id")
+    val ownerAccountId: List<Int>,
+    @ColumnInfo("license_flags")
+    val licenseFlags: EnumSet<ELicenseFlags>,
+)
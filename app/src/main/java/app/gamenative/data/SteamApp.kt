@@ -2,6 +2,7 @@ package app.gamenative.data
 
 import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 import app.gamenative.enums.AppType
 import app.gamenative.enums.ControllerSupport
@@ -12,7 +13,10 @@ import app.gamenative.service.SteamService
 import `in`.dragonbra.javasteam.enums.ELicenseFlags
 import java.util.EnumSet
 
-@Entity("steam_app")
+@Entity(
+    tableName = "steam_app",
+    indices = [Index("dlc_for_app_id")],
+)
 data class SteamApp(
     @PrimaryKey val id: Int,
     @ColumnInfo("package_id")
@@ -141,6 +145,10 @@ data class SteamApp(
 
     @ColumnInfo("ufs")
     val ufs: UFS = UFS(),
+
+    // Folder name the app installs into, kept as a column so the library can match installs in SQL
+    @ColumnInfo("dir_name", defaultValue = "''")
+    val dirName: String = "",
 ) {
 
     val logoUrl: String
@@ -0,0 +1,21 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+import androidx.room.PrimaryKey
+
+/**
+ * Full text index over [SteamApp.name], keyed by app id. Kept in sync by [app.gamenative.db.dao.SteamAppDao]
+ * rather than content triggers, since apps are written with INSERT OR REPLACE.
+ */
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "steam_app_fts")
+data class SteamAppFts(
+    @PrimaryKey
+    @ColumnInfo("rowid")
+    val appId: Int,
+    @ColumnInfo("name")
+    val name: String,
+)
@@ -7,7 +7,12 @@ import androidx.room.TypeConverters
 import app.gamenative.data.ChangeNumbers
 import app.gamenative.data.AppInfo
 import app.gamenative.data.FileChangeLists
+import app.gamenative.data.GameCompatibilityEntry
+import app.gamenative.data.InstalledExe
+import app.gamenative.data.LicenseApp
+import app.gamenative.data.LicenseDepot
 import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamAppFts
 import app.gamenative.data.SteamLicense
 import app.gamenative.data.CachedLicense
 import app.gamenative.data.DownloadingAppInfo
@@ -15,7 +20,6 @@ import app.gamenative.data.EncryptedAppTicket
 import app.gamenative.data.GOGGame
 import app.gamenative.data.EpicGame
 import app.gamenative.db.converters.AppConverter
-import app.gamenative.db.converters.ByteArrayConverter
 import app.gamenative.db.converters.FriendConverter
 import app.gamenative.db.converters.LicenseConverter
 import app.gamenative.db.converters.PathTypeConverter
@@ -23,6 +27,9 @@ import app.gamenative.db.converters.UserFileInfoListConverter
 import app.gamenative.db.converters.GOGConverter
 import app.gamenative.db.dao.ChangeNumbersDao
 import app.gamenative.db.dao.FileChangeListsDao
+import app.gamenative.db.dao.GameCompatibilityDao
+import app.gamenative.db.dao.InstalledExeDao
+import app.gamenative.db.dao.LibraryDao
 import app.gamenative.db.dao.SteamAppDao
 import app.gamenative.db.dao.SteamLicenseDao
 import app.gamenative.db.dao.AppInfoDao
@@ -45,9 +52,14 @@ const val DATABASE_NAME = "pluvia.db"
         SteamLicense::class,
         GOGGame::class,
         EpicGame::class,
-        DownloadingAppInfo::class
+        DownloadingAppInfo::class,
+        LicenseApp::class,
+        LicenseDepot::class,
+        SteamAppFts::class,
+        GameCompatibilityEntry::class,
+        InstalledExe::class,
     ],
-    version = 12,
+    version = 17,
     // For db migration, visit https://developer.android.com/training/data-storage/room/migrating-db-versions for more information
     exportSchema = true, // It is better to handle db changes carefully, as GN is getting much more users.
     autoMigrations = [
@@ -55,12 +67,16 @@ const val DATABASE_NAME = "pluvia.db"
         AutoMigration(from = 8, to = 9),
         AutoMigration(from = 9, to = 10),
         AutoMigration(from = 10, to = 11),
-        AutoMigration(from = 11, to = 12)
+        AutoMigration(from = 11, to = 12),
+        // 12 -> 13 back-fills license_app/license_depot, see ROOM_MIGRATION_V12_to_V13
+        // 13 -> 14 back-fills steam_app.dir_name and steam_app_fts, see ROOM_MIGRATION_V13_to_V14
+        // 14 -> 15 adds game_compatibility, see ROOM_MIGRATION_V14_to_V15
+        // 15 -> 16 adds installed_exe, see ROOM_MIGRATION_V15_to_V16
+        // 16 -> 17 stores steam_app depots/branches as CBOR, see ROOM_MIGRATION_V16_to_V17
     ]
 )
 @TypeConverters(
     AppConverter::class,
-    ByteArrayConverter::class,
     FriendConverter::class,
     LicenseConverter::class,
     PathTypeConverter::class,
@@ -88,4 +104,10 @@ abstract class PluviaDatabase : RoomDatabase() {
     abstract fun epicGameDao(): EpicGameDao
 
     abstract fun downloadingAppInfoDao(): DownloadingAppInfoDao
+
+    abstract fun libraryDao(): LibraryDao
+
+    abstract fun gameCompatibilityDao(): GameCompatibilityDao
+
+    abstract fun installedExeDao(): InstalledExeDao
 }
@@ -4,6 +4,7 @@ import androidx.room.TypeConverter
 import app.gamenative.data.BranchInfo
 import app.gamenative.data.ConfigInfo
 import app.gamenative.data.DepotInfo
+import app.gamenative.data.ExeCandidate
 import app.gamenative.data.LibraryAssetsInfo
 import app.gamenative.data.UFS
 import app.gamenative.enums.AppType
@@ -12,10 +13,29 @@ import app.gamenative.enums.Language
 import app.gamenative.enums.OS
 import app.gamenative.enums.ReleaseState
 import java.util.EnumSet
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.builtins.MapSerializer
+import kotlinx.serialization.builtins.serializer
+import kotlinx.serialization.cbor.Cbor
 import kotlinx.serialization.json.Json
 
 class AppConverter {
 
+    companion object {
+        /**
+         * Depots and branches are the bulk of a steam_app row, so they are stored as CBOR and only
+         * decoded when read. Definite lengths keep an empty map a single byte, see [EMPTY_MAP].
+         */
+        @OptIn(ExperimentalSerializationApi::class)
+        private val cbor = Cbor { useDefiniteLengthEncoding = true }
+
+        /** CBOR for an empty map, for queries that look for apps with or without depots */
+        const val EMPTY_MAP = "X'A0'"
+
+        private val depotsSerializer = MapSerializer(Int.serializer(), DepotInfo.serializer())
+        private val branchesSerializer = MapSerializer(String.serializer(), BranchInfo.serializer())
+    }
+
     @TypeConverter
     fun toAppType(appType: Int): AppType = AppType.fromCode(appType)
 
@@ -41,16 +61,19 @@ class AppConverter {
     fun fromControllerSupport(controllerSupport: ControllerSupport): Int = controllerSupport.code
 
     @TypeConverter
-    fun toDepots(depots: String): Map<Int, DepotInfo> = Json.decodeFromString<Map<Int, DepotInfo>>(depots)
+    fun toDepots(depots: ByteArray): Map<Int, DepotInfo> = LazyDecodedMap(depots) { cbor.decodeFromByteArray(depotsSerializer, it) }
 
     @TypeConverter
-    fun fromDepots(depots: Map<Int, DepotInfo>): String = Json.encodeToString(depots)
+    fun fromDepots(depots: Map<Int, DepotInfo>): ByteArray =
+        (depots as? LazyDecodedMap)?.bytes ?: cbor.encodeToByteArray(depotsSerializer, depots)
 
     @TypeConverter
-    fun toBranches(branches: String): Map<String, BranchInfo> = Json.decodeFromString<Map<String, BranchInfo>>(branches)
+    fun toBranches(branches: ByteArray): Map<String, BranchInfo> =
+        LazyDecodedMap(branches) { cbor.decodeFromByteArray(branchesSerializer, it) }
 
     @TypeConverter
-    fun fromBranches(branches: Map<String, BranchInfo>): String = Json.encodeToString(branches)
+    fun fromBranches(branches: Map<String, BranchInfo>): ByteArray =
+        (branches as? LazyDecodedMap)?.bytes ?: cbor.encodeToByteArray(branchesSerializer, branches)
 
     @TypeConverter
     fun toLangMap(langMap: String): Map<Language, String> = Json.decodeFromString<Map<Language, String>>(langMap)
@@ -75,4 +98,10 @@ class AppConverter {
 
     @TypeConverter
     fun fromUFS(ufs: UFS): String = Json.encodeToString(ufs)
+
+    @TypeConverter
+    fun toExeCandidates(candidates: String): List<ExeCandidate> = Json.decodeFromString<List<ExeCandidate>>(candidates)
+
+    @TypeConverter
+    fun fromExeCandidates(candidates: List<ExeCandidate>): String = Json.encodeToString(candidates)
 }
@@ -0,0 +1,40 @@
+package app.gamenative.db.converters
+
+/**
+ * A map read from the database that is decoded from [bytes] the first time it is used.
+ * Most reads of a row never look at its depots or branches, so they skip decoding them, and
+ * writing an untouched map back stores [bytes] as they are.
+ */
+internal class LazyDecodedMap<K, V>(
+    val bytes: ByteArray,
+    decode: (ByteArray) -> Map<K, V>,
+) : AbstractMap<K, V>() {
+
+    private val map by lazy { decode(bytes) }
+
+    override val entries: Set<Map.Entry<K, V>>
+        get() = map.entries
+
+    override val keys: Set<K>
+        get() = map.keys
+
+    override val values: Collection<V>
+        get() = map.values
+
+    override val size: Int
+        get() = map.size
+
+    override fun isEmpty(): Boolean = map.isEmpty()
+
+    override fun containsKey(key: K): Boolean = map.containsKey(key)
+
+    override fun containsValue(value: V): Boolean = map.containsValue(value)
+
+    override fun get(key: K): V? = map[key]
+
+    // Same bytes means same content, no need to decode either side
+    override fun equals(other: Any?): Boolean =
+        (other is LazyDecodedMap<*, *> && bytes.contentEquals(other.bytes)) || super.equals(other)
+
+    override fun hashCode(): Int = super.hashCode()
+}
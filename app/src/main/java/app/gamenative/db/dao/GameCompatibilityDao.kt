@@ -0,0 +1,82 @@
+package app.gamenative.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import app.gamenative.data.GameCompatibilityEntry
+
+@Dao
+interface GameCompatibilityDao {
+
+    @Query("SELECT COUNT(*) FROM game_compatibility")
+    suspend fun count(): Int
+
+    @Query("DELETE FROM game_compatibility")
+    suspend fun deleteAll()
+
+    /* ----------------------------------------------------------
+       INTERNAL queries that Room generates.  Keep them abstract.
+       ---------------------------------------------------------- */
+
+    @Query(
+        "SELECT * FROM game_compatibility " +
+            "WHERE gpu_name = :gpuName AND game_name IN (:gameNames) AND cached_at > :expiredAt",
+    )
+    suspend fun _findFresh(gpuName: String, gameNames: List<String>, expiredAt: Long): List<GameCompatibilityEntry>
+
+    @Query("UPDATE game_compatibility SET last_access = :now WHERE gpu_name = :gpuName AND game_name IN (:gameNames)")
+    suspend fun _touch(gpuName: String, gameNames: List<String>, now: Long)
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun _insertAll(entries: List<GameCompatibilityEntry>)
+
+    @Query("DELETE FROM game_compatibility WHERE cached_at <= :expiredAt")
+    suspend fun _deleteExpired(expiredAt: Long)
+
+    @Query(
+        "DELETE FROM game_compatibility WHERE rowid IN (" +
+            "SELECT rowid FROM game_compatibility ORDER BY last_access ASC " +
+            "LIMIT MAX((SELECT COUNT(*) FROM game_compatibility) - :maxEntries, 0)" +
+            ")",
+    )
+    suspend fun _trimTo(maxEntries: Int)
+
+    /* ----------------------------------------------------------
+       PUBLIC API – wrap multi-step ops in @Transaction.
+       ---------------------------------------------------------- */
+
+    /**
+     * Entries for [gameNames] on [gpuName] cached after [expiredAt], in one query per
+     * [SQLITE_MAX_VARS] names. The entries found are marked as used at [now].
+     */
+    @Transaction
+    suspend fun findFresh(
+        gpuName: String,
+        gameNames: Collection<String>,
+        expiredAt: Long,
+        now: Long,
+    ): List<GameCompatibilityEntry> {
+        val found = mutableListOf<GameCompatibilityEntry>()
+        gameNames.distinct().chunked(SQLITE_MAX_VARS - 2).forEach { chunk ->
+            val entries = _findFresh(gpuName, chunk, expiredAt)
+            if (entries.isNotEmpty()) {
+                _touch(gpuName, entries.map { it.gameName }, now)
+                found += entries
+            }
+        }
+        return found
+    }
+
+    /**
+     * Stores [entries], then drops entries cached at or before [expiredAt] and the least recently
+     * used ones beyond [maxEntries].
+     */
+    @Transaction
+    suspend fun putAll(entries: List<GameCompatibilityEntry>, expiredAt: Long, maxEntries: Int) {
+        if (entries.isNotEmpty()) _insertAll(entries)
+        _deleteExpired(expiredAt)
+        _trimTo(maxEntries)
+    }
+}
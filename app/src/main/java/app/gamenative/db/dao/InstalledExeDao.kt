@@ -0,0 +1,23 @@
+package app.gamenative.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import app.gamenative.data.InstalledExe
+
+@Dao
+interface InstalledExeDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insert(installedExe: InstalledExe)
+
+    @Query("SELECT * FROM installed_exe WHERE app_id = :appId")
+    suspend fun find(appId: Int): InstalledExe?
+
+    @Query("DELETE FROM installed_exe WHERE app_id = :appId")
+    suspend fun delete(appId: Int)
+
+    @Query("DELETE FROM installed_exe")
+    suspend fun deleteAll()
+}
@@ -0,0 +1,277 @@
+package app.gamenative.db.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.RawQuery
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteQuery
+import app.gamenative.data.EpicGame
+import app.gamenative.data.GOGGame
+import app.gamenative.data.GameCompatibilityEntry
+import app.gamenative.data.GameSource
+import app.gamenative.data.LibraryFilter
+import app.gamenative.data.LibraryRow
+import app.gamenative.data.LibrarySourceCount
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamAppFts
+import app.gamenative.service.SteamService.Companion.INVALID_PKG_ID
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Library listing across Steam, GOG and Epic. Filtering, ordering and paging all happen in SQL
+ * and only [LibraryRow] columns are read, so a search or filter change touches one page of rows.
+ *
+ * A search matches names containing a word starting with each word of the query, in any order, so
+ * "life half" finds "Half-Life 2" in every store. Steam goes through its full text index; GOG and
+ * Epic do the same with LIKE, except that their case and accent folding is ASCII only. A query
+ * with no words at all, only punctuation, is matched as a substring everywhere.
+ *
+ * The compatibility filter reads the reports stored in game_compatibility, expired ones included:
+ * an old report is still the best guess, and games without one count as unknown.
+ */
+@Dao
+interface LibraryDao {
+
+    @RawQuery(
+        observedEntities = [SteamApp::class, SteamAppFts::class, GOGGame::class, EpicGame::class, GameCompatibilityEntry::class],
+    )
+    suspend fun _rows(query: SupportSQLiteQuery): List<LibraryRow>
+
+    @RawQuery(
+        observedEntities = [SteamApp::class, SteamAppFts::class, GOGGame::class, EpicGame::class, GameCompatibilityEntry::class],
+    )
+    suspend fun _counts(query: SupportSQLiteQuery): List<LibrarySourceCount>
+
+    /**
+     * Unfiltered size of each store's library. Emits whenever one of the stores' tables is written,
+     * even if the counts stay the same.
+     */
+    @Query(
+        "SELECT 'STEAM' AS source, COUNT(*) AS total, 0 AS installed FROM steam_app " +
+            "WHERE id != 480 AND package_id != :invalidPkgId AND type != 0 " +
+            "UNION ALL " +
+            "SELECT 'GOG' AS source, COUNT(*) AS total, COALESCE(SUM(is_installed), 0) AS installed FROM gog_games " +
+            "WHERE exclude = 0 " +
+            "UNION ALL " +
+            "SELECT 'EPIC' AS source, COUNT(*) AS total, COALESCE(SUM(is_installed), 0) AS installed FROM epic_games " +
+            "WHERE is_dlc = 0 AND namespace != 'ue'",
+    )
+    fun observeSourceCounts(invalidPkgId: Int = INVALID_PKG_ID): Flow<List<LibrarySourceCount>>
+
+    /**
+     * Up to [limit] rows matching [filter] that sort after [after], in [LibraryRow.ORDER].
+     * Pass the last row of the previous page as [after] to get the next one.
+     */
+    suspend fun page(filter: LibraryFilter, after: LibraryRow? = null, limit: Int): List<LibraryRow> {
+        if (limit <= 0) return emptyList()
+        return LibraryQueries.page(filter, after, limit)?.let { _rows(it) }.orEmpty()
+    }
+
+    /**
+     * Size of each store's share of the library matching [filter]
+     */
+    suspend fun counts(filter: LibraryFilter): List<LibrarySourceCount> =
+        LibraryQueries.counts(filter)?.let { _counts(it) }.orEmpty()
+}
+
+internal object LibraryQueries {
+
+    private const val ORDER_KEY = "1 - installed, LOWER(name), source, id"
+
+    private val WORD = Regex("[\\p{L}\\p{N}]+")
+
+    // Punctuation common in titles, read as spaces so LIKE can find where words start
+    private val TITLE_SEPARATORS = listOf("-", ":", ".", ",", "'", "’", "_", "/", "&", "!", "?", "(", ")", "[", "]", "+", "\"", "™", "®")
+
+    fun page(filter: LibraryFilter, after: LibraryRow?, limit: Int): SimpleSQLiteQuery? {
+        val args = mutableListOf<Any?>()
+        val union = union(filter, args) ?: return null
+        val sql = StringBuilder("SELECT * FROM (").append(union).append(")")
+        if (after != null) {
+            sql.append(" WHERE ($ORDER_KEY) > (?, LOWER(?), ?, ?)")
+            args += if (after.installed) 0 else 1
+            args += after.name
+            args += after.source.name
+            args += after.id
+        }
+        sql.append(" ORDER BY $ORDER_KEY LIMIT ?")
+        args += limit
+        return SimpleSQLiteQuery(sql.toString(), args.toTypedArray())
+    }
+
+    fun counts(filter: LibraryFilter): SimpleSQLiteQuery? {
+        val args = mutableListOf<Any?>()
+        val union = union(filter, args) ?: return null
+        val sql = "SELECT source, COUNT(*) AS total, COALESCE(SUM(installed), 0) AS installed " +
+            "FROM ($union) GROUP BY source"
+        return SimpleSQLiteQuery(sql, args.toTypedArray())
+    }
+
+    /** One SELECT per store included in [filter], all with the [LibraryRow] columns. */
+    private fun union(filter: LibraryFilter, args: MutableList<Any?>): String? {
+        val selects = buildList {
+            if (GameSource.STEAM in filter.sources && filter.appTypes.isNotEmpty()) add(steam(filter, args))
+            if (GameSource.GOG in filter.sources) add(gog(filter, args))
+            if (GameSource.EPIC in filter.sources) add(epic(filter, args))
+        }
+        return if (selects.isEmpty()) null else selects.joinToString(" UNION ALL ")
+    }
+
+    private fun steam(filter: LibraryFilter, args: MutableList<Any?>): String {
+        // Installs from before install_dir was known are in a folder named after the app. Folder
+        // names can't contain '/', so all of them go in as one '/'-delimited argument, however many
+        // there are, and a name with a '/' in it is never a folder.
+        val installedDirs = installedDirsArg(filter)
+        val installed = if (installedDirs == null) {
+            "0"
+        } else {
+            "(instr(?, '/' || dir_name || '/') > 0 OR (instr(name, '/') = 0 AND instr(?, '/' || name || '/') > 0))"
+        }
+        val shared = if (filter.accountId != 0) "NOT ${ownedBy()}" else "0"
+
+        val sql = StringBuilder(
+            "SELECT 'STEAM' AS source, CAST(id AS TEXT) AS id, name, client_icon_hash AS icon_hash, " +
+                "$installed AS installed, $shared AS shared FROM steam_app " +
+                "WHERE id != 480 AND package_id != ? AND type IN (${placeholders(filter.appTypes.size)})",
+        )
+        // Bind in the order the placeholders appear: select list first
+        addInstalledArgs(installedDirs, args)
+        if (filter.accountId != 0) args += ownerToken(filter.accountId)
+        args += INVALID_PKG_ID
+        filter.appTypes.mapTo(args) { it.code }
+
+        if (filter.ownerIds.isNotEmpty()) {
+            sql.append(" AND (").append(filter.ownerIds.joinToString(" OR ") { ownedBy() }).append(")")
+            filter.ownerIds.mapTo(args) { ownerToken(it) }
+        }
+        if (!filter.includeShared && filter.accountId != 0) {
+            sql.append(" AND ").append(ownedBy())
+            args += ownerToken(filter.accountId)
+        }
+        if (filter.installedOnly) {
+            sql.append(" AND ").append(installed)
+            addInstalledArgs(installedDirs, args)
+        }
+        if (filter.query.isNotBlank()) {
+            val match = ftsMatch(filter.query)
+            if (match != null) {
+                sql.append(" AND id IN (SELECT rowid FROM steam_app_fts WHERE steam_app_fts MATCH ?)")
+                args += match
+            } else {
+                sql.append(" AND name LIKE ? ESCAPE '\\'")
+                args += likePattern(filter.query)
+            }
+        }
+        appendCompatibilityFilter(sql, "steam_app.name", filter, args)
+        return sql.toString()
+    }
+
+    private fun installedDirsArg(filter: LibraryFilter): String? {
+        val dirs = filter.installedSteamDirs.filter { it.isNotEmpty() }
+        return if (dirs.isEmpty()) null else dirs.joinToString("/", prefix = "/", postfix = "/")
+    }
+
+    private fun addInstalledArgs(installedDirs: String?, args: MutableList<Any?>) {
+        if (installedDirs == null) return
+        args += installedDirs
+        args += installedDirs
+    }
+
+    private fun gog(filter: LibraryFilter, args: MutableList<Any?>): String {
+        val sql = StringBuilder(
+            "SELECT 'GOG' AS source, id, title AS name, " +
+                "CASE WHEN image_url != '' THEN image_url ELSE icon_url END AS icon_hash, " +
+                "is_installed AS installed, 0 AS shared FROM gog_games WHERE exclude = 0",
+        )
+        appendTitleFilters(sql, filter, args)
+        appendCompatibilityFilter(sql, "gog_games.title", filter, args)
+        return sql.toString()
+    }
+
+    private fun epic(filter: LibraryFilter, args: MutableList<Any?>): String {
+        val sql = StringBuilder(
+            "SELECT 'EPIC' AS source, CAST(id AS TEXT) AS id, title AS name, art_cover AS icon_hash, " +
+                "is_installed AS installed, 0 AS shared FROM epic_games WHERE is_dlc = 0 AND namespace != 'ue'",
+        )
+        appendTitleFilters(sql, filter, args)
+        appendCompatibilityFilter(sql, "epic_games.title", filter, args)
+        return sql.toString()
+    }
+
+    // GOG and Epic libraries are small enough that a LIKE scan of the title is fine
+    private fun appendTitleFilters(sql: StringBuilder, filter: LibraryFilter, args: MutableList<Any?>) {
+        if (filter.installedOnly) {
+            sql.append(" AND is_installed = 1")
+        }
+        if (filter.query.isNotBlank()) {
+            val words = queryWords(filter.query)
+            if (words.isNotEmpty()) {
+                // The same word prefixes the full text index matches on Steam
+                val title = "(' ' || ${spacedPunctuation("title")})"
+                for (word in words) {
+                    sql.append(" AND ").append(title).append(" LIKE ?")
+                    args += "% $word%"
+                }
+            } else {
+                sql.append(" AND title LIKE ? ESCAPE '\\'")
+                args += likePattern(filter.query)
+            }
+        }
+    }
+
+    /**
+     * Keeps rows whose game, named by [nameColumn], has one of the statuses in the filter. The
+     * status is worked out from the stored report the same way the library screen labels games.
+     */
+    private fun appendCompatibilityFilter(
+        sql: StringBuilder,
+        nameColumn: String,
+        filter: LibraryFilter,
+        args: MutableList<Any?>,
+    ) {
+        if (filter.compatibility.isEmpty()) return
+        sql.append(
+            " AND COALESCE((SELECT CASE " +
+                "WHEN is_not_working = 1 THEN 'NOT_COMPATIBLE' " +
+                "WHEN has_been_tried = 0 THEN 'UNKNOWN' " +
+                "WHEN gpu_playable_count > 0 THEN 'GPU_COMPATIBLE' " +
+                "WHEN total_playable_count > 0 THEN 'COMPATIBLE' " +
+                "ELSE 'UNKNOWN' END " +
+                "FROM game_compatibility WHERE game_name = $nameColumn AND gpu_name = ?), 'UNKNOWN') " +
+                "IN (${placeholders(filter.compatibility.size)})",
+        )
+        args += filter.gpuName
+        filter.compatibility.mapTo(args) { it.name }
+    }
+
+    private fun spacedPunctuation(column: String): String = TITLE_SEPARATORS.fold(column) { expr, separator ->
+        "REPLACE($expr, '${separator.replace("'", "''")}', ' ')"
+    }
+
+    // owner_account_id holds a JSON int list such as [1,2]
+    private fun ownedBy() = "instr(',' || trim(owner_account_id, '[]') || ',', ?) > 0"
+
+    private fun ownerToken(accountId: Int) = ",$accountId,"
+
+    private fun placeholders(count: Int) = List(count) { "?" }.joinToString(",")
+
+    /**
+     * Every word of [query] as a prefix term, so "port 2" finds "Portal 2".
+     * Null when the query has no words to match on.
+     */
+    internal fun ftsMatch(query: String): String? {
+        val words = queryWords(query)
+        return if (words.isEmpty()) null else words.joinToString(" ") { "$it*" }
+    }
+
+    // Lowercase so words like OR and NOT aren't read as FTS operators
+    private fun queryWords(query: String): List<String> = WORD.findAll(query).map { it.value.lowercase() }.toList()
+
+    private fun likePattern(query: String): String {
+        val escaped = query.trim()
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_")
+        return "%$escaped%"
+    }
+}
@@ -4,8 +4,12 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import androidx.room.Update
+import app.gamenative.data.AppChangeNumber
 import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamAppFts
+import app.gamenative.db.converters.AppConverter
 import app.gamenative.service.SteamService.Companion.INVALID_PKG_ID
 import kotlinx.coroutines.flow.Flow
 
@@ -13,13 +17,19 @@ import kotlinx.coroutines.flow.Flow
 interface SteamAppDao {
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insert(apps: SteamApp)
+    suspend fun _insertAll(apps: List<SteamApp>)
+
+    @Update
+    suspend fun _update(app: SteamApp)
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertAll(apps: List<SteamApp>)
+    suspend fun _insertFts(rows: List<SteamAppFts>)
 
-    @Update
-    suspend fun update(app: SteamApp)
+    @Query("DELETE FROM steam_app_fts")
+    suspend fun _deleteAllFts()
+
+    @Query("DELETE from steam_app")
+    suspend fun _deleteAll()
 
     @Query(
         "SELECT * FROM steam_app " +
@@ -44,27 +54,89 @@ interface SteamAppDao {
     @Query("SELECT * FROM steam_app WHERE id = :appId")
     suspend fun findApp(appId: Int): SteamApp?
 
-    @Query("SELECT * FROM steam_app AS app WHERE dlc_for_app_id = :appId AND depots <> '{}' AND " +
+    @Query("SELECT * FROM steam_app WHERE id = :appId")
+    fun observeApp(appId: Int): Flow<SteamApp?>
+
+    @Query("SELECT * FROM steam_app AS app WHERE dlc_for_app_id = :appId AND depots <> " + AppConverter.EMPTY_MAP + " AND " +
             " EXISTS (" +
-            "   SELECT * FROM steam_license AS license " +
-            "     WHERE license.license_type <> 0 AND " +
-            "       REPLACE(REPLACE(license.app_ids, '[', ','), ']', ',') LIKE ('%,' || app.id || ',%') " +
+            "   SELECT 1 FROM license_app AS la " +
+            "     INNER JOIN steam_license AS license ON license.packageId = la.package_id " +
+            "     WHERE la.app_id = app.id AND license.license_type <> 0" +
             ")"
     )
     suspend fun findDownloadableDLCApps(appId: Int): List<SteamApp>?
 
-    @Query("SELECT * FROM steam_app AS app WHERE dlc_for_app_id = :appId AND depots = '{}' AND " +
+    @Query("SELECT * FROM steam_app AS app WHERE dlc_for_app_id = :appId AND depots = " + AppConverter.EMPTY_MAP + " AND " +
             " EXISTS (" +
-            "   SELECT * FROM steam_license AS license " +
-            "     WHERE license.license_type <> 0 AND " +
-            "       REPLACE(REPLACE(license.app_ids, '[', ','), ']', ',') LIKE ('%,' || app.id || ',%') " +
+            "   SELECT 1 FROM license_app AS la " +
+            "     INNER JOIN steam_license AS license ON license.packageId = la.package_id " +
+            "     WHERE la.app_id = app.id AND license.license_type <> 0" +
             ")"
     )
     suspend fun findHiddenDLCApps(appId: Int): List<SteamApp>?
 
-    @Query("DELETE from steam_app")
-    suspend fun deleteAll()
-
     @Query("SELECT id FROM steam_app")
     suspend fun getAllAppIds(): List<Int>
+
+    @Query("SELECT id, package_id, last_change_number FROM steam_app WHERE id IN (:appIds)")
+    suspend fun _findChangeNumbers(appIds: List<Int>): List<AppChangeNumber>
+
+    @Query("UPDATE steam_app SET package_id = :packageId WHERE id IN (:appIds)")
+    suspend fun _updatePackageId(packageId: Int, appIds: List<Int>)
+
+    @Transaction
+    suspend fun insert(apps: SteamApp) {
+        insertAll(listOf(apps))
+    }
+
+    /**
+     * Inserts or replaces [apps], keeping the name search index in step.
+     */
+    @Transaction
+    suspend fun insertAll(apps: List<SteamApp>) {
+        _insertAll(apps)
+        _insertFts(apps.map { SteamAppFts(it.id, it.name) })
+    }
+
+    @Transaction
+    suspend fun update(app: SteamApp) {
+        _update(app)
+        _insertFts(listOf(SteamAppFts(app.id, app.name)))
+    }
+
+    @Transaction
+    suspend fun deleteAll() {
+        _deleteAll()
+        _deleteAllFts()
+    }
+
+    /**
+     * Change numbers of the apps in [appIds] that exist in the db, keyed by app id.
+     * Queried in chunks so we never exceed SQLite's parameter ceiling.
+     */
+    @Transaction
+    suspend fun findChangeNumbers(appIds: Collection<Int>): Map<Int, AppChangeNumber> {
+        val out = HashMap<Int, AppChangeNumber>(appIds.size)
+        appIds.distinct().chunked(SQLITE_MAX_VARS).forEach { chunk ->
+            _findChangeNumbers(chunk).associateByTo(out) { it.id }
+        }
+        return out
+    }
+
+    /**
+     * Points every app in [appIds] at [packageId], inserting stub rows for apps not in the db yet.
+     */
+    @Transaction
+    suspend fun assignPackage(packageId: Int, appIds: List<Int>) {
+        if (appIds.isEmpty()) return
+        val existing = findChangeNumbers(appIds).keys
+        // One slot of the parameter budget goes to packageId
+        existing.toList().chunked(SQLITE_MAX_VARS - 1).forEach { chunk ->
+            _updatePackageId(packageId, chunk)
+        }
+        val stubs = appIds.distinct().filter { it !in existing }.map { SteamApp(id = it, packageId = packageId) }
+        if (stubs.isNotEmpty()) {
+            insertAll(stubs)
+        }
+    }
 }
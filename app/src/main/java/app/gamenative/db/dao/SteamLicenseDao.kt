@@ -6,6 +6,10 @@ import androidx.room.OnConflictStrategy
 import androidx.room.Query
 import androidx.room.Transaction
 import androidx.room.Update
+import app.gamenative.data.LicenseApp
+import app.gamenative.data.LicenseChangeNumber
+import app.gamenative.data.LicenseDepot
+import app.gamenative.data.LicenseOwnership
 import app.gamenative.data.SteamLicense
 import kotlin.math.min
 
@@ -14,27 +18,63 @@ val SQLITE_MAX_VARS = 999
 @Dao
 interface SteamLicenseDao {
 
+    @Query("SELECT * FROM steam_license")
+    suspend fun getAllLicenses(): List<SteamLicense>
+
+    @Query("SELECT * FROM steam_license WHERE packageId = :packageId")
+    suspend fun findLicense(packageId: Int): SteamLicense?
+
+    /**
+     * Whether any real (non NoLicense) license grants [appId], via the indexed license_app table
+     */
+    @Query(
+        "SELECT EXISTS(" +
+            "SELECT 1 FROM license_app AS la " +
+            "INNER JOIN steam_license AS license ON license.packageId = la.package_id " +
+            "WHERE la.app_id = :appId AND license.license_type <> 0" +
+            ")",
+    )
+    suspend fun hasLicenseForApp(appId: Int): Boolean
+
+    @Query("SELECT package_id FROM license_depot WHERE depot_id = :depotId")
+    suspend fun findPackagesForDepot(depotId: Int): List<Int>
+
+    /* ----------------------------------------------------------
+       INTERNAL queries that Room generates.  Keep them abstract.
+       ---------------------------------------------------------- */
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertAll(license: List<SteamLicense>)
+    suspend fun _insertAll(license: List<SteamLicense>)
 
     @Update
-    suspend fun update(license: SteamLicense)
+    suspend fun _update(license: SteamLicense)
 
     @Query("UPDATE steam_license SET app_ids = :appIds WHERE packageId = :packageId")
-    suspend fun updateApps(packageId: Int, appIds: List<Int>)
+    suspend fun _updateApps(packageId: Int, appIds: List<Int>)
 
     @Query("UPDATE steam_license SET depot_ids = :depotIds WHERE packageId = :packageId")
-    suspend fun updateDepots(packageId: Int, depotIds: List<Int>)
+    suspend fun _updateDepots(packageId: Int, depotIds: List<Int>)
 
-    @Query("SELECT * FROM steam_license")
-    suspend fun getAllLicenses(): List<SteamLicense>
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun _insertLicenseApps(rows: List<LicenseApp>)
 
-    @Query("SELECT * FROM steam_license WHERE packageId = :packageId")
-    suspend fun findLicense(packageId: Int): SteamLicense?
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun _insertLicenseDepots(rows: List<LicenseDepot>)
 
-    /* ----------------------------------------------------------
-       INTERNAL queries that Room generates.  Keep them abstract.
-       ---------------------------------------------------------- */
+    @Query("DELETE FROM license_app WHERE package_id IN (:packageIds)")
+    suspend fun _deleteLicenseApps(packageIds: List<Int>)
+
+    @Query("DELETE FROM license_depot WHERE package_id IN (:packageIds)")
+    suspend fun _deleteLicenseDepots(packageIds: List<Int>)
+
+    @Query("DELETE FROM steam_license")
+    suspend fun _deleteAllLicenses()
+
+    @Query("DELETE FROM license_app")
+    suspend fun _deleteAllLicenseApps()
+
+    @Query("DELETE FROM license_depot")
+    suspend fun _deleteAllLicenseDepots()
 
     @Query(
         "SELECT * FROM steam_license " +
@@ -48,12 +88,53 @@ interface SteamLicenseDao {
     )
     suspend fun _deleteStaleLicenses(packageIds: List<Int>)
 
+    @Query("SELECT packageId, last_change_number FROM steam_license WHERE packageId IN (:packageIds)")
+    suspend fun _findChangeNumbers(packageIds: List<Int>): List<LicenseChangeNumber>
+
+    @Query("SELECT packageId, owner_account_id, license_flags FROM steam_license WHERE packageId IN (:packageIds)")
+    suspend fun _findOwnership(packageIds: List<Int>): List<LicenseOwnership>
+
     /* ----------------------------------------------------------
        PUBLIC wrappers – chunk the list so we never exceed
        SQLite’s 999-parameter ceiling.  These replace the old
        direct queries at call-sites.
        ---------------------------------------------------------- */
 
+    /* license_app/license_depot mirror app_ids/depot_ids, so every write goes through here */
+
+    @Transaction
+    suspend fun insertAll(license: List<SteamLicense>) {
+        _insertAll(license)
+        license.forEach { replaceMembership(it.packageId, it.appIds, it.depotIds) }
+    }
+
+    @Transaction
+    suspend fun update(license: SteamLicense) {
+        _update(license)
+        replaceMembership(license.packageId, license.appIds, license.depotIds)
+    }
+
+    @Transaction
+    suspend fun updateApps(packageId: Int, appIds: List<Int>) {
+        _updateApps(packageId, appIds)
+        _deleteLicenseApps(listOf(packageId))
+        _insertLicenseApps(appIds.map { LicenseApp(packageId, it) })
+    }
+
+    @Transaction
+    suspend fun updateDepots(packageId: Int, depotIds: List<Int>) {
+        _updateDepots(packageId, depotIds)
+        _deleteLicenseDepots(listOf(packageId))
+        _insertLicenseDepots(depotIds.map { LicenseDepot(packageId, it) })
+    }
+
+    private suspend fun replaceMembership(packageId: Int, appIds: List<Int>, depotIds: List<Int>) {
+        _deleteLicenseApps(listOf(packageId))
+        _deleteLicenseDepots(listOf(packageId))
+        _insertLicenseApps(appIds.map { LicenseApp(packageId, it) })
+        _insertLicenseDepots(depotIds.map { LicenseDepot(packageId, it) })
+    }
+
     @Transaction
     suspend fun findStaleLicences(packageIds: List<Int>): List<SteamLicense> {
         if (packageIds.isEmpty()) return getAllLicenses()
@@ -76,10 +157,35 @@ interface SteamLicenseDao {
     suspend fun deleteStaleLicenses(packageIds: List<Int>) {
         for (i in packageIds.indices step SQLITE_MAX_VARS) {
             val end = min(i + SQLITE_MAX_VARS, packageIds.size)
-            _deleteStaleLicenses(packageIds.subList(i, end))
+            val chunk = packageIds.subList(i, end)
+            _deleteStaleLicenses(chunk)
+            _deleteLicenseApps(chunk)
+            _deleteLicenseDepots(chunk)
+        }
+    }
+
+    @Transaction
+    suspend fun findChangeNumbers(packageIds: Collection<Int>): Map<Int, LicenseChangeNumber> {
+        val out = HashMap<Int, LicenseChangeNumber>(packageIds.size)
+        packageIds.distinct().chunked(SQLITE_MAX_VARS).forEach { chunk ->
+            _findChangeNumbers(chunk).associateByTo(out) { it.packageId }
         }
+        return out
     }
 
-    @Query("DELETE from steam_license")
-    suspend fun deleteAll()
+    @Transaction
+    suspend fun findOwnership(packageIds: Collection<Int>): Map<Int, LicenseOwnership> {
+        val out = HashMap<Int, LicenseOwnership>(packageIds.size)
+        packageIds.distinct().chunked(SQLITE_MAX_VARS).forEach { chunk ->
+            _findOwnership(chunk).associateByTo(out) { it.packageId }
+        }
+        return out
+    }
+
+    @Transaction
+    suspend fun deleteAll() {
+        _deleteAllLicenses()
+        _deleteAllLicenseApps()
+        _deleteAllLicenseDepots()
+    }
 }
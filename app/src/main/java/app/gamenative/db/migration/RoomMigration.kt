@@ -3,6 +3,13 @@ package app.gamenative.db.migration
 import androidx.room.migration.Migration
 import androidx.sqlite.SQLiteConnection
 import androidx.sqlite.execSQL
+import app.gamenative.data.BranchInfo
+import app.gamenative.data.DepotInfo
+import app.gamenative.db.converters.AppConverter
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.contentOrNull
+import kotlinx.serialization.json.jsonObject
+import kotlinx.serialization.json.jsonPrimitive
 
 private const val DROP_TABLE = "DROP TABLE IF EXISTS " // Trailing Space
 
@@ -14,3 +21,168 @@ internal val ROOM_MIGRATION_V7_to_V8 = object : Migration(7, 8) {
         connection.execSQL(DROP_TABLE + "steam_friend")
     }
 }
+
+internal val ROOM_MIGRATION_V12_to_V13 = object : Migration(12, 13) {
+    override fun migrate(connection: SQLiteConnection) {
+        // Normalized license -> app/depot tables so DLC and ownership lookups can use indexes
+        // instead of LIKE scans over the serialized app_ids/depot_ids lists.
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `license_app` (`package_id` INTEGER NOT NULL, `app_id` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`package_id`, `app_id`))",
+        )
+        connection.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_license_app_app_id_package_id` ON `license_app` (`app_id`, `package_id`)",
+        )
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `license_depot` (`package_id` INTEGER NOT NULL, `depot_id` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`package_id`, `depot_id`))",
+        )
+        connection.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_license_depot_depot_id_package_id` ON `license_depot` (`depot_id`, `package_id`)",
+        )
+        connection.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_steam_app_dlc_for_app_id` ON `steam_app` (`dlc_for_app_id`)",
+        )
+
+        // Back-fill from the JSON list columns, which steam_license keeps as well
+        val appIds = mutableListOf<Pair<Long, String>>()
+        val depotIds = mutableListOf<Pair<Long, String>>()
+        connection.prepare("SELECT packageId, app_ids, depot_ids FROM steam_license").use { stmt ->
+            while (stmt.step()) {
+                appIds += stmt.getLong(0) to stmt.getText(1)
+                depotIds += stmt.getLong(0) to stmt.getText(2)
+            }
+        }
+        backFill(connection, "INSERT OR IGNORE INTO `license_app` (`package_id`, `app_id`) VALUES (?, ?)", appIds)
+        backFill(connection, "INSERT OR IGNORE INTO `license_depot` (`package_id`, `depot_id`) VALUES (?, ?)", depotIds)
+    }
+
+    private fun backFill(connection: SQLiteConnection, insertSql: String, lists: List<Pair<Long, String>>) {
+        connection.prepare(insertSql).use { insert ->
+            for ((packageId, json) in lists) {
+                val ids = runCatching { Json.decodeFromString<List<Int>>(json) }.getOrDefault(emptyList())
+                for (id in ids) {
+                    insert.bindLong(1, packageId)
+                    insert.bindLong(2, id.toLong())
+                    insert.step()
+                    insert.reset()
+                }
+            }
+        }
+    }
+}
+
+internal val ROOM_MIGRATION_V13_to_V14 = object : Migration(13, 14) {
+    override fun migrate(connection: SQLiteConnection) {
+        // Library rows are filtered, searched and paged in SQL: steam_app gets the install folder
+        // name as a column and a full text index over names.
+        connection.execSQL("ALTER TABLE `steam_app` ADD COLUMN `dir_name` TEXT NOT NULL DEFAULT ''")
+        connection.execSQL(
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `steam_app_fts` USING FTS4(`name` TEXT NOT NULL, tokenize=unicode61)",
+        )
+
+        // Same rule as SteamService.getAppDirName: config.installDir, else the name
+        val dirNames = mutableListOf<Pair<Long, String>>()
+        connection.prepare("SELECT id, name, config FROM steam_app").use { stmt ->
+            while (stmt.step()) {
+                val installDir = runCatching {
+                    Json.parseToJsonElement(stmt.getText(2)).jsonObject["installDir"]?.jsonPrimitive?.contentOrNull
+                }.getOrNull().orEmpty()
+                dirNames += stmt.getLong(0) to installDir.ifEmpty { stmt.getText(1) }
+            }
+        }
+        connection.prepare("UPDATE `steam_app` SET `dir_name` = ? WHERE `id` = ?").use { update ->
+            for ((id, dirName) in dirNames) {
+                update.bindText(1, dirName)
+                update.bindLong(2, id)
+                update.step()
+                update.reset()
+            }
+        }
+        connection.execSQL("INSERT INTO `steam_app_fts` (`rowid`, `name`) SELECT `id`, `name` FROM `steam_app`")
+    }
+}
+
+internal val ROOM_MIGRATION_V14_to_V15 = object : Migration(14, 15) {
+    override fun migrate(connection: SQLiteConnection) {
+        // Compatibility responses move out of the game_compatibility_cache preference blob; the
+        // cache starts empty and refills from the API.
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `game_compatibility` (`game_name` TEXT NOT NULL, `gpu_name` TEXT NOT NULL, " +
+                "`total_playable_count` INTEGER NOT NULL, `gpu_playable_count` INTEGER NOT NULL, " +
+                "`avg_rating` REAL NOT NULL, `has_been_tried` INTEGER NOT NULL, `is_not_working` INTEGER NOT NULL, " +
+                "`cached_at` INTEGER NOT NULL, `last_access` INTEGER NOT NULL, PRIMARY KEY(`game_name`, `gpu_name`))",
+        )
+        connection.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_game_compatibility_last_access` ON `game_compatibility` (`last_access`)",
+        )
+    }
+}
+
+internal val ROOM_MIGRATION_V15_to_V16 = object : Migration(15, 16) {
+    override fun migrate(connection: SQLiteConnection) {
+        // Launch exe picks per installed app; filled on the next install, verify or launch.
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `installed_exe` (`app_id` INTEGER NOT NULL, `manifest_key` TEXT NOT NULL, " +
+                "`executable` TEXT NOT NULL, `candidates` TEXT NOT NULL, PRIMARY KEY(`app_id`))",
+        )
+    }
+}
+
+internal val ROOM_MIGRATION_V16_to_V17 = object : Migration(16, 17) {
+    override fun migrate(connection: SQLiteConnection) {
+        // steam_app depots/branches change from JSON text to CBOR blobs. SQLite can't change a
+        // column's type, so the table is rebuilt with the converted values.
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `_new_steam_app` (`id` INTEGER NOT NULL, `package_id` INTEGER NOT NULL, " +
+                "`owner_account_id` TEXT NOT NULL, `license_flags` INTEGER NOT NULL, `received_pics` INTEGER NOT NULL, " +
+                "`last_change_number` INTEGER NOT NULL, `depots` BLOB NOT NULL, `branches` BLOB NOT NULL, " +
+                "`name` TEXT NOT NULL, `type` INTEGER NOT NULL, `os_list` INTEGER NOT NULL, " +
+                "`release_state` INTEGER NOT NULL, `release_date` INTEGER NOT NULL, `metacritic_score` INTEGER NOT NULL, " +
+                "`metacritic_full_url` TEXT NOT NULL, `logo_hash` TEXT NOT NULL, `logo_small_hash` TEXT NOT NULL, " +
+                "`icon_hash` TEXT NOT NULL, `client_icon_hash` TEXT NOT NULL, `client_tga_hash` TEXT NOT NULL, " +
+                "`small_capsule` TEXT NOT NULL, `header_image` TEXT NOT NULL, `library_assets` TEXT NOT NULL, " +
+                "`primary_genre` INTEGER NOT NULL, `review_score` INTEGER NOT NULL, `review_percentage` INTEGER NOT NULL, " +
+                "`controller_support` INTEGER NOT NULL, `demo_of_app_id` INTEGER NOT NULL, `developer` TEXT NOT NULL, " +
+                "`publisher` TEXT NOT NULL, `homepage_url` TEXT NOT NULL, `game_manual_url` TEXT NOT NULL, " +
+                "`load_all_before_launch` INTEGER NOT NULL, `dlc_app_ids` TEXT NOT NULL, `is_free_app` INTEGER NOT NULL, " +
+                "`dlc_for_app_id` INTEGER NOT NULL, `must_own_app_to_purchase` INTEGER NOT NULL, " +
+                "`dlc_available_on_store` INTEGER NOT NULL, `optional_dlc` INTEGER NOT NULL, `game_dir` TEXT NOT NULL, " +
+                "`install_script` TEXT NOT NULL, `no_servers` INTEGER NOT NULL, `order` INTEGER NOT NULL, " +
+                "`primary_cache` INTEGER NOT NULL, `valid_os_list` INTEGER NOT NULL, `third_party_cd_key` INTEGER NOT NULL, " +
+                "`visible_only_when_installed` INTEGER NOT NULL, `visible_only_when_subscribed` INTEGER NOT NULL, " +
+                "`launch_eula_url` TEXT NOT NULL, `require_default_install_folder` INTEGER NOT NULL, " +
+                "`content_type` INTEGER NOT NULL, `install_dir` TEXT NOT NULL, `use_launch_cmd_line` INTEGER NOT NULL, " +
+                "`launch_without_workshop_updates` INTEGER NOT NULL, `use_mms` INTEGER NOT NULL, " +
+                "`install_script_signature` TEXT NOT NULL, `install_script_override` INTEGER NOT NULL, " +
+                "`config` TEXT NOT NULL, `ufs` TEXT NOT NULL, `dir_name` TEXT NOT NULL DEFAULT '', PRIMARY KEY(`id`))",
+        )
+        connection.execSQL("INSERT INTO `_new_steam_app` SELECT * FROM `steam_app`")
+
+        // An app whose JSON doesn't parse loses its depots and change number, so PICS fetches it again
+        val converter = AppConverter()
+        connection.prepare("SELECT id, depots, branches FROM steam_app").use { select ->
+            connection.prepare(
+                "UPDATE `_new_steam_app` SET `depots` = ?, `branches` = ?, " +
+                    "`last_change_number` = CASE WHEN ? THEN `last_change_number` ELSE 0 END WHERE `id` = ?",
+            ).use { update ->
+                while (select.step()) {
+                    val depots = runCatching { Json.decodeFromString<Map<Int, DepotInfo>>(select.getText(1)) }
+                    val branches = runCatching { Json.decodeFromString<Map<String, BranchInfo>>(select.getText(2)) }
+                    update.bindBlob(1, converter.fromDepots(depots.getOrDefault(emptyMap())))
+                    update.bindBlob(2, converter.fromBranches(branches.getOrDefault(emptyMap())))
+                    update.bindBoolean(3, depots.isSuccess && branches.isSuccess)
+                    update.bindLong(4, select.getLong(0))
+                    update.step()
+                    update.reset()
+                }
+            }
+        }
+
+        connection.execSQL("DROP TABLE `steam_app`")
+        connection.execSQL("ALTER TABLE `_new_steam_app` RENAME TO `steam_app`")
+        connection.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_steam_app_dlc_for_app_id` ON `steam_app` (`dlc_for_app_id`)",
+        )
+    }
+}
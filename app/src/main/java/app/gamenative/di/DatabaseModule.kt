@@ -8,6 +8,14 @@ import app.gamenative.db.dao.AppInfoDao
 import app.gamenative.db.dao.CachedLicenseDao
 import app.gamenative.db.dao.DownloadingAppInfoDao
 import app.gamenative.db.dao.EncryptedAppTicketDao
+import app.gamenative.db.dao.GameCompatibilityDao
+import app.gamenative.db.dao.InstalledExeDao
+import app.gamenative.db.dao.LibraryDao
+import app.gamenative.db.migration.ROOM_MIGRATION_V12_to_V13
+import app.gamenative.db.migration.ROOM_MIGRATION_V13_to_V14
+import app.gamenative.db.migration.ROOM_MIGRATION_V14_to_V15
+import app.gamenative.db.migration.ROOM_MIGRATION_V15_to_V16
+import app.gamenative.db.migration.ROOM_MIGRATION_V16_to_V17
 import app.gamenative.db.migration.ROOM_MIGRATION_V7_to_V8
 import dagger.Module
 import dagger.Provides
@@ -26,7 +34,14 @@ class DatabaseModule {
         // The db will be considered unstable during development.
         // Once stable we should add a (room) db migration
         return Room.databaseBuilder(context, PluviaDatabase::class.java, DATABASE_NAME)
-            .addMigrations(ROOM_MIGRATION_V7_to_V8)
+            .addMigrations(
+                ROOM_MIGRATION_V7_to_V8,
+                ROOM_MIGRATION_V12_to_V13,
+                ROOM_MIGRATION_V13_to_V14,
+                ROOM_MIGRATION_V14_to_V15,
+                ROOM_MIGRATION_V15_to_V16,
+                ROOM_MIGRATION_V16_to_V17,
+            )
             .fallbackToDestructiveMigration(true)
             .build()
     }
@@ -70,4 +85,16 @@ class DatabaseModule {
     @Provides
     @Singleton
     fun provideDownloadingAppInfoDao(db: PluviaDatabase): DownloadingAppInfoDao = db.downloadingAppInfoDao()
+
+    @Provides
+    @Singleton
+    fun provideLibraryDao(db: PluviaDatabase): LibraryDao = db.libraryDao()
+
+    @Provides
+    @Singleton
+    fun provideGameCompatibilityDao(db: PluviaDatabase): GameCompatibilityDao = db.gameCompatibilityDao()
+
+    @Provides
+    @Singleton
+    fun provideInstalledExeDao(db: PluviaDatabase): InstalledExeDao = db.installedExeDao()
 }
@@ -0,0 +1,212 @@
+package app.gamenative.service
+
+import android.os.SystemClock
+import app.gamenative.PluviaApp
+import app.gamenative.PrefManager
+import java.io.Closeable
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.ceil
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.delay
+import timber.log.Timber
+
+enum class DownloadPriority {
+    HIGH,
+    NORMAL,
+    LOW,
+}
+
+/**
+ * Shares network capacity between all running downloads (Steam, Epic and GOG).
+ *
+ * Downloads register a [Handle] and then take a connection slot for every chunk request
+ * ([withConnection]) and pay for the bytes they receive ([acquireBandwidth]). Bandwidth is a token
+ * bucket kept per priority level: bytes of one priority also drain every lower level, so lower
+ * priority downloads wait behind higher ones while higher ones never wait for lower ones. Slots are
+ * handed out in priority order as well. Priorities follow the download queue: the download started
+ * first is [DownloadPriority.HIGH], the next [DownloadPriority.NORMAL] and the rest
+ * [DownloadPriority.LOW], so downloads finish in the order they were started while later ones use
+ * what's left. While a game is running the connection budget and the rate are lowered so downloads
+ * don't stutter the session.
+ */
+@Singleton
+class DownloadGovernor(
+    private val clock: () -> Long,
+    private val isGameSessionActive: () -> Boolean,
+    private val bandwidthLimit: () -> Long,
+    private val gameplayBandwidthLimit: () -> Long,
+    private val connectionBudget: Int = DEFAULT_CONNECTION_BUDGET,
+    private val gameplayConnectionBudget: Int = GAMEPLAY_CONNECTION_BUDGET,
+) {
+    @Inject
+    constructor() : this(
+        clock = SystemClock::elapsedRealtime,
+        isGameSessionActive = { PluviaApp.xEnvironment != null },
+        bandwidthLimit = { PrefManager.downloadSpeedLimitKbps * 1024L },
+        gameplayBandwidthLimit = { PrefManager.gameplayDownloadSpeedLimitKbps * 1024L },
+    )
+
+    companion object {
+        const val DEFAULT_CONNECTION_BUDGET = 16
+        const val GAMEPLAY_CONNECTION_BUDGET = 2
+        private const val BURST_SECONDS = 1.0
+    }
+
+    /**
+     * A registered download. Close it when the download finishes or fails.
+     */
+    inner class Handle internal constructor(val id: String) : Closeable {
+        /** Where the download is in the queue; see [DownloadGovernor] */
+        @Volatile
+        var priority: DownloadPriority = DownloadPriority.NORMAL
+            internal set
+
+        /**
+         * Accounts [bytes] moved by a downloader that runs its own HTTP (Steam's DepotDownloader)
+         * and returns how long, in ms, it has to hold back before moving more
+         */
+        fun reserveTransfer(bytes: Long): Long = reserveBandwidth(this, bytes)
+
+        override fun close() = unregister(this)
+    }
+
+    private class Waiter(val handle: DownloadGovernor.Handle, val seq: Long) {
+        val granted = CompletableDeferred<Unit>()
+    }
+
+    private val lock = Any()
+    private val handles = LinkedHashMap<String, Handle>()
+    private val waiters = mutableListOf<Waiter>()
+    private var nextSeq = 0L
+    private var activeConnections = 0
+
+    // Per priority level, the time at which everything reserved so far has been paid for
+    private val paidUntilMs = DoubleArray(DownloadPriority.entries.size)
+
+    /** Adds a download to the end of the queue */
+    fun register(id: String): Handle {
+        val handle = Handle(id)
+        synchronized(lock) {
+            handles.put(id, handle)?.let { Timber.w("Download $id registered twice with the governor") }
+            prioritizeLocked()
+        }
+        return handle
+    }
+
+    private fun unregister(handle: Handle) {
+        synchronized(lock) {
+            if (handles[handle.id] === handle) handles.remove(handle.id)
+            prioritizeLocked()
+            grantLocked()
+        }
+    }
+
+    /** Gives the registered downloads their priorities by queue position */
+    private fun prioritizeLocked() {
+        val levels = DownloadPriority.entries
+        handles.values.forEachIndexed { position, handle ->
+            handle.priority = levels[minOf(position, levels.lastIndex)]
+        }
+    }
+
+    /**
+     * Connections currently available to all downloads together
+     */
+    fun currentConnectionBudget(): Int =
+        if (isGameSessionActive()) minOf(connectionBudget, gameplayConnectionBudget) else connectionBudget
+
+    /**
+     * Current rate limit in bytes per second, 0 when unlimited
+     */
+    fun currentBandwidthLimit(): Long {
+        val limit = bandwidthLimit()
+        if (!isGameSessionActive()) return limit
+        val gameplayLimit = gameplayBandwidthLimit()
+        return when {
+            limit <= 0L -> gameplayLimit
+            gameplayLimit <= 0L -> limit
+            else -> minOf(limit, gameplayLimit)
+        }
+    }
+
+    /**
+     * Runs [block] while holding one of the shared connection slots, waiting for a slot first
+     */
+    suspend fun <T> withConnection(handle: Handle, block: suspend () -> T): T {
+        acquireConnection(handle)
+        try {
+            return block()
+        } finally {
+            releaseConnection()
+        }
+    }
+
+    private suspend fun acquireConnection(handle: Handle) {
+        val waiter = synchronized(lock) {
+            if (waiters.isEmpty() && activeConnections < currentConnectionBudget()) {
+                activeConnections++
+                null
+            } else {
+                Waiter(handle, nextSeq++).also { waiters += it }
+            }
+        }
+        if (waiter == null) return
+
+        try {
+            waiter.granted.await()
+        } catch (e: CancellationException) {
+            val wasGranted = synchronized(lock) { !waiters.remove(waiter) }
+            if (wasGranted) releaseConnection()
+            throw e
+        }
+    }
+
+    private fun releaseConnection() {
+        synchronized(lock) {
+            activeConnections--
+            grantLocked()
+        }
+    }
+
+    /** Hands free slots to waiters, highest priority first and FIFO within a priority. */
+    private fun grantLocked() {
+        val budget = currentConnectionBudget()
+        while (activeConnections < budget && waiters.isNotEmpty()) {
+            val next = waiters.minWith(compareBy<Waiter>({ it.handle.priority.ordinal }, { it.seq }))
+            waiters.remove(next)
+            activeConnections++
+            next.granted.complete(Unit)
+        }
+    }
+
+    /**
+     * Accounts [bytes] received by [handle] and suspends until the rate limit allows them
+     */
+    suspend fun acquireBandwidth(handle: Handle, bytes: Long) {
+        val waitMs = reserveBandwidth(handle, bytes)
+        if (waitMs > 0) delay(waitMs)
+    }
+
+    /**
+     * Takes tokens for [bytes] and returns how long the caller has to wait for them, in ms.
+     * The bucket may go into debt, so concurrent callers queue up behind each other's bytes.
+     */
+    internal fun reserveBandwidth(handle: Handle, bytes: Long): Long {
+        val rate = currentBandwidthLimit()
+        if (rate <= 0L) return 0L
+
+        val nowMs = clock()
+        val costMs = bytes * 1000.0 / rate
+        val level = handle.priority.ordinal
+        return synchronized(lock) {
+            for (lower in level until paidUntilMs.size) {
+                paidUntilMs[lower] = maxOf(paidUntilMs[lower], nowMs.toDouble()) + costMs
+            }
+            // A full bucket holds BURST_SECONDS worth of bytes, so only debt beyond that waits
+            val waitMs = paidUntilMs[level] - nowMs - BURST_SECONDS * 1000.0
+            if (waitMs > 0) ceil(waitMs).toLong() else 0L
+        }
+    }
+}
@@ -24,6 +24,11 @@ object DownloadService {
             field = value
         }
 
+    /**
+     * [name] inside the app's cache dir, or null before [populateDownloadService] has run
+     */
+    fun cacheSubdir(name: String): File? = baseCacheDirPath.takeIf { it.isNotEmpty() }?.let { File(it, name) }
+
     fun populateDownloadService(context: Context) {
         baseDataDirPath = context.dataDir.path
         baseCacheDirPath = context.cacheDir.path
@@ -60,9 +65,9 @@ object DownloadService {
         return subDir.toMutableList()
     }
 
-    fun getSizeFromStoreDisplay (appId: Int): String {
+    suspend fun getSizeFromStoreDisplay (appId: Int): String {
         // How big is the game? The store should know. Human readable.
-        val depots = SteamService.getDownloadableDepots(appId)
+        val depots = SteamService.findDownloadableDepots(appId)
         val installBytes = depots.values.sumOf { it.manifests["public"]?.size ?: 0L }
         return StorageUtils.formatBinarySize(installBytes)
     }
@@ -0,0 +1,59 @@
+package app.gamenative.service
+
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Fetches per-game details for a store library with a bounded number of requests in flight,
+ * handing finished games to the database in batches so the library fills in while the rest
+ * is still loading. Used by the Epic and GOG library refreshes.
+ */
+internal object LibraryDetailRefresher {
+
+    // OkHttp's dispatcher runs at most 5 async calls per host, more would only queue there
+    const val DEFAULT_CONCURRENCY = 5
+
+    const val DEFAULT_BATCH_SIZE = 10
+
+    /**
+     * Calls [fetch] for every key, at most [concurrency] at a time, and passes the non-null results
+     * to [upsert] in batches of [batchSize], in completion order. [upsert] calls never overlap.
+     *
+     * @return the number of results passed to [upsert]
+     */
+    suspend fun <K, T : Any> refresh(
+        keys: List<K>,
+        concurrency: Int = DEFAULT_CONCURRENCY,
+        batchSize: Int = DEFAULT_BATCH_SIZE,
+        fetch: suspend (K) -> T?,
+        upsert: suspend (List<T>) -> Unit,
+    ): Int = coroutineScope {
+        val results = Channel<T>(Channel.UNLIMITED)
+        val permits = Semaphore(concurrency)
+
+        launch {
+            coroutineScope {
+                for (key in keys) {
+                    launch { permits.withPermit { fetch(key) }?.let { results.send(it) } }
+                }
+            }
+            results.close()
+        }
+
+        var count = 0
+        val batch = ArrayList<T>(batchSize)
+        for (result in results) {
+            batch += result
+            count++
+            if (batch.size >= batchSize) {
+                upsert(batch.toList())
+                batch.clear()
+            }
+        }
+        if (batch.isNotEmpty()) upsert(batch.toList())
+        count
+    }
+}
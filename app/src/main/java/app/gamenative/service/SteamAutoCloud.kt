@@ -12,13 +12,13 @@ import app.gamenative.enums.SaveLocation
 import app.gamenative.enums.SyncResult
 import app.gamenative.service.SteamService.Companion.FileChanges
 import app.gamenative.service.SteamService.Companion.getAppDirPath
+import app.gamenative.utils.FileHashCache
 import app.gamenative.utils.FileUtils
 import app.gamenative.utils.SteamUtils
 import `in`.dragonbra.javasteam.enums.EResult
 import `in`.dragonbra.javasteam.steam.handlers.steamcloud.AppFileChangeList
 import `in`.dragonbra.javasteam.steam.handlers.steamcloud.AppFileInfo
 import `in`.dragonbra.javasteam.steam.handlers.steamcloud.SteamCloud
-import `in`.dragonbra.javasteam.util.crypto.CryptoHelper
 import java.io.FileOutputStream
 import java.io.InputStream
 import java.io.RandomAccessFile
@@ -52,6 +52,8 @@ object SteamAutoCloud {
 
     private const val MAX_USER_FILE_RETRIES = 3
 
+    private const val HASH_CACHE_DIR = "save_hashes"
+
     private fun findPlaceholderWithin(aString: String): Sequence<MatchResult> =
         Regex("%\\w+%").findAll(aString)
 
@@ -212,10 +214,13 @@ object SteamAutoCloud {
                 }
             }
 
-        val getLocalUserFilesAsPrefixMap: () -> Map<String, List<UserFileInfo>> = {
+        // Save files unchanged since the last sync keep their SHA-1 without being read again
+        val hashCache = FileHashCache(DownloadService.cacheSubdir("$HASH_CACHE_DIR/${appInfo.id}"), "SHA-1")
+
+        val getLocalUserFilesAsPrefixMap: suspend () -> Map<String, List<UserFileInfo>> = {
             val savePatterns = appInfo.ufs.saveFilePatterns.filter { userFile -> userFile.root.isWindows }
 
-            if (savePatterns.isNotEmpty()) {
+            val localFiles = if (savePatterns.isNotEmpty()) {
                 val result = mutableMapOf<String, MutableList<UserFileInfo>>()
 
                 savePatterns.forEach { userFile ->
@@ -223,19 +228,18 @@ object SteamAutoCloud {
 
                     Timber.i("Looking for saves in $basePath with pattern ${userFile.pattern} (prefix ${userFile.prefix})")
 
-                    val files = FileUtils.findFilesRecursive(
+                    val paths = FileUtils.findFilesRecursive(
                         rootPath = basePath,
                         pattern = userFile.pattern,
                         maxDepth = 5,
-                    ).map {
-                        val sha = CryptoHelper.shaHash(Files.readAllBytes(it))
-
+                    ).collect(Collectors.toList())
+                    val files = paths.zip(hashCache.hashAll(paths)) { it, sha ->
                         Timber.i("Found ${it.pathString}\n\tin ${userFile.prefix}\n\twith sha [${sha.joinToString(", ")}]")
 
                         val relativePath = basePath.relativize(it).pathString
 
                         UserFileInfo(userFile.root, userFile.substitutedPath, relativePath, Files.getLastModifiedTime(it).toMillis(), sha)
-                    }.collect(Collectors.toList())
+                    }
 
                     Timber.i("Found ${files.size} file(s) in $basePath for pattern ${userFile.pattern}")
 
@@ -251,25 +255,27 @@ object SteamAutoCloud {
 
                 Timber.i("No UFS patterns; scanning $basePath recursively (depth 5) under ${rootType.name}")
 
-                val files = FileUtils.findFilesRecursive(
+                val paths = FileUtils.findFilesRecursive(
                     rootPath = basePath,
                     pattern = "*",
                     maxDepth = 5,
-                ).map {
-                    val sha = CryptoHelper.shaHash(Files.readAllBytes(it))
-
+                ).collect(Collectors.toList())
+                val files = paths.zip(hashCache.hashAll(paths)) { it, sha ->
                     val relativePath = basePath.relativize(it).pathString
 
                     Timber.i("Found ${it.pathString}\n\tin %${rootType.name}%\n\twith sha [${sha.joinToString(", ")}]")
 
                     // Store relative path in filename; empty path component
                     UserFileInfo(rootType, "", relativePath, Files.getLastModifiedTime(it).toMillis(), sha)
-                }.collect(Collectors.toList())
+                }
 
                 Timber.i("Found ${files.size} file(s) in $basePath for fallback recursive scan")
 
                 mapOf(Paths.get("%${rootType.name}%").pathString to files)
             }
+
+            hashCache.save()
+            localFiles
         }
 
         val fileChangeListToUserFiles: (AppFileChangeList) -> List<UserFileInfo> = { appFileListChange ->
@@ -0,0 +1,142 @@
+package app.gamenative.service
+
+import androidx.room.InvalidationTracker
+import app.gamenative.data.AppInfo
+import app.gamenative.data.DownloadingAppInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamLicense
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.service.SteamService.Companion.INVALID_PKG_ID
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.withContext
+
+/**
+ * Read-through cache of the Steam rows the UI asks for over and over: app info, its license,
+ * install and download state, and DLC lists.
+ *
+ * Hits return without suspending. Misses query Room on [Dispatchers.IO], so callers never do disk
+ * I/O on their own thread. SteamService reports its own writes to install and download state as it
+ * makes them, so they're visible straight away. Anything else, like PICS syncs, is picked up by a
+ * Room invalidation observer, which drops the cached rows of a table some time after it's written.
+ */
+@Singleton
+class SteamDataCache @Inject constructor(
+    private val db: PluviaDatabase,
+) {
+    companion object {
+        private const val MAX_ROWS = 256
+    }
+
+    /** A cached lookup; [value] is null when the row doesn't exist. */
+    class Hit<T>(val value: T?)
+
+    /**
+     * One kind of cached row, by app id. Loads that started before an invalidation aren't stored,
+     * so a slow query can't put back a row the write just replaced. Rows recorded ahead of their
+     * write are kept through invalidations until the write is reported.
+     */
+    private class Rows<T> {
+        private var generation = 0L
+        private val rows = object : LinkedHashMap<Int, Hit<T>>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, Hit<T>>?) = size > MAX_ROWS
+        }
+        private val pending = HashMap<Int, Hit<T>>()
+
+        fun peek(appId: Int): Hit<T>? = synchronized(this) { rows[appId] }
+
+        suspend fun get(appId: Int, load: suspend () -> T?): T? {
+            val gen = synchronized(this) {
+                rows[appId]?.let { return it.value }
+                generation
+            }
+            val value = withContext(Dispatchers.IO) { load() }
+            synchronized(this) {
+                if (gen == generation) rows[appId] = Hit(value)
+            }
+            return value
+        }
+
+        fun put(appId: Int, value: T?, ahead: Boolean = false) = synchronized(this) {
+            generation++
+            val hit = Hit(value)
+            rows[appId] = hit
+            if (ahead) pending[appId] = hit else pending.remove(appId)
+        }
+
+        fun clear() = synchronized(this) {
+            generation++
+            rows.clear()
+            rows.putAll(pending)
+        }
+    }
+
+    private val apps = Rows<SteamApp>()
+    private val licenses = Rows<SteamLicense>()
+    private val installedApps = Rows<AppInfo>()
+    private val downloadingApps = Rows<DownloadingAppInfo>()
+    private val downloadableDlc = Rows<List<SteamApp>>()
+    private val hiddenDlc = Rows<List<SteamApp>>()
+
+    private val observer = object : InvalidationTracker.Observer(
+        arrayOf("steam_app", "steam_license", "license_app", "app_info", "downloading_app_info"),
+    ) {
+        override fun onInvalidated(tables: Set<String>) {
+            if ("steam_app" in tables) apps.clear()
+            if ("steam_app" in tables || "steam_license" in tables) licenses.clear()
+            if ("steam_app" in tables || "steam_license" in tables || "license_app" in tables) {
+                downloadableDlc.clear()
+                hiddenDlc.clear()
+            }
+            if ("app_info" in tables) installedApps.clear()
+            if ("downloading_app_info" in tables) downloadingApps.clear()
+        }
+    }
+
+    init {
+        db.invalidationTracker.addObserver(observer)
+    }
+
+    fun peekApp(appId: Int): Hit<SteamApp>? = apps.peek(appId)
+
+    suspend fun app(appId: Int): SteamApp? = apps.get(appId) { db.steamAppDao().findApp(appId) }
+
+    /** The license of the package [appId] belongs to */
+    suspend fun license(appId: Int): SteamLicense? = licenses.get(appId) {
+        db.steamLicenseDao().findLicense(app(appId)?.packageId ?: INVALID_PKG_ID)
+    }
+
+    suspend fun installedApp(appId: Int): AppInfo? = installedApps.get(appId) { db.appInfoDao().getInstalledApp(appId) }
+
+    suspend fun downloadingApp(appId: Int): DownloadingAppInfo? =
+        downloadingApps.get(appId) { db.downloadingAppInfoDao().getDownloadingApp(appId) }
+
+    suspend fun downloadableDlcApps(appId: Int): List<SteamApp> =
+        downloadableDlc.get(appId) { db.steamAppDao().findDownloadableDLCApps(appId) }.orEmpty()
+
+    suspend fun hiddenDlcApps(appId: Int): List<SteamApp> =
+        hiddenDlc.get(appId) { db.steamAppDao().findHiddenDLCApps(appId) }.orEmpty()
+
+    /**
+     * Records a download-state change before it is written, so readers see it straight away; it
+     * stands until [downloadingAppWritten] reports the write
+     */
+    fun setDownloadingApp(appId: Int, info: DownloadingAppInfo?) = downloadingApps.put(appId, info, ahead = true)
+
+    /** Records that [appId]'s download state was written as [info], or deleted if null */
+    fun downloadingAppWritten(appId: Int, info: DownloadingAppInfo?) = downloadingApps.put(appId, info)
+
+    /** Records that [appId]'s install state was written as [info], or deleted if null */
+    fun installedAppWritten(appId: Int, info: AppInfo?) = installedApps.put(appId, info)
+
+    /** Drops every cached row, e.g. after the tables were emptied */
+    fun clear() {
+        listOf(apps, licenses, installedApps, downloadingApps, downloadableDlc, hiddenDlc).forEach { it.clear() }
+    }
+
+    /** The app's row now and after every change to it */
+    fun observeApp(appId: Int): Flow<SteamApp?> = db.steamAppDao().observeApp(appId).distinctUntilChanged()
+}
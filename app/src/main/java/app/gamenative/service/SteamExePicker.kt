@@ -0,0 +1,139 @@
+package app.gamenative.service
+
+import app.gamenative.data.ExeCandidate
+
+/**
+ * Picks the real shipped EXE of a Steam app from its depot manifests.
+ *
+ * ❶ try the dev-supplied launch entry (skip obvious stubs)
+ * ❷ else score all manifest-flagged EXEs and keep the best
+ * If nothing qualifies there is no pick and callers fall back to the app's launch config.
+ */
+internal object SteamExePicker {
+
+    /** A file listed in a depot manifest */
+    data class ManifestFile(
+        val path: String,
+        val size: Long,
+        val exeFlag: Boolean,
+    )
+
+    /** The files of one depot, with the depot's size */
+    data class DepotFiles(
+        val depotSize: Long,
+        val files: List<ManifestFile>,
+    )
+
+    data class Pick(
+        /** Path of the picked file with forward slashes, or null */
+        val executable: String?,
+        val candidates: List<ExeCandidate>,
+    )
+
+    /* -------------------------------------------------------------------------- */
+    /* 1. Extra patterns & word lists                                             */
+    /* -------------------------------------------------------------------------- */
+
+    // Unreal Engine "Shipping" binaries (e.g. Stray-Win64-Shipping.exe)
+    private val UE_SHIPPING = Regex(
+        """.*-win(32|64)(-shipping)?\.exe$""",
+        RegexOption.IGNORE_CASE,
+    )
+
+    // UE folder hint …/Binaries/Win32|64/…
+    private val UE_BINARIES = Regex(
+        """.*/binaries/win(32|64)/.*\.exe$""",
+        RegexOption.IGNORE_CASE,
+    )
+
+    // Tools / crash-dumpers to push down
+    private val NEGATIVE_KEYWORDS = listOf(
+        "crash", "handler", "viewer", "compiler", "tool",
+        "setup", "unins", "eac", "launcher", "steam",
+    )
+
+    // Names that are never the game itself
+    private val STUB_KEYWORDS = listOf("launcher", "steam", "crash", "handler", "setup", "unins", "eac")
+
+    /* generic short-name detector: one letter + digits, ≤4 chars  */
+    private val GENERIC_NAME = Regex("^[a-z]\\d{1,3}\\.exe$", RegexOption.IGNORE_CASE)
+
+    private val NON_LETTERS = Regex("[^a-z]")
+
+    /* strip digits & punctuation, compare first 5 letters */
+    private fun fuzzyMatch(a: String, b: String): Boolean {
+        val cleanA = a.replace(NON_LETTERS, "")
+        val cleanB = b.replace(NON_LETTERS, "")
+        return cleanA.take(5) == cleanB.take(5)
+    }
+
+    /* -------------------------------------------------------------------------- */
+    /* 2. Heuristic score                                                         */
+    /* -------------------------------------------------------------------------- */
+
+    fun score(file: ManifestFile, gameName: String): Int {
+        var s = 0
+        val path = file.path.lowercase()
+
+        // 1️⃣ UE shipping or binaries folder bonus
+        if (UE_SHIPPING.matches(path)) s += 300
+        if (UE_BINARIES.containsMatchIn(path)) s += 250
+
+        // 2️⃣ root-folder exe bonus
+        if (!path.contains('/')) s += 200
+
+        // 3️⃣ filename contains the game / installDir
+        if (path.contains(gameName) || fuzzyMatch(path, gameName)) s += 100
+
+        // 4️⃣ obvious tool / crash-dumper penalty
+        if (NEGATIVE_KEYWORDS.any { it in path }) s -= 150
+        if (GENERIC_NAME.matches(file.path)) s -= 200
+
+        // 5️⃣ Executable | CustomExecutable flag
+        if (file.exeFlag) s += 50
+
+        return s
+    }
+
+    fun isStub(file: ManifestFile): Boolean {
+        val n = file.path.lowercase()
+        return GENERIC_NAME.matches(n) || STUB_KEYWORDS.any { it in n } || file.size < 1_000_000
+    }
+
+    /**
+     * Picks the launch executable from [depots], in manifest order. [launchTargets] are the
+     * lower-cased executables of the app's launch config and [installDir] its install folder name.
+     */
+    fun pick(depots: List<DepotFiles>, launchTargets: Set<String>, installDir: String): Pick {
+        val gameName = installDir.lowercase()
+        var launchEntry: ManifestFile? = null
+        val candidates = mutableListOf<ExeCandidate>()
+
+        for (depot in depots) {
+            for (file in depot.files) {
+                val stub = isStub(file)
+                if (launchEntry == null && !stub && file.path.lowercase() in launchTargets) {
+                    launchEntry = file
+                }
+                if (file.exeFlag || file.path.endsWith(".exe", true)) {
+                    candidates += ExeCandidate(
+                        path = file.path,
+                        size = file.size,
+                        depotSize = depot.depotSize,
+                        exeFlag = file.exeFlag,
+                        stub = stub,
+                        score = score(file, gameName),
+                    )
+                }
+            }
+        }
+
+        /* 1️⃣ exact launch entry that isn't a stub */
+        launchEntry?.let { return Pick(it.path.replace('\\', '/'), candidates) }
+
+        /* 2️⃣ best score, bigger file on ties; stubs only when there is nothing else */
+        val pool = candidates.filterNot { it.stub }.ifEmpty { candidates }
+        val best = pool.maxWithOrNull(compareBy<ExeCandidate> { it.score }.thenBy { it.size })
+        return Pick(best?.path?.replace('\\', '/'), candidates)
+    }
+}
@@ -39,6 +39,9 @@ import app.gamenative.enums.SaveLocation
 import app.gamenative.enums.SyncResult
 import app.gamenative.events.AndroidEvent
 import app.gamenative.events.SteamEvent
+import app.gamenative.utils.GameCompatibilityCache
+import app.gamenative.utils.GameCompatibilityService
+import app.gamenative.utils.InstallFileIndex
 import app.gamenative.utils.Net
 import app.gamenative.utils.SteamUtils
 import app.gamenative.utils.MarkerUtils
@@ -89,7 +92,6 @@ import `in`.dragonbra.javasteam.steam.steamclient.callbackmgr.CallbackManager
 import `in`.dragonbra.javasteam.steam.steamclient.callbacks.ConnectedCallback
 import `in`.dragonbra.javasteam.steam.steamclient.callbacks.DisconnectedCallback
 import `in`.dragonbra.javasteam.steam.steamclient.configuration.SteamConfiguration
-import `in`.dragonbra.javasteam.types.FileData
 import `in`.dragonbra.javasteam.types.KeyValue
 import `in`.dragonbra.javasteam.types.PublishedFileID
 import `in`.dragonbra.javasteam.types.SteamID
@@ -117,8 +119,10 @@ import kotlinx.coroutines.async
 import kotlinx.coroutines.channels.BufferOverflow
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.buffer
 import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.receiveAsFlow
 import kotlinx.coroutines.future.await
 import kotlinx.coroutines.isActive
@@ -129,6 +133,7 @@ import kotlinx.coroutines.withTimeout
 import timber.log.Timber
 import java.lang.NullPointerException
 import app.gamenative.data.AppInfo
+import app.gamenative.data.InstalledExe
 import app.gamenative.db.dao.AppInfoDao
 import kotlinx.coroutines.ensureActive
 import app.gamenative.utils.LicenseSerializer
@@ -151,6 +156,7 @@ import android.util.Base64
 import app.gamenative.data.DownloadingAppInfo
 import app.gamenative.db.dao.DownloadingAppInfoDao
 import app.gamenative.db.dao.EncryptedAppTicketDao
+import app.gamenative.db.dao.InstalledExeDao
 import kotlinx.coroutines.flow.update
 import java.io.InputStream
 import java.io.OutputStream
@@ -200,6 +206,18 @@ class SteamService : Service(), IChallengeUrlChanged {
     @Inject
     lateinit var downloadingAppInfoDao: DownloadingAppInfoDao
 
+    @Inject
+    lateinit var installedExeDao: InstalledExeDao
+
+    @Inject
+    lateinit var dataCache: SteamDataCache
+
+    @Inject
+    lateinit var downloadGovernor: DownloadGovernor
+
+    @Inject
+    lateinit var compatibilityCache: GameCompatibilityCache
+
     private lateinit var notificationHelper: NotificationHelper
 
     internal var callbackManager: CallbackManager? = null
@@ -275,6 +293,7 @@ class SteamService : Service(), IChallengeUrlChanged {
         const val INVALID_APP_ID: Int = Int.MAX_VALUE
         const val INVALID_PKG_ID: Int = Int.MAX_VALUE
         private const val STEAM_CONTROLLER_CONFIG_FILENAME = "steam_controller_config.vdf"
+        private const val THROTTLE_STEP_MS = 250L
 
         /**
          * Default timeout to use when making requests
@@ -460,6 +479,16 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
         }
 
+        /**
+         * Cached compatibility report for [gameName] on [gpuName], if one hasn't expired
+         */
+        suspend fun getCachedCompatibility(
+            gameName: String,
+            gpuName: String,
+        ): GameCompatibilityService.GameCompatibilityResponse? = withContext(Dispatchers.IO) {
+            instance?.compatibilityCache?.getCached(gameName, gpuName)
+        }
+
         /**
          * Get licenses from database for use with DepotDownloader
          */
@@ -470,33 +499,52 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
         }
 
-        fun getPkgInfoOf(appId: Int): SteamLicense? {
-            return runBlocking(Dispatchers.IO) {
-                instance?.licenseDao?.findLicense(
-                    instance?.appDao?.findApp(appId)?.packageId ?: INVALID_PKG_ID,
-                )
-            }
-        }
+        /* Suspending reads, served from SteamDataCache; misses query Room on the IO dispatcher */
+
+        suspend fun findPkgInfo(appId: Int): SteamLicense? = instance?.dataCache?.license(appId)
+
+        suspend fun findAppInfo(appId: Int): SteamApp? = instance?.dataCache?.app(appId)
+
+        suspend fun findDownloadingAppInfo(appId: Int): DownloadingAppInfo? =
+            instance?.dataCache?.downloadingApp(appId)
+
+        suspend fun findDownloadableDlcApps(appId: Int): List<SteamApp> =
+            instance?.dataCache?.downloadableDlcApps(appId).orEmpty()
+
+        suspend fun findHiddenDlcApps(appId: Int): List<SteamApp> =
+            instance?.dataCache?.hiddenDlcApps(appId).orEmpty()
+
+        suspend fun findInstalledApp(appId: Int): AppInfo? = instance?.dataCache?.installedApp(appId)
+
+        /**
+         * The app's info now and after every change to it
+         */
+        fun observeAppInfo(appId: Int): Flow<SteamApp?> = instance?.dataCache?.observeApp(appId) ?: flowOf(null)
+
+        /**
+         * The app's info if it is cached, without touching the database
+         */
+        fun getCachedAppInfoOf(appId: Int): SteamApp? = instance?.dataCache?.peekApp(appId)?.value
+
+        /*
+         * Blocking variants for code that can't suspend. They return at once on a cache hit and
+         * only wait for the database on a miss; prefer the suspending ones above.
+         */
+
+        fun getPkgInfoOf(appId: Int): SteamLicense? = runBlocking { findPkgInfo(appId) }
 
         fun getAppInfoOf(appId: Int): SteamApp? {
-            return runBlocking(Dispatchers.IO) { instance?.appDao?.findApp(appId) }
+            getCachedAppInfoOf(appId)?.let { return it }
+            return runBlocking { findAppInfo(appId) }
         }
 
-        fun getDownloadingAppInfoOf(appId: Int): DownloadingAppInfo? {
-            return runBlocking(Dispatchers.IO) { instance?.downloadingAppInfoDao?.getDownloadingApp(appId) }
-        }
+        fun getDownloadingAppInfoOf(appId: Int): DownloadingAppInfo? = runBlocking { findDownloadingAppInfo(appId) }
 
-        fun getDownloadableDlcAppsOf(appId: Int): List<SteamApp>? {
-            return runBlocking(Dispatchers.IO) { instance?.appDao?.findDownloadableDLCApps(appId) }
-        }
+        fun getDownloadableDlcAppsOf(appId: Int): List<SteamApp>? = runBlocking { findDownloadableDlcApps(appId) }
 
-        fun getHiddenDlcAppsOf(appId: Int): List<SteamApp>? {
-            return runBlocking(Dispatchers.IO) { instance?.appDao?.findHiddenDLCApps(appId) }
-        }
+        fun getHiddenDlcAppsOf(appId: Int): List<SteamApp>? = runBlocking { findHiddenDlcApps(appId) }
 
-        fun getInstalledApp(appId: Int): AppInfo? {
-            return runBlocking(Dispatchers.IO) { instance?.appInfoDao?.getInstalledApp(appId) }
-        }
+        fun getInstalledApp(appId: Int): AppInfo? = runBlocking { findInstalledApp(appId) }
 
         fun getInstalledDepotsOf(appId: Int): List<Int>? {
             return getInstalledApp(appId)?.downloadedDepots
@@ -515,7 +563,11 @@ class SteamService : Service(), IChallengeUrlChanged {
         }
 
         fun getAppDlc(appId: Int): Map<Int, DepotInfo> {
-            return getAppInfoOf(appId)?.let {
+            return getAppDlc(getAppInfoOf(appId))
+        }
+
+        private fun getAppDlc(appInfo: SteamApp?): Map<Int, DepotInfo> {
+            return appInfo?.let {
                 it.depots.filter { it.value.dlcAppId != INVALID_APP_ID }
             }.orEmpty()
         }
@@ -526,13 +578,13 @@ class SteamService : Service(), IChallengeUrlChanged {
             val ownedGameIds = getOwnedGames(userSteamId!!.convertToUInt64()).map { it.appId }.toHashSet()
 
 
-            return getAppDlc(appId).filter { (_, depot) ->
+            return getAppDlc(findAppInfo(appId)).filter { (_, depot) ->
                 when {
                     /* Base-game depots always download */
                     depot.dlcAppId == INVALID_APP_ID -> true
 
                     /* ① licence cache */
-                    instance?.licenseDao?.findLicense(depot.dlcAppId) != null -> true
+                    instance?.licenseDao?.hasLicenseForApp(depot.dlcAppId) == true -> true
 
                     /* ② PICS row */
                     instance?.appDao?.findApp(depot.dlcAppId) != null -> true
@@ -640,9 +692,9 @@ class SteamService : Service(), IChallengeUrlChanged {
             return true
         }
 
-        fun getMainAppDepots(appId: Int): Map<Int, DepotInfo> {
-            val appInfo = getAppInfoOf(appId) ?: return emptyMap()
-            val ownedDlc = runBlocking { getOwnedAppDlc(appId) }
+        suspend fun findMainAppDepots(appId: Int): Map<Int, DepotInfo> {
+            val appInfo = findAppInfo(appId) ?: return emptyMap()
+            val ownedDlc = getOwnedAppDlc(appId)
             val preferredLanguage = PrefManager.containerLanguage
 
             // If the game ships any 64-bit depot, prefer those and ignore x86 ones
@@ -659,9 +711,9 @@ class SteamService : Service(), IChallengeUrlChanged {
          * Get downloadable depots for a given app, including all DLCs
          * @return Map of app ID to depot ID to depot info
          */
-        fun getDownloadableDepots(appId: Int): Map<Int, DepotInfo> {
-            val appInfo = getAppInfoOf(appId) ?: return emptyMap()
-            val ownedDlc = runBlocking { getOwnedAppDlc(appId) }
+        suspend fun findDownloadableDepots(appId: Int): Map<Int, DepotInfo> {
+            val appInfo = findAppInfo(appId) ?: return emptyMap()
+            val ownedDlc = getOwnedAppDlc(appId)
             val preferredLanguage = PrefManager.containerLanguage
 
             // If the game ships any 64-bit depot, prefer those and ignore x86 ones
@@ -675,7 +727,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                 .associate { it.toPair() }
                 .toMutableMap()
 
-            val indirectDlcApps = getDownloadableDlcAppsOf(appId).orEmpty()
+            val indirectDlcApps = findDownloadableDlcApps(appId)
             indirectDlcApps.forEach { dlcApp ->
                 dlcApp.depots
                     .asSequence()
@@ -703,6 +755,12 @@ class SteamService : Service(), IChallengeUrlChanged {
             return map
         }
 
+        /**
+         * Blocking [findDownloadableDepots] for the container setup steps, which run on the launch
+         * thread and can't suspend. Owned DLC may come from the network, so never call this on the UI.
+         */
+        fun getDownloadableDepots(appId: Int): Map<Int, DepotInfo> = runBlocking { findDownloadableDepots(appId) }
+
         fun getAppDirName(app: SteamApp?): String {
             // The folder name, if it got made
             var appName = app?.config?.installDir.orEmpty()
@@ -750,233 +808,137 @@ class SteamService : Service(), IChallengeUrlChanged {
             else -> false
         }
 
-        /* -------------------------------------------------------------------------- */
-        /* 1. Extra patterns & word lists                                             */
-        /* -------------------------------------------------------------------------- */
-
-        // Unreal Engine "Shipping" binaries (e.g. Stray-Win64-Shipping.exe)
-        private val UE_SHIPPING = Regex(
-            """.*-win(32|64)(-shipping)?\.exe$""",
-            RegexOption.IGNORE_CASE,
-        )
-
-        // UE folder hint …/Binaries/Win32|64/…
-        private val UE_BINARIES = Regex(
-            """.*/binaries/win(32|64)/.*\.exe$""",
-            RegexOption.IGNORE_CASE,
-        )
-
-        // Tools / crash-dumpers to push down
-        private val NEGATIVE_KEYWORDS = listOf(
-            "crash", "handler", "viewer", "compiler", "tool",
-            "setup", "unins", "eac", "launcher", "steam",
-        )
-
-        /* add near-name helper */
-        private fun fuzzyMatch(a: String, b: String): Boolean {
-            /* strip digits & punctuation, compare first 5 letters */
-            val cleanA = a.replace(Regex("[^a-z]"), "")
-            val cleanB = b.replace(Regex("[^a-z]"), "")
-            return cleanA.take(5) == cleanB.take(5)
-        }
-
-        /* add generic short-name detector: one letter + digits, ≤4 chars  */
-        private val GENERIC_NAME = Regex("^[a-z]\\d{1,3}\\.exe$", RegexOption.IGNORE_CASE)
-
-        /* -------------------------------------------------------------------------- */
-        /* 2. Heuristic score (same signature!)                                       */
-        /* -------------------------------------------------------------------------- */
-
-        private fun scoreExe(
-            file: FileData,
-            gameName: String,
-            hasExeFlag: Boolean,
-        ): Int {
-            var s = 0
-            val path = file.fileName.lowercase()
-
-            // 1️⃣ UE shipping or binaries folder bonus
-            if (UE_SHIPPING.matches(path)) s += 300
-            if (UE_BINARIES.containsMatchIn(path)) s += 250
-
-            // 2️⃣ root-folder exe bonus
-            if (!path.contains('/')) s += 200
-
-            // 3️⃣ filename contains the game / installDir
-            if (path.contains(gameName) || fuzzyMatch(path, gameName)) s += 100
-
-            // 4️⃣ obvious tool / crash-dumper penalty
-            if (NEGATIVE_KEYWORDS.any { it in path }) s -= 150
-            if (GENERIC_NAME.matches(file.fileName)) s -= 200   // ← new
-
-            // 5️⃣ Executable | CustomExecutable flag
-            if (hasExeFlag) s += 50
-
-            Timber.i("Score for $path: $s")
-
-            return s
-        }
-
-        fun FileData.isStub(): Boolean {
-            /* stub detector (same short rules) */
-            val generic = Regex("^[a-z]\\d{1,3}\\.exe$", RegexOption.IGNORE_CASE)
-            val bad = listOf("launcher", "steam", "crash", "handler", "setup", "unins", "eac")
-            val n = fileName.lowercase()
-            val stub = generic.matches(n) || bad.any { it in n } || totalSize < 1_000_000
-            if (stub) Timber.d("Stub filtered: $fileName  size=$totalSize")
-            return stub
+        private fun exeDepots(appInfo: SteamApp): List<DepotInfo> = appInfo.depots.values.filter { d ->
+            !d.sharedInstall && (d.osList.isEmpty() ||
+                    d.osList.any { it.name.equals("windows", true) || it.name.equals("none", true) })
         }
 
-        /** select the primary binary */
-        fun choosePrimaryExe(
-            files: List<FileData>?,
-            gameName: String,
-        ): FileData? = files?.maxWithOrNull { a, b ->
-            val sa = scoreExe(a, gameName, isExecutable(a.flags))   // <- fixed
-            val sb = scoreExe(b, gameName, isExecutable(b.flags))
-
-            when {
-                sa != sb -> sa - sb                                 // higher score wins
-                else -> (a.totalSize - b.totalSize).toInt()     // tie-break on size
-            }
-        }
+        /** Which depot manifests an exe pick is made from; the pick is redone when this changes. */
+        private fun exeManifestKey(depots: List<DepotInfo>): String = depots
+            .mapNotNull { depot -> depot.manifests["public"]?.let { "${depot.depotId}:${it.gid}" } }
+            .sorted()
+            .joinToString(",")
 
         /**
-         * Picks the real shipped EXE for a Steam app.
-         *
-         * ❶ try the dev-supplied launch entry (skip obvious stubs)
-         * ❷ else score all manifest-flagged EXEs and keep the best
-         * ❸ else fall back to the largest flagged EXE in the biggest depot
-         * If everything fails, return the game's install directory.
+         * Picks the launch executable of an installed app from its downloaded depot manifests (see
+         * [SteamExePicker]) and stores the pick, so later lookups don't load the manifests again.
+         * Returns the picked path, or empty when nothing qualified.
          */
-        fun getInstalledExe(appId: Int): String {
-            val appInfo = getAppInfoOf(appId) ?: return ""
-
+        suspend fun indexInstalledExe(appId: Int): String = withContext(Dispatchers.IO) {
+            val appInfo = instance?.appDao?.findApp(appId) ?: return@withContext ""
             val installDir = appInfo.config.installDir.ifEmpty { appInfo.name }
-
-            val depots = appInfo.depots.values.filter { d ->
-                !d.sharedInstall && (d.osList.isEmpty() ||
-                        d.osList.any { it.name.equals("windows", true) || it.name.equals("none", true) })
+            val depots = exeDepots(appInfo)
+            val launchTargets = appInfo.config.launch.map { it.executable.lowercase() }.toSet()
+            val manifestDir = "${getAppDirPath(appId)}/.DepotDownloader"
+
+            var missingManifest = false
+            val depotFiles = depots.mapNotNull { depot ->
+                val mi = depot.manifests["public"] ?: return@mapNotNull null
+                val man = DepotManifest.loadFromFile("$manifestDir/${depot.depotId}_${mi.gid}.manifest")
+                if (man == null) {
+                    missingManifest = true
+                    return@mapNotNull null
+                }
+                SteamExePicker.DepotFiles(
+                    depotSize = mi.size,
+                    files = man.files.map { SteamExePicker.ManifestFile(it.fileName, it.totalSize, isExecutable(it.flags)) },
+                )
             }
-            Timber.i("Depots considered: $depots")
 
-            /* launch targets (lower-case) */
-            val launchTargets = appInfo.config.launch
-                .mapNotNull { it.executable.lowercase() }.toSet() ?: emptySet()
+            val pick = SteamExePicker.pick(depotFiles, launchTargets, installDir)
+            Timber.i("Picked ${pick.executable} for $appId out of ${pick.candidates.size} candidates")
 
-            Timber.i("Launch targets from appinfo: $launchTargets")
-
-            /* ---------------------------------------------------------- */
-            val flagged = mutableListOf<Pair<FileData, Long>>()   // (file, depotSize)
-            var largestDepotSize = 0L
-
-            // Use DepotDownloader to fetch manifests
-            val steamClient = instance?.steamClient
-            val licenses = runBlocking { getLicensesFromDb() }
-            if (steamClient == null || licenses.isEmpty()) {
-                Timber.w("Cannot fetch manifests: steamClient or licenses not available")
-                // Fallback to last resort
-                return (getAppInfoOf(appId)?.let { appInfo ->
-                    getWindowsLaunchInfos(appId).firstOrNull()
-                })?.executable ?: ""
+            // Only keep picks made from every manifest, a later verify may bring the missing ones
+            if (!missingManifest) {
+                instance?.installedExeDao?.insert(
+                    InstalledExe(
+                        appId = appId,
+                        manifestKey = exeManifestKey(depots),
+                        executable = pick.executable.orEmpty(),
+                        candidates = pick.candidates,
+                    ),
+                )
             }
+            pick.executable.orEmpty()
+        }
 
-            for (depot in depots) {
-                val mi = depot.manifests["public"] ?: continue
-                if (mi.size > largestDepotSize) largestDepotSize = mi.size
-
-                // Check cache first
-                val man = DepotManifest.loadFromFile("${getAppDirPath(appId)}/.DepotDownloader/${depot.depotId}_${mi.gid}.manifest")
-
-                Timber.d("Using manifest for depot ${depot.depotId}  size=${mi.size}")
-
-                /* 1️⃣ exact launch entry that isn't a stub */
-                man?.files?.firstOrNull { f ->
-                    f.fileName.lowercase() in launchTargets && !f.isStub()
-                }?.let {
-                    Timber.i("Picked via launch entry: ${it.fileName}")
-                    return it.fileName.replace('\\', '/').toString()
+        /**
+         * The executable to launch for a Steam app, relative to its install dir. Comes from the
+         * stored pick while the app's manifests are unchanged, else the pick is made again on the
+         * IO dispatcher. Falls back to the first Windows launch entry when the manifests have no
+         * candidate.
+         */
+        suspend fun findInstalledExe(appId: Int): String {
+            val appInfo = findAppInfo(appId) ?: return ""
+            val manifestKey = exeManifestKey(exeDepots(appInfo))
+
+            val executable = withContext(Dispatchers.IO) {
+                val indexed = instance?.installedExeDao?.find(appId)
+                if (indexed != null && indexed.manifestKey == manifestKey) {
+                    indexed.executable
+                } else {
+                    indexInstalledExe(appId)
                 }
-
-                /* collect for later */
-                man?.files?.filter { isExecutable(it.flags) || it.fileName.endsWith(".exe", true) }
-                    ?.forEach { flagged += it to mi.size }
             }
+            if (executable.isNotEmpty()) return executable
 
-            Timber.i("Flagged executable candidates: ${flagged.map { it.first.fileName }}")
-
-            /* 2️⃣ scorer (unchanged) */
-            choosePrimaryExe(
-                flagged
-                    .map { it.first }
-                    .let { pool ->
-                        val noStubs = pool.filterNot { it.isStub() }
-                        if (noStubs.isNotEmpty()) noStubs else pool
-                    },
-                installDir.lowercase(),
-            )?.let {
-                Timber.i("Picked via scorer: ${it.fileName}")
-                return it.fileName.replace('\\', '/')
-            }
-
-            /* 3️⃣ fallback: biggest exe from the biggest depot */
-            flagged
-                .filter { it.second == largestDepotSize }
-                .maxByOrNull { it.first.totalSize }
-                ?.let {
-                    Timber.i("Picked via largest-depot fallback: ${it.first.fileName}")
-                    return it.first.fileName.replace('\\', '/').toString()
-                }
-
-            /* 4️⃣ last resort */
-            Timber.w("No executable found; falling back to install dir")
-            return (getAppInfoOf(appId)?.let { appInfo ->
-                getWindowsLaunchInfos(appId).firstOrNull()
-            })?.executable ?: ""
+            Timber.w("No executable found; falling back to launch config")
+            return getWindowsLaunchInfos(appId).firstOrNull()?.executable ?: ""
         }
 
+        /**
+         * Blocking [findInstalledExe], for code already on a worker thread like the wine setup;
+         * a pick that has to be made again can take a while
+         */
+        fun getInstalledExe(appId: Int): String = runBlocking { findInstalledExe(appId) }
+
         fun deleteApp(appId: Int): Boolean {
             // Remove any download-complete marker
             MarkerUtils.removeMarker(getAppDirPath(appId), Marker.DOWNLOAD_COMPLETE_MARKER)
             // Remove from DB
             with(instance!!) {
                 scope.launch {
-                    db.withTransaction {
+                    val dlcAppIds = db.withTransaction {
                         appInfoDao.deleteApp(appId)
                         changeNumbersDao.deleteByAppId(appId)
                         fileChangeListsDao.deleteByAppId(appId)
                         downloadingAppInfoDao.deleteApp(appId)
+                        installedExeDao.delete(appId)
 
-                        val indirectDlcAppIds = getDownloadableDlcAppsOf(appId).orEmpty().map { it.id }
+                        val indirectDlcAppIds = appDao.findDownloadableDLCApps(appId).orEmpty().map { it.id }
                         indirectDlcAppIds.forEach { dlcAppId ->
                             appInfoDao.deleteApp(dlcAppId)
                             changeNumbersDao.deleteByAppId(dlcAppId)
                             fileChangeListsDao.deleteByAppId(dlcAppId)
                         }
+                        indirectDlcAppIds
                     }
+                    (dlcAppIds + appId).forEach { dataCache.installedAppWritten(it, null) }
+                    dataCache.downloadingAppWritten(appId, null)
                 }
             }
 
             val appDirPath = getAppDirPath(appId)
+            InstallFileIndex.remove(File(appDirPath))
 
             return File(appDirPath).deleteRecursively()
         }
 
-        fun downloadApp(appId: Int): DownloadInfo? {
+        suspend fun downloadApp(appId: Int): DownloadInfo? {
             val currentDownloadInfo = downloadJobs[appId]
             if (currentDownloadInfo != null) {
                 return downloadApp(appId, currentDownloadInfo.downloadingAppIds, isUpdateOrVerify = false)
             } else {
                 // If downloading app info exists
-                val downloadingAppInfo = getDownloadingAppInfoOf(appId)
+                val downloadingAppInfo = findDownloadingAppInfo(appId)
                 if (downloadingAppInfo != null) {
                     return downloadApp(appId, downloadingAppInfo.dlcAppIds.orEmpty(), isUpdateOrVerify = false)
                 } else {
                     // Otherwise it is verifying files
-                    val dlcAppIds = getInstalledDlcDepotsOf(appId).orEmpty().toMutableList()
+                    val dlcAppIds = findInstalledApp(appId)?.dlcDepots.orEmpty().toMutableList()
 
-                    getDownloadableDlcAppsOf(appId)?.forEach { dlcApp ->
-                        val installedDlcApp = getInstalledApp(dlcApp.id)
+                    findDownloadableDlcApps(appId).forEach { dlcApp ->
+                        val installedDlcApp = findInstalledApp(dlcApp.id)
                         if (installedDlcApp != null) {
                             dlcAppIds.add(installedDlcApp.id)
                         }
@@ -987,14 +949,14 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
         }
 
-        fun downloadApp(appId: Int, dlcAppIds: List<Int>, isUpdateOrVerify: Boolean): DownloadInfo? {
+        suspend fun downloadApp(appId: Int, dlcAppIds: List<Int>, isUpdateOrVerify: Boolean): DownloadInfo? {
             // Enforce Wi-Fi-only downloads
             if (PrefManager.downloadOnWifiOnly && instance?.isWifiConnected == false) {
                 instance?.notificationHelper?.notify("Not connected to Wi‑Fi/LAN")
                 return null
             }
-            return getAppInfoOf(appId)?.let { appInfo ->
-                val depots = getDownloadableDepots(appId)
+            return findAppInfo(appId)?.let { appInfo ->
+                val depots = findDownloadableDepots(appId)
                 downloadApp(appId, depots, dlcAppIds, "public", isUpdateOrVerify)
             }
         }
@@ -1315,7 +1277,7 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
         }
 
-        fun downloadApp(
+        suspend fun downloadApp(
             appId: Int,
             downloadableDepots: Map<Int, DepotInfo>,
             userSelectedDlcAppIds: List<Int>,
@@ -1333,10 +1295,10 @@ class SteamService : Service(), IChallengeUrlChanged {
             Timber.d("depots is empty? " + downloadableDepots.isEmpty())
             if (downloadableDepots.isEmpty()) return null
 
-            val indirectDlcAppIds = getDownloadableDlcAppsOf(appId).orEmpty().map { it.id }
+            val indirectDlcAppIds = findDownloadableDlcApps(appId).map { it.id }
 
             // Depots from Main game
-            val mainDepots = getMainAppDepots(appId)
+            val mainDepots = findMainAppDepots(appId)
             var mainAppDepots = mainDepots.filter { (_, depot) ->
                 depot.dlcAppId == INVALID_APP_ID
             } + mainDepots.filter { (_, depot) ->
@@ -1350,7 +1312,7 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
 
             // Remove depots that are already downloaded (not for update/verify)
-            val appInfo = getInstalledApp(appId)
+            val appInfo = findInstalledApp(appId)
             if (appInfo != null && !isUpdateOrVerify) {
                 mainAppDepots = mainAppDepots.filter { it.key !in appInfo.downloadedDepots }
             }
@@ -1396,15 +1358,9 @@ class SteamService : Service(), IChallengeUrlChanged {
             Timber.i("DLC contains ${dlcAppDepots.size} depot(s): ${dlcAppDepots.keys}")
             Timber.i("downloadingAppIds: $downloadingAppIds")
 
-            // Save downloading app info
-            runBlocking {
-                instance?.downloadingAppInfoDao?.insert(
-                    DownloadingAppInfo(
-                        appId,
-                        dlcAppIds = userSelectedDlcAppIds
-                    ),
-                )
-            }
+            // Save downloading app info; readers see it at once, the row is written by the download job
+            val downloadingAppInfo = DownloadingAppInfo(appId, dlcAppIds = userSelectedDlcAppIds)
+            instance?.dataCache?.setDownloadingApp(appId, downloadingAppInfo)
 
             val info = DownloadInfo(selectedDepots.size, appId, downloadingAppIds).also { di ->
                 di.setPersistencePath(appDirPath)
@@ -1428,8 +1384,13 @@ class SteamService : Service(), IChallengeUrlChanged {
                     Timber.i("Resumed download: initialized with $persistedBytes bytes")
                 }
 
+                val downloadGovernor = instance!!.downloadGovernor
                 val downloadJob = instance!!.scope.launch {
+                    val governorHandle = downloadGovernor.register("steam:$appId")
                     try {
+                        instance?.downloadingAppInfoDao?.insert(downloadingAppInfo)
+                        instance?.dataCache?.downloadingAppWritten(appId, downloadingAppInfo)
+
                         // Get licenses from database
                         val licenses = getLicensesFromDb()
                         if (licenses.isEmpty()) {
@@ -1463,7 +1424,11 @@ class SteamService : Service(), IChallengeUrlChanged {
                         }
 
                         val cpuCores = Runtime.getRuntime().availableProcessors()
-                        val maxDownloads = (cpuCores * downloadRatio).toInt().coerceAtLeast(1)
+                        // DepotDownloader runs its own HTTP, so the shared connection budget can only cap its
+                        // workers here; the rate limit is paid per chunk in AppDownloadListener
+                        val maxDownloads = (cpuCores * downloadRatio).toInt()
+                            .coerceAtMost(downloadGovernor.currentConnectionBudget())
+                            .coerceAtLeast(1)
                         val maxDecompress = (cpuCores * decompressRatio).toInt().coerceAtLeast(1)
 
                         Timber.i("CPU Cores: $cpuCores")
@@ -1484,7 +1449,7 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                         // Create listeners for DLC apps
                         val depotIdToIndex = selectedDepots.keys.mapIndexed { index, depotId -> depotId to index }.toMap()
-                        val listener = AppDownloadListener(di, depotIdToIndex)
+                        val listener = AppDownloadListener(di, depotIdToIndex, governorHandle)
                         depotDownloader.addListener(listener)
 
                         if (mainAppDepots.isNotEmpty()) {
@@ -1516,7 +1481,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                             depotDownloader.add(dlcAppItem)
                         }
 
-                        val appConfig = getAppInfoOf(appId)?.config
+                        val appConfig = findAppInfo(appId)?.config
                         if (appConfig?.steamControllerTemplateIndex == 1) {
                             val controllerConfig = appConfig.steamControllerConfigDetails
                                 .let { selectSteamControllerConfig(it) }
@@ -1679,9 +1644,9 @@ class SteamService : Service(), IChallengeUrlChanged {
                         removeDownloadJob(appId)
 
                         // Remove the downloading app info
-                        runBlocking {
-                            instance?.downloadingAppInfoDao?.deleteApp(appId)
-                        }
+                        instance?.dataCache?.setDownloadingApp(appId, null)
+                        instance?.downloadingAppInfoDao?.deleteApp(appId)
+                        instance?.dataCache?.downloadingAppWritten(appId, null)
                     } catch (e: Exception) {
                         Timber.e(e, "Download failed for app $appId")
                         di.persistProgressSnapshot()
@@ -1691,6 +1656,8 @@ class SteamService : Service(), IChallengeUrlChanged {
                             di.setProgress(1f, idx)
                         }
                         removeDownloadJob(appId)
+                    } finally {
+                        governorHandle.close()
                     }
                 }
                 downloadJob.invokeOnCompletion { throwable ->
@@ -1724,23 +1691,23 @@ class SteamService : Service(), IChallengeUrlChanged {
                 val updatedDownloadedDepots = (appInfo.downloadedDepots + entitledDepotIds).distinct()
                 val updatedDlcDepots = (appInfo.dlcDepots + selectedDlcAppIds).distinct()
 
-                instance?.appInfoDao?.update(
-                    AppInfo(
-                        downloadingAppId,
-                        isDownloaded = true,
-                        downloadedDepots = updatedDownloadedDepots.sorted(),
-                        dlcDepots = updatedDlcDepots.sorted(),
-                    ),
+                val updated = AppInfo(
+                    downloadingAppId,
+                    isDownloaded = true,
+                    downloadedDepots = updatedDownloadedDepots.sorted(),
+                    dlcDepots = updatedDlcDepots.sorted(),
                 )
+                instance?.appInfoDao?.update(updated)
+                instance?.dataCache?.installedAppWritten(downloadingAppId, updated)
             } else {
-                instance?.appInfoDao?.insert(
-                    AppInfo(
-                        downloadingAppId,
-                        isDownloaded = true,
-                        downloadedDepots = entitledDepotIds.sorted(),
-                        dlcDepots = selectedDlcAppIds.sorted(),
-                    ),
+                val inserted = AppInfo(
+                    downloadingAppId,
+                    isDownloaded = true,
+                    downloadedDepots = entitledDepotIds.sorted(),
+                    dlcDepots = selectedDlcAppIds.sorted(),
                 )
+                instance?.appInfoDao?.insert(inserted)
+                instance?.dataCache?.installedAppWritten(downloadingAppId, inserted)
             }
 
             // Remove completed appId from downloadInfo.dlcAppIds
@@ -1753,7 +1720,11 @@ class SteamService : Service(), IChallengeUrlChanged {
                     MarkerUtils.addMarker(appDirPath, Marker.DOWNLOAD_COMPLETE_MARKER)
                     MarkerUtils.removeMarker(appDirPath, Marker.STEAM_DLL_REPLACED)
                     MarkerUtils.removeMarker(appDirPath, Marker.STEAM_COLDCLIENT_USED)
+                    // Index the install now so the first launch doesn't walk it
+                    InstallFileIndex.of(appDirPath, statFiles = true)
                 }
+                // Pick the launch exe now, while nobody waits on it
+                indexInstalledExe(downloadInfo.gameId)
                 PluviaApp.events.emit(AndroidEvent.LibraryInstallStatusChanged(downloadInfo.gameId))
 
                 // Clear persisted bytes file on successful completion
@@ -1767,10 +1738,34 @@ class SteamService : Service(), IChallengeUrlChanged {
         private class AppDownloadListener(
             private val downloadInfo: DownloadInfo,
             private val depotIdToIndex: Map<Int, Int>,
+            private val governorHandle: DownloadGovernor.Handle,
         ) : IDownloadListener {
             // Track cumulative uncompressed bytes per depot to calculate deltas
             // (uncompressedBytes from onChunkCompleted is cumulative per depot)
             private val depotCumulativeUncompressedBytes = mutableMapOf<Int, Long>()
+            // Same for the compressed bytes that actually came over the network
+            private val depotCumulativeCompressedBytes = ConcurrentHashMap<Int, Long>()
+
+            /**
+             * Pays the shared rate limit for the network bytes of [depotId] reported so far.
+             * DepotDownloader calls back from the worker that fetched the chunk, so sleeping here
+             * holds that worker back the way the suspending governor calls do for Epic and GOG.
+             */
+            private fun throttle(depotId: Int, compressedBytes: Long) {
+                var deltaBytes = 0L
+                depotCumulativeCompressedBytes.compute(depotId) { _, previous ->
+                    deltaBytes = compressedBytes - (previous ?: 0L)
+                    maxOf(previous ?: 0L, compressedBytes)
+                }
+                if (deltaBytes <= 0L) return
+                var waitMs = governorHandle.reserveTransfer(deltaBytes)
+                while (waitMs > 0 && downloadInfo.isActive()) {
+                    val step = minOf(waitMs, THROTTLE_STEP_MS)
+                    Thread.sleep(step)
+                    waitMs -= step
+                }
+            }
+
             override fun onItemAdded(item: DownloadItem) {
                 Timber.d("Item ${item.appId} added to queue")
             }
@@ -1788,8 +1783,12 @@ class SteamService : Service(), IChallengeUrlChanged {
                 downloadInfo.failedToDownload()
 
                 // Remove the downloading app info
-                runBlocking {
-                    instance?.downloadingAppInfoDao?.deleteApp(downloadInfo.gameId)
+                instance?.let { service ->
+                    service.dataCache.setDownloadingApp(downloadInfo.gameId, null)
+                    service.scope.launch {
+                        service.downloadingAppInfoDao.deleteApp(downloadInfo.gameId)
+                        service.dataCache.downloadingAppWritten(downloadInfo.gameId, null)
+                    }
                 }
 
                 removeDownloadJob(downloadInfo.gameId)
@@ -1833,6 +1832,8 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                 // Persist progress snapshot
                 downloadInfo.persistProgressSnapshot()
+
+                throttle(depotId, compressedBytes)
             }
 
             override fun onDepotCompleted(depotId: Int, compressedBytes: Long, uncompressedBytes: Long) {
@@ -1853,6 +1854,8 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                 // Persist progress snapshot
                 downloadInfo.persistProgressSnapshot()
+
+                throttle(depotId, compressedBytes)
             }
         }
 
@@ -1870,8 +1873,8 @@ class SteamService : Service(), IChallengeUrlChanged {
             instance?.let { steamInstance ->
                 if (isConnected) {
                     val gamesPlayed = gameProcesses.mapNotNull { gameProcess ->
-                        getAppInfoOf(gameProcess.appId)?.let { appInfo ->
-                            getPkgInfoOf(gameProcess.appId)?.let { pkgInfo ->
+                        findAppInfo(gameProcess.appId)?.let { appInfo ->
+                            findPkgInfo(gameProcess.appId)?.let { pkgInfo ->
                                 appInfo.branches[gameProcess.branch]?.let { branch ->
                                     val processId = gameProcess.processes
                                         .firstOrNull { it.parentIsSteam }
@@ -1947,7 +1950,7 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                 PrefManager.clientId?.let { clientId ->
                     instance?.let { steamInstance ->
-                        getAppInfoOf(appId)?.let { appInfo ->
+                        findAppInfo(appId)?.let { appInfo ->
                             steamInstance._steamCloud?.let { steamCloud ->
                                 val postSyncInfo = SteamAutoCloud.syncUserFiles(
                                     appInfo = appInfo,
@@ -2021,7 +2024,7 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                 PrefManager.clientId?.let { clientId ->
                     instance?.let { steamInstance ->
-                        getAppInfoOf(appId)?.let { appInfo ->
+                        findAppInfo(appId)?.let { appInfo ->
                             steamInstance._steamCloud?.let { steamCloud ->
                                 val postSyncInfo = SteamAutoCloud.syncUserFiles(
                                     appInfo = appInfo,
@@ -2063,7 +2066,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                 try {
                     PrefManager.clientId?.let { clientId ->
                         instance?.let { steamInstance ->
-                            getAppInfoOf(appId)?.let { appInfo ->
+                            findAppInfo(appId)?.let { appInfo ->
                                 steamInstance._steamCloud?.let { steamCloud ->
                                     val postSyncInfo = SteamAutoCloud.syncUserFiles(
                                         appInfo = appInfo,
@@ -2382,6 +2385,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                         encryptedAppTicketDao.deleteAll()
                         downloadingAppInfoDao.deleteAll()
                     }
+                    dataCache.clear()
                 }
             }
         }
@@ -2436,10 +2440,10 @@ class SteamService : Service(), IChallengeUrlChanged {
                 ?: return@withContext false          // nothing returned ⇒ treat as up-to-date
 
             val remoteSteamApp = remoteAppInfo.keyValues.generateSteamApp()
-            val localSteamApp = getAppInfoOf(appId) ?: return@withContext true // not cached yet
+            val localSteamApp = findAppInfo(appId) ?: return@withContext true // not cached yet
 
             // ── 2. Compare manifest IDs of the depots we actually install.
-            getDownloadableDepots(appId).keys.any { depotId ->
+            findDownloadableDepots(appId).keys.any { depotId ->
                 val remoteManifest = remoteSteamApp.depots[depotId]?.manifests?.get(branch)
                 val localManifest = localSteamApp.depots[depotId]?.manifests?.get(branch)
                 // If remote manifest is null, skip this depot (hack for Castle Crashers)
@@ -3119,10 +3123,12 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                 // Process any app changes
                 launch {
-                    changesSince.appChanges.values
+                    val appChanges = changesSince.appChanges.values
+                    val knownApps = appDao.findChangeNumbers(appChanges.map { it.id })
+                    appChanges
                         .filter { changeData ->
                             // only queue PICS requests for apps existing in the db that have changed
-                            val app = appDao.findApp(changeData.id) ?: return@filter false
+                            val app = knownApps[changeData.id] ?: return@filter false
                             changeData.changeNumber != app.lastChangeNumber
                         }
                         .map { PICSRequest(id = it.id) }
@@ -3136,10 +3142,12 @@ class SteamService : Service(), IChallengeUrlChanged {
 
                 // Process any package changes
                 launch {
-                    val pkgsWithChanges = changesSince.packageChanges.values
+                    val packageChanges = changesSince.packageChanges.values
+                    val knownPkgs = licenseDao.findChangeNumbers(packageChanges.map { it.id })
+                    val pkgsWithChanges = packageChanges
                         .filter { changeData ->
                             // only queue PICS requests for pkgs existing in the db that have changed
-                            val pkg = licenseDao.findLicense(changeData.id) ?: return@filter false
+                            val pkg = knownPkgs[changeData.id] ?: return@filter false
                             changeData.changeNumber != pkg.lastChangeNumber
                         }
 
@@ -3197,10 +3205,15 @@ class SteamService : Service(), IChallengeUrlChanged {
                         )
 
                         ensureActive()
+                        // Look up change numbers and owning licenses for the whole result at once
+                        val appsFromDb = appDao.findChangeNumbers(picsCallback.apps.keys)
+                        val packagesFromDb = licenseDao.findOwnership(
+                            appsFromDb.values.map { it.packageId }.filter { it != INVALID_PKG_ID },
+                        )
                         val steamAppsMap = picsCallback.apps.values.mapNotNull { app ->
-                            val appFromDb = appDao.findApp(app.id)
+                            val appFromDb = appsFromDb[app.id]
                             val packageId = appFromDb?.packageId ?: INVALID_PKG_ID
-                            val packageFromDb = if (packageId != INVALID_PKG_ID) licenseDao.findLicense(packageId) else null
+                            val packageFromDb = if (packageId != INVALID_PKG_ID) packagesFromDb[packageId] else null
                             val ownerAccountId = packageFromDb?.ownerAccountId ?: emptyList()
 
                             // Apps with -1 for the ownerAccountId should be added.
@@ -3261,15 +3274,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                                 licenseDao.updateDepots(pkg.id, depotIds)
 
                                 // Insert a stub row (or update) of SteamApps to the database.
-                                appIds.forEach { appid ->
-                                    val steamApp = appDao.findApp(appid)?.copy(packageId = pkg.id)
-                                    if (steamApp != null) {
-                                        appDao.update(steamApp)
-                                    } else {
-                                        val stubSteamApp = SteamApp(id = appid, packageId = pkg.id)
-                                        appDao.insert(stubSteamApp)
-                                    }
-                                }
+                                appDao.assignPackage(pkg.id, appIds)
 
                                 queue.addAll(appIds)
                             }
@@ -0,0 +1,101 @@
+package app.gamenative.service.epic
+
+import android.content.Context
+import app.gamenative.service.epic.manifest.ChunkReusePlan
+import app.gamenative.service.epic.manifest.ChunkReusePlanner
+import app.gamenative.service.epic.manifest.CompactManifest
+import app.gamenative.service.epic.manifest.InstalledChunkSource
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+import timber.log.Timber
+
+/**
+ * Cross-install chunk index for Epic games.
+ *
+ * Keeps the manifest of every completed Epic install (base games and DLC) so a new download can
+ * copy chunks it shares with titles already on disk instead of fetching them again. Manifests are
+ * stored under the app's files dir next to the install path they belong to, and the index is
+ * updated one title at a time as games are installed and uninstalled.
+ */
+@Singleton
+class EpicChunkIndex @Inject constructor(
+    @ApplicationContext context: Context,
+) {
+    private val manifestDir = File(context.filesDir, "epic/installed_manifests")
+    private val sources = ConcurrentHashMap<String, InstalledChunkSource>()
+
+    @Volatile
+    private var loaded = false
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        synchronized(this) {
+            if (loaded) return
+            manifestDir.listFiles { file -> file.extension == MANIFEST_EXT }?.forEach { manifestFile ->
+                val appName = manifestFile.nameWithoutExtension
+                val pathFile = File(manifestDir, "$appName.$PATH_EXT")
+                try {
+                    val installDir = File(pathFile.readText())
+                    if (!installDir.isDirectory) {
+                        Timber.tag("Epic").d("Dropping chunk index entry for $appName: install dir is gone")
+                        manifestFile.delete()
+                        pathFile.delete()
+                        return@forEach
+                    }
+                    sources[appName] = InstalledChunkSource(installDir, CompactManifest.readAll(manifestFile.readBytes()))
+                } catch (e: Exception) {
+                    Timber.tag("Epic").w(e, "Failed to load installed manifest for $appName")
+                }
+            }
+            loaded = true
+            Timber.tag("Epic").d("Loaded chunk index for ${sources.size} installed title(s)")
+        }
+    }
+
+    /**
+     * Records a completed install so later downloads can reuse its chunks
+     */
+    fun onInstalled(appName: String, installPath: String, manifestBytes: ByteArray) {
+        ensureLoaded()
+        try {
+            manifestDir.mkdirs()
+            File(manifestDir, "$appName.$MANIFEST_EXT").writeBytes(manifestBytes)
+            File(manifestDir, "$appName.$PATH_EXT").writeText(installPath)
+            sources[appName] = InstalledChunkSource(File(installPath), CompactManifest.readAll(manifestBytes))
+        } catch (e: Exception) {
+            Timber.tag("Epic").w(e, "Failed to index installed manifest for $appName")
+        }
+    }
+
+    /**
+     * Drops every title installed under [installPath] (the base game and its DLC share it)
+     */
+    fun onUninstalled(installPath: String) {
+        ensureLoaded()
+        val installDir = File(installPath)
+        sources.entries.removeIf { (appName, source) ->
+            val matches = source.installDir == installDir
+            if (matches) {
+                File(manifestDir, "$appName.$MANIFEST_EXT").delete()
+                File(manifestDir, "$appName.$PATH_EXT").delete()
+            }
+            matches
+        }
+    }
+
+    /**
+     * Plans which chunks of [manifest] can be copied from installed titles
+     */
+    fun plan(manifest: CompactManifest): ChunkReusePlan {
+        ensureLoaded()
+        return ChunkReusePlanner.plan(manifest, sources.values.toList())
+    }
+
+    companion object {
+        private const val MANIFEST_EXT = "manifest"
+        private const val PATH_EXT = "path"
+    }
+}
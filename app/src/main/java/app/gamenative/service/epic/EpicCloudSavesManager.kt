@@ -367,7 +367,7 @@ object EpicCloudSavesManager {
             val cloudSaves = cloudSavesResult.getOrNull()!!
             val (manifestPath, manifestInfo) = findLatestManifest(cloudSaves.files) ?: run {
                 Timber.tag("Epic").w("[Cloud Saves] No manifest in cloud, uploading all local files")
-                return@withContext uploadSaves(context, accountId, game)
+                return@withContext uploadSaves(context, accountId, game, knownChunks = emptyMap())
             }
 
             // 3. Download and parse manifest to get cloud file list with timestamps
@@ -382,7 +382,7 @@ object EpicCloudSavesManager {
             // Validate manifest is not empty
             if (manifestBytes.isEmpty()) {
                 Timber.tag("Epic").w("[Cloud Saves] Cloud manifest is empty, uploading all local files")
-                return@withContext uploadSaves(context, accountId, game)
+                return@withContext uploadSaves(context, accountId, game, knownChunks = emptyMap())
             }
 
             val manifest = try {
@@ -391,7 +391,7 @@ object EpicCloudSavesManager {
                 Timber.tag("Epic").e(e, "[Cloud Saves] Failed to parse manifest (size: ${manifestBytes.size} bytes)")
                 // If manifest is corrupt, upload our local version
                 Timber.tag("Epic").w("[Cloud Saves] Manifest parse failed, uploading local files")
-                return@withContext uploadSaves(context, accountId, game)
+                return@withContext uploadSaves(context, accountId, game, knownChunks = emptyMap())
             }
 
             // Build map of cloud files with their modification times
@@ -519,7 +519,7 @@ object EpicCloudSavesManager {
             if (toUpload.isNotEmpty()) {
                 Timber.tag("Epic").i("[Cloud Saves] Uploading ${toUpload.size} files based on timestamp comparison")
                 // ! Upload ALL local files, to ensure the manifest is correct with save-state
-                uploadSuccess = uploadSaves(context, accountId, game)
+                uploadSuccess = uploadSaves(context, accountId, game, knownChunks = cloudChunks(cloudSaves, manifest))
             }
 
             // 7. Update sync timestamp if both operations succeeded
@@ -695,6 +695,7 @@ object EpicCloudSavesManager {
         accountId: String,
         game: EpicGame,
         fileList: List<String>? = null, // Optional: only upload specific files
+        knownChunks: Map<String, app.gamenative.service.epic.manifest.ChunkInfo>? = null, // Chunks already in the cloud, by SHA-1
     ): Boolean = withContext(Dispatchers.IO) {
         try {
             Timber.tag("Epic").i("[Cloud Saves] Starting upload for ${game.id}")
@@ -710,102 +711,125 @@ object EpicCloudSavesManager {
                 return@withContext false
             }
 
-            // 2. Package save files into chunks and manifest
+            val credentialsResult = EpicAuthManager.getStoredCredentials(context)
+            if (credentialsResult.isFailure) {
+                Timber.tag("Epic").e("[Cloud Saves] Not logged in to Epic")
+                return@withContext false
+            }
+            val credentials = credentialsResult.getOrNull()!!
+
+            // 2. Pack save files into chunks, uploading each chunk as soon as it's full
             if (fileList != null) {
                 Timber.tag("Epic").i("[Cloud Saves] Packaging ${fileList.size} specific files from: ${saveDir.absolutePath}")
             } else {
                 Timber.tag("Epic").i("[Cloud Saves] Packaging all save files from: ${saveDir.absolutePath}")
             }
-            val packagedFiles = packageSaveFiles(saveDir, game, accountId, fileList)
-            if (packagedFiles.isEmpty()) {
-                Timber.tag("Epic").e("[Cloud Saves] Failed to package save files")
+            val files = saveFilesToPackage(saveDir, fileList)
+            if (files.isEmpty()) {
+                Timber.tag("Epic").w("[Cloud Saves] No files found to package")
                 return@withContext false
             }
 
-            // Filter out empty files (just log them, don't fail the upload)
-            val emptyFiles = packagedFiles.filter { it.value.isEmpty() }
-            if (emptyFiles.isNotEmpty()) {
-                Timber.tag("Epic").w("[Cloud Saves] Skipping ${emptyFiles.size} empty packaged files: ${emptyFiles.keys.joinToString()}")
+            val writeLinks: suspend (List<String>) -> Map<String, String> = { fileNames ->
+                requestWriteLinks(credentials.accountId, credentials.accessToken, game.appName, fileNames)
             }
-
-            // Only upload non-empty files
-            val nonEmptyFiles = packagedFiles.filterValues { it.isNotEmpty() }
-            if (nonEmptyFiles.isEmpty()) {
-                Timber.tag("Epic").e("[Cloud Saves] No valid files to upload after filtering empty files")
+            val packer = EpicSavePacker(
+                writeLinks = writeLinks,
+                upload = ::uploadFile,
+                knownChunks = knownChunks ?: cloudChunks(context, game.appName),
+            )
+            val packed = packer.pack(saveDir, files)
+            if (packed.files.isEmpty()) {
+                Timber.tag("Epic").e("[Cloud Saves] No valid files to upload after skipping empty files")
                 return@withContext false
             }
+            Timber.tag("Epic").i(
+                "[Cloud Saves] Packaged ${packed.files.size} files into ${packed.chunks.size} chunks " +
+                    "(${packed.chunksUploaded} uploaded, ${packed.chunksReused} already in the cloud)",
+            )
 
-            // 3. Request write links for all files
-            val fileNames = nonEmptyFiles.keys.toList()
-            val writeLinks = requestWriteLinks(context, game.appName, fileNames)
-            if (writeLinks.isEmpty()) {
-                Timber.tag("Epic").e("[Cloud Saves] Failed to get write links")
+            // 3. Upload manifest last
+            val manifestData = createManifest(game, accountId, packed.chunks, packed.files).serialize()
+            val timestamp = java.time.LocalDateTime.now(java.time.ZoneOffset.UTC)
+            val manifestName = "manifests/${timestamp.format(java.time.format.DateTimeFormatter.ofPattern("yyyy.MM.dd-HH.mm.ss"))}.manifest"
+            val writeLink = writeLinks(listOf(manifestName))[manifestName] ?: run {
+                Timber.tag("Epic").e("[Cloud Saves] Failed to get write link for manifest")
                 return@withContext false
             }
 
-            // 4. Upload chunks
-            var uploadedChunks = 0
-            nonEmptyFiles.forEach { (fileName, fileData) ->
-                if (!fileName.endsWith(".manifest")) {
-                    val writeLink = writeLinks[fileName]
-                    if (writeLink != null) {
-                        Timber.tag("Epic").d("[Cloud Saves] Uploading chunk: $fileName (${fileData.size} bytes)")
-                        val result = uploadFile(writeLink, fileData)
-                        if (result.isSuccess) {
-                            uploadedChunks++
-                            Timber.tag("Epic").i("[Cloud Saves] Uploaded chunk: $fileName (${fileData.size} bytes)")
-                        } else {
-                            Timber.tag("Epic").e("[Cloud Saves] Failed to upload chunk: $fileName - ${result.exceptionOrNull()?.message}")
-                        }
-                    }
-                }
+            Timber.tag("Epic").d("[Cloud Saves] Uploading manifest: $manifestName (${manifestData.size} bytes)")
+            val result = uploadFile(writeLink, manifestData)
+            if (result.isFailure) {
+                Timber.tag("Epic").e("[Cloud Saves] Failed to upload manifest: ${result.exceptionOrNull()?.message}")
+                return@withContext false
             }
+            Timber.tag("Epic").i("[Cloud Saves] Uploaded manifest: $manifestName (${manifestData.size} bytes)")
 
-            // 5. Upload manifest last
-            val manifestEntry = nonEmptyFiles.entries.find { it.key.endsWith(".manifest") }
-            if (manifestEntry != null) {
-                val writeLink = writeLinks[manifestEntry.key]
-                if (writeLink != null) {
-                    Timber.tag("Epic").d("[Cloud Saves] Uploading manifest: ${manifestEntry.key} (${manifestEntry.value.size} bytes)")
-                    val result = uploadFile(writeLink, manifestEntry.value)
-                    if (result.isSuccess) {
-                        Timber.tag("Epic").i("[Cloud Saves] Uploaded manifest: ${manifestEntry.key} (${manifestEntry.value.size} bytes)")
+            // Update sync timestamp
+            setSyncTimestamp(context, game.id, java.time.Instant.now().toString())
 
-                        // Update sync timestamp
-                        val timestamp = java.time.Instant.now().toString()
-                        setSyncTimestamp(context, game.id, timestamp)
+            Timber.tag("Epic").i("[Cloud Saves] Upload complete: ${packed.chunksUploaded} chunks uploaded")
+            true
+        } catch (e: Exception) {
+            Timber.tag("Epic").e(e, "[Cloud Saves] Upload failed")
+            false
+        }
+    }
 
-                        Timber.tag("Epic").i("[Cloud Saves] Upload complete: $uploadedChunks chunks uploaded")
-                        return@withContext true
-                    } else {
-                        Timber.tag("Epic").e("[Cloud Saves] Failed to upload manifest: ${result.exceptionOrNull()?.message}")
-                    }
+    // Save files to package, sorted by name and limited to fileList when given
+    private fun saveFilesToPackage(saveDir: File, fileList: List<String>?): List<File> {
+        val allFiles = saveDir.walkTopDown()
+            .filter { it.isFile }
+            .toList()
+
+        return if (fileList != null) {
+            allFiles.filter { file ->
+                val relativePath = file.relativeTo(saveDir).path.replace("\\", "/")
+                val included = fileList.contains(relativePath)
+                if (included) {
+                    Timber.tag("Epic").d("[Cloud Saves] Including file: $relativePath")
                 }
+                included
             }
+        } else {
+            allFiles
+        }.sortedBy { it.name.lowercase() }
+    }
 
-            false
+    // Chunks of the latest cloud manifest that are still stored, by SHA-1, so uploads can reuse them
+    private suspend fun cloudChunks(context: Context, appName: String): Map<String, app.gamenative.service.epic.manifest.ChunkInfo> {
+        val cloudSaves = listCloudSaves(appName, context).getOrNull() ?: return emptyMap()
+        val (_, manifestInfo) = findLatestManifest(cloudSaves.files) ?: return emptyMap()
+        val manifestBytes = downloadFile(manifestInfo.readLink ?: return emptyMap()).getOrNull() ?: return emptyMap()
+        val manifest = try {
+            EpicManifest.readAll(manifestBytes)
         } catch (e: Exception) {
-            Timber.tag("Epic").e(e, "[Cloud Saves] Upload failed")
-            false
+            Timber.tag("Epic").w(e, "[Cloud Saves] Cloud manifest unreadable, uploading every chunk")
+            return emptyMap()
         }
+        return cloudChunks(cloudSaves, manifest)
+    }
+
+    private fun cloudChunks(
+        cloudSaves: CloudSaveFiles,
+        manifest: EpicManifest,
+    ): Map<String, app.gamenative.service.epic.manifest.ChunkInfo> {
+        val stored = cloudSaves.files.keys.mapNotNullTo(HashSet()) { key ->
+            key.indexOf("Chunks").takeIf { it >= 0 }?.let { key.substring(it) }
+        }
+        val chunks = manifest.chunkDataList?.elements.orEmpty().filter { it.getPath() in stored }
+        return EpicSavePacker.indexBySha(chunks)
     }
 
     // Request write links for files
-    private suspend fun requestWriteLinks(
-        context: Context,
+    internal suspend fun requestWriteLinks(
+        accountId: String,
+        accessToken: String,
         appName: String,
         fileNames: List<String>,
+        baseUrl: String = baseCloudSyncUrl,
     ): Map<String, String> = withContext(Dispatchers.IO) {
         try {
-            val credentialsResult = EpicAuthManager.getStoredCredentials(context)
-            if (credentialsResult.isFailure) {
-                return@withContext emptyMap()
-            }
-
-            val credentials = credentialsResult.getOrNull()!!
-            val accountId = credentials.accountId
-            val accessToken = credentials.accessToken
-
             Timber.tag("Epic").d("[Cloud Saves] Requesting write links for ${fileNames.size} files")
 
             // Log the file names being requested
@@ -822,7 +846,7 @@ object EpicCloudSavesManager {
             Timber.tag("Epic").d("[Cloud Saves] Request body: $requestBody")
 
             val request = Request.Builder()
-                .url("$baseCloudSyncUrl/api/v1/access/egstore/savesync/$accountId/$appName/")
+                .url("$baseUrl/api/v1/access/egstore/savesync/$accountId/$appName/")
                 .header("Authorization", "Bearer $accessToken")
                 .header("Content-Type", "application/json")
                 .post(requestBody.toRequestBody("application/json".toMediaType()))
@@ -874,7 +898,7 @@ object EpicCloudSavesManager {
     }
 
     // Upload a single file
-    private suspend fun uploadFile(writeLink: String, data: ByteArray): Result<Unit> = withContext(Dispatchers.IO) {
+    internal suspend fun uploadFile(writeLink: String, data: ByteArray): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             val request = Request.Builder()
                 .url(writeLink)
@@ -895,228 +919,6 @@ object EpicCloudSavesManager {
         }
     }
 
-    // Package save files into chunks and manifest (similar to Legendary's SaveGameHelper)
-    private fun packageSaveFiles(
-        saveDir: File,
-        game: EpicGame,
-        accountId: String,
-        fileList: List<String>? = null, // Optional: only package specific files
-    ): Map<String, ByteArray> {
-        try {
-            Timber.tag("Epic").i("[Cloud Saves] Packaging files from: ${saveDir.absolutePath}")
-
-            val allFiles = saveDir.walkTopDown()
-                .filter { it.isFile }
-                .toList()
-
-            // Filter to only requested files if fileList is provided
-            val files = if (fileList != null) {
-                allFiles.filter { file ->
-                    val relativePath = file.relativeTo(saveDir).path.replace("\\", "/")
-                    val included = fileList.contains(relativePath)
-                    if (included) {
-                        Timber.tag("Epic").d("[Cloud Saves] Including file: $relativePath")
-                    }
-                    included
-                }
-            } else {
-                allFiles
-            }.sortedBy { it.name.lowercase() }
-
-            if (files.isEmpty()) {
-                Timber.tag("Epic").w("[Cloud Saves] No files found to package")
-                return emptyMap()
-            }
-
-            Timber.tag("Epic").i("[Cloud Saves] Found ${files.size} files to package")
-
-            val packagedFiles = mutableMapOf<String, ByteArray>()
-            val chunks = mutableListOf<app.gamenative.service.epic.manifest.ChunkInfo>()
-            val fileManifests = mutableListOf<app.gamenative.service.epic.manifest.FileManifest>()
-
-            var chunkNum = 0
-            var currentChunkData = mutableListOf<Byte>()
-            val chunkSize = 1024 * 1024 // 1 MB chunks
-
-            // Process each file
-            files.forEach { file ->
-                try {
-                    val relativePath = file.relativeTo(saveDir).path.replace("\\", "/")
-
-                    // Skip empty files
-                    if (file.length() == 0L) {
-                        Timber.tag("Epic").w("[Cloud Saves] Skipping empty file: $relativePath")
-                        return@forEach
-                    }
-
-                    Timber.tag("Epic").d("[Cloud Saves] Processing file: $relativePath (${file.length()} bytes)")
-
-                    val fileManifest = app.gamenative.service.epic.manifest.FileManifest()
-                    fileManifest.filename = relativePath
-                    fileManifest.fileSize = file.length()
-
-                    val fileData = file.readBytes()
-                    val fileHash = java.security.MessageDigest.getInstance("SHA-1").digest(fileData)
-                    fileManifest.hash = fileHash
-
-                    var fileOffset = 0L
-
-                    // Split file into chunk parts
-                    while (fileOffset < fileData.size) {
-                        // Check if we need to finalize current chunk
-                        if (currentChunkData.size >= chunkSize) {
-                            val chunk = finalizeChunk(currentChunkData.toByteArray(), chunkNum++, packagedFiles)
-                            chunks.add(chunk)
-                            currentChunkData.clear()
-                        }
-
-                        // Generate or reuse GUID for current chunk
-                        val guid = if (currentChunkData.isEmpty()) {
-                            generateGuid()
-                        } else {
-                            // Reuse GUID from last chunk part
-                            fileManifest.chunkParts.lastOrNull()?.guid ?: generateGuid()
-                        }
-
-                        val offset = currentChunkData.size
-                        val partFileOffset = fileOffset
-
-                        val remainingInChunk = (chunkSize - currentChunkData.size).coerceAtMost((fileData.size - fileOffset).toInt())
-                        val size = remainingInChunk
-
-                        // Add data to current chunk
-                        currentChunkData.addAll(fileData.sliceArray(fileOffset.toInt() until (fileOffset + remainingInChunk).toInt()).toList())
-
-                        // Create chunk part with all required parameters
-                        val chunkPart = app.gamenative.service.epic.manifest.ChunkPart(
-                            guid = guid,
-                            offset = offset,
-                            size = size,
-                            fileOffset = partFileOffset,
-                        )
-
-                        fileManifest.chunkParts.add(chunkPart)
-                        fileOffset += remainingInChunk
-                    }
-
-                    fileManifests.add(fileManifest)
-                } catch (e: Exception) {
-                    Timber.tag("Epic").e(e, "[Cloud Saves] Failed to process file: ${file.name}")
-                }
-            }
-
-            // Finalize last chunk if it has data
-            if (currentChunkData.isNotEmpty()) {
-                val chunk = finalizeChunk(currentChunkData.toByteArray(), chunkNum++, packagedFiles)
-                chunks.add(chunk)
-            }
-
-            // Create manifest
-            val manifest = createManifest(game, accountId, chunks, fileManifests)
-            val manifestData = manifest.serialize()
-
-            val timestamp = java.time.LocalDateTime.now(java.time.ZoneOffset.UTC)
-            val manifestName = "manifests/${timestamp.format(java.time.format.DateTimeFormatter.ofPattern("yyyy.MM.dd-HH.mm.ss"))}.manifest"
-            packagedFiles[manifestName] = manifestData
-
-            Timber.tag("Epic").i("[Cloud Saves] Packaged ${fileManifests.size} files into ${chunks.size} chunks")
-            return packagedFiles
-        } catch (e: Exception) {
-            Timber.tag("Epic").e(e, "[Cloud Saves] Failed to package save files")
-            return emptyMap()
-        }
-    }
-
-    // Finalize a chunk (compress and store)
-    private fun finalizeChunk(
-        data: ByteArray,
-        chunkNum: Int,
-        packagedFiles: MutableMap<String, ByteArray>,
-    ): app.gamenative.service.epic.manifest.ChunkInfo {
-        // Pad to 1 MB if needed
-        val paddedData = if (data.size < 1024 * 1024) {
-            data + ByteArray(1024 * 1024 - data.size)
-        } else {
-            data
-        }
-
-        // Compress chunk
-        val compressedData = compressChunk(paddedData)
-
-        // Calculate hashes
-        val shaHash = java.security.MessageDigest.getInstance("SHA-1").digest(paddedData)
-        val rollingHash = calculateRollingHash(paddedData)
-
-        // Create chunk info
-        val chunkInfo = app.gamenative.service.epic.manifest.ChunkInfo()
-        chunkInfo.guid = generateGuid()
-        chunkInfo.hash = rollingHash
-        chunkInfo.shaHash = shaHash
-        chunkInfo.windowSize = paddedData.size
-        chunkInfo.fileSize = compressedData.size.toLong()
-
-        // Store chunk data
-        val chunkPath = chunkInfo.getPath()
-        packagedFiles[chunkPath] = compressedData
-
-        Timber.tag("Epic").d("[Cloud Saves] Finalized chunk #$chunkNum: ${chunkInfo.guidStr} (${compressedData.size} bytes)")
-
-        return chunkInfo
-    }
-
-    // Compress chunk data with proper header
-    private fun compressChunk(data: ByteArray): ByteArray {
-        val output = java.io.ByteArrayOutputStream()
-        val buffer = java.nio.ByteBuffer.allocate(1024 * 1024 + 1024).order(java.nio.ByteOrder.LITTLE_ENDIAN)
-
-        // Compress data
-        val compressed = java.io.ByteArrayOutputStream()
-        java.util.zip.DeflaterOutputStream(compressed).use { it.write(data) }
-        val compressedData = compressed.toByteArray()
-
-        // Write header
-        buffer.putInt(0xB1FE3AA2.toInt()) // magic
-        buffer.putInt(3) // version
-        buffer.putInt(0) // header size (calculated later)
-        buffer.putInt(compressedData.size) // compressed size
-
-        val guid = generateGuid()
-        guid.forEach { buffer.putInt(it) }
-
-        val hash = calculateRollingHash(data)
-        buffer.putLong(hash.toLong())
-
-        buffer.put(0x1.toByte()) // stored_as (compressed)
-        buffer.put(0x3.toByte()) // hash_type (both hashes)
-
-        val shaHash = java.security.MessageDigest.getInstance("SHA-1").digest(data)
-        buffer.put(shaHash)
-
-        // Update header size
-        val headerSize = buffer.position()
-        buffer.putInt(8, headerSize)
-
-        // Add compressed data
-        buffer.put(compressedData)
-
-        return buffer.array().copyOf(buffer.position())
-    }
-
-    // Generate a random GUID (4 integers)
-    private fun generateGuid(): IntArray {
-        val random = java.security.SecureRandom()
-        return IntArray(4) { random.nextInt() }
-    }
-
-    // Calculate rolling hash (simplified version)
-    private fun calculateRollingHash(data: ByteArray): ULong {
-        var hash = 0uL
-        data.forEach { byte ->
-            hash = (hash * 31uL + byte.toUByte().toULong()) and 0xFFFFFFFFFFFFFFFFuL
-        }
-        return hash
-    }
-
     // Create manifest
     private fun createManifest(
         game: EpicGame,
@@ -1308,7 +1110,7 @@ object EpicCloudSavesManager {
      * Decompress chunk data similar to Legendary's Chunk.read_buffer
      * Chunk format: magic (4 bytes) + header + compressed data
      */
-    private fun decompressChunk(chunkBytes: ByteArray): ByteArray {
+    internal fun decompressChunk(chunkBytes: ByteArray): ByteArray {
         return try {
             val buffer = java.nio.ByteBuffer.wrap(chunkBytes).order(java.nio.ByteOrder.LITTLE_ENDIAN)
 
@@ -1330,8 +1132,8 @@ object EpicCloudSavesManager {
             val storedAs = buffer.get().toInt()
             val isCompressed = (storedAs and 0x1) != 0
 
-            // Skip hash type and SHA hash (21 bytes total for the flag + hash)
-            buffer.position(buffer.position() + 20)
+            // Data follows the header, whose length varies with its version
+            buffer.position(headerSize)
 
             // Get remaining data
             val dataStart = buffer.position()
@@ -4,13 +4,22 @@ import android.content.Context
 import android.util.Log
 import app.gamenative.data.DownloadInfo
 import app.gamenative.data.EpicGame
-import app.gamenative.service.epic.manifest.EpicManifest
+import app.gamenative.PrefManager
+import app.gamenative.service.DownloadGovernor
+import app.gamenative.service.epic.manifest.ChunkRef
+import app.gamenative.service.epic.manifest.ChunkReusePlan
+import app.gamenative.service.epic.manifest.CompactChunkTable
+import app.gamenative.service.epic.manifest.CompactManifest
+import app.gamenative.service.epic.manifest.FileRef
+import app.gamenative.utils.CdnSelector
+import app.gamenative.utils.awaitResponse
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.security.MessageDigest
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import java.util.zip.Inflater
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -18,6 +27,7 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.withContext
+import okhttp3.Dispatcher
 import okhttp3.OkHttpClient
 import okhttp3.Request
 import org.json.JSONObject
@@ -34,6 +44,9 @@ import timber.log.Timber
 @Singleton
 class EpicDownloadManager @Inject constructor(
     private val epicManager: EpicManager,
+    private val cdnSelector: CdnSelector,
+    private val chunkIndex: EpicChunkIndex,
+    private val downloadGovernor: DownloadGovernor,
 ) {
 
 
@@ -43,6 +56,8 @@ class EpicDownloadManager @Inject constructor(
         .writeTimeout(60, TimeUnit.SECONDS)
         // Connection pool optimization for parallel downloads
         .connectionPool(okhttp3.ConnectionPool(32, 5, TimeUnit.MINUTES))
+        // Parallel chunks plus hedged duplicates can exceed OkHttp's default of 5 per host
+        .dispatcher(Dispatcher().apply { maxRequestsPerHost = MAX_PARALLEL_DOWNLOADS * 2 })
         .build()
 
     companion object {
@@ -70,6 +85,7 @@ class EpicDownloadManager @Inject constructor(
         dlcIds: List<Int>,
         commonRedistDir: File? = null,
     ): Result<Unit> = withContext(Dispatchers.IO) {
+        val governorHandle = downloadGovernor.register("epic:${game.appName}")
         try {
 
             Timber.tag("Epic").i("Starting download for ${game.title} to $installPath")
@@ -119,22 +135,16 @@ class EpicDownloadManager @Inject constructor(
 
             Timber.tag("Epic").d("Manifest fetched with ${cdnUrls.size} CDN URLs, parsing...")
 
-            // Parse manifest binary to get chunks and files
-            val manifest = EpicManifest.readAll(manifestData.manifestBytes)
+            // Parse manifest binary into the compact columnar form to get chunks and files
+            val manifest = CompactManifest.readAll(manifestData.manifestBytes)
 
-            // Extract chunk and file data from parsed manifest
-            val chunkDataList = manifest.chunkDataList
-                ?: return@withContext Result.failure(Exception("No chunk data in manifest"))
-            val fileManifestList = manifest.fileManifestList
-                ?: return@withContext Result.failure(Exception("No file manifest in manifest"))
-
-            val chunks = chunkDataList.elements
-            val files = fileManifestList.elements
+            val chunks = manifest.chunks
+            val files = manifest.files
             val chunkDir = manifest.getChunkDir()
 
             // Calculate total download size including DLCs (use compressed size for download tracking)
-            var totalDownloadSize = chunks.sumOf { it.fileSize }
-            var totalInstalledSize = chunks.sumOf { it.windowSize.toLong() }
+            var totalDownloadSize = chunks.totalFileSize()
+            var totalInstalledSize = chunks.totalWindowSize()
             val baseGameSize = totalDownloadSize
 
             // Fetch DLC manifests to get their sizes for accurate progress tracking
@@ -151,9 +161,9 @@ class EpicDownloadManager @Inject constructor(
                         )
                         if (dlcManifestResult.isSuccess) {
                             val dlcManifest = dlcManifestResult.getOrNull()!!
-                            val dlcParsed = EpicManifest.readAll(dlcManifest.manifestBytes)
-                            val dlcDownloadSize = dlcParsed.chunkDataList?.elements?.sumOf { it.fileSize } ?: 0L
-                            val dlcInstalledSize = dlcParsed.chunkDataList?.elements?.sumOf { it.windowSize.toLong() } ?: 0L
+                            val dlcParsed = CompactManifest.readAll(dlcManifest.manifestBytes)
+                            val dlcDownloadSize = dlcParsed.chunks.totalFileSize()
+                            val dlcInstalledSize = dlcParsed.chunks.totalWindowSize()
                             totalDownloadSize += dlcDownloadSize
                             totalInstalledSize += dlcInstalledSize
                             dlcManifestData.add(dlc to dlcManifest)
@@ -184,7 +194,15 @@ class EpicDownloadManager @Inject constructor(
             )
 
             downloadInfo.setTotalExpectedBytes(totalDownloadSize)
-            downloadInfo.updateStatusMessage("Downloading base game...")
+
+            val reusePlan = planChunkReuse(manifest, game.title)
+            downloadInfo.updateStatusMessage(
+                if (reusePlan.bytesSaved > 0) {
+                    "Downloading base game (reusing ${reusePlan.bytesSaved / 1_000_000} MB from installed games)..."
+                } else {
+                    "Downloading base game..."
+                },
+            )
 
             // Download chunks in parallel
             val chunkCacheDir = File(installPath, ".chunks")
@@ -209,16 +227,16 @@ class EpicDownloadManager @Inject constructor(
             downloadInfo.setProgress(0.0f)
             downloadInfo.emitProgressChange()
 
-            chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
+            chunks.indices.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
                 if (!downloadInfo.isActive()) {
                     Timber.tag("Epic").w("Download cancelled by user")
                     return@withContext Result.failure(Exception("Download cancelled"))
                 }
 
                 // Download batch in parallel
-                val results = chunkBatch.map { chunk ->
+                val results = chunkBatch.map { chunkIndex ->
                     async {
-                        downloadChunkWithRetry(chunk, chunkCacheDir, chunkDir, cdnUrls, downloadInfo)
+                        downloadChunkWithRetry(chunks[chunkIndex], chunkCacheDir, chunkDir, cdnUrls, reusePlan, downloadInfo, governorHandle)
                     }
                 }.awaitAll()
 
@@ -244,6 +262,7 @@ class EpicDownloadManager @Inject constructor(
                 Timber.tag("Epic").d("Download progress: $downloadedChunks/$totalChunks chunks (${(progress * 100).toInt()}%)")
             }
 
+            cdnSelector.persist()
             downloadInfo.updateStatusMessage("Assembling files...")
 
             // Assemble files from chunks in parallel batches
@@ -254,10 +273,10 @@ class EpicDownloadManager @Inject constructor(
             val totalFiles = files.size
 
             // Process files in batches for better parallelism
-            files.chunked(4).forEach { fileBatch ->
-                val assembleResults = fileBatch.map { fileManifest ->
+            files.indices.chunked(4).forEach { fileBatch ->
+                val assembleResults = fileBatch.map { fileIndex ->
                     async {
-                        assembleFile(fileManifest, chunkCacheDir, installDir)
+                        assembleFile(files[fileIndex], chunks, chunkCacheDir, installDir)
                     }
                 }.awaitAll()
 
@@ -281,6 +300,9 @@ class EpicDownloadManager @Inject constructor(
             Timber.tag("Epic").i("Download completed successfully for ${game.title}")
             logDirectoryStructure(installDir)
 
+            // Index the base game now so its DLC below can reuse shared chunks
+            chunkIndex.onInstalled(game.appName, installPath, manifestData.manifestBytes)
+
             // Download DLCs using pre-fetched manifest data
             if (dlcManifestData.isNotEmpty()) {
                 try {
@@ -298,6 +320,7 @@ class EpicDownloadManager @Inject constructor(
                                 manifestData = manifestData,
                                 installPath = installPath,
                                 downloadInfo = downloadInfo,
+                                governorHandle = governorHandle,
                             )
 
                             if (dlcResult.isFailure) {
@@ -355,6 +378,7 @@ class EpicDownloadManager @Inject constructor(
             downloadInfo.setActive(false)
             Result.failure(e)
         } finally {
+            governorHandle.close()
             // Always emit download stopped event
             val gameId = game.id ?: 0
             app.gamenative.PluviaApp.events.emitJava(
@@ -372,23 +396,21 @@ class EpicDownloadManager @Inject constructor(
         manifestData: EpicManager.ManifestResult,
         installPath: String,
         downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             Timber.tag("Epic").i("Starting download for ${game.title} using pre-fetched manifest")
 
             // Parse manifest
             val cdnUrls = manifestData.cdnUrls.filter { !it.baseUrl.startsWith("https://cloudflare.epicgamescdn.com") }
-            val manifest = EpicManifest.readAll(manifestData.manifestBytes)
-
-            val chunkDataList = manifest.chunkDataList
-                ?: return@withContext Result.failure(Exception("No chunk data in manifest"))
-            val fileManifestList = manifest.fileManifestList
-                ?: return@withContext Result.failure(Exception("No file manifest in manifest"))
+            val manifest = CompactManifest.readAll(manifestData.manifestBytes)
 
-            val chunks = chunkDataList.elements
-            val files = fileManifestList.elements
+            val chunks = manifest.chunks
+            val files = manifest.files
             val chunkDir = manifest.getChunkDir()
 
+            val reusePlan = planChunkReuse(manifest, game.title)
+
             // Download chunks
             val chunkCacheDir = File(installPath, ".chunks")
             chunkCacheDir.mkdirs()
@@ -396,15 +418,15 @@ class EpicDownloadManager @Inject constructor(
             var downloadedChunks = 0
             val totalChunks = chunks.size
 
-            chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
+            chunks.indices.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
                 if (!downloadInfo.isActive()) {
                     Timber.tag("Epic").w("Download cancelled by user")
                     return@withContext Result.failure(Exception("Download cancelled"))
                 }
 
-                val results = chunkBatch.map { chunk ->
+                val results = chunkBatch.map { chunkIndex ->
                     async {
-                        downloadChunkWithRetry(chunk, chunkCacheDir, chunkDir, cdnUrls, downloadInfo)
+                        downloadChunkWithRetry(chunks[chunkIndex], chunkCacheDir, chunkDir, cdnUrls, reusePlan, downloadInfo, governorHandle)
                     }
                 }.awaitAll()
 
@@ -416,15 +438,16 @@ class EpicDownloadManager @Inject constructor(
 
                 downloadedChunks += chunkBatch.size
             }
+            cdnSelector.persist()
 
             // Assemble files
             val installDir = File(installPath)
             installDir.mkdirs()
 
-            files.chunked(4).forEach { fileBatch ->
-                val assembleResults = fileBatch.map { fileManifest ->
+            files.indices.chunked(4).forEach { fileBatch ->
+                val assembleResults = fileBatch.map { fileIndex ->
                     async {
-                        assembleFile(fileManifest, chunkCacheDir, installDir)
+                        assembleFile(files[fileIndex], chunks, chunkCacheDir, installDir)
                     }
                 }.awaitAll()
 
@@ -442,6 +465,7 @@ class EpicDownloadManager @Inject constructor(
             try {
                 epicManager.updateGame(game.copy(isInstalled = true, installPath = installPath))
                 Timber.tag("Epic").i("Updated database: DLC ${game.title} marked as installed")
+                chunkIndex.onInstalled(game.appName, installPath, manifestData.manifestBytes)
             } catch (e: Exception) {
                 Timber.tag("Epic").e(e, "Failed to update database for DLC ${game.id}")
             }
@@ -453,20 +477,42 @@ class EpicDownloadManager @Inject constructor(
         }
     }
 
+    /**
+     * Plan which chunks can be copied from installed Epic titles, if chunk reuse is enabled
+     */
+    private fun planChunkReuse(manifest: CompactManifest, title: String): ChunkReusePlan {
+        if (!PrefManager.epicChunkReuse) return ChunkReusePlan.EMPTY
+        return try {
+            chunkIndex.plan(manifest).also { plan ->
+                if (plan.reusableChunks > 0) {
+                    Timber.tag("Epic").i(
+                        "Reusing ${plan.reusableChunks}/${manifest.chunks.size} chunks " +
+                            "(${plan.bytesSaved / 1_000_000} MB) from installed games for $title",
+                    )
+                }
+            }
+        } catch (e: Exception) {
+            Timber.tag("Epic").w(e, "Failed to plan chunk reuse for $title, downloading everything")
+            ChunkReusePlan.EMPTY
+        }
+    }
+
     /**
      * Download a single chunk with retry logic
      */
     private suspend fun downloadChunkWithRetry(
-        chunk: app.gamenative.service.epic.manifest.ChunkInfo,
+        chunk: ChunkRef,
         chunkCacheDir: File,
         chunkDir: String,
         cdnUrls: List<EpicManager.CdnUrl>,
+        reusePlan: ChunkReusePlan,
         downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<File> = withContext(Dispatchers.IO) {
         var lastException: Exception? = null
 
         repeat(MAX_CHUNK_RETRIES) { attempt ->
-            val result = downloadChunk(chunk, chunkCacheDir, chunkDir, cdnUrls, downloadInfo)
+            val result = downloadChunk(chunk, chunkCacheDir, chunkDir, cdnUrls, reusePlan, downloadInfo, governorHandle)
 
             if (result.isSuccess) {
                 if (attempt > 0) {
@@ -489,14 +535,17 @@ class EpicDownloadManager @Inject constructor(
     }
 
     /**
-     * Download a single chunk from Epic CDN with decompression
+     * Download a single chunk from Epic CDN with decompression, or copy it from installed
+     * files when [reusePlan] covers it
      */
     private suspend fun downloadChunk(
-        chunk: app.gamenative.service.epic.manifest.ChunkInfo,
+        chunk: ChunkRef,
         chunkCacheDir: File,
         chunkDir: String,
         cdnUrls: List<EpicManager.CdnUrl>,
+        reusePlan: ChunkReusePlan,
         downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<File> = withContext(Dispatchers.IO) {
         try {
             val chunkFile = File(chunkCacheDir, "${chunk.guidStr}.chunk")
@@ -515,13 +564,33 @@ class EpicDownloadManager @Inject constructor(
                 }
             }
 
+            // Rebuild from another install's files when the whole chunk window is on disk
+            if (reusePlan.slicesFor(chunk.index) != null) {
+                try {
+                    if (reusePlan.rebuild(chunk.index, chunk.windowSize, chunk.shaHash, decompressedFile)) {
+                        downloadInfo.updateBytesReused(chunk.fileSize)
+                        return@withContext Result.success(decompressedFile)
+                    }
+                    Timber.tag("Epic").w("Installed files don't match chunk ${chunk.guidStr}, downloading instead")
+                } catch (e: Exception) {
+                    Timber.tag("Epic").w(e, "Failed to reuse chunk ${chunk.guidStr} from installed files, downloading instead")
+                    decompressedFile.delete()
+                }
+            }
+
             // Get chunk path for downloading
             val chunkPath = chunk.getPath(chunkDir)
 
-            // Try each CDN base URL until one succeeds
-            var lastException: Exception? = null
-            for ((cdnIndex, cdnUrl) in cdnUrls.withIndex()) {
-                try {
+            // Race healthy CDN hosts; hedged attempts share one progress claim so bytes are counted once.
+            // The connection slot and the rate-limit wait are taken outside the race, so time spent
+            // queued or throttled by the governor is neither scored as host latency nor hedged.
+            val reportedBytes = AtomicLong(0)
+            val tempChunkFile = downloadGovernor.withConnection(governorHandle) {
+                val file = cdnSelector.fetch(
+                    candidates = cdnUrls,
+                    hostOf = { it.baseUrl },
+                    sizeOf = { it.length() },
+                ) { cdnUrl ->
                     // Build full URL: baseUrl + cloudDir + chunkPath
                     val url = "${cdnUrl.baseUrl}${cdnUrl.cloudDir}/$chunkPath"
 
@@ -530,54 +599,55 @@ class EpicDownloadManager @Inject constructor(
                         .header("User-Agent", "UELauncher/11.0.1-14907503+++Portal+Release-Live Windows/10.0.19041.1.256.64bit")
                         .build()
 
-                    // Use .use {} to ensure response is always closed, even on exception
-                    okHttpClient.newCall(request).execute().use { response ->
-                        if (!response.isSuccessful) {
-                            lastException = Exception("HTTP ${response.code} downloading chunk from ${cdnUrl.baseUrl}")
-                            return@use // Exit use block, response will be closed automatically
-                        }
-
-                        // Download and decompress Epic chunk file using streaming to avoid OOM exceptions
-                        val responseBody = response.body!!
-                        val tempChunkFile = File(chunkCacheDir, "${chunk.guidStr}.tmp")
+                    val tempFile = File.createTempFile(chunk.guidStr, ".tmp", chunkCacheDir)
+                    try {
+                        okHttpClient.newCall(request).awaitResponse { response ->
+                            if (!response.isSuccessful) {
+                                throw Exception("HTTP ${response.code} downloading chunk from ${cdnUrl.baseUrl}")
+                            }
 
-                        try {
-                            // Stream download to temp file
-                            responseBody.byteStream().use { input ->
-                                tempChunkFile.outputStream().use { output ->
+                            // Stream download to temp file to avoid OOM exceptions
+                            var attemptBytes = 0L
+                            response.body!!.byteStream().use { input ->
+                                tempFile.outputStream().use { output ->
                                     val buffer = ByteArray(8192)
                                     var bytesRead: Int
                                     while (input.read(buffer).also { bytesRead = it } != -1) {
                                         output.write(buffer, 0, bytesRead)
-                                        downloadInfo.updateBytesDownloaded(bytesRead.toLong())
+                                        attemptBytes += bytesRead
+                                        val previous = reportedBytes.getAndAccumulate(attemptBytes) { a, b -> maxOf(a, b) }
+                                        if (attemptBytes > previous) {
+                                            downloadInfo.updateBytesDownloaded(attemptBytes - previous)
+                                        }
                                     }
                                 }
                             }
-
-                            // Decompress from temp file directly to output file with streaming hash calculation
-                            // This avoids allocating 1.5GB in memory
-                            decompressStreamingChunkToFile(tempChunkFile, decompressedFile, chunk.windowSize.toLong(), chunk.shaHash)
-                        } finally {
-                            tempChunkFile.delete()
                         }
-
-                        return@withContext Result.success(decompressedFile)
+                        tempFile
+                    } catch (e: Throwable) {
+                        tempFile.delete()
+                        throw e
                     }
-
-                    // If we get here, response was unsuccessful, try next CDN
-                    if (lastException != null) {
-                        continue
-                    }
-                } catch (e: Exception) {
-                    if (cdnIndex < cdnUrls.size - 1) {
-                        Timber.tag("Epic").w(e, "Failed to download from ${cdnUrl.baseUrl}, trying next...")
-                    }
-                    lastException = e
                 }
+                // Hold the connection slot until the rate limit has paid for this chunk
+                try {
+                    downloadGovernor.acquireBandwidth(governorHandle, file.length())
+                } catch (e: Throwable) {
+                    file.delete()
+                    throw e
+                }
+                file
             }
 
-            // All URLs failed
-            return@withContext Result.failure(lastException ?: Exception("All CDN URLs failed for chunk ${chunk.guidStr}"))
+            try {
+                // Decompress from temp file directly to output file with streaming hash calculation
+                // This avoids allocating 1.5GB in memory
+                decompressStreamingChunkToFile(tempChunkFile, decompressedFile, chunk.windowSize.toLong(), chunk.shaHash)
+            } finally {
+                tempChunkFile.delete()
+            }
+
+            Result.success(decompressedFile)
         } catch (e: Exception) {
             Timber.tag("Epic").e(e, "Failed to download chunk ${chunk.guidStr}")
             Result.failure(e)
@@ -935,7 +1005,8 @@ class EpicDownloadManager @Inject constructor(
      * Assemble a file from its chunks
      */
     private suspend fun assembleFile(
-        fileManifest: app.gamenative.service.epic.manifest.FileManifest,
+        fileManifest: FileRef,
+        chunks: CompactChunkTable,
         chunkCacheDir: File,
         installDir: File,
     ): Result<File> = withContext(Dispatchers.IO) {
@@ -944,19 +1015,25 @@ class EpicDownloadManager @Inject constructor(
             outputFile.parentFile?.mkdirs()
 
             outputFile.outputStream().use { output ->
-                for (chunkPart in fileManifest.chunkParts) {
-                    val chunkFile = File(chunkCacheDir, chunkPart.guidStr)
+                for (part in 0 until fileManifest.partCount) {
+                    val chunkIndex = fileManifest.partChunk(part)
+                    if (chunkIndex < 0) {
+                        return@withContext Result.failure(Exception("File ${fileManifest.filename} references a chunk missing from the manifest"))
+                    }
+
+                    val guidStr = chunks.guidStr(chunkIndex)
+                    val chunkFile = File(chunkCacheDir, guidStr)
 
                     if (!chunkFile.exists()) {
-                        return@withContext Result.failure(Exception("Chunk file missing: ${chunkPart.guidStr}"))
+                        return@withContext Result.failure(Exception("Chunk file missing: $guidStr"))
                     }
 
                     // Read chunk data at specified offset
                     chunkFile.inputStream().use { input ->
-                        input.skip(chunkPart.offset.toLong())
+                        input.skip(fileManifest.partOffset(part).toLong())
 
                         val buffer = ByteArray(65536) // Increased to 64KB for better I/O performance
-                        var remaining = chunkPart.size.toLong()
+                        var remaining = fileManifest.partSize(part).toLong()
 
                         while (remaining > 0) {
                             val toRead = minOf(remaining, buffer.size.toLong()).toInt()
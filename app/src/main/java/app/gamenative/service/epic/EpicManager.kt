@@ -5,6 +5,8 @@ import app.gamenative.data.EpicGame
 import app.gamenative.data.LaunchInfo
 import app.gamenative.data.LibraryItem
 import app.gamenative.db.dao.EpicGameDao
+import app.gamenative.service.LibraryDetailRefresher
+import app.gamenative.utils.ConditionalResponseCache
 import app.gamenative.utils.Net
 import java.io.File
 import java.util.concurrent.TimeUnit
@@ -28,7 +30,8 @@ class EpicManager @Inject constructor(
     private val epicGameDao: EpicGameDao,
 ) {
 
-    private val REFRESH_BATCH_SIZE = 10
+    // Catalog responses kept for revalidation, under the app's cache dir
+    private val CATALOG_CACHE_DIR = "epic_catalog_items"
 
     private val httpClient = Net.http
 
@@ -216,30 +219,31 @@ class EpicManager @Inject constructor(
             val newGamesList = gamesList.filter { it.catalogItemId !in existingCatalogIds }
             Timber.tag("Epic").d("${newGamesList.size} new games need details fetched")
 
-            val epicGames = mutableListOf<EpicGame>()
-            var processedCount = 0
-            for ((index, game) in newGamesList.withIndex()) {
-                val result = fetchGameInfo(context, game)
-
-                if (result.isSuccess) {
-                    val epicGame = result.getOrNull()
-                    if (epicGame != null) {
-                        epicGames.add(epicGame)
-                        processedCount++
-                        Timber.tag("Epic").d("Refreshed Game: ${epicGame.title}")
-                    }
-                } else {
-                    Timber.tag("Epic").w("Epic game ${game.appName} could not be fetched")
-                }
-
-                if ((index + 1) % REFRESH_BATCH_SIZE == 0 || index == newGamesList.lastIndex) {
-                    if (epicGames.isNotEmpty()) {
-                        epicGameDao.upsertPreservingInstallStatus(epicGames)
-                        Timber.tag("Epic").d("Batch inserted ${epicGames.size} games (processed ${index + 1}/${newGamesList.size})")
-                        epicGames.clear()
-                    }
-                }
+            // Catalog items stream into the db in batches while the rest are still being fetched;
+            // responses are kept on disk and revalidated with their ETag.
+            val responseCache = ConditionalResponseCache(File(context.cacheDir, CATALOG_CACHE_DIR))
+            // Resolved once for the whole refresh: near expiry, getStoredCredentials spends the refresh
+            // token, and parallel fetches would each spend it and overwrite each other's credentials
+            val accessToken = EpicAuthManager.getStoredCredentials(context).getOrNull()?.accessToken
+            if (newGamesList.isNotEmpty() && accessToken.isNullOrEmpty()) {
+                return@withContext Result.failure(Exception("No access token"))
             }
+            val processedCount = LibraryDetailRefresher.refresh(
+                keys = newGamesList,
+                fetch = { game ->
+                    fetchGameInfo(context, game, responseCache, accessToken).getOrNull().also { epicGame ->
+                        if (epicGame != null) {
+                            Timber.tag("Epic").d("Refreshed Game: ${epicGame.title}")
+                        } else {
+                            Timber.tag("Epic").w("Epic game ${game.appName} could not be fetched")
+                        }
+                    }
+                },
+                upsert = { epicGames ->
+                    epicGameDao.upsertPreservingInstallStatus(epicGames)
+                    Timber.tag("Epic").d("Batch inserted ${epicGames.size} games")
+                },
+            )
 
             Timber.tag("Epic").i("Successfully refreshed Epic library")
             Result.success(processedCount)
@@ -384,15 +388,18 @@ class EpicManager @Inject constructor(
     private suspend fun fetchGameInfo(
         context: Context,
         game: ParsedLibraryItem,
+        responseCache: ConditionalResponseCache? = null,
+        token: String? = null,
     ): Result<EpicGame> = withContext(Dispatchers.IO) {
         try {
-            // Get Credentials and restore them
-            val credentials = EpicAuthManager.getStoredCredentials(context)
-            if (credentials.isFailure) {
-                return@withContext Result.failure(credentials.exceptionOrNull() ?: Exception("No credentials"))
+            // Get Credentials and restore them, unless the caller already has
+            val accessToken = token ?: run {
+                val credentials = EpicAuthManager.getStoredCredentials(context)
+                if (credentials.isFailure) {
+                    return@withContext Result.failure(credentials.exceptionOrNull() ?: Exception("No credentials"))
+                }
+                credentials.getOrNull()?.accessToken
             }
-
-            val accessToken = credentials.getOrNull()?.accessToken
             if (accessToken.isNullOrEmpty()) {
                 return@withContext Result.failure(Exception("No access token"))
             }
@@ -413,14 +420,21 @@ class EpicManager @Inject constructor(
                 .get()
                 .build()
 
-            val response = httpClient.newCall(request).execute()
+            val body = if (responseCache != null) {
+                responseCache.fetch(httpClient, request).getOrElse { e ->
+                    Timber.w("Failed to fetch game info for ${game.catalogItemId}: ${e.message}")
+                    return@withContext Result.failure(Exception("Could not fetch game info: ${e.message}"))
+                }.text
+            } else {
+                val response = httpClient.newCall(request).execute()
 
-            if (!response.isSuccessful) {
-                Timber.w("Failed to fetch game info for ${game.catalogItemId}: ${response.code}")
-                return@withContext Result.failure(Exception("Could not fetch game info: ${response.code}"))
-            }
+                if (!response.isSuccessful) {
+                    Timber.w("Failed to fetch game info for ${game.catalogItemId}: ${response.code}")
+                    return@withContext Result.failure(Exception("Could not fetch game info: ${response.code}"))
+                }
 
-            val body = response.body?.string()
+                response.body?.string()
+            }
             if (body.isNullOrEmpty()) {
                 return@withContext Result.failure(Exception("Could not fetch game info for ${game.catalogItemId}"))
             }
@@ -927,19 +941,19 @@ class EpicManager @Inject constructor(
 
             val manifestData = manifestResult.getOrNull()!!
 
-            // Parse with Kotlin parser
-            val manifest = app.gamenative.service.epic.manifest.EpicManifest.readAll(manifestData.manifestBytes)
+            // Parse with Kotlin parser (columnar form, only sizes are needed here)
+            val manifest = app.gamenative.service.epic.manifest.CompactManifest.readAll(manifestData.manifestBytes)
 
             // Calculate install size
-            val installSize = manifest.fileManifestList?.elements?.sumOf { it.fileSize } ?: 0L
-            val downloadSize = app.gamenative.service.epic.manifest.ManifestUtils.getTotalDownloadSize(manifest)
+            val installSize = manifest.files.totalFileSize()
+            val downloadSize = manifest.getRequiredDownloadSize()
             Timber.tag("Epic").d(
                 "Manifest stats for $appName: version=${manifest.version}, featureLevel=${manifest.meta?.featureLevel}, " +
                     "buildVersion=${manifest.meta?.buildVersion}, buildId=${manifest.meta?.buildId}",
             )
             Timber.tag("Epic").d(
-                "Manifest stats for $appName: files=${manifest.fileManifestList?.count}, " +
-                    "chunks=${manifest.chunkDataList?.count}",
+                "Manifest stats for $appName: files=${manifest.files.size}, " +
+                    "chunks=${manifest.chunks.size}",
             )
             Timber.tag("Epic").d("Install size for $appName: $installSize bytes")
             Timber.tag("Epic").d("Download size for $appName: $downloadSize bytes")
@@ -0,0 +1,221 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.ChunkPart
+import app.gamenative.service.epic.manifest.FileManifest
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.security.MessageDigest
+import java.security.SecureRandom
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.DeflaterOutputStream
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.SendChannel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import timber.log.Timber
+
+/**
+ * Packs save files into Epic's 1 MB cloud-save chunks while reading them, uploading each chunk as
+ * soon as it's full.
+ *
+ * Files are read through a small buffer straight into the chunk being filled, updating their SHA-1
+ * on the way. Full chunks are hashed, compressed and uploaded by [parallelism] workers with at most
+ * as many more queued, so memory stays at a few chunks however large the saves are. A chunk whose
+ * SHA-1 is in [knownChunks] is already in the cloud and is referenced instead of uploaded.
+ *
+ * @param writeLinks fetches upload URLs for chunk paths
+ * @param upload PUTs a chunk to its write link
+ */
+internal class EpicSavePacker(
+    private val writeLinks: suspend (List<String>) -> Map<String, String>,
+    private val upload: suspend (writeLink: String, data: ByteArray) -> Result<Unit>,
+    private val knownChunks: Map<String, ChunkInfo> = emptyMap(),
+    private val parallelism: Int = DEFAULT_PARALLELISM,
+) {
+
+    /** Chunks and file entries for the save manifest */
+    class Packed(
+        val chunks: List<ChunkInfo>,
+        val files: List<FileManifest>,
+        val chunksUploaded: Int,
+        val chunksReused: Int,
+    )
+
+    // A span of a file inside chunk number [chunk], which gets its GUID once stored
+    private class Part(val chunk: Int, val offset: Int, val size: Int, val fileOffset: Long)
+
+    private class FullChunk(val index: Int, val data: ByteArray)
+
+    companion object {
+        const val CHUNK_SIZE = 1024 * 1024
+        const val DEFAULT_PARALLELISM = 4
+
+        private const val READ_BUFFER_SIZE = 64 * 1024
+        private const val CHUNK_MAGIC = 0xB1FE3AA2.toInt()
+        private const val CHUNK_HEADER_VERSION = 3
+        private const val CHUNK_HEADER_SIZE = 66
+        private const val STORED_COMPRESSED: Byte = 0x1
+        private const val HASH_TYPE_BOTH: Byte = 0x3
+
+        private val random = SecureRandom()
+
+        fun shaHex(sha: ByteArray): String = sha.joinToString("") { "%02x".format(it) }
+
+        /** [chunks] keyed by SHA-1, as [knownChunks] expects */
+        fun indexBySha(chunks: Iterable<ChunkInfo>): Map<String, ChunkInfo> = chunks.associateBy { shaHex(it.shaHash) }
+
+        fun generateGuid(): IntArray = IntArray(4) { random.nextInt() }
+
+        // Rolling hash (simplified version)
+        fun rollingHash(data: ByteArray): ULong {
+            var hash = 0uL
+            data.forEach { byte ->
+                hash = (hash * 31uL + byte.toUByte().toULong()) and 0xFFFFFFFFFFFFFFFFuL
+            }
+            return hash
+        }
+
+        /** Compresses [data] behind a version 3 chunk header describing [chunk] */
+        fun encodeChunk(chunk: ChunkInfo, data: ByteArray): ByteArray {
+            val compressed = ByteArrayOutputStream(data.size / 4)
+            DeflaterOutputStream(compressed).use { it.write(data) }
+
+            val buffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE + compressed.size()).order(ByteOrder.LITTLE_ENDIAN)
+            buffer.putInt(CHUNK_MAGIC)
+            buffer.putInt(CHUNK_HEADER_VERSION)
+            buffer.putInt(CHUNK_HEADER_SIZE)
+            buffer.putInt(compressed.size())
+            chunk.guid.forEach { buffer.putInt(it) }
+            buffer.putLong(chunk.hash.toLong())
+            buffer.put(STORED_COMPRESSED)
+            buffer.put(chunk.shaHash)
+            buffer.put(HASH_TYPE_BOTH)
+            buffer.putInt(data.size)
+            buffer.put(compressed.toByteArray())
+            return buffer.array()
+        }
+    }
+
+    /**
+     * Packs [files] below [saveDir] in order, uploading chunks as they fill. Empty files are
+     * skipped. Throws if a file can't be read or a chunk can't be uploaded.
+     */
+    suspend fun pack(saveDir: File, files: List<File>): Packed = coroutineScope {
+        val full = Channel<FullChunk>(parallelism)
+        val stored = ConcurrentHashMap<Int, ChunkInfo>()
+        val uploaded = AtomicInteger()
+        val reused = AtomicInteger()
+
+        val workers = List(parallelism) {
+            launch(Dispatchers.IO) {
+                for (chunk in full) {
+                    stored[chunk.index] = store(chunk, uploaded, reused)
+                }
+            }
+        }
+        val read = try {
+            withContext(Dispatchers.IO) { read(saveDir, files, full) }
+        } finally {
+            full.close()
+        }
+        workers.joinAll()
+
+        val chunks = List(stored.size) { stored.getValue(it) }
+        val manifests = read.map { (manifest, parts) ->
+            parts.mapTo(manifest.chunkParts) { ChunkPart(chunks[it.chunk].guid, it.offset, it.size, it.fileOffset) }
+            manifest
+        }
+        Packed(chunks, manifests, uploaded.get(), reused.get())
+    }
+
+    private suspend fun read(
+        saveDir: File,
+        files: List<File>,
+        full: SendChannel<FullChunk>,
+    ): List<Pair<FileManifest, List<Part>>> {
+        val out = ArrayList<Pair<FileManifest, List<Part>>>()
+        val buffer = ByteArray(READ_BUFFER_SIZE)
+        var chunk = ByteArray(CHUNK_SIZE)
+        var chunkIndex = 0
+        var fill = 0
+
+        for (file in files) {
+            val relativePath = file.relativeTo(saveDir).path.replace("\\", "/")
+            if (file.length() == 0L) {
+                Timber.tag("Epic").w("[Cloud Saves] Skipping empty file: $relativePath")
+                continue
+            }
+            Timber.tag("Epic").d("[Cloud Saves] Processing file: $relativePath (${file.length()} bytes)")
+
+            val sha = MessageDigest.getInstance("SHA-1")
+            val parts = ArrayList<Part>()
+            var fileOffset = 0L
+            file.inputStream().use { input ->
+                while (true) {
+                    val n = input.read(buffer)
+                    if (n < 0) break
+                    sha.update(buffer, 0, n)
+                    var pos = 0
+                    while (pos < n) {
+                        if (fill == CHUNK_SIZE) {
+                            full.send(FullChunk(chunkIndex++, chunk))
+                            chunk = ByteArray(CHUNK_SIZE)
+                            fill = 0
+                        }
+                        val take = minOf(n - pos, CHUNK_SIZE - fill)
+                        System.arraycopy(buffer, pos, chunk, fill, take)
+                        val last = parts.lastOrNull()
+                        if (last != null && last.chunk == chunkIndex) {
+                            parts[parts.size - 1] = Part(chunkIndex, last.offset, last.size + take, last.fileOffset)
+                        } else {
+                            parts += Part(chunkIndex, fill, take, fileOffset)
+                        }
+                        fill += take
+                        pos += take
+                        fileOffset += take
+                    }
+                }
+            }
+
+            val manifest = FileManifest(filename = relativePath, hash = sha.digest(), fileSize = fileOffset)
+            out += manifest to parts
+        }
+
+        // The rest of the last chunk stays zeroed, as every chunk is a full window
+        if (fill > 0) full.send(FullChunk(chunkIndex, chunk))
+        return out
+    }
+
+    private suspend fun store(chunk: FullChunk, uploaded: AtomicInteger, reused: AtomicInteger): ChunkInfo {
+        val sha = MessageDigest.getInstance("SHA-1").digest(chunk.data)
+        knownChunks[shaHex(sha)]?.let { known ->
+            reused.incrementAndGet()
+            Timber.tag("Epic").d("[Cloud Saves] Chunk #${chunk.index} already in the cloud: ${known.guidStr}")
+            return known
+        }
+
+        val info = ChunkInfo(
+            guid = generateGuid(),
+            hash = rollingHash(chunk.data),
+            shaHash = sha,
+            windowSize = chunk.data.size,
+        )
+        val encoded = encodeChunk(info, chunk.data)
+        info.fileSize = encoded.size.toLong()
+
+        val path = info.getPath()
+        val link = writeLinks(listOf(path))[path] ?: throw IOException("No write link for chunk $path")
+        upload(link, encoded).getOrElse { throw IOException("Failed to upload chunk $path", it) }
+        uploaded.incrementAndGet()
+        Timber.tag("Epic").d("[Cloud Saves] Uploaded chunk #${chunk.index}: ${info.guidStr} (${encoded.size} bytes)")
+        return info
+    }
+}
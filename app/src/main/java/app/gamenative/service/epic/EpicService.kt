@@ -189,6 +189,11 @@ class EpicService : Service() {
                     return Result.failure(Exception("Game not found: $appId"))
                 }
 
+                // Stop offering this install's chunks to other downloads before its files go away
+                if (game.installPath.isNotEmpty()) {
+                    instance.epicChunkIndex.onUninstalled(game.installPath)
+                }
+
                 // Delete the installation folder if it exists
                 if (game.isInstalled && game.installPath.isNotEmpty()) {
                     val installDir = File(game.installPath)
@@ -464,6 +469,9 @@ class EpicService : Service() {
     @Inject
     lateinit var epicDownloadManager: EpicDownloadManager
 
+    @Inject
+    lateinit var epicChunkIndex: EpicChunkIndex
+
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
     // Track active downloads by GameNative Int ID
@@ -0,0 +1,244 @@
+package app.gamenative.service.epic.manifest
+
+import app.gamenative.utils.FileHashCache
+import java.io.EOFException
+import java.io.File
+import java.io.RandomAccessFile
+
+/**
+ * A run of bytes inside a chunk window that can be copied out of an installed file
+ */
+class ChunkSlice(
+    val chunkOffset: Int,
+    val size: Int,
+    val file: File,
+    val fileOffset: Long,
+)
+
+/**
+ * An installed title whose files can serve chunk data to other installs. Chunks with the same GUID
+ * hold the same bytes, so any installed file part that came from a chunk is a copy of that range.
+ */
+class InstalledChunkSource(
+    val installDir: File,
+    val manifest: CompactManifest,
+) {
+    internal val parts: ChunkPartIndex by lazy { ChunkPartIndex(manifest) }
+}
+
+/**
+ * Which chunks of a manifest can be rebuilt from installed files instead of being downloaded.
+ */
+class ChunkReusePlan internal constructor(
+    private val slices: Map<Int, List<ChunkSlice>>,
+    val bytesSaved: Long,
+) {
+    val reusableChunks: Int get() = slices.size
+
+    /**
+     * Slices to rebuild chunk row [chunkIndex] from, or null if it has to be downloaded
+     */
+    fun slicesFor(chunkIndex: Int): List<ChunkSlice>? = slices[chunkIndex]
+
+    /**
+     * Rebuilds chunk row [chunkIndex] into [output] from installed files and checks the rebuilt
+     * window against [chunkSha1], as modified or damaged installs would otherwise end up in this
+     * one. Returns false, with nothing left at [output], if the chunk isn't planned for reuse or the
+     * installed bytes don't check out.
+     */
+    fun rebuild(chunkIndex: Int, windowSize: Int, chunkSha1: ByteArray, output: File): Boolean {
+        val slices = slices[chunkIndex] ?: return false
+        ChunkReusePlanner.materialize(slices, windowSize, output)
+        if (!FileHashCache.digest(output.toPath(), "SHA-1").contentEquals(chunkSha1)) {
+            output.delete()
+            return false
+        }
+        return true
+    }
+
+    companion object {
+        val EMPTY = ChunkReusePlan(emptyMap(), 0L)
+    }
+}
+
+/**
+ * Chunk parts of a manifest grouped by chunk row (CSR layout), each group sorted by chunk offset.
+ */
+internal class ChunkPartIndex(manifest: CompactManifest) {
+    val starts: IntArray
+    val chunkOffsets: IntArray
+    val sizes: IntArray
+    val files: IntArray
+    val fileOffsets: LongArray
+
+    init {
+        val fileTable = manifest.files
+        val chunkCount = manifest.chunks.size
+        starts = IntArray(chunkCount + 1)
+        for (f in fileTable.indices) {
+            val file = fileTable[f]
+            for (p in 0 until file.partCount) {
+                val chunk = file.partChunk(p)
+                if (chunk >= 0) starts[chunk + 1]++
+            }
+        }
+        for (c in 0 until chunkCount) starts[c + 1] += starts[c]
+
+        val total = starts[chunkCount]
+        chunkOffsets = IntArray(total)
+        sizes = IntArray(total)
+        files = IntArray(total)
+        fileOffsets = LongArray(total)
+        val next = starts.copyOf(chunkCount)
+        for (f in fileTable.indices) {
+            val file = fileTable[f]
+            var fileOffset = 0L
+            for (p in 0 until file.partCount) {
+                val chunk = file.partChunk(p)
+                val size = file.partSize(p)
+                if (chunk >= 0) {
+                    val slot = next[chunk]++
+                    chunkOffsets[slot] = file.partOffset(p)
+                    sizes[slot] = size
+                    files[slot] = f
+                    fileOffsets[slot] = fileOffset
+                }
+                fileOffset += size
+            }
+        }
+
+        // Groups are tiny (a chunk rarely feeds more than a handful of parts), so insertion sort
+        for (c in 0 until chunkCount) {
+            for (i in starts[c] + 1 until starts[c + 1]) {
+                var j = i
+                while (j > starts[c] && chunkOffsets[j - 1] > chunkOffsets[j]) {
+                    swap(j - 1, j)
+                    j--
+                }
+            }
+        }
+    }
+
+    private fun swap(a: Int, b: Int) {
+        chunkOffsets[a] = chunkOffsets[b].also { chunkOffsets[b] = chunkOffsets[a] }
+        sizes[a] = sizes[b].also { sizes[b] = sizes[a] }
+        files[a] = files[b].also { files[b] = files[a] }
+        fileOffsets[a] = fileOffsets[b].also { fileOffsets[b] = fileOffsets[a] }
+    }
+}
+
+/**
+ * Plans cross-install chunk reuse.
+ *
+ * For every chunk the target manifest reads from, it tries to cover the chunk's whole window with
+ * parts of installed files that came from a chunk with the same GUID. Only whole windows are
+ * planned, so a rebuilt chunk can be checked against the chunk hash without hashing the files it
+ * came from; the rest are downloaded as usual. Installed files whose size no longer matches their
+ * manifest are skipped.
+ */
+object ChunkReusePlanner {
+
+    private class Candidate(val start: Int, val end: Int, val file: File, val fileOffset: Long)
+
+    fun plan(target: CompactManifest, sources: List<InstalledChunkSource>): ChunkReusePlan {
+        if (sources.isEmpty()) return ChunkReusePlan.EMPTY
+
+        val needed = ChunkPartIndex(target)
+        val validFiles = HashMap<File, Boolean>()
+        val slices = HashMap<Int, List<ChunkSlice>>()
+        var bytesSaved = 0L
+
+        for (chunk in target.chunks.indices) {
+            if (needed.starts[chunk] == needed.starts[chunk + 1]) continue
+
+            val candidates = collectCandidates(target.chunks, chunk, sources, validFiles)
+            if (candidates.isEmpty()) continue
+
+            val covered = cover(target.chunks.windowSize(chunk), candidates) ?: continue
+            slices[chunk] = covered
+            bytesSaved += target.chunks.fileSize(chunk)
+        }
+
+        return ChunkReusePlan(slices, bytesSaved)
+    }
+
+    private fun collectCandidates(
+        chunks: CompactChunkTable,
+        chunk: Int,
+        sources: List<InstalledChunkSource>,
+        validFiles: HashMap<File, Boolean>,
+    ): List<Candidate> {
+        val candidates = mutableListOf<Candidate>()
+        for (source in sources) {
+            val row = source.manifest.chunks.indexOf(chunks.guidHi[chunk], chunks.guidLo[chunk])
+            if (row < 0) continue
+
+            val parts = source.parts
+            for (slot in parts.starts[row] until parts.starts[row + 1]) {
+                val fileRow = parts.files[slot]
+                val file = File(source.installDir, source.manifest.files.filename(fileRow))
+                val valid = validFiles.getOrPut(file) {
+                    file.isFile && file.length() == source.manifest.files.fileSize(fileRow)
+                }
+                if (!valid) continue
+
+                val start = parts.chunkOffsets[slot]
+                candidates += Candidate(start, start + parts.sizes[slot], file, parts.fileOffsets[slot])
+            }
+        }
+        candidates.sortBy { it.start }
+        return candidates
+    }
+
+    /**
+     * Greedily covers a chunk window of [windowSize] bytes with [candidates], which are sorted by
+     * start. Returns null if any byte cannot be covered.
+     */
+    private fun cover(windowSize: Int, candidates: List<Candidate>): List<ChunkSlice>? {
+        val slices = mutableListOf<ChunkSlice>()
+        var pos = 0
+        while (pos < windowSize) {
+            var best: Candidate? = null
+            for (candidate in candidates) {
+                if (candidate.start > pos) break
+                if (candidate.end > pos && (best == null || candidate.end > best.end)) best = candidate
+            }
+            if (best == null) return null
+
+            val end = minOf(best.end, windowSize)
+            slices += ChunkSlice(
+                chunkOffset = pos,
+                size = end - pos,
+                file = best.file,
+                fileOffset = best.fileOffset + (pos - best.start),
+            )
+            pos = end
+        }
+        return slices
+    }
+
+    /**
+     * Writes [slices] into [output] at their chunk offsets, producing a chunk file the assembler
+     * can read from.
+     */
+    fun materialize(slices: List<ChunkSlice>, windowSize: Int, output: File) {
+        val buffer = ByteArray(65536)
+        RandomAccessFile(output, "rw").use { out ->
+            out.setLength(0)
+            out.setLength(windowSize.toLong())
+            for (slice in slices) {
+                RandomAccessFile(slice.file, "r").use { input ->
+                    input.seek(slice.fileOffset)
+                    out.seek(slice.chunkOffset.toLong())
+                    var remaining = slice.size
+                    while (remaining > 0) {
+                        val read = input.read(buffer, 0, minOf(remaining, buffer.size))
+                        if (read == -1) throw EOFException("${slice.file} ended before chunk data")
+                        out.write(buffer, 0, read)
+                        remaining -= read
+                    }
+                }
+            }
+        }
+    }
+}
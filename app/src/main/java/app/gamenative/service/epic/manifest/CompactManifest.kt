@@ -0,0 +1,633 @@
+package app.gamenative.service.epic.manifest
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.BitSet
+
+/**
+ * Struct-of-arrays representation of an Epic manifest.
+ *
+ * [EpicManifest] materializes a [ChunkInfo] per chunk and a [ChunkPart] with its own GUID array per
+ * file part, plus lazy hash maps on top. For AAA manifests with hundreds of thousands of parts that is
+ * hundreds of MB of small objects. This class keeps the same data in flat primitive columns instead:
+ * GUIDs are packed into two longs, per-file tags and chunk parts are offset tables, and all strings
+ * live in a shared pool. Rows are read through the [ChunkRef] and [FileRef] flyweights.
+ *
+ * The binary body is parsed straight into the columns without going through the object model.
+ */
+class CompactManifest private constructor(
+    val version: Int,
+    val meta: ManifestMeta?,
+    val chunks: CompactChunkTable,
+    val files: CompactFileTable,
+    val customFields: CustomFields?,
+) {
+    /**
+     * Get chunk directory based on manifest version
+     */
+    fun getChunkDir(): String {
+        return when {
+            version >= 15 -> "ChunksV4"
+            version >= 6 -> "ChunksV3"
+            version >= 3 -> "ChunksV2"
+            else -> "Chunks"
+        }
+    }
+
+    /**
+     * Compressed size of all chunks referenced by at least one file
+     */
+    fun getRequiredDownloadSize(): Long {
+        val seen = BitSet(chunks.size)
+        var total = 0L
+        for (part in 0 until files.totalPartCount) {
+            val chunk = files.partChunkAt(part)
+            if (chunk >= 0 && !seen.get(chunk)) {
+                seen.set(chunk)
+                total += chunks.fileSize(chunk)
+            }
+        }
+        return total
+    }
+
+    companion object {
+        /**
+         * Read and parse a complete manifest (binary or JSON) from bytes
+         */
+        fun readAll(data: ByteArray): CompactManifest {
+            return when (val manifest = EpicManifest.detect(data)) {
+                is BinaryManifest -> {
+                    manifest.read(data)
+                    val body = manifest.data
+                    // Drop the decompressed body from the parser as soon as we hold our own reference
+                    manifest.data = ByteArray(0)
+                    parseBody(manifest.version, body)
+                }
+                is JsonManifest -> {
+                    manifest.read(data)
+                    manifest.parseContents()
+                    from(manifest)
+                }
+            }
+        }
+
+        /**
+         * Convert an already parsed object-model manifest
+         */
+        fun from(manifest: EpicManifest): CompactManifest {
+            val chunkElements = manifest.chunkDataList?.elements.orEmpty()
+            val chunks = CompactChunkTable(chunkElements.size)
+            chunkElements.forEachIndexed { i, chunk ->
+                chunks.guidHi[i] = packGuid(chunk.guid[0], chunk.guid[1])
+                chunks.guidLo[i] = packGuid(chunk.guid[2], chunk.guid[3])
+                chunks.hashes[i] = chunk.hash.toLong()
+                System.arraycopy(chunk.shaHash, 0, chunks.shaHashes, i * SHA1_SIZE, minOf(chunk.shaHash.size, SHA1_SIZE))
+                chunks.groupNums[i] = chunk.groupNum.toByte()
+                chunks.windowSizes[i] = chunk.windowSize
+                chunks.fileSizes[i] = chunk.fileSize
+            }
+            chunks.buildIndex()
+
+            val fileElements = manifest.fileManifestList?.elements.orEmpty()
+            val builder = CompactFileTable.Builder(fileElements.size, manifest.fileManifestList?.version?.toInt() ?: 0)
+            fileElements.forEachIndexed { i, fm ->
+                builder.filenames[i] = builder.pool.add(fm.filename)
+                builder.symlinkTargets[i] = builder.pool.add(fm.symlinkTarget)
+                System.arraycopy(fm.hash, 0, builder.shaHashes, i * SHA1_SIZE, minOf(fm.hash.size, SHA1_SIZE))
+                builder.flags[i] = fm.flags.toByte()
+                fm.installTags.forEach { builder.tagIds.add(builder.pool.add(it)) }
+                builder.tagOffsets[i + 1] = builder.tagIds.size
+                fm.chunkParts.forEach { part ->
+                    builder.addPart(
+                        chunks.indexOf(packGuid(part.guid[0], part.guid[1]), packGuid(part.guid[2], part.guid[3])),
+                        part.offset,
+                        part.size,
+                    )
+                }
+                builder.endFile(i)
+                System.arraycopy(fm.hashMd5, 0, builder.md5Hashes, i * MD5_SIZE, minOf(fm.hashMd5.size, MD5_SIZE))
+                builder.mimeTypes[i] = builder.pool.add(fm.mimeType)
+                System.arraycopy(fm.hashSha256, 0, builder.sha256Hashes, i * SHA256_SIZE, minOf(fm.hashSha256.size, SHA256_SIZE))
+            }
+
+            return CompactManifest(manifest.version, manifest.meta, chunks, builder.build(), manifest.customFields)
+        }
+
+        private fun parseBody(version: Int, body: ByteArray): CompactManifest {
+            val buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN)
+
+            // Same section order as BinaryManifest: Meta, CDL, FML, CustomFields
+            val meta = ManifestMeta.read(buffer)
+            val chunks = readChunkDataList(buffer)
+            val files = readFileManifestList(buffer, chunks)
+            val customFields = CustomFields.read(buffer)
+
+            return CompactManifest(version, meta, chunks, files, customFields)
+        }
+
+        private fun readChunkDataList(buffer: ByteBuffer): CompactChunkTable {
+            val startPos = buffer.position()
+            val size = buffer.int
+            buffer.get() // version
+            val count = buffer.int
+
+            val chunks = CompactChunkTable(count)
+
+            // Columnar layout on disk maps 1:1 onto our columns
+            for (i in 0 until count) {
+                val g0 = buffer.int
+                val g1 = buffer.int
+                val g2 = buffer.int
+                val g3 = buffer.int
+                chunks.guidHi[i] = packGuid(g0, g1)
+                chunks.guidLo[i] = packGuid(g2, g3)
+            }
+            for (i in 0 until count) {
+                chunks.hashes[i] = buffer.long
+            }
+            buffer.get(chunks.shaHashes)
+            buffer.get(chunks.groupNums)
+            for (i in 0 until count) {
+                chunks.windowSizes[i] = buffer.int
+            }
+            for (i in 0 until count) {
+                chunks.fileSizes[i] = buffer.long
+            }
+
+            buffer.position(startPos + size)
+            chunks.buildIndex()
+            return chunks
+        }
+
+        private fun readFileManifestList(buffer: ByteBuffer, chunks: CompactChunkTable): CompactFileTable {
+            val startPos = buffer.position()
+            val size = buffer.int
+            val version = buffer.get().toInt()
+            val count = buffer.int
+
+            val builder = CompactFileTable.Builder(count, version)
+
+            for (i in 0 until count) {
+                builder.filenames[i] = builder.pool.add(readFString(buffer))
+            }
+            for (i in 0 until count) {
+                builder.symlinkTargets[i] = builder.pool.add(readFString(buffer))
+            }
+            buffer.get(builder.shaHashes)
+            buffer.get(builder.flags)
+            for (i in 0 until count) {
+                val tagCount = buffer.int
+                repeat(tagCount) { builder.tagIds.add(builder.pool.add(readFString(buffer))) }
+                builder.tagOffsets[i + 1] = builder.tagIds.size
+            }
+            for (i in 0 until count) {
+                val partCount = buffer.int
+                repeat(partCount) {
+                    val partStartPos = buffer.position()
+                    val partSize = buffer.int
+                    val hi = packGuid(buffer.int, buffer.int)
+                    val lo = packGuid(buffer.int, buffer.int)
+                    val offset = buffer.int
+                    val partLength = buffer.int
+                    builder.addPart(chunks.indexOf(hi, lo), offset, partLength)
+
+                    if (buffer.position() - partStartPos < partSize) {
+                        buffer.position(partStartPos + partSize)
+                    }
+                }
+                builder.endFile(i)
+            }
+
+            // Version 1+: MD5 hashes and MIME types
+            if (version >= 1) {
+                for (i in 0 until count) {
+                    if (buffer.int != 0) {
+                        buffer.get(builder.md5Hashes, i * MD5_SIZE, MD5_SIZE)
+                    }
+                }
+                for (i in 0 until count) {
+                    builder.mimeTypes[i] = builder.pool.add(readFString(buffer))
+                }
+            }
+
+            // Version 2+: SHA256 hashes
+            if (version >= 2) {
+                buffer.get(builder.sha256Hashes)
+            }
+
+            buffer.position(startPos + size)
+            return builder.build()
+        }
+    }
+}
+
+/**
+ * Chunk Data List stored as parallel primitive columns, indexed by chunk row.
+ */
+class CompactChunkTable internal constructor(val size: Int) {
+    internal val guidHi = LongArray(size)
+    internal val guidLo = LongArray(size)
+    internal val hashes = LongArray(size)
+    internal val shaHashes = ByteArray(size * SHA1_SIZE)
+    internal val groupNums = ByteArray(size)
+    internal val windowSizes = IntArray(size)
+    internal val fileSizes = LongArray(size)
+
+    private lateinit var index: GuidIndex
+
+    val indices: IntRange get() = 0 until size
+
+    internal fun buildIndex() {
+        index = GuidIndex(guidHi, guidLo, size)
+    }
+
+    operator fun get(index: Int): ChunkRef = ChunkRef(this, index)
+
+    /**
+     * Row of the chunk with the given packed GUID, or -1
+     */
+    fun indexOf(guidHi: Long, guidLo: Long): Int = index.find(guidHi, guidLo)
+
+    /**
+     * Row of the chunk with the given GUID string (as produced by [guidStr]), or -1
+     */
+    fun indexOf(guid: String): Int {
+        val parts = guid.split('-')
+        if (parts.size != 4) return -1
+        val ints = IntArray(4)
+        for (i in 0 until 4) {
+            ints[i] = parts[i].toLongOrNull(16)?.toInt() ?: return -1
+        }
+        return indexOf(packGuid(ints[0], ints[1]), packGuid(ints[2], ints[3]))
+    }
+
+    fun guidStr(index: Int): String {
+        val hi = guidHi[index]
+        val lo = guidLo[index]
+        val chars = CharArray(35)
+        appendHex(chars, 0, (hi ushr 32).toInt(), LOWER_HEX)
+        chars[8] = '-'
+        appendHex(chars, 9, hi.toInt(), LOWER_HEX)
+        chars[17] = '-'
+        appendHex(chars, 18, (lo ushr 32).toInt(), LOWER_HEX)
+        chars[26] = '-'
+        appendHex(chars, 27, lo.toInt(), LOWER_HEX)
+        return String(chars)
+    }
+
+    fun hash(index: Int): ULong = hashes[index].toULong()
+
+    fun shaHash(index: Int): ByteArray = shaHashes.copyOfRange(index * SHA1_SIZE, (index + 1) * SHA1_SIZE)
+
+    fun groupNum(index: Int): Int = groupNums[index].toInt() and 0xFF
+
+    fun windowSize(index: Int): Int = windowSizes[index]
+
+    fun fileSize(index: Int): Long = fileSizes[index]
+
+    fun totalFileSize(): Long = fileSizes.sum()
+
+    fun totalWindowSize(): Long {
+        var total = 0L
+        for (windowSize in windowSizes) total += windowSize
+        return total
+    }
+
+    /**
+     * Get the download path for a chunk, same layout as [ChunkInfo.getPath]
+     */
+    fun getPath(index: Int, chunkDir: String): String {
+        val guidHex = CharArray(32)
+        appendHex(guidHex, 0, (guidHi[index] ushr 32).toInt(), UPPER_HEX)
+        appendHex(guidHex, 8, guidHi[index].toInt(), UPPER_HEX)
+        appendHex(guidHex, 16, (guidLo[index] ushr 32).toInt(), UPPER_HEX)
+        appendHex(guidHex, 24, guidLo[index].toInt(), UPPER_HEX)
+        val hashHex = hashes[index].toULong().toString(16).uppercase().padStart(16, '0')
+        val subfolder = groupNum(index).toString().padStart(2, '0')
+        return "$chunkDir/$subfolder/${hashHex}_${String(guidHex)}.chunk"
+    }
+}
+
+/**
+ * File Manifest List stored as parallel columns. Tags and chunk parts of file `i` occupy
+ * `[offsets[i], offsets[i + 1])` of the flat tag/part columns.
+ */
+class CompactFileTable private constructor(
+    val size: Int,
+    val version: Int,
+    private val strings: Array<String>,
+    private val filenames: IntArray,
+    private val symlinkTargets: IntArray,
+    private val shaHashes: ByteArray,
+    private val flags: ByteArray,
+    private val tagOffsets: IntArray,
+    private val tagIds: IntArray,
+    private val partOffsets: IntArray,
+    private val partChunks: IntArray,
+    private val partChunkOffsets: IntArray,
+    private val partSizes: IntArray,
+    private val fileSizes: LongArray,
+    private val md5Hashes: ByteArray,
+    private val mimeTypes: IntArray,
+    private val sha256Hashes: ByteArray,
+) {
+    private val pathIndex: IntArray by lazy { buildPathIndex() }
+
+    val indices: IntRange get() = 0 until size
+
+    val totalPartCount: Int get() = partChunks.size
+
+    operator fun get(index: Int): FileRef = FileRef(this, index)
+
+    fun filename(index: Int): String = strings[filenames[index]]
+
+    fun symlinkTarget(index: Int): String = strings[symlinkTargets[index]]
+
+    fun shaHash(index: Int): ByteArray = shaHashes.copyOfRange(index * SHA1_SIZE, (index + 1) * SHA1_SIZE)
+
+    fun flags(index: Int): Int = flags[index].toInt() and 0xFF
+
+    fun fileSize(index: Int): Long = fileSizes[index]
+
+    fun totalFileSize(): Long = fileSizes.sum()
+
+    fun installTags(index: Int): List<String> =
+        (tagOffsets[index] until tagOffsets[index + 1]).map { strings[tagIds[it]] }
+
+    fun mimeType(index: Int): String = strings[mimeTypes[index]]
+
+    fun md5Hash(index: Int): ByteArray = md5Hashes.copyOfRange(index * MD5_SIZE, (index + 1) * MD5_SIZE)
+
+    fun sha256Hash(index: Int): ByteArray = sha256Hashes.copyOfRange(index * SHA256_SIZE, (index + 1) * SHA256_SIZE)
+
+    fun partCount(index: Int): Int = partOffsets[index + 1] - partOffsets[index]
+
+    /**
+     * Index of the first chunk part of a file in the flat part columns
+     */
+    fun firstPart(index: Int): Int = partOffsets[index]
+
+    /**
+     * Chunk table row referenced by a flat part index, or -1 if the GUID was not in the CDL
+     */
+    fun partChunkAt(part: Int): Int = partChunks[part]
+
+    fun partOffsetAt(part: Int): Int = partChunkOffsets[part]
+
+    fun partSizeAt(part: Int): Int = partSizes[part]
+
+    /**
+     * Row of the file with the given path, or -1
+     */
+    fun indexOf(path: String): Int {
+        val table = pathIndex
+        val mask = table.size - 1
+        var slot = mix(path.hashCode().toLong()) and mask
+        while (true) {
+            val row = table[slot]
+            if (row < 0) return -1
+            if (strings[filenames[row]] == path) return row
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun buildPathIndex(): IntArray {
+        val table = IntArray(tableCapacity(size)) { -1 }
+        val mask = table.size - 1
+        for (row in 0 until size) {
+            var slot = mix(strings[filenames[row]].hashCode().toLong()) and mask
+            while (table[slot] >= 0) slot = (slot + 1) and mask
+            table[slot] = row
+        }
+        return table
+    }
+
+    internal class Builder(private val count: Int, private val version: Int) {
+        val pool = StringPool()
+        val filenames = IntArray(count)
+        val symlinkTargets = IntArray(count)
+        val shaHashes = ByteArray(count * SHA1_SIZE)
+        val flags = ByteArray(count)
+        val tagOffsets = IntArray(count + 1)
+        val tagIds = IntList()
+        val md5Hashes = ByteArray(count * MD5_SIZE)
+        val mimeTypes = IntArray(count)
+        val sha256Hashes = ByteArray(count * SHA256_SIZE)
+
+        private val partOffsets = IntArray(count + 1)
+        private val partChunks = IntList()
+        private val partChunkOffsets = IntList()
+        private val partSizes = IntList()
+        private val fileSizes = LongArray(count)
+        private var currentFileSize = 0L
+
+        init {
+            val empty = pool.add("")
+            symlinkTargets.fill(empty)
+            mimeTypes.fill(empty)
+        }
+
+        fun addPart(chunk: Int, offset: Int, size: Int) {
+            partChunks.add(chunk)
+            partChunkOffsets.add(offset)
+            partSizes.add(size)
+            currentFileSize += size.toLong()
+        }
+
+        fun endFile(index: Int) {
+            partOffsets[index + 1] = partChunks.size
+            fileSizes[index] = currentFileSize
+            currentFileSize = 0L
+        }
+
+        fun build(): CompactFileTable = CompactFileTable(
+            size = count,
+            version = version,
+            strings = pool.toArray(),
+            filenames = filenames,
+            symlinkTargets = symlinkTargets,
+            shaHashes = shaHashes,
+            flags = flags,
+            tagOffsets = tagOffsets,
+            tagIds = tagIds.toArray(),
+            partOffsets = partOffsets,
+            partChunks = partChunks.toArray(),
+            partChunkOffsets = partChunkOffsets.toArray(),
+            partSizes = partSizes.toArray(),
+            fileSizes = fileSizes,
+            md5Hashes = md5Hashes,
+            mimeTypes = mimeTypes,
+            sha256Hashes = sha256Hashes,
+        )
+    }
+}
+
+/**
+ * Flyweight view of one chunk row. Holds no data of its own.
+ */
+class ChunkRef internal constructor(private val table: CompactChunkTable, val index: Int) {
+    val guidStr: String get() = table.guidStr(index)
+    val hash: ULong get() = table.hash(index)
+    val shaHash: ByteArray get() = table.shaHash(index)
+    val groupNum: Int get() = table.groupNum(index)
+    val windowSize: Int get() = table.windowSize(index)
+    val fileSize: Long get() = table.fileSize(index)
+
+    fun getPath(chunkDir: String): String = table.getPath(index, chunkDir)
+}
+
+/**
+ * Flyweight view of one file row. Holds no data of its own.
+ */
+class FileRef internal constructor(private val table: CompactFileTable, val index: Int) {
+    val filename: String get() = table.filename(index)
+    val symlinkTarget: String get() = table.symlinkTarget(index)
+    val flags: Int get() = table.flags(index)
+    val fileSize: Long get() = table.fileSize(index)
+    val installTags: List<String> get() = table.installTags(index)
+    val partCount: Int get() = table.partCount(index)
+
+    val isReadOnly: Boolean get() = (flags and 0x1) != 0
+    val isCompressed: Boolean get() = (flags and 0x2) != 0
+    val isExecutable: Boolean get() = (flags and 0x4) != 0
+
+    /**
+     * Chunk table row of this file's [part]-th chunk part, or -1 if the GUID was not in the CDL
+     */
+    fun partChunk(part: Int): Int = table.partChunkAt(table.firstPart(index) + part)
+
+    fun partOffset(part: Int): Int = table.partOffsetAt(table.firstPart(index) + part)
+
+    fun partSize(part: Int): Int = table.partSizeAt(table.firstPart(index) + part)
+
+    /**
+     * Materialize this row into the object model, for callers that still need a [FileManifest]
+     */
+    fun toFileManifest(chunks: CompactChunkTable): FileManifest {
+        val fm = FileManifest(
+            filename = filename,
+            symlinkTarget = symlinkTarget,
+            hash = table.shaHash(index),
+            flags = flags,
+            installTags = installTags,
+            fileSize = fileSize,
+            hashMd5 = table.md5Hash(index),
+            mimeType = table.mimeType(index),
+            hashSha256 = table.sha256Hash(index),
+        )
+        var fileOffset = 0L
+        for (part in 0 until partCount) {
+            val chunk = partChunk(part)
+            val guid = if (chunk >= 0) {
+                intArrayOf(
+                    (chunks.guidHi[chunk] ushr 32).toInt(),
+                    chunks.guidHi[chunk].toInt(),
+                    (chunks.guidLo[chunk] ushr 32).toInt(),
+                    chunks.guidLo[chunk].toInt(),
+                )
+            } else {
+                IntArray(4)
+            }
+            fm.chunkParts.add(ChunkPart(guid, partOffset(part), partSize(part), fileOffset))
+            fileOffset += partSize(part).toLong()
+        }
+        return fm
+    }
+}
+
+/**
+ * Open-addressing GUID -> chunk row index over the chunk table's own GUID columns, so the
+ * index itself is a single IntArray with no boxed keys.
+ */
+internal class GuidIndex(private val hi: LongArray, private val lo: LongArray, count: Int) {
+    private val slots = IntArray(tableCapacity(count)) { -1 }
+    private val mask = slots.size - 1
+
+    init {
+        for (row in 0 until count) {
+            var slot = mix(hi[row] * 31 + lo[row]) and mask
+            while (true) {
+                val existing = slots[slot]
+                if (existing < 0) {
+                    slots[slot] = row
+                    break
+                }
+                // Keep the first occurrence of a duplicated GUID
+                if (hi[existing] == hi[row] && lo[existing] == lo[row]) break
+                slot = (slot + 1) and mask
+            }
+        }
+    }
+
+    fun find(guidHi: Long, guidLo: Long): Int {
+        var slot = mix(guidHi * 31 + guidLo) and mask
+        while (true) {
+            val row = slots[slot]
+            if (row < 0) return -1
+            if (hi[row] == guidHi && lo[row] == guidLo) return row
+            slot = (slot + 1) and mask
+        }
+    }
+}
+
+/**
+ * Deduplicating string pool; install tags and MIME types repeat across most files.
+ */
+internal class StringPool {
+    private val ids = HashMap<String, Int>()
+    private val values = ArrayList<String>()
+
+    fun add(value: String): Int {
+        return ids.getOrPut(value) {
+            values.add(value)
+            values.size - 1
+        }
+    }
+
+    fun toArray(): Array<String> = values.toTypedArray()
+}
+
+/**
+ * Minimal growable IntArray used while the final part count is still unknown.
+ */
+internal class IntList(initialCapacity: Int = 64) {
+    private var values = IntArray(initialCapacity)
+    var size: Int = 0
+        private set
+
+    fun add(value: Int) {
+        if (size == values.size) {
+            values = values.copyOf(values.size * 2)
+        }
+        values[size++] = value
+    }
+
+    fun toArray(): IntArray = values.copyOf(size)
+}
+
+private const val SHA1_SIZE = 20
+private const val MD5_SIZE = 16
+private const val SHA256_SIZE = 32
+
+private val LOWER_HEX = "0123456789abcdef".toCharArray()
+private val UPPER_HEX = "0123456789ABCDEF".toCharArray()
+
+private fun packGuid(high: Int, low: Int): Long = (high.toLong() shl 32) or (low.toLong() and 0xFFFFFFFFL)
+
+private fun appendHex(target: CharArray, offset: Int, value: Int, digits: CharArray) {
+    for (i in 0 until 8) {
+        target[offset + i] = digits[(value ushr (28 - i * 4)) and 0xF]
+    }
+}
+
+private fun tableCapacity(count: Int): Int {
+    // Load factor <= 0.5 keeps linear probe chains short
+    return Integer.highestOneBit(maxOf(count, 1) * 2 - 1) shl 1
+}
+
+private fun mix(value: Long): Int {
+    var h = value * -0x61c8864680b583ebL
+    h = h xor (h ushr 32)
+    h *= -0x4b47d5b1e4f9a3f1L
+    return (h xor (h ushr 29)).toInt()
+}
@@ -905,7 +905,7 @@ data class CustomFields(
 /**
  * Read a variable-length string from the buffer (Epic's FString format)
  */
-private fun readFString(buffer: ByteBuffer): String {
+internal fun readFString(buffer: ByteBuffer): String {
     val length = buffer.int
 
     return when {
@@ -2,6 +2,7 @@ package app.gamenative.service.gog
 
 import android.content.Context
 import app.gamenative.data.GOGGame
+import app.gamenative.utils.ConditionalResponseCache
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import okhttp3.OkHttpClient
@@ -171,26 +172,32 @@ object GOGApiClient {
      * @param context Application context for auth access
      * @param gameId The GOG game ID
      * @param expanded List of fields to expand (defaults to downloads, description, screenshots)
+     * @param responseCache Disk cache to revalidate the response against, if any
+     * @param token Access token to use instead of looking up the stored credentials, e.g. one
+     * resolved once for many concurrent calls
      * @return Result containing ParsedGogGame with transformed details or error
      */
     suspend fun getGameById(
         context: Context,
         gameId: String,
-        expanded: List<String> = listOf("downloads", "description", "screenshots")
+        expanded: List<String> = listOf("downloads", "description", "screenshots"),
+        responseCache: ConditionalResponseCache? = null,
+        token: String? = null,
     ): Result<ParsedGogGame> = withContext(Dispatchers.IO) {
         try {
             Timber.tag("GOG").d("Fetching game details for gameId: $gameId")
 
-            // Get credentials from AuthManager
-            val credentialsResult = GOGAuthManager.getStoredCredentials(context)
-            if (credentialsResult.isFailure) {
-                val error = credentialsResult.exceptionOrNull()
-                Timber.e(error, "Cannot fetch game details: not authenticated")
-                return@withContext Result.failure(Exception("Not authenticated"))
+            // Get credentials from AuthManager, unless the caller already has
+            val accessToken = token ?: run {
+                val credentialsResult = GOGAuthManager.getStoredCredentials(context)
+                if (credentialsResult.isFailure) {
+                    val error = credentialsResult.exceptionOrNull()
+                    Timber.e(error, "Cannot fetch game details: not authenticated")
+                    return@withContext Result.failure(Exception("Not authenticated"))
+                }
+                credentialsResult.getOrNull()?.accessToken
             }
-
-            val credentials = credentialsResult.getOrNull()
-            if (credentials == null || credentials.accessToken.isEmpty()) {
+            if (accessToken.isNullOrEmpty()) {
                 Timber.e("No valid access token found")
                 return@withContext Result.failure(Exception("No valid credentials found"))
             }
@@ -205,37 +212,44 @@ object GOGApiClient {
 
             val request = Request.Builder()
                 .url(url)
-                .addHeader("Authorization", "Bearer ${credentials.accessToken}")
+                .addHeader("Authorization", "Bearer $accessToken")
                 .addHeader("User-Agent", "GameNative/1.0")
                 .get()
                 .build()
 
             Timber.tag("GOG").d("Requesting game details from: $url")
 
-            // Execute request
-            httpClient.newCall(request).execute().use { response ->
-                if (!response.isSuccessful) {
-                    val errorBody = response.body?.string() ?: "Unknown error"
-                    Timber.tag("GOG").e("Failed to fetch game details for $gameId: HTTP ${response.code} - $errorBody")
-                    return@withContext Result.failure(
-                        Exception("Failed to fetch game details: HTTP ${response.code}")
-                    )
+            // Execute request, revalidating the cached response when there is one
+            val responseBody = if (responseCache != null) {
+                responseCache.fetch(httpClient, request).getOrElse { e ->
+                    Timber.tag("GOG").e("Failed to fetch game details for $gameId: ${e.message}")
+                    return@withContext Result.failure(Exception("Failed to fetch game details: ${e.message}"))
+                }.text
+            } else {
+                httpClient.newCall(request).execute().use { response ->
+                    if (!response.isSuccessful) {
+                        val errorBody = response.body?.string() ?: "Unknown error"
+                        Timber.tag("GOG").e("Failed to fetch game details for $gameId: HTTP ${response.code} - $errorBody")
+                        return@withContext Result.failure(
+                            Exception("Failed to fetch game details: HTTP ${response.code}")
+                        )
+                    }
+                    response.body?.string() ?: ""
                 }
+            }
 
-                val responseBody = response.body?.string() ?: ""
-                if (responseBody.isBlank()) {
-                    Timber.tag("GOG").w("Empty response when fetching game details for $gameId")
-                    return@withContext Result.failure(Exception("Empty response from GOG"))
-                }
+            if (responseBody.isBlank()) {
+                Timber.tag("GOG").w("Empty response when fetching game details for $gameId")
+                return@withContext Result.failure(Exception("Empty response from GOG"))
+            }
 
-                // Parse raw GOG API response
-                val rawApiResponse = JSONObject(responseBody)
+            // Parse raw GOG API response
+            val rawApiResponse = JSONObject(responseBody)
 
-                // Transform to simplified, flattened structure
-                val transformedResponse = transformGameDetails(rawApiResponse, gameId)
+            // Transform to simplified, flattened structure
+            val transformedResponse = transformGameDetails(rawApiResponse, gameId)
 
-                return@withContext Result.success(transformedResponse)
-            }
+            return@withContext Result.success(transformedResponse)
         } catch (e: Exception) {
             Timber.tag("GOG").e(e, "Exception fetching game details for $gameId: ${e.message}")
             return@withContext Result.failure(e)
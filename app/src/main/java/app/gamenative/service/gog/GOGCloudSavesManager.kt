@@ -1,18 +1,30 @@
 package app.gamenative.service.gog
 
 import android.content.Context
+import app.gamenative.data.GOGCredentials
+import app.gamenative.utils.FileHashCache
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
+import okhttp3.MediaType
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.Request
-import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.RequestBody
 import okhttp3.OkHttpClient
+import okio.BufferedSink
 import org.json.JSONArray
 import org.json.JSONObject
 import timber.log.Timber
 import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
 import java.security.MessageDigest
 import java.time.Instant
 import java.time.ZoneOffset
@@ -23,7 +35,8 @@ import java.util.concurrent.TimeUnit
 
 
 class GOGCloudSavesManager(
-    private val context: Context
+    private val context: Context,
+    private val baseUrl: String = CLOUD_STORAGE_BASE_URL,
 ) {
 
     private val httpClient = OkHttpClient.Builder()
@@ -35,6 +48,63 @@ class GOGCloudSavesManager(
         private const val CLOUD_STORAGE_BASE_URL = "https://cloudstorage.gog.com"
         private const val USER_AGENT = "GOGGalaxyCommunicationService/2.0.13.27 (Windows_32bit) dont_sync_marker/true installation_source/gog"
         private const val DELETION_MD5 = "aadd86936a80ee8a369579c3926f1b3c"
+        private const val HASH_CACHE_DIR = "gog_save_hashes"
+        private const val BUFFER_SIZE = 64 * 1024
+
+        // Suffix of downloads in progress, which aren't saves
+        private const val PART_SUFFIX = ".part"
+
+        /** Uploads or downloads running at once per sync */
+        const val TRANSFER_PARALLELISM = 4
+
+        /**
+         * MD5 of the file's gzipped contents, as GOG's cloud storage lists it, computed while
+         * streaming rather than holding the compressed copy
+         */
+        internal fun gzipMd5(path: Path): ByteArray {
+            val digest = MessageDigest.getInstance("MD5")
+            val digestSink = object : OutputStream() {
+                override fun write(b: Int) = digest.update(b.toByte())
+
+                override fun write(b: ByteArray, off: Int, len: Int) = digest.update(b, off, len)
+            }
+            Files.newInputStream(path).use { input ->
+                GZIPOutputStream(digestSink, BUFFER_SIZE).use { gzipOut -> input.copyTo(gzipOut, BUFFER_SIZE) }
+            }
+            return digest.digest()
+        }
+
+        private fun hex(bytes: ByteArray): String = bytes.joinToString("") { "%02x".format(it) }
+    }
+
+    /**
+     * Streams a file as an upload body, hashing what is sent so the stored copy can be checked
+     * against the server's ETag
+     */
+    private class HashingFileBody(private val file: File) : RequestBody() {
+        private val length = file.length()
+
+        @Volatile
+        var md5: String? = null
+            private set
+
+        override fun contentType(): MediaType = "application/octet-stream".toMediaType()
+
+        override fun contentLength(): Long = length
+
+        override fun writeTo(sink: BufferedSink) {
+            val digest = MessageDigest.getInstance("MD5")
+            val buffer = ByteArray(BUFFER_SIZE)
+            FileInputStream(file).use { input ->
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    digest.update(buffer, 0, read)
+                    sink.write(buffer, 0, read)
+                }
+            }
+            md5 = hex(digest.digest())
+        }
     }
 
     enum class SyncAction {
@@ -55,9 +125,10 @@ class GOGCloudSavesManager(
         var updateTimestamp: Long? = null
     ) {
         /**
-         * Calculate MD5 hash and metadata for this file
+         * Calculate MD5 hash and metadata for this file, reusing the hash from [hashCache] while
+         * the file is unchanged
          */
-        suspend fun calculateMetadata() = withContext(Dispatchers.IO) {
+        suspend fun calculateMetadata(hashCache: FileHashCache? = null) = withContext(Dispatchers.IO) {
             try {
                 val file = File(absolutePath)
                 if (!file.exists() || !file.isFile) {
@@ -72,21 +143,7 @@ class GOGCloudSavesManager(
                 updateTimestamp = timestamp / 1000 // Convert to seconds
 
                 // Calculate MD5 of gzipped content (matching Python implementation)
-                FileInputStream(file).use { fis ->
-                    val digest = MessageDigest.getInstance("MD5")
-                    val buffer = java.io.ByteArrayOutputStream()
-
-                    GZIPOutputStream(buffer).use { gzipOut ->
-                        val fileBuffer = ByteArray(8192)
-                        var bytesRead: Int
-                        while (fis.read(fileBuffer).also { bytesRead = it } != -1) {
-                            gzipOut.write(fileBuffer, 0, bytesRead)
-                        }
-                    }
-
-                    md5Hash = digest.digest(buffer.toByteArray())
-                        .joinToString("") { "%02x".format(it) }
-                }
+                md5Hash = hex(hashCache?.hash(file.toPath()) ?: gzipMd5(file.toPath()))
 
                 Timber.d("Calculated metadata for $relativePath: md5=$md5Hash, timestamp=$updateTimestamp")
             } catch (e: Exception) {
@@ -152,17 +209,6 @@ class GOGCloudSavesManager(
             Timber.tag("GOG-CloudSaves").i("Last sync timestamp: $lastSyncTimestamp")
             Timber.tag("GOG-CloudSaves").i("Preferred action: $preferredAction")
 
-            // Ensure directory exists
-            val syncDir = File(localPath)
-            if (!syncDir.exists()) {
-                Timber.tag("GOG-CloudSaves").i("Creating sync directory: $localPath")
-                syncDir.mkdirs()
-            }
-
-            // Get local files
-            val localFiles = scanLocalFiles(syncDir)
-            Timber.tag("GOG-CloudSaves").i("Found ${localFiles.size} local file(s)")
-
             // Get game-specific authentication credentials
             // This exchanges the Galaxy refresh token for a game-specific access token
             val credentials = GOGAuthManager.getGameCredentials(context, clientId, clientSecret).getOrNull() ?: run {
@@ -171,171 +217,192 @@ class GOGCloudSavesManager(
             }
             Timber.tag("GOG-CloudSaves").d("Using game-specific credentials for userId: ${credentials.userId}, clientId: $clientId")
 
-            // Get cloud files using game-specific clientId in URL path
-            Timber.tag("GOG").d("[Cloud Saves] Fetching cloud file list for dirname: $dirname")
-            val cloudFiles = getCloudFiles(credentials.userId, clientId, dirname, credentials.accessToken)
-            Timber.tag("GOG").d("[Cloud Saves] Retrieved ${cloudFiles.size} total cloud files")
-            val downloadableCloud = cloudFiles.filter { !it.isDeleted }
-            Timber.tag("GOG").i("[Cloud Saves] Found ${downloadableCloud.size} downloadable cloud file(s) (excluding deleted)")
-            if (downloadableCloud.isNotEmpty()) {
-                downloadableCloud.forEach { file ->
-                    Timber.tag("GOG").d("[Cloud Saves]   - Cloud file: ${file.relativePath} (md5: ${file.md5Hash}, modified: ${file.updateTime})")
-                }
-            }
+            sync(localPath, dirname, clientId, credentials, lastSyncTimestamp, preferredAction)
+        } catch (e: Exception) {
+            Timber.tag("GOG-CloudSaves").e(e, "Sync failed: ${e.message}")
+            return@withContext 0L
+        }
+    }
 
-            // Handle simple cases first
-            when {
-                localFiles.isNotEmpty() && cloudFiles.isEmpty() -> {
-                    Timber.tag("GOG-CloudSaves").i("No files in cloud, uploading ${localFiles.size} file(s)")
-                    localFiles.forEach { file ->
-                        uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                    }
-                    return@withContext currentTimestamp()
-                }
+    /**
+     * The body of [syncSaves] once game-specific credentials are in hand
+     */
+    internal suspend fun sync(
+        localPath: String,
+        dirname: String,
+        clientId: String,
+        credentials: GOGCredentials,
+        lastSyncTimestamp: Long,
+        preferredAction: String,
+    ): Long = withContext(Dispatchers.IO) {
+        // Ensure directory exists
+        val syncDir = File(localPath)
+        if (!syncDir.exists()) {
+            Timber.tag("GOG-CloudSaves").i("Creating sync directory: $localPath")
+            syncDir.mkdirs()
+        }
 
-                localFiles.isEmpty() && downloadableCloud.isNotEmpty() -> {
-                    Timber.tag("GOG-CloudSaves").i("No files locally, downloading ${downloadableCloud.size} file(s)")
-                    downloadableCloud.forEach { file ->
-                        downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                    }
-                    return@withContext currentTimestamp()
-                }
+        // Get local files, hashing only those changed since the last sync
+        val hashCache = FileHashCache(hashCacheFile(syncDir), "gzip-MD5", ::gzipMd5)
+        val localFiles = scanLocalFiles(syncDir, hashCache)
+        hashCache.save()
+        Timber.tag("GOG-CloudSaves").i("Found ${localFiles.size} local file(s)")
+
+        // Get cloud files using game-specific clientId in URL path
+        Timber.tag("GOG").d("[Cloud Saves] Fetching cloud file list for dirname: $dirname")
+        val cloudFiles = getCloudFiles(credentials.userId, clientId, dirname, credentials.accessToken)
+        Timber.tag("GOG").d("[Cloud Saves] Retrieved ${cloudFiles.size} total cloud files")
+        val downloadableCloud = cloudFiles.filter { !it.isDeleted }
+        Timber.tag("GOG").i("[Cloud Saves] Found ${downloadableCloud.size} downloadable cloud file(s) (excluding deleted)")
+        if (downloadableCloud.isNotEmpty()) {
+            downloadableCloud.forEach { file ->
+                Timber.tag("GOG").d("[Cloud Saves]   - Cloud file: ${file.relativePath} (md5: ${file.md5Hash}, modified: ${file.updateTime})")
+            }
+        }
 
-                localFiles.isEmpty() && cloudFiles.isEmpty() -> {
-                    Timber.tag("GOG-CloudSaves").i("No files locally or in cloud, nothing to sync")
-                    return@withContext currentTimestamp()
-                }
+        // Handle simple cases first
+        when {
+            localFiles.isNotEmpty() && cloudFiles.isEmpty() -> {
+                Timber.tag("GOG-CloudSaves").i("No files in cloud, uploading ${localFiles.size} file(s)")
+                uploadAll(credentials, clientId, dirname, localFiles)
+                return@withContext currentTimestamp()
             }
 
-            // Handle preferred action
-            if (preferredAction == "download" && downloadableCloud.isNotEmpty()) {
-                Timber.tag("GOG-CloudSaves").i("Forcing download of ${downloadableCloud.size} file(s) (user requested)")
-                downloadableCloud.forEach { file ->
-                    downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                }
+            localFiles.isEmpty() && downloadableCloud.isNotEmpty() -> {
+                Timber.tag("GOG-CloudSaves").i("No files locally, downloading ${downloadableCloud.size} file(s)")
+                downloadAll(credentials, clientId, dirname, downloadableCloud, syncDir)
                 return@withContext currentTimestamp()
             }
 
-            if (preferredAction == "upload" && localFiles.isNotEmpty()) {
-                Timber.tag("GOG-CloudSaves").i("Forcing upload of ${localFiles.size} file(s) (user requested)")
-                localFiles.forEach { file ->
-                    uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                }
+            localFiles.isEmpty() && cloudFiles.isEmpty() -> {
+                Timber.tag("GOG-CloudSaves").i("No files locally or in cloud, nothing to sync")
                 return@withContext currentTimestamp()
             }
+        }
 
-            // Complex sync scenario - use classifier
-            val classifier = classifyFiles(localFiles, cloudFiles, lastSyncTimestamp)
-            when (classifier.determineAction()) {
-                SyncAction.DOWNLOAD -> {
-                    Timber.tag("GOG-CloudSaves").i("Downloading ${classifier.updatedCloud.size} updated cloud file(s)")
-                    classifier.updatedCloud.forEach { file ->
-                        downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                    }
-                    classifier.notExistingLocally.forEach { file ->
-                        if (!file.isDeleted) {
-                            downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                        }
-                    }
-                }
+        // Files whose cached hash matches the cloud's are already in sync either way
+        val identical = identicalPaths(localFiles, downloadableCloud)
+        if (identical.isNotEmpty()) {
+            Timber.tag("GOG-CloudSaves").i("${identical.size} file(s) match the cloud copy, skipping them")
+        }
 
-                SyncAction.UPLOAD -> {
-                    Timber.tag("GOG-CloudSaves").i("Uploading ${classifier.updatedLocal.size} updated local file(s)")
-                    classifier.updatedLocal.forEach { file ->
-                        uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                    }
-                    classifier.notExistingRemotely.forEach { file ->
-                        uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                    }
-                }
+        // Handle preferred action
+        if (preferredAction == "download" && downloadableCloud.isNotEmpty()) {
+            Timber.tag("GOG-CloudSaves").i("Forcing download of ${downloadableCloud.size} file(s) (user requested)")
+            downloadAll(credentials, clientId, dirname, downloadableCloud.filter { it.relativePath !in identical }, syncDir)
+            return@withContext currentTimestamp()
+        }
 
-                SyncAction.CONFLICT -> {
-                    Timber.tag("GOG-CloudSaves").w("Sync conflict detected - comparing timestamps")
-
-                    // Compare timestamps for matching files
-                    val localMap = classifier.updatedLocal.associateBy { it.relativePath }
-                    val cloudMap = classifier.updatedCloud.associateBy { it.relativePath }
-
-                    val toUpload = mutableListOf<SyncFile>()
-                    val toDownload = mutableListOf<CloudFile>()
-
-                    // Check files that exist in both and were both updated
-                    val commonPaths = localMap.keys.intersect(cloudMap.keys)
-                    commonPaths.forEach { path ->
-                        val localFile = localMap[path]!!
-                        val cloudFile = cloudMap[path]!!
-
-                        val localTime = localFile.updateTimestamp ?: 0L
-                        val cloudTime = cloudFile.updateTimestamp ?: 0L
-
-                        when {
-                            localTime > cloudTime -> {
-                                Timber.tag("GOG-CloudSaves").i("Local file is newer: $path (local: $localTime > cloud: $cloudTime)")
-                                toUpload.add(localFile)
-                            }
-                            cloudTime > localTime -> {
-                                Timber.tag("GOG-CloudSaves").i("Cloud file is newer: $path (cloud: $cloudTime > local: $localTime)")
-                                toDownload.add(cloudFile)
-                            }
-                            else -> {
-                                Timber.tag("GOG-CloudSaves").w("Files have same timestamp, skipping: $path")
-                            }
-                        }
-                    }
+        if (preferredAction == "upload" && localFiles.isNotEmpty()) {
+            Timber.tag("GOG-CloudSaves").i("Forcing upload of ${localFiles.size} file(s) (user requested)")
+            uploadAll(credentials, clientId, dirname, localFiles.filter { it.relativePath !in identical })
+            return@withContext currentTimestamp()
+        }
 
-                    // Upload files that only exist locally or are newer locally
-                    (localMap.keys - commonPaths).forEach { path ->
-                        toUpload.add(localMap[path]!!)
-                    }
+        // Complex sync scenario - use classifier
+        val classifier = classifyFiles(localFiles, cloudFiles, lastSyncTimestamp, identical)
+        when (classifier.determineAction()) {
+            SyncAction.DOWNLOAD -> {
+                Timber.tag("GOG-CloudSaves").i("Downloading ${classifier.updatedCloud.size} updated cloud file(s)")
+                downloadAll(
+                    credentials, clientId, dirname,
+                    classifier.updatedCloud + classifier.notExistingLocally.filter { !it.isDeleted },
+                    syncDir,
+                )
+            }
 
-                    // Download files that only exist in cloud or are newer in cloud
-                    (cloudMap.keys - commonPaths).forEach { path ->
-                        toDownload.add(cloudMap[path]!!)
-                    }
+            SyncAction.UPLOAD -> {
+                Timber.tag("GOG-CloudSaves").i("Uploading ${classifier.updatedLocal.size} updated local file(s)")
+                uploadAll(credentials, clientId, dirname, classifier.updatedLocal + classifier.notExistingRemotely)
+            }
 
-                    // Handle files not existing in either location
-                    toUpload.addAll(classifier.notExistingRemotely)
-                    toDownload.addAll(classifier.notExistingLocally.filter { !it.isDeleted })
+            SyncAction.CONFLICT -> {
+                Timber.tag("GOG-CloudSaves").w("Sync conflict detected - comparing timestamps")
 
-                    // Execute uploads
-                    if (toUpload.isNotEmpty()) {
-                        Timber.tag("GOG-CloudSaves").i("Uploading ${toUpload.size} file(s) based on timestamp comparison")
-                        toUpload.forEach { file ->
-                            uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                        }
-                    }
+                // Compare timestamps for matching files
+                val localMap = classifier.updatedLocal.associateBy { it.relativePath }
+                val cloudMap = classifier.updatedCloud.associateBy { it.relativePath }
+
+                val toUpload = mutableListOf<SyncFile>()
+                val toDownload = mutableListOf<CloudFile>()
+
+                // Check files that exist in both and were both updated
+                val commonPaths = localMap.keys.intersect(cloudMap.keys)
+                commonPaths.forEach { path ->
+                    val localFile = localMap[path]!!
+                    val cloudFile = cloudMap[path]!!
+
+                    val localTime = localFile.updateTimestamp ?: 0L
+                    val cloudTime = cloudFile.updateTimestamp ?: 0L
 
-                    // Execute downloads
-                    if (toDownload.isNotEmpty()) {
-                        Timber.tag("GOG-CloudSaves").i("Downloading ${toDownload.size} file(s) based on timestamp comparison")
-                        toDownload.forEach { file ->
-                            downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
+                    when {
+                        localTime > cloudTime -> {
+                            Timber.tag("GOG-CloudSaves").i("Local file is newer: $path (local: $localTime > cloud: $cloudTime)")
+                            toUpload.add(localFile)
+                        }
+                        cloudTime > localTime -> {
+                            Timber.tag("GOG-CloudSaves").i("Cloud file is newer: $path (cloud: $cloudTime > local: $localTime)")
+                            toDownload.add(cloudFile)
+                        }
+                        else -> {
+                            Timber.tag("GOG-CloudSaves").w("Files have same timestamp, skipping: $path")
                         }
                     }
                 }
-                SyncAction.NONE -> {
-                    Timber.tag("GOG-CloudSaves").i("No sync needed - files are up to date")
+
+                // Upload files that only exist locally or are newer locally
+                (localMap.keys - commonPaths).forEach { path ->
+                    toUpload.add(localMap[path]!!)
+                }
+
+                // Download files that only exist in cloud or are newer in cloud
+                (cloudMap.keys - commonPaths).forEach { path ->
+                    toDownload.add(cloudMap[path]!!)
                 }
-            }
 
-            Timber.tag("GOG-CloudSaves").i("Sync completed successfully")
-            return@withContext currentTimestamp()
+                // Handle files not existing in either location
+                toUpload.addAll(classifier.notExistingRemotely)
+                toDownload.addAll(classifier.notExistingLocally.filter { !it.isDeleted })
 
-        } catch (e: Exception) {
-            Timber.tag("GOG-CloudSaves").e(e, "Sync failed: ${e.message}")
-            return@withContext 0L
+                // Execute uploads
+                if (toUpload.isNotEmpty()) {
+                    Timber.tag("GOG-CloudSaves").i("Uploading ${toUpload.size} file(s) based on timestamp comparison")
+                    uploadAll(credentials, clientId, dirname, toUpload)
+                }
+
+                // Execute downloads
+                if (toDownload.isNotEmpty()) {
+                    Timber.tag("GOG-CloudSaves").i("Downloading ${toDownload.size} file(s) based on timestamp comparison")
+                    downloadAll(credentials, clientId, dirname, toDownload, syncDir)
+                }
+            }
+            SyncAction.NONE -> {
+                Timber.tag("GOG-CloudSaves").i("No sync needed - files are up to date")
+            }
         }
+
+        Timber.tag("GOG-CloudSaves").i("Sync completed successfully")
+        return@withContext currentTimestamp()
+    }
+
+    /**
+     * Where hashes of the save files in [syncDir] are kept between syncs
+     */
+    private fun hashCacheFile(syncDir: File): File {
+        val key = MessageDigest.getInstance("SHA-1").digest(syncDir.absolutePath.toByteArray())
+        return File(File(context.cacheDir, HASH_CACHE_DIR), hex(key))
     }
 
     /**
      * Scan local directory for save files
      */
-    private suspend fun scanLocalFiles(directory: File): List<SyncFile> = withContext(Dispatchers.IO) {
+    private suspend fun scanLocalFiles(directory: File, hashCache: FileHashCache): List<SyncFile> = withContext(Dispatchers.IO) {
         val files = mutableListOf<SyncFile>()
 
         fun scanRecursive(dir: File, basePath: String) {
             dir.listFiles()?.forEach { file ->
                 if (file.isFile) {
+                    if (file.name.endsWith(PART_SUFFIX)) return@forEach
                     val relativePath = file.absolutePath.removePrefix(basePath)
                         .removePrefix("/")
                         .replace("\\", "/")
@@ -348,12 +415,56 @@ class GOGCloudSavesManager(
 
         scanRecursive(directory, directory.absolutePath)
 
-        // Calculate metadata for all files
-        files.forEach { it.calculateMetadata() }
+        // Calculate metadata for all files, a few at a time
+        val permits = Semaphore(TRANSFER_PARALLELISM)
+        files.map { file -> async { permits.withPermit { file.calculateMetadata(hashCache) } } }.awaitAll()
 
         files
     }
 
+    /**
+     * Paths whose local hash matches the cloud copy's
+     */
+    private fun identicalPaths(localFiles: List<SyncFile>, cloudFiles: List<CloudFile>): Set<String> {
+        val cloudHashes = cloudFiles.associate { it.relativePath to it.md5Hash }
+        return localFiles
+            .filter { it.md5Hash != null && cloudHashes[it.relativePath] == it.md5Hash }
+            .mapTo(HashSet()) { it.relativePath }
+    }
+
+    /**
+     * Uploads [files] at most [TRANSFER_PARALLELISM] at a time
+     */
+    private suspend fun uploadAll(credentials: GOGCredentials, clientId: String, dirname: String, files: List<SyncFile>) {
+        val unique = files.distinctBy { it.relativePath }
+        val uploaded = transferAll(unique) { file ->
+            uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
+        }
+        Timber.tag("GOG-CloudSaves").i("Uploaded $uploaded of ${unique.size} file(s)")
+    }
+
+    /**
+     * Downloads [files] into [syncDir] at most [TRANSFER_PARALLELISM] at a time
+     */
+    private suspend fun downloadAll(
+        credentials: GOGCredentials,
+        clientId: String,
+        dirname: String,
+        files: List<CloudFile>,
+        syncDir: File,
+    ) {
+        val unique = files.distinctBy { it.relativePath }
+        val downloaded = transferAll(unique) { file ->
+            downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
+        }
+        Timber.tag("GOG-CloudSaves").i("Downloaded $downloaded of ${unique.size} file(s)")
+    }
+
+    private suspend fun <T> transferAll(items: List<T>, transfer: suspend (T) -> Boolean): Int = coroutineScope {
+        val permits = Semaphore(TRANSFER_PARALLELISM)
+        items.map { item -> async(Dispatchers.IO) { permits.withPermit { transfer(item) } } }.awaitAll().count { it }
+    }
+
     /**
      * Get cloud files list from GOG API
      */
@@ -365,7 +476,7 @@ class GOGCloudSavesManager(
     ): List<CloudFile> = withContext(Dispatchers.IO) {
         try {
             // List all files (don't include dirname in URL - it's used as a prefix filter)
-            val url = "$CLOUD_STORAGE_BASE_URL/v1/$userId/$clientId"
+            val url = "$baseUrl/v1/$userId/$clientId"
             Timber.tag("GOG").d("[Cloud Saves] API Request: GET $url (dirname filter: $dirname)")
 
             val request = Request.Builder()
@@ -446,16 +557,16 @@ class GOGCloudSavesManager(
         dirname: String,
         file: SyncFile,
         authToken: String
-    ) = withContext(Dispatchers.IO) {
+    ): Boolean = withContext(Dispatchers.IO) {
         try {
             val localFile = File(file.absolutePath)
             val fileSize = localFile.length()
 
             Timber.tag("GOG-CloudSaves").i("Uploading: ${file.relativePath} (${fileSize} bytes)")
 
-            val url = "$CLOUD_STORAGE_BASE_URL/v1/$userId/$clientId/$dirname/${file.relativePath}"
+            val url = "$baseUrl/v1/$userId/$clientId/$dirname/${file.relativePath}"
 
-            val requestBody = localFile.readBytes().toRequestBody("application/octet-stream".toMediaType())
+            val requestBody = HashingFileBody(localFile)
 
             val requestBuilder = Request.Builder()
                 .url(url)
@@ -472,17 +583,26 @@ class GOGCloudSavesManager(
 
             val response = httpClient.newCall(requestBuilder.build()).execute()
             response.use {
-                if (response.isSuccessful) {
-                    Timber.tag("GOG-CloudSaves").i("Successfully uploaded: ${file.relativePath}")
-                } else {
+                if (!response.isSuccessful) {
                     val errorBody = response.body?.string() ?: "No response body"
                     Timber.tag("GOG-CloudSaves").e("Failed to upload ${file.relativePath}: HTTP ${response.code}")
                     Timber.tag("GOG-CloudSaves").e("Upload error body: $errorBody")
+                    return@withContext false
+                }
+
+                // The storage answers with the MD5 of what it stored
+                val etag = response.header("ETag")?.trim('"')
+                if (etag != null && etag.length == 32 && !etag.equals(requestBody.md5, ignoreCase = true)) {
+                    Timber.tag("GOG-CloudSaves").e("Upload of ${file.relativePath} stored as $etag, sent ${requestBody.md5}")
+                    return@withContext false
                 }
+                Timber.tag("GOG-CloudSaves").i("Successfully uploaded: ${file.relativePath}")
+                true
             }
 
         } catch (e: Exception) {
             Timber.tag("GOG-CloudSaves").e(e, "Failed to upload ${file.relativePath}")
+            false
         }
     }
 
@@ -496,11 +616,11 @@ class GOGCloudSavesManager(
         file: CloudFile,
         syncDir: File,
         authToken: String
-    ) = withContext(Dispatchers.IO) {
+    ): Boolean = withContext(Dispatchers.IO) {
         try {
             Timber.tag("GOG-CloudSaves").i("Downloading: ${file.relativePath}")
 
-            val url = "$CLOUD_STORAGE_BASE_URL/v1/$userId/$clientId/$dirname/${file.relativePath}"
+            val url = "$baseUrl/v1/$userId/$clientId/$dirname/${file.relativePath}"
 
             val request = Request.Builder()
                 .url(url)
@@ -515,19 +635,31 @@ class GOGCloudSavesManager(
                     val errorBody = response.body?.string() ?: "No response body"
                     Timber.tag("GOG-CloudSaves").e("Failed to download ${file.relativePath}: HTTP ${response.code}")
                     Timber.tag("GOG-CloudSaves").e("Download error body: $errorBody")
-                    return@withContext
+                    return@withContext false
                 }
 
-                val bytes = response.body?.bytes() ?: return@withContext
-                Timber.tag("GOG-CloudSaves").d("Downloaded ${bytes.size} bytes for ${file.relativePath}")
+                val body = response.body ?: return@withContext false
 
-                // Save to local file
+                // Stream into a temporary file next to the save, then swap it in
                 val localFile = File(syncDir, file.relativePath)
                 localFile.parentFile?.mkdirs()
+                val partFile = File(localFile.parentFile, localFile.name + PART_SUFFIX)
 
-                FileOutputStream(localFile).use { fos ->
-                    fos.write(bytes)
+                val bytes = try {
+                    FileOutputStream(partFile).use { fos ->
+                        body.byteStream().use { it.copyTo(fos, BUFFER_SIZE) }
+                    }
+                } catch (e: Exception) {
+                    // Otherwise the next sync would find it and upload it as a save
+                    partFile.delete()
+                    throw e
+                }
+                if (!partFile.renameTo(localFile)) {
+                    partFile.delete()
+                    Timber.tag("GOG-CloudSaves").e("Failed to replace ${localFile.absolutePath}")
+                    return@withContext false
                 }
+                Timber.tag("GOG-CloudSaves").d("Downloaded $bytes bytes for ${file.relativePath}")
 
                 // Preserve timestamp if available
                 file.updateTimestamp?.let { timestamp ->
@@ -535,10 +667,12 @@ class GOGCloudSavesManager(
                 }
 
                 Timber.tag("GOG-CloudSaves").i("Successfully downloaded: ${file.relativePath}")
+                true
             }
 
         } catch (e: Exception) {
             Timber.tag("GOG-CloudSaves").e(e, "Failed to download ${file.relativePath}")
+            false
         }
     }
 
@@ -548,7 +682,8 @@ class GOGCloudSavesManager(
     private fun classifyFiles(
         localFiles: List<SyncFile>,
         cloudFiles: List<CloudFile>,
-        timestamp: Long
+        timestamp: Long,
+        identical: Set<String> = emptySet(),
     ): SyncClassifier {
         val updatedLocal = mutableListOf<SyncFile>()
         val updatedCloud = mutableListOf<CloudFile>()
@@ -558,8 +693,9 @@ class GOGCloudSavesManager(
         val localPaths = localFiles.map { it.relativePath }.toSet()
         val cloudPaths = cloudFiles.map { it.relativePath }.toSet()
 
-        // Check local files
+        // Check local files; those with the same hash as the cloud copy need nothing
         localFiles.forEach { file ->
+            if (file.relativePath in identical) return@forEach
             if (file.relativePath !in cloudPaths) {
                 notExistingRemotely.add(file)
             }
@@ -571,7 +707,7 @@ class GOGCloudSavesManager(
 
         // Check cloud files
         cloudFiles.forEach { file ->
-            if (file.isDeleted) return@forEach
+            if (file.isDeleted || file.relativePath in identical) return@forEach
 
             if (file.relativePath !in localPaths) {
                 notExistingLocally.add(file)
@@ -2,11 +2,15 @@ package app.gamenative.service.gog
 
 import android.content.Context
 import app.gamenative.data.DownloadInfo
+import app.gamenative.service.DownloadGovernor
 import app.gamenative.service.gog.api.DepotFile
 import app.gamenative.service.gog.api.FileChunk
 import app.gamenative.service.gog.api.GOGApiClient
 import app.gamenative.service.gog.api.GOGManifestParser
+import app.gamenative.utils.CdnSelector
+import app.gamenative.utils.InstallFileIndex
 import app.gamenative.utils.Net
+import app.gamenative.utils.awaitResponse
 import dagger.hilt.android.qualifiers.ApplicationContext
 import java.io.ByteArrayOutputStream
 import java.io.File
@@ -18,6 +22,8 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.withContext
+import okhttp3.Dispatcher
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
 import okhttp3.Request
 import timber.log.Timber
 
@@ -50,9 +56,15 @@ class GOGDownloadManager @Inject constructor(
     private val parser: GOGManifestParser,
     private val gogManager: GOGManager,
     @ApplicationContext private val context: Context,
+    private val cdnSelector: CdnSelector,
+    private val downloadGovernor: DownloadGovernor,
 ) {
     private val WINDOWS_OS_VERSION = "windows"
-    private val httpClient = Net.http
+
+    // Parallel chunks plus hedged duplicates can exceed OkHttp's default of 5 per host
+    private val httpClient = Net.http.newBuilder()
+        .dispatcher(Dispatcher().apply { maxRequestsPerHost = MAX_PARALLEL_DOWNLOADS * 2 })
+        .build()
 
     /**
      * Context needed to refresh secure CDN links when they expire
@@ -91,6 +103,7 @@ class GOGDownloadManager @Inject constructor(
         withDlcs: Boolean = false,
         supportDir: File? = null,
     ): Result<Unit> = withContext(Dispatchers.IO) {
+        val governorHandle = downloadGovernor.register("gog:$gameId")
         try {
             Timber.tag("GOG").i("Starting download for game $gameId to ${installPath.absolutePath}")
 
@@ -313,7 +326,7 @@ class GOGDownloadManager @Inject constructor(
             }
 
             // Build chunk URL map using the correct product URL for each chunk
-            val chunkUrlMap = parser.buildChunkUrlMapWithProducts(chunkHashes, chunkToProductMap, productUrlMap)
+            val chunkUrlMap = parser.buildChunkUrlsWithProducts(chunkHashes, chunkToProductMap, productUrlMap)
 
             // Store context for refreshing secure links if they expire
             val secureLinkContext = SecureLinkContext(
@@ -338,6 +351,7 @@ class GOGDownloadManager @Inject constructor(
                 chunkHashes = chunkHashes,
                 secureLinkContext = secureLinkContext,
                 chunkToProductMap = chunkToProductMap,
+                governorHandle = governorHandle,
             )
 
             if (downloadResult.isFailure) {
@@ -361,7 +375,7 @@ class GOGDownloadManager @Inject constructor(
                 downloadInfo.updateStatusMessage("Downloading dependencies...")
                 supportDir.mkdirs()
 
-                val dependencyResult = downloadDependencies(gameId, dependencies, installPath, supportDir, downloadInfo)
+                val dependencyResult = downloadDependencies(gameId, dependencies, installPath, supportDir, downloadInfo, governorHandle)
                 if (dependencyResult.isFailure){
                     Timber.tag("GOG").w("Failed to install Dependencies: ${dependencyResult.exceptionOrNull()?.message}")
                 }
@@ -377,7 +391,7 @@ class GOGDownloadManager @Inject constructor(
                 val game = gogManager.getGameFromDbById(gameId)
                 if (game != null) {
                     // Use installPath directly since it already includes the game-specific folder
-                    val installSize = calculateDirectorySize(installPath)
+                    val installSize = InstallFileIndex.of(installPath, statFiles = true).totalSize
                     val updatedGame = game.copy(
                         isInstalled = true,
                         installPath = installPath.absolutePath,
@@ -419,13 +433,15 @@ class GOGDownloadManager @Inject constructor(
             )
 
             Result.failure(e)
+        } finally {
+            governorHandle.close()
         }
     }
 
     /**
      * Download all chunks from CDN with parallel execution
      *
-     * @param chunkUrlMap Map of chunk MD5 hash to secure CDN URL
+     * @param chunkUrlMap Map of chunk MD5 hash to candidate secure CDN URLs
      * @param chunkCacheDir Directory to cache downloaded chunks
      * @param downloadInfo Progress tracker
      * @param chunkHashes List of all chunk hashes needed
@@ -433,12 +449,13 @@ class GOGDownloadManager @Inject constructor(
      * @param chunkToProductMap Map of chunk MD5 hash to product ID for debugging
      */
     private suspend fun downloadChunks(
-        chunkUrlMap: Map<String, String>,
+        chunkUrlMap: Map<String, List<String>>,
         chunkCacheDir: File,
         downloadInfo: DownloadInfo,
         chunkHashes: List<String>,
         secureLinkContext: SecureLinkContext,
         chunkToProductMap: Map<String, String>,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             var currentChunkUrlMap = chunkUrlMap
@@ -464,10 +481,10 @@ class GOGDownloadManager @Inject constructor(
                 val results = chunkBatch.map { (chunkMd5, _) ->
                     async {
                         // Use current URL map in case it was refreshed
-                        val url = currentChunkUrlMap[chunkMd5] ?: return@async Result.failure<File>(
+                        val urls = currentChunkUrlMap[chunkMd5] ?: return@async Result.failure<File>(
                             Exception("No URL found for chunk $chunkMd5"),
                         )
-                        downloadChunkWithRetry(chunkMd5, url, chunkCacheDir, downloadInfo)
+                        downloadChunkWithRetry(chunkMd5, urls, chunkCacheDir, downloadInfo, governorHandle)
                     }
                 }.awaitAll()
 
@@ -496,10 +513,10 @@ class GOGDownloadManager @Inject constructor(
                         // Retry the failed chunks with new URLs
                         val retryResults = chunkBatch.map { (chunkMd5, _) ->
                             async {
-                                val url = currentChunkUrlMap[chunkMd5] ?: return@async Result.failure<File>(
+                                val urls = currentChunkUrlMap[chunkMd5] ?: return@async Result.failure<File>(
                                     Exception("No URL found for chunk $chunkMd5 after refresh"),
                                 )
-                                downloadChunkWithRetry(chunkMd5, url, chunkCacheDir, downloadInfo)
+                                downloadChunkWithRetry(chunkMd5, urls, chunkCacheDir, downloadInfo, governorHandle)
                             }
                         }.awaitAll()
 
@@ -535,6 +552,7 @@ class GOGDownloadManager @Inject constructor(
                 Timber.tag("GOG").d("Progress: ${(progress * 100).toInt()}% ($downloadedChunks/$totalChunks chunks)")
             }
 
+            cdnSelector.persist()
             Timber.tag("GOG").i("All $totalChunks chunks downloaded successfully")
             Result.success(Unit)
         } catch (e: Exception) {
@@ -554,7 +572,8 @@ class GOGDownloadManager @Inject constructor(
         dependencies: List<String>,
         gameDir: File,
         supportDir: File,
-        downloadInfo: DownloadInfo
+        downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             if (dependencies.isEmpty()) {
@@ -656,7 +675,7 @@ class GOGDownloadManager @Inject constructor(
                 depotCacheDir.mkdirs()
 
                 // Download chunks
-                val downloadResult = downloadChunksSimple(chunkUrlMap, depotCacheDir, downloadInfo)
+                val downloadResult = downloadChunksSimple(chunkUrlMap, depotCacheDir, downloadInfo, governorHandle)
                 if (downloadResult.isFailure) {
                     Timber.tag("GOG").w("Failed to download chunks for ${depot.readableName}: ${downloadResult.exceptionOrNull()?.message}")
                     continue
@@ -702,13 +721,13 @@ class GOGDownloadManager @Inject constructor(
     }
 
     /**
-     * Build chunk URL map using base URLs
+     * Build chunk URL map using base URLs, keeping every base URL as a candidate
      */
-    private fun buildChunkUrlMap(chunkHashes: List<String>, baseUrls: List<String>): Map<String, String> {
-        val chunkUrlMap = mutableMapOf<String, String>()
-        val baseUrl = baseUrls.firstOrNull() ?: return emptyMap()
-        // Ensure base URL ends with / for proper concatenation
-        val normalizedBaseUrl = if (baseUrl.endsWith("/")) baseUrl else "$baseUrl/"
+    private fun buildChunkUrlMap(chunkHashes: List<String>, baseUrls: List<String>): Map<String, List<String>> {
+        val chunkUrlMap = mutableMapOf<String, List<String>>()
+        if (baseUrls.isEmpty()) return emptyMap()
+        // Ensure base URLs end with / for proper concatenation
+        val normalizedBaseUrls = baseUrls.map { baseUrl -> if (baseUrl.endsWith("/")) baseUrl else "$baseUrl/" }
 
         chunkHashes.forEach { hash ->
             // Build GOG Galaxy path format: AA/BB/CCDD...
@@ -717,7 +736,7 @@ class GOGDownloadManager @Inject constructor(
             } else {
                 hash
             }
-            chunkUrlMap[hash] = "$normalizedBaseUrl$galaxyPath"
+            chunkUrlMap[hash] = normalizedBaseUrls.map { "$it$galaxyPath" }
         }
 
         return chunkUrlMap
@@ -728,18 +747,19 @@ class GOGDownloadManager @Inject constructor(
      * Used for dependencies which use open links
      */
     private suspend fun downloadChunksSimple(
-        chunkUrlMap: Map<String, String>,
+        chunkUrlMap: Map<String, List<String>>,
         chunkCacheDir: File,
         downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             val chunks = chunkUrlMap.entries.toList()
 
             // Download in batches
             chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
-                val results = chunkBatch.map { (chunkMd5, url) ->
+                val results = chunkBatch.map { (chunkMd5, urls) ->
                     async {
-                        downloadChunk(chunkMd5, url, chunkCacheDir, downloadInfo)
+                        downloadChunk(chunkMd5, urls, chunkCacheDir, downloadInfo, governorHandle)
                     }
                 }.awaitAll()
 
@@ -768,7 +788,7 @@ class GOGDownloadManager @Inject constructor(
     private suspend fun refreshSecureLinks(
         context: SecureLinkContext,
         chunkHashes: List<String>,
-    ): Result<Map<String, String>> = withContext(Dispatchers.IO) {
+    ): Result<Map<String, List<String>>> = withContext(Dispatchers.IO) {
         try {
             val productUrlMap = mutableMapOf<String, List<String>>()
 
@@ -791,7 +811,7 @@ class GOGDownloadManager @Inject constructor(
             Timber.tag("GOG").d("Refreshed secure links for ${productUrlMap.size} product(s)")
 
             // Rebuild chunk URL map with new secure links
-            val newChunkUrlMap = parser.buildChunkUrlMapWithProducts(chunkHashes, context.chunkToProductMap, productUrlMap)
+            val newChunkUrlMap = parser.buildChunkUrlsWithProducts(chunkHashes, context.chunkToProductMap, productUrlMap)
             Result.success(newChunkUrlMap)
         } catch (e: Exception) {
             Timber.tag("GOG").e(e, "Failed to refresh secure links")
@@ -803,20 +823,22 @@ class GOGDownloadManager @Inject constructor(
      * Download a single chunk with retry logic
      *
      * @param chunkMd5 Compressed MD5 hash (chunk identifier)
-     * @param url Secure CDN URL (time-limited)
+     * @param urls Candidate secure CDN URLs (time-limited)
      * @param chunkCacheDir Cache directory
      * @param downloadInfo Progress tracker
+     * @param governorHandle Share of the global download budget this chunk counts against
      */
     private suspend fun downloadChunkWithRetry(
         chunkMd5: String,
-        url: String,
+        urls: List<String>,
         chunkCacheDir: File,
         downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<File> = withContext(Dispatchers.IO) {
         var lastException: Exception? = null
 
         repeat(MAX_CHUNK_RETRIES) { attempt ->
-            val result = downloadChunk(chunkMd5, url, chunkCacheDir, downloadInfo)
+            val result = downloadChunk(chunkMd5, urls, chunkCacheDir, downloadInfo, governorHandle)
 
             if (result.isSuccess) {
                 if (attempt > 0) {
@@ -839,18 +861,20 @@ class GOGDownloadManager @Inject constructor(
     }
 
     /**
-     * Download a single chunk from GOG CDN
+     * Download a single chunk from GOG CDN, letting [CdnSelector] pick and hedge between hosts
      *
      * @param chunkMd5 Compressed MD5 hash (chunk identifier)
-     * @param url Secure CDN URL (time-limited)
+     * @param urls Candidate secure CDN URLs (time-limited)
      * @param chunkCacheDir Cache directory
      * @param downloadInfo Progress tracker
+     * @param governorHandle Share of the global download budget this chunk counts against
      */
     private suspend fun downloadChunk(
         chunkMd5: String,
-        url: String,
+        urls: List<String>,
         chunkCacheDir: File,
         downloadInfo: DownloadInfo,
+        governorHandle: DownloadGovernor.Handle,
     ): Result<File> = withContext(Dispatchers.IO) {
         try {
             val chunkFile = File(chunkCacheDir, "$chunkMd5.chunk")
@@ -867,39 +891,43 @@ class GOGDownloadManager @Inject constructor(
                 }
             }
 
-            // Download compressed chunk
-            Timber.tag("GOG").d("Downloading chunk $chunkMd5 from: $url")
-
-            val request = Request.Builder()
-                .url(url)
-                .header("User-Agent", "GOG Galaxy")
-                .build()
-
-            httpClient.newCall(request).execute().use { response ->
-                if (!response.isSuccessful) {
-                    Timber.tag("GOG").e("HTTP ${response.code} for chunk $chunkMd5 from URL: $url")
-                    return@withContext Result.failure(
-                        HttpStatusException(response.code, "HTTP ${response.code} downloading chunk $chunkMd5")
-                    )
-                }
-
-                val compressedBytes = response.body?.bytes()
-                    ?: return@withContext Result.failure(Exception("Empty response for chunk $chunkMd5"))
+            // Download compressed chunk from the healthiest CDN host. The connection slot and the
+            // rate-limit wait are taken outside the race, so governor queueing isn't scored or hedged.
+            val compressedBytes = downloadGovernor.withConnection(governorHandle) {
+                cdnSelector.fetch(
+                    candidates = urls,
+                    hostOf = { url -> url.toHttpUrlOrNull()?.host ?: url },
+                    sizeOf = { it.size.toLong() },
+                ) { url ->
+                    Timber.tag("GOG").d("Downloading chunk $chunkMd5 from: $url")
+
+                    val request = Request.Builder()
+                        .url(url)
+                        .header("User-Agent", "GOG Galaxy")
+                        .build()
+
+                    val bytes = httpClient.newCall(request).awaitResponse { response ->
+                        if (!response.isSuccessful) {
+                            Timber.tag("GOG").e("HTTP ${response.code} for chunk $chunkMd5 from URL: $url")
+                            throw HttpStatusException(response.code, "HTTP ${response.code} downloading chunk $chunkMd5")
+                        }
+                        response.body?.bytes() ?: throw Exception("Empty response for chunk $chunkMd5")
+                    }
 
-                // Verify compressed MD5
-                val actualMd5 = calculateMd5(compressedBytes)
-                if (actualMd5 != chunkMd5) {
-                    return@withContext Result.failure(
-                        Exception("Compressed MD5 mismatch for chunk: expected $chunkMd5, got $actualMd5"),
-                    )
-                }
+                    // Verify compressed MD5 so a corrupting host is scored as failing
+                    val actualMd5 = calculateMd5(bytes)
+                    if (actualMd5 != chunkMd5) {
+                        throw Exception("Compressed MD5 mismatch for chunk: expected $chunkMd5, got $actualMd5")
+                    }
+                    bytes
+                }.also { downloadGovernor.acquireBandwidth(governorHandle, it.size.toLong()) }
+            }
 
-                // Save compressed chunk (will decompress during assembly)
-                chunkFile.writeBytes(compressedBytes)
-                downloadInfo.updateBytesDownloaded(compressedBytes.size.toLong())
+            // Save compressed chunk (will decompress during assembly)
+            chunkFile.writeBytes(compressedBytes)
+            downloadInfo.updateBytesDownloaded(compressedBytes.size.toLong())
 
-                Result.success(chunkFile)
-            }
+            Result.success(chunkFile)
         } catch (e: Exception) {
             Timber.tag("GOG").e(e, "Failed to download chunk $chunkMd5")
             Result.failure(e)
@@ -1103,31 +1131,4 @@ class GOGDownloadManager @Inject constructor(
         }
         return digest.digest().joinToString("") { "%02x".format(it) }
     }
-
-    /**
-     * Calculate the total size of a directory recursively
-     *
-     * @param directory The directory to calculate size for
-     * @return Total size in bytes
-     */
-    private fun calculateDirectorySize(directory: File): Long {
-        var size = 0L
-        try {
-            if (!directory.exists() || !directory.isDirectory) {
-                return 0L
-            }
-
-            val files = directory.listFiles() ?: return 0L
-            for (file in files) {
-                size += if (file.isDirectory) {
-                    calculateDirectorySize(file)
-                } else {
-                    file.length()
-                }
-            }
-        } catch (e: Exception) {
-            Timber.tag("GOG").w(e, "Error calculating directory size for ${directory.name}")
-        }
-        return size
-    }
 }
@@ -20,8 +20,10 @@ import app.gamenative.enums.OS
 import app.gamenative.enums.PathType
 import app.gamenative.enums.ReleaseState
 import app.gamenative.enums.SyncResult
+import app.gamenative.service.LibraryDetailRefresher
+import app.gamenative.utils.ConditionalResponseCache
 import app.gamenative.utils.ContainerUtils
-import app.gamenative.utils.FileUtils
+import app.gamenative.utils.InstallFileIndex
 import app.gamenative.utils.MarkerUtils
 import app.gamenative.utils.Net
 import app.gamenative.utils.StorageUtils
@@ -38,6 +40,7 @@ import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
@@ -82,7 +85,9 @@ class GOGManager @Inject constructor(
 
     // Thread-safe cache for download sizes
     private val downloadSizeCache = ConcurrentHashMap<String, String>()
-    private val REFRESH_BATCH_SIZE = 10
+
+    // Product detail responses kept for revalidation, under the app's cache dir
+    private val DETAILS_CACHE_DIR = "gog_product_details"
 
     // Cache for remote config API responses (clientId -> save locations)
     // This avoids fetching the same config multiple times
@@ -217,44 +222,42 @@ class GOGManager @Inject constructor(
                 return@withContext Result.success(0)
             }
 
-            var totalProcessed = 0
-
             Timber.tag("GOG").d("Getting Game Details for ${newGameIds.size} new GOG Games...")
 
-            val games = mutableListOf<GOGGame>()
-
-            // Use direct HTTP calls via GOGApiClient
-            for ((index, id) in newGameIds.withIndex()) {
-                try {
-                    // Fetch game details using direct HTTP call
-                    val result = GOGApiClient.getGameById(context, id)
-
-                    if (result.isSuccess) {
-                        val gameDetails = result.getOrNull()
-                        if (gameDetails != null) {
-                            Timber.tag("GOG").d("Got Game Details for ID: $id")
-                            val game = parseGameObject(gameDetails)
+            // Details stream into the db in batches while the rest are still being fetched, so the
+            // library fills in progressively. Responses are kept on disk and revalidated with their
+            // ETag, so a refresh after the db was cleared mostly costs 304s.
+            val responseCache = ConditionalResponseCache(File(context.cacheDir, DETAILS_CACHE_DIR))
+            // Read once: an expired token makes getStoredCredentials refresh it and rewrite auth.json,
+            // which the parallel detail fetches would otherwise all do at the same time
+            val accessToken = GOGAuthManager.getStoredCredentials(context).getOrNull()?.accessToken
+            if (accessToken.isNullOrEmpty()) {
+                return@withContext Result.failure(Exception("No valid credentials found"))
+            }
+            val totalProcessed = LibraryDetailRefresher.refresh(
+                keys = newGameIds,
+                fetch = { id ->
+                    try {
+                        val result = GOGApiClient.getGameById(context, id, responseCache = responseCache, token = accessToken)
+                        result.getOrNull()?.let { parseGameObject(it) }.also { game ->
                             if (game != null) {
-                                games.add(game)
                                 Timber.tag("GOG").d("Refreshed Game: ${game.title}")
-                                totalProcessed++
+                            } else {
+                                Timber.w("GOG game ID $id not found in library after refresh")
                             }
                         }
-                    } else {
-                        Timber.w("GOG game ID $id not found in library after refresh")
-                    }
-                } catch (e: Exception) {
-                    Timber.e(e, "Failed to parse game details for ID: $id")
-                }
-
-                if ((index + 1) % REFRESH_BATCH_SIZE == 0 || index == newGameIds.size - 1) {
-                    if (games.isNotEmpty()) {
-                        gogGameDao.upsertPreservingInstallStatus(games)
-                        Timber.tag("GOG").d("Batch inserted ${games.size} games (processed ${index + 1}/${newGameIds.size})")
-                        games.clear()
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        Timber.e(e, "Failed to parse game details for ID: $id")
+                        null
                     }
-                }
-            }
+                },
+                upsert = { games ->
+                    gogGameDao.upsertPreservingInstallStatus(games)
+                    Timber.tag("GOG").d("Batch inserted ${games.size} games")
+                },
+            )
             val detectedCount = detectAndUpdateExistingInstallations()
             if (detectedCount > 0) {
                 Timber.d("Detected and updated $detectedCount existing installations")
@@ -388,7 +391,7 @@ class GOGManager @Inject constructor(
                 if (gameId.isNotEmpty()) {
                     val game = getGameFromDbById(gameId)
                     if (game != null) {
-                        val installSize = FileUtils.calculateDirectorySize(installDir)
+                        val installSize = InstallFileIndex.of(installDir).totalSize
                         return game.copy(
                             isInstalled = true,
                             installPath = installDir.absolutePath,
@@ -414,7 +417,7 @@ class GOGManager @Inject constructor(
                 } == true
 
                 if (hasContent) {
-                    val installSize = FileUtils.calculateDirectorySize(installDir)
+                    val installSize = InstallFileIndex.of(installDir).totalSize
                     Timber.d("Matched directory '$dirName' to game '${game.title}'")
                     return game.copy(
                         isInstalled = true,
@@ -611,38 +614,25 @@ class GOGManager @Inject constructor(
         return ""
     }
 
-    private fun findGOGInfoFile(directory: File, gameId: String? = null, maxDepth: Int = 3, currentDepth: Int = 0): File? {
+    private fun findGOGInfoFile(directory: File, gameId: String? = null, maxDepth: Int = 3): File? {
         if (!directory.exists() || !directory.isDirectory) {
             return null
         }
 
-        // Check current directory first
-        val infoFile = directory.listFiles()?.find {
-            it.isFile && if (gameId != null) {
-                it.name == "goggame-$gameId.info"
-            } else {
-                it.name.startsWith("goggame-") && it.name.endsWith(".info")
-            }
-        }
-
-        if (infoFile != null) {
-            return infoFile
-        }
-
-        // If max depth reached, stop searching
-        if (currentDepth >= maxDepth) {
-            return null
-        }
-
-        // Search subdirectories recursively
-        val subdirs = directory.listFiles()?.filter { it.isDirectory } ?: emptyList()
-        for (subdir in subdirs) {
-            val found = findGOGInfoFile(subdir, gameId, maxDepth, currentDepth + 1)
-            if (found != null) {
-                return found
-            }
+        // Info files in subdirectories up to maxDepth levels down, listed a level at a time so the
+        // shallowest one wins and nothing below it is listed
+        var level = listOf(directory)
+        repeat(maxDepth + 1) {
+            val children = level.flatMap { it.listFiles()?.asList().orEmpty() }
+            children.firstOrNull {
+                it.isFile && if (gameId != null) {
+                    it.name == "goggame-$gameId.info"
+                } else {
+                    it.name.startsWith("goggame-") && it.name.endsWith(".info")
+                }
+            }?.let { return it }
+            level = children.filter { it.isDirectory }
         }
-
         return null
     }
 
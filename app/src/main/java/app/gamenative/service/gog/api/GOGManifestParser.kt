@@ -235,7 +235,25 @@ class GOGManifestParser @Inject constructor() {
         chunkToProductMap: Map<String, String>,
         productUrlMap: Map<String, List<String>>
     ): Map<String, String> {
-        val chunkUrlMap = mutableMapOf<String, String>()
+        // Use the first (highest priority) CDN URL for each product
+        return buildChunkUrlsWithProducts(chunks, chunkToProductMap, productUrlMap).mapValues { it.value.first() }
+    }
+
+    /**
+     * Build a mapping of chunk MD5 -> every secure CDN URL of its product, in priority order,
+     * so the downloader can pick between CDN hosts per chunk
+     *
+     * @param chunks List of chunk MD5 hashes
+     * @param chunkToProductMap Map of chunk hash to product ID
+     * @param productUrlMap Map of product ID to list of secure URLs for that product
+     * @return Map of chunk MD5 to candidate download URLs
+     */
+    fun buildChunkUrlsWithProducts(
+        chunks: List<String>,
+        chunkToProductMap: Map<String, String>,
+        productUrlMap: Map<String, List<String>>
+    ): Map<String, List<String>> {
+        val chunkUrlMap = mutableMapOf<String, List<String>>()
 
         for (chunkMd5 in chunks) {
             val productId = chunkToProductMap[chunkMd5]
@@ -250,20 +268,17 @@ class GOGManifestParser @Inject constructor() {
                 continue
             }
 
-            // Use the first (highest priority) CDN URL for this product
-            val baseCdnUrl = productUrls.first()
-
             // Build full URL for chunk: baseUrl/aa/bb/aabbccdd...
             // Where aa/bb are first 4 chars of MD5 hash
-            val chunkUrl = if (chunkMd5.length >= 4) {
+            val chunkPath = if (chunkMd5.length >= 4) {
                 val first2 = chunkMd5.substring(0, 2)
                 val next2 = chunkMd5.substring(2, 4)
-                "$baseCdnUrl/$first2/$next2/$chunkMd5"
+                "$first2/$next2/$chunkMd5"
             } else {
-                "$baseCdnUrl/$chunkMd5"
+                chunkMd5
             }
 
-            chunkUrlMap[chunkMd5] = chunkUrl
+            chunkUrlMap[chunkMd5] = productUrls.map { baseCdnUrl -> "$baseCdnUrl/$chunkPath" }
         }
 
         Timber.tag(TAG).d("Built ${chunkUrlMap.size} chunk URLs from ${productUrlMap.size} product(s)")
@@ -231,7 +231,7 @@ fun PluviaMain(
                                     }
 
                                     if (!isInstalled) {
-                                        val appName = SteamService.getAppInfoOf(gameId)?.name ?: "App ${launchRequest.appId}"
+                                        val appName = SteamService.findAppInfo(gameId)?.name ?: "App ${launchRequest.appId}"
                                         Timber.tag("IntentLaunch").w("Game not installed: $appName (${launchRequest.appId})")
 
                                         // Show error message
@@ -1179,7 +1179,7 @@ fun preLaunchApp(
             try {
                 val currentPlaying = SteamService.getSelfCurrentlyPlayingAppId()
                 if (!isOffline && currentPlaying != null && currentPlaying != gameId) {
-                    val otherGameName = SteamService.getAppInfoOf(currentPlaying)?.name ?: "another game"
+                    val otherGameName = SteamService.findAppInfo(currentPlaying)?.name ?: "another game"
                     setLoadingDialogVisible(false)
                     setMessageDialogState(
                         MessageDialogState(
@@ -1361,7 +1361,7 @@ fun preLaunchApp(
                 )
                 if (postSyncInfo.pendingRemoteOperations.size == 1) {
                     val pro = postSyncInfo.pendingRemoteOperations.first()
-                    val gameName = SteamService.getAppInfoOf(ContainerUtils.extractGameIdFromContainerId(appId))?.name ?: ""
+                    val gameName = SteamService.findAppInfo(ContainerUtils.extractGameIdFromContainerId(appId))?.name ?: ""
                     val dateStr = Date(pro.timeLastUpdated * 1000L).toString()
                     when (pro.operation) {
                         ECloudPendingRemoteOperation.k_ECloudPendingRemoteOperationUploadInProgress -> {
@@ -29,7 +29,9 @@ import androidx.compose.runtime.derivedStateOf
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateListOf
 import androidx.compose.runtime.mutableStateMapOf
+import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
+import androidx.compose.runtime.setValue
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.geometry.Offset
@@ -47,6 +49,7 @@ import androidx.compose.ui.window.Dialog
 import androidx.compose.ui.window.DialogProperties
 import app.gamenative.BuildConfig
 import app.gamenative.R
+import app.gamenative.data.AppInfo
 import app.gamenative.data.DepotInfo
 import app.gamenative.service.SteamService
 import app.gamenative.service.SteamService.Companion.INVALID_APP_ID
@@ -61,6 +64,8 @@ import com.skydoves.landscapist.coil.CoilImage
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.Locale
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
 import kotlin.collections.orEmpty
 
 data class InstallSizeInfo(
@@ -90,18 +95,10 @@ fun GameManagerDialog(
     val displayInfo = onGetDisplayInfo(context)
     val gameId = displayInfo.gameId
 
-    val installedApp = remember(gameId) {
-        SteamService.getInstalledApp(gameId)
-    }
+    var installedApp by remember(gameId) { mutableStateOf<AppInfo?>(null) }
     val installedDlcIds = installedApp?.dlcDepots.orEmpty()
-
-    val indirectDlcAppIds = remember(gameId) {
-        SteamService.getDownloadableDlcAppsOf(gameId).orEmpty().map { it.id }
-    }
-
-    val mainAppDlcIdsWithoutProperDepotDlcIds = remember(gameId) {
-        SteamService.getMainAppDlcIdsWithoutProperDepotDlcIds(gameId).toList()
-    }
+    var mainAppDlcIdsWithoutProperDepotDlcIds by remember(gameId) { mutableStateOf(emptyList<Int>()) }
+    val dlcAppNames = remember { mutableStateMapOf<Int, String>() }
 
     LaunchedEffect(visible) {
         scrollState.animateScrollTo(0)
@@ -109,8 +106,16 @@ fun GameManagerDialog(
         downloadableDepots.clear()
         allDownloadableApps.clear()
 
+        val installed = SteamService.findInstalledApp(gameId)
+        val installedDlcDepots = installed?.dlcDepots.orEmpty()
+        val indirectDlcAppIds = SteamService.findDownloadableDlcApps(gameId).map { it.id }
+
         // Get Downloadable Depots
-        val allPossibleDownloadableDepots = SteamService.getDownloadableDepots(gameId)
+        val allPossibleDownloadableDepots = SteamService.findDownloadableDepots(gameId)
+        mainAppDlcIdsWithoutProperDepotDlcIds = withContext(Dispatchers.IO) {
+            SteamService.getMainAppDlcIdsWithoutProperDepotDlcIds(gameId).toList()
+        }
+        installedApp = installed
         downloadableDepots.putAll(allPossibleDownloadableDepots)
 
         // Get Optional DLC IDs
@@ -129,13 +134,14 @@ fun GameManagerDialog(
                 .toMap()
             .forEach { (_, depotInfo) ->
                 allDownloadableApps.add(Pair(depotInfo.dlcAppId, depotInfo))
-                val installed = SteamService.getInstalledApp(depotInfo.dlcAppId)
+                SteamService.findAppInfo(depotInfo.dlcAppId)?.let { dlcAppNames[it.id] = it.name }
+                val installedDlcApp = SteamService.findInstalledApp(depotInfo.dlcAppId)
                 selectedAppIds[depotInfo.dlcAppId] =
-                        installed != null || // For installed Base Game and Indirect DLC App
-                        installedDlcIds.contains(depotInfo.dlcAppId) || // For installed DLC from Main Depot
+                        installedDlcApp != null || // For installed Base Game and Indirect DLC App
+                        installedDlcDepots.contains(depotInfo.dlcAppId) || // For installed DLC from Main Depot
                         ( !indirectDlcAppIds.contains(depotInfo.dlcAppId) && !optionalDlcIds.contains(depotInfo.dlcAppId) ) // Not in indirect DLC and not in optional DLC ids
 
-                enabledAppIds[depotInfo.dlcAppId] = !installedDlcIds.contains(depotInfo.dlcAppId) && installed == null
+                enabledAppIds[depotInfo.dlcAppId] = !installedDlcDepots.contains(depotInfo.dlcAppId) && installedDlcApp == null
             }
 
         allDownloadableApps.sortBy { it.first }
@@ -151,12 +157,7 @@ fun GameManagerDialog(
             return displayInfo.name
         }
 
-        val app = SteamService.getAppInfoOf(depotInfo.dlcAppId)
-        if (app != null) {
-            return app.name
-        }
-
-        return "DLC ${depotInfo.dlcAppId}"
+        return dlcAppNames[depotInfo.dlcAppId] ?: "DLC ${depotInfo.dlcAppId}"
     }
 
     fun getSizeInfo(dlcAppId: Int): Pair<String, String> {
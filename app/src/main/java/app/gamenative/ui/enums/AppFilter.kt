@@ -3,6 +3,7 @@ package app.gamenative.ui.enums
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.AvTimer
 import androidx.compose.material.icons.filled.Build
+import androidx.compose.material.icons.filled.CheckCircle
 import androidx.compose.material.icons.filled.Computer
 import androidx.compose.material.icons.filled.Diversity3
 import androidx.compose.material.icons.filled.InstallMobile
@@ -47,6 +48,11 @@ enum class AppFilter(
         displayText = "Family Sharing",
         icon = Icons.Default.Diversity3,
     ),
+    COMPATIBLE(
+        code = 0x40,
+        displayText = "Compatible",
+        icon = Icons.Default.CheckCircle,
+    ),
     // ALPHABETIC(
     //     code = 0x20,
     //     displayText = "Alphabetic",
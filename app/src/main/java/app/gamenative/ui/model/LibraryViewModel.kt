@@ -8,14 +8,10 @@ import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import app.gamenative.PrefManager
 import app.gamenative.PluviaApp
-import app.gamenative.data.LibraryItem
-import app.gamenative.data.SteamApp
-import app.gamenative.data.GOGGame
-import app.gamenative.data.EpicGame
 import app.gamenative.data.GameSource
-import app.gamenative.db.dao.SteamAppDao
-import app.gamenative.db.dao.GOGGameDao
-import app.gamenative.db.dao.EpicGameDao
+import app.gamenative.data.LibraryFilter
+import app.gamenative.data.LibraryRow
+import app.gamenative.db.dao.LibraryDao
 import app.gamenative.service.DownloadService
 import app.gamenative.service.SteamService
 import app.gamenative.ui.data.LibraryState
@@ -23,6 +19,7 @@ import app.gamenative.ui.enums.AppFilter
 import app.gamenative.events.AndroidEvent
 import app.gamenative.utils.CustomGameScanner
 import app.gamenative.utils.GameCompatibilityCache
+import app.gamenative.utils.BestConfigService
 import app.gamenative.utils.GameCompatibilityService
 import app.gamenative.data.GameCompatibilityStatus
 import com.winlator.core.GPUInformation
@@ -32,12 +29,16 @@ import android.content.Context
 import java.io.File
 import java.util.EnumSet
 import javax.inject.Inject
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.debounce
 import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.flow.withIndex
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
 import timber.log.Timber
@@ -46,9 +47,8 @@ import kotlin.math.min
 
 @HiltViewModel
 class LibraryViewModel @Inject constructor(
-    private val steamAppDao: SteamAppDao,
-    private val gogGameDao: GOGGameDao,
-    private val epicGameDao: EpicGameDao,
+    private val libraryDao: LibraryDao,
+    private val compatibilityCache: GameCompatibilityCache,
     @ApplicationContext private val context: Context,
 ) : ViewModel() {
 
@@ -72,10 +72,10 @@ class LibraryViewModel @Inject constructor(
     private var paginationCurrentPage: Int = 0;
     private var lastPageInCurrentFilter: Int = 0;
 
-    // Complete and unfiltered app list
-    private var appList: List<SteamApp> = emptyList()
-    private var gogGameList: List<GOGGame> = emptyList()
-    private var epicGameList: List<EpicGame> = emptyList()
+    // Rows currently shown, in LibraryRow.ORDER; the last one anchors the next page
+    private var loadedRows: List<LibraryRow> = emptyList()
+    private var loadJob: Job? = null
+    private var customScanJob: Job? = null
 
     // Track if this is the first load to apply minimum load time
     private var isFirstLoad = true
@@ -83,6 +83,7 @@ class LibraryViewModel @Inject constructor(
     // Track debounce job for search
     private var searchDebounceJob: Job? = null
     private val SEARCH_DEBOUNCE_MS = 500L // 500ms debounce
+    private val LIBRARY_CHANGE_DEBOUNCE_MS = 500L
 
     // Cache GPU name to avoid repeated calls
     private val gpuName: String by lazy {
@@ -102,46 +103,30 @@ class LibraryViewModel @Inject constructor(
     }
 
     init {
-        viewModelScope.launch(Dispatchers.IO) {
-            steamAppDao.getAllOwnedApps(
-                // ownerIds = SteamService.familyMembers.ifEmpty { listOf(SteamService.userSteamId!!.accountID.toInt()) },
-            ).collect { apps ->
-                Timber.tag("LibraryViewModel").d("Collecting ${apps.size} apps")
-                // Check if the list has actually changed before triggering a re-filter
-                if (appList.size != apps.size) {
-                    appList = apps
-                    onFilterApps(paginationCurrentPage)
-                }
-            }
-        }
-
-        // Collect GOG games
-        viewModelScope.launch(Dispatchers.IO) {
-            gogGameDao.getAll().collect { games ->
-                Timber.tag("LibraryViewModel").d("Collecting ${games.size} GOG games")
-                // Check if the list has actually changed before triggering a re-filter
-                if (gogGameList != games) {
-                    gogGameList = games
-                    onFilterApps(paginationCurrentPage)
-                }
-            }
-        }
+        observeLibraryChanges()
 
-        viewModelScope.launch(Dispatchers.IO) {
-            epicGameDao.getAll().collect { games ->
-                Timber.tag("LibraryViewModel").d("Collecting ${games.size} Epic games")
+        PluviaApp.events.on<AndroidEvent.LibraryInstallStatusChanged, Unit>(onInstallStatusChanged)
+        PluviaApp.events.on<AndroidEvent.CustomGameImagesFetched, Unit>(onCustomGameImagesFetched)
 
-                val hasChanges = epicGameList.size != games.size || epicGameList != games
-                epicGameList = games
+        scanCustomGames()
+    }
 
-                if (hasChanges) {
+    /**
+     * Reloads the shown pages whenever a store's library is written, including renames and other
+     * edits that leave the counts as they were. Bursts of writes, like a PICS sync, reload once;
+     * the first emission is the initial load and goes straight through.
+     */
+    @OptIn(FlowPreview::class)
+    private fun observeLibraryChanges() {
+        viewModelScope.launch(Dispatchers.IO) {
+            libraryDao.observeSourceCounts()
+                .withIndex()
+                .debounce { if (it.index == 0) 0L else LIBRARY_CHANGE_DEBOUNCE_MS }
+                .collect { (_, counts) ->
+                    Timber.tag("LibraryViewModel").d("Library changed: $counts")
                     onFilterApps(paginationCurrentPage)
                 }
-            }
         }
-
-        PluviaApp.events.on<AndroidEvent.LibraryInstallStatusChanged, Unit>(onInstallStatusChanged)
-        PluviaApp.events.on<AndroidEvent.CustomGameImagesFetched, Unit>(onCustomGameImagesFetched)
     }
 
     override fun onCleared() {
@@ -227,7 +212,11 @@ class LibraryViewModel @Inject constructor(
         // Amount to change by
         var toPage = max(0, paginationCurrentPage + pageIncrement)
         toPage = min(toPage, lastPageInCurrentFilter)
-        onFilterApps(toPage)
+        if (toPage == paginationCurrentPage + 1 && loadedRows.isNotEmpty()) {
+            onLoadNextPage()
+        } else {
+            onFilterApps(toPage)
+        }
     }
 
     fun onRefresh() {
@@ -235,7 +224,7 @@ class LibraryViewModel @Inject constructor(
             _state.update { it.copy(isRefreshing = true) }
 
             // Clear compatibility cache on manual refresh to get fresh data
-            GameCompatibilityCache.clear()
+            compatibilityCache.clear()
 
             try {
                 val newApps = SteamService.refreshOwnedGamesFromServer()
@@ -251,6 +240,7 @@ class LibraryViewModel @Inject constructor(
             } catch (e: Exception) {
                 Timber.tag("LibraryViewModel").e(e, "Failed to refresh owned games from server")
             } finally {
+                scanCustomGames()
                 onFilterApps(0).join()
                 // Fetch compatibility for current page after refresh
                 val currentPageGames = _state.value.appInfoList.map { it.name }
@@ -279,239 +269,176 @@ class LibraryViewModel @Inject constructor(
 
             CustomGameScanner.invalidateCache()
             onFilterApps(paginationCurrentPage)
+            scanCustomGames()
         }
     }
 
-    private fun onFilterApps(paginationPage: Int = 0): Job {
-        Timber.tag("LibraryViewModel").d("onFilterApps - appList.size: ${appList.size}, isFirstLoad: $isFirstLoad")
-        return viewModelScope.launch(Dispatchers.IO) {
-            _state.update { it.copy(isLoading = true) }
-
-            val currentState = _state.value
-            val currentFilter = AppFilter.getAppType(currentState.appInfoSortType)
-
-            // Fetch download directory apps once on IO thread and cache as a HashSet for O(1) lookups
-            val downloadDirectoryApps = DownloadService.getDownloadDirectoryApps()
-            val downloadDirectorySet = downloadDirectoryApps.toHashSet()
-
-            // Filter Steam apps first (no pagination yet)
-            // Note: Don't sort individual lists - we'll sort the combined list for consistent ordering
-            val filteredSteamApps: List<SteamApp> = appList
-                .asSequence()
-                .filter { item ->
-                    SteamService.familyMembers.ifEmpty {
-                        // Handle the case where userSteamId might be null
-                        SteamService.userSteamId?.let { steamId ->
-                            listOf(steamId.accountID.toInt())
-                        } ?: emptyList()
-                    }.let { owners ->
-                        if (owners.isEmpty()) {
-                            true                       // no owner info ⇒ don’t filter the item out
-                        } else {
-                            owners.any { item.ownerAccountId.contains(it) }
-                        }
-                    }
-                }
-                .filter { item ->
-                    currentFilter.any { item.type == it }
-                }
-                .filter { item ->
-                    if (currentState.appInfoSortType.contains(AppFilter.SHARED)) {
-                        true
-                    } else {
-                        item.ownerAccountId.contains(PrefManager.steamUserAccountId) || PrefManager.steamUserAccountId == 0
-                    }
-                }
-                .filter { item ->
-                    if (currentState.searchQuery.isNotEmpty()) {
-                        item.name.contains(currentState.searchQuery, ignoreCase = true)
-                    } else {
-                        true
-                    }
-                }
-                .filter { item ->
-                    if (currentState.appInfoSortType.contains(AppFilter.INSTALLED)) {
-                        downloadDirectoryApps.contains(SteamService.getAppDirName(item))
-                    } else {
-                        true
+    /**
+     * Looks through the Custom Game folders in the background. Icons show up as each folder's
+     * executable is found; only folders changed since the last scan are listed again.
+     */
+    private fun scanCustomGames() {
+        customScanJob?.cancel()
+        customScanJob = viewModelScope.launch(Dispatchers.IO) {
+            try {
+                CustomGameScanner.scanFolders().collect { result ->
+                    if (result.iconExtracted) {
+                        _state.update { it.copy(imageRefreshCounter = it.imageRefreshCounter + 1) }
                     }
                 }
-                .sortedWith(
-                    compareByDescending<SteamApp> {
-                        downloadDirectorySet.contains(SteamService.getAppDirName(it))
-                    }.thenBy { it.name.lowercase() }
-                )
-                .toList()
-
-            // Map Steam apps to UI items
-            data class LibraryEntry(val item: LibraryItem, val isInstalled: Boolean)
-            val steamEntries: List<LibraryEntry> = filteredSteamApps.map { item ->
-                val isInstalled = downloadDirectorySet.contains(SteamService.getAppDirName(item))
-                LibraryEntry(
-                    item = LibraryItem(
-                        index = 0, // temporary, will be re-indexed after combining and paginating
-                        appId = "${GameSource.STEAM.name}_${item.id}",
-                        name = item.name,
-                        iconHash = item.clientIconHash,
-                        isShared = (PrefManager.steamUserAccountId != 0 && !item.ownerAccountId.contains(PrefManager.steamUserAccountId)),
-                    ),
-                    isInstalled = isInstalled,
-                )
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Timber.tag("LibraryViewModel").e(e, "Custom Game scan failed")
             }
+        }
+    }
 
-            // Scan Custom Games roots and create UI items (filtered by search query inside scanner)
-            // Only include custom games if GAME filter is selected
-            val customGameItems = if (currentState.appInfoSortType.contains(AppFilter.GAME)) {
-                CustomGameScanner.scanAsLibraryItems(
-                    query = currentState.searchQuery
-                )
+    private fun currentFilter(): LibraryFilter {
+        val currentState = _state.value
+        val owners = SteamService.familyMembers.ifEmpty {
+            // Handle the case where userSteamId might be null
+            SteamService.userSteamId?.let { steamId -> listOf(steamId.accountID.toInt()) } ?: emptyList()
+        }
+        return LibraryFilter(
+            query = currentState.searchQuery,
+            sources = buildSet {
+                if (currentState.showSteamInLibrary) add(GameSource.STEAM)
+                if (currentState.showGOGInLibrary) add(GameSource.GOG)
+                if (currentState.showEpicInLibrary) add(GameSource.EPIC)
+            },
+            appTypes = AppFilter.getAppType(currentState.appInfoSortType),
+            installedOnly = currentState.appInfoSortType.contains(AppFilter.INSTALLED),
+            includeShared = currentState.appInfoSortType.contains(AppFilter.SHARED),
+            accountId = PrefManager.steamUserAccountId,
+            ownerIds = owners,
+            installedSteamDirs = DownloadService.getDownloadDirectoryApps().toHashSet(),
+            compatibility = if (currentState.appInfoSortType.contains(AppFilter.COMPATIBLE)) {
+                setOf(GameCompatibilityStatus.COMPATIBLE, GameCompatibilityStatus.GPU_COMPATIBLE)
             } else {
-                emptyList()
-            }
-            val customEntries = customGameItems.map { LibraryEntry(it, true) }
-
-            // Filter GOG games
-            val filteredGOGGames = gogGameList
-                .asSequence()
-                .filter { game ->
-                    if (currentState.searchQuery.isNotEmpty()) {
-                        game.title.contains(currentState.searchQuery, ignoreCase = true)
-                    } else {
-                        true
-                    }
-                }
-                .filter { game ->
-                    if (currentState.appInfoSortType.contains(AppFilter.INSTALLED)) {
-                        game.isInstalled
-                    } else {
-                        true
-                    }
-                }
-                .toList()
-
-            val gogEntries = filteredGOGGames.map { game ->
-                LibraryEntry(
-                    item = LibraryItem(
-                        index = 0,
-                        appId = "${GameSource.GOG.name}_${game.id}",
-                        name = game.title,
-                        iconHash = game.imageUrl.ifEmpty { game.iconUrl },
-                        isShared = false,
-                        gameSource = GameSource.GOG,
-                    ),
-                    isInstalled = game.isInstalled,
-                )
-            }
+                emptySet()
+            },
+            gpuName = gpuName,
+        )
+    }
 
-            // Filter Epic games
-            val filteredEpicGames = epicGameList
-                .asSequence()
-                .filter { game ->
-                    if (currentState.searchQuery.isNotEmpty()) {
-                        game.title.contains(currentState.searchQuery, ignoreCase = true)
-                    } else {
-                        true
-                    }
-                }
-                .filter { game ->
-                    if (currentState.appInfoSortType.contains(AppFilter.INSTALLED)) {
-                        game.isInstalled
-                    } else {
-                        true
-                    }
-                }
-                .toList()
-
-            val epicEntries = filteredEpicGames.map { game ->
-                LibraryEntry(
-                    item = LibraryItem(
-                        index = 0,
-                        appId = "EPIC_${game.id}",
-                        name = game.title,
-                        iconHash = game.artCover,
-                        isShared = false,
-                        gameSource = GameSource.EPIC,
-                    ),
-                    isInstalled = game.isInstalled,
-                )
-            }
+    /**
+     * Custom games live on disk rather than in the db; they are few and always installed, so they
+     * are merged into each page from memory.
+     */
+    private fun customGameRows(): List<LibraryRow> {
+        val currentState = _state.value
+        // Only include custom games if GAME filter is selected
+        if (!currentState.appInfoSortType.contains(AppFilter.GAME)) {
+            return emptyList()
+        }
+        return CustomGameScanner.scanAsLibraryItems(query = currentState.searchQuery)
+            .map { LibraryRow.fromLibraryItem(it, installed = true) }
+    }
+
+    /** Custom games aren't in the db, so the compatibility filter is applied to them here. */
+    private suspend fun withCompatibility(filter: LibraryFilter, rows: List<LibraryRow>): List<LibraryRow> {
+        if (filter.compatibility.isEmpty() || rows.isEmpty()) return rows
+        val reports = compatibilityCache.getCached(rows.map { it.name }, gpuName, includeExpired = true)
+        return rows.filter { row ->
+            (reports[row.name]?.let(::compatibilityStatus) ?: GameCompatibilityStatus.UNKNOWN) in filter.compatibility
+        }
+    }
+
+    /** Up to [limit] rows after [after] from the db and [customRows] together. */
+    private suspend fun loadRows(
+        filter: LibraryFilter,
+        customRows: List<LibraryRow>,
+        after: LibraryRow?,
+        limit: Int,
+    ): List<LibraryRow> {
+        val dbRows = libraryDao.page(filter, after, limit)
+        val customAfter = if (after == null) customRows else customRows.filter { LibraryRow.ORDER.compare(it, after) > 0 }
+        if (customAfter.isEmpty()) return dbRows
+        return (dbRows + customAfter).sortedWith(LibraryRow.ORDER).take(limit)
+    }
+
+    private fun onFilterApps(paginationPage: Int = 0): Job {
+        Timber.tag("LibraryViewModel").d("onFilterApps - page: $paginationPage, isFirstLoad: $isFirstLoad")
+        loadJob?.cancel()
+        return viewModelScope.launch(Dispatchers.IO) {
+            _state.update { it.copy(isLoading = true) }
+
+            val filter = currentFilter()
+            val customGames = customGameRows()
+            val customRows = if (_state.value.showCustomGamesInLibrary) withCompatibility(filter, customGames) else emptyList()
+            val counts = libraryDao.counts(filter).associateBy { it.source }
 
-            // Calculate installed counts
-            val gogInstalledCount = filteredGOGGames.count { it.isInstalled }
-            val epicInstalledCount = filteredEpicGames.count { it.isInstalled }
             // Save game counts for skeleton loaders (only when not searching, to get accurate counts)
-            // This needs to happen before filtering by source, so we save the total counts
-            if (currentState.searchQuery.isEmpty()) {
-                PrefManager.customGamesCount = customGameItems.size
-                PrefManager.steamGamesCount = filteredSteamApps.size
-                PrefManager.gogGamesCount = filteredGOGGames.size
-                PrefManager.gogInstalledGamesCount = gogInstalledCount
-                PrefManager.epicGamesCount = filteredEpicGames.size
-                PrefManager.epicInstalledGamesCount = epicInstalledCount
-                Timber.tag("LibraryViewModel").d("Saved counts - Custom: ${customGameItems.size}, Steam: ${filteredSteamApps.size}, GOG: ${filteredGOGGames.size}, GOG installed: $gogInstalledCount, Epic: ${filteredEpicGames.size}, Epic installed: $epicInstalledCount")
+            // These are the counts before filtering by source
+            if (filter.query.isEmpty()) {
+                val bySource = libraryDao.counts(filter.copy(sources = EnumSet.of(GameSource.STEAM, GameSource.GOG, GameSource.EPIC)))
+                    .associateBy { it.source }
+                PrefManager.customGamesCount = customGames.size
+                PrefManager.steamGamesCount = bySource[GameSource.STEAM]?.total ?: 0
+                PrefManager.gogGamesCount = bySource[GameSource.GOG]?.total ?: 0
+                PrefManager.gogInstalledGamesCount = bySource[GameSource.GOG]?.installed ?: 0
+                PrefManager.epicGamesCount = bySource[GameSource.EPIC]?.total ?: 0
+                PrefManager.epicInstalledGamesCount = bySource[GameSource.EPIC]?.installed ?: 0
             }
 
-            // Apply App Source filters
-            val includeSteam = _state.value.showSteamInLibrary
-            val includeOpen = _state.value.showCustomGamesInLibrary
-            val includeGOG = _state.value.showGOGInLibrary
-            val includeEpic = _state.value.showEpicInLibrary
-
-            // Combine all lists and sort: installed games first, then alphabetically
-            val combined = buildList<LibraryEntry> {
-                if (includeSteam) addAll(steamEntries)
-                if (includeOpen) addAll(customEntries)
-                if (includeGOG) addAll(gogEntries)
-                if (includeEpic) addAll(epicEntries)
-            }.sortedWith(
-                // Primary sort: installed status (0 = installed at top, 1 = not installed at bottom)
-                // Secondary sort: alphabetically by name (case-insensitive)
-                compareBy<LibraryEntry> { entry ->
-                    if (entry.isInstalled) 0 else 1
-                }.thenBy { it.item.name.lowercase() }
-            ).also { sortedList ->
-                if (sortedList.isNotEmpty()) {
-                    val installedCount = sortedList.count { it.isInstalled }
-                    val first10 = sortedList.take(10)
-                }
-            }.mapIndexed { idx, entry -> entry.item.copy(index = idx) }
-
             // Total count for the current filter
-            val totalFound = combined.size
+            val totalFound = counts.values.sumOf { it.total } + customRows.size
 
-            // Determine how many pages and slice the list for incremental loading
+            // Determine how many pages to show, loading (pagesLoaded * pageSize) rows
             val pageSize = PrefManager.itemsPerPage
-            // Update internal pagination state
-            paginationCurrentPage = paginationPage
-            lastPageInCurrentFilter = if (totalFound == 0) 0 else (totalFound - 1) / pageSize
-            // Calculate how many items to show: (pagesLoaded * pageSize)
-            val endIndex = min((paginationPage + 1) * pageSize, totalFound)
-            val pagedList = combined.take(endIndex)
+            val lastPage = if (totalFound == 0) 0 else (totalFound - 1) / pageSize
+            val rows = loadRows(filter, customRows, after = null, limit = (paginationPage + 1) * pageSize)
 
-            Timber.tag("LibraryViewModel").d("Filtered list size (with Custom Games): ${totalFound}")
+            Timber.tag("LibraryViewModel").d("Filtered list size (with Custom Games): $totalFound")
 
             if (isFirstLoad) {
                 isFirstLoad = false
             }
 
+            showRows(rows, paginationPage, lastPage, totalFound)
+
             // Fetch compatibility for current page games
-            fetchCompatibilityForPage(pagedList.map { it.name })
-
-            _state.update {
-                it.copy(
-                    appInfoList = pagedList,
-                    currentPaginationPage = paginationPage + 1, // visual display is not 0 indexed
-                    lastPaginationPage = lastPageInCurrentFilter + 1,
-                    totalAppsInFilter = totalFound,
-                    isLoading = false, // Loading complete
-                )
-            }
+            fetchCompatibilityForPage(rows.map { it.name })
+        }.also { loadJob = it }
+    }
+
+    /** Appends the page after the last loaded row, without re-reading the rows already shown. */
+    private fun onLoadNextPage(): Job {
+        val after = loadedRows.last()
+        val shown = loadedRows
+        val nextPage = paginationCurrentPage + 1
+        loadJob?.cancel()
+        return viewModelScope.launch(Dispatchers.IO) {
+            val filter = currentFilter()
+            val customRows = if (_state.value.showCustomGamesInLibrary) withCompatibility(filter, customGameRows()) else emptyList()
+            val rows = loadRows(filter, customRows, after, PrefManager.itemsPerPage)
+            val state = _state.value
+            showRows(shown + rows, nextPage, lastPageInCurrentFilter, state.totalAppsInFilter)
+            fetchCompatibilityForPage(rows.map { it.name })
+        }.also { loadJob = it }
+    }
+
+    private fun showRows(rows: List<LibraryRow>, paginationPage: Int, lastPage: Int, totalFound: Int) {
+        // Update internal pagination state
+        loadedRows = rows
+        paginationCurrentPage = paginationPage
+        lastPageInCurrentFilter = lastPage
+
+        _state.update {
+            it.copy(
+                appInfoList = rows.mapIndexed { idx, row -> row.toLibraryItem(idx) },
+                currentPaginationPage = paginationPage + 1, // visual display is not 0 indexed
+                lastPaginationPage = lastPage + 1,
+                totalAppsInFilter = totalFound,
+                isLoading = false, // Loading complete
+            )
         }
     }
 
     /**
      * Fetches compatibility information for games in paginated batches.
-     * Checks cache first, then fetches uncached games in batches of 50.
+     * Looks the whole page up in the cache with one query, then fetches uncached games in batches of 25.
      */
     private fun fetchCompatibilityForPage(gameNames: List<String>) {
         if (gameNames.isEmpty()) {
@@ -530,18 +457,8 @@ class LibraryViewModel @Inject constructor(
         viewModelScope.launch(Dispatchers.IO) {
             try {
                 // Separate cached and uncached games
-                val uncachedGames = mutableListOf<String>()
-                val cachedResults = mutableMapOf<String, GameCompatibilityService.GameCompatibilityResponse>()
-
-                for (gameName in gameNames) {
-                    val cached = GameCompatibilityCache.getCached(gameName)
-                    if (cached != null) {
-                        cachedResults[gameName] = cached
-                        Timber.tag("LibraryViewModel").d("Using cached result for: $gameName")
-                    } else {
-                        uncachedGames.add(gameName)
-                    }
-                }
+                val cachedResults = compatibilityCache.getCached(gameNames, gpuName)
+                val uncachedGames = gameNames.filter { it !in cachedResults }
 
                 Timber.tag("LibraryViewModel").d("Cached: ${cachedResults.size}, Uncached: ${uncachedGames.size}")
 
@@ -553,6 +470,7 @@ class LibraryViewModel @Inject constructor(
                 // Only fetch if there are uncached games
                 if (uncachedGames.isEmpty()) {
                     Timber.tag("LibraryViewModel").d("All games in page are cached, skipping API call")
+                    prefetchBestConfigs(cachedResults)
                     return@launch
                 }
 
@@ -567,18 +485,18 @@ class LibraryViewModel @Inject constructor(
 
                     if (batchResults != null) {
                         Timber.tag("LibraryViewModel").d("Received ${batchResults.size} results from API")
-                        // Cache all results using batch caching
-                        GameCompatibilityCache.cacheAll(batchResults)
                         fetchedResults.putAll(batchResults)
                     } else {
                         Timber.tag("LibraryViewModel").w("API returned null for batch")
                     }
                 }
 
-                // Update state with newly fetched results
+                // Cache and show the whole page's results at once
                 if (fetchedResults.isNotEmpty()) {
+                    compatibilityCache.cacheAll(fetchedResults, gpuName)
                     updateCompatibilityState(fetchedResults)
                 }
+                prefetchBestConfigs(cachedResults + fetchedResults)
             } catch (e: Exception) {
                 Timber.tag("LibraryViewModel").e(e, "Error fetching compatibility data: ${e.message}")
                 e.printStackTrace()
@@ -586,22 +504,25 @@ class LibraryViewModel @Inject constructor(
         }
     }
 
+    /**
+     * Warms [BestConfigService]'s cache for the games on the page someone has a working config for,
+     * in one batch, so opening one of them or creating its container doesn't wait on the API. Skipped
+     * when the API has no batch endpoint.
+     */
+    private suspend fun prefetchBestConfigs(results: Map<String, GameCompatibilityService.GameCompatibilityResponse>) {
+        val gameNames = results.filterValues { it.totalPlayableCount > 0 && !it.isNotWorking }.keys.toList()
+        if (gameNames.isEmpty()) return
+        val configs = BestConfigService.prefetchBestConfigs(gameNames, gpuName)
+        Timber.tag("LibraryViewModel").d("Prefetched best configs for ${configs.size} of ${gameNames.size} games")
+    }
+
     /**
      * Updates the state with compatibility results.
      */
     private fun updateCompatibilityState(
         results: Map<String, GameCompatibilityService.GameCompatibilityResponse>
     ) {
-        val compatibilityMap = results.mapValues { (gameName, response) ->
-            val status = when {
-                response.isNotWorking -> GameCompatibilityStatus.NOT_COMPATIBLE
-                !response.hasBeenTried -> GameCompatibilityStatus.UNKNOWN
-                response.gpuPlayableCount > 0 -> GameCompatibilityStatus.GPU_COMPATIBLE
-                response.totalPlayableCount > 0 -> GameCompatibilityStatus.COMPATIBLE
-                else -> GameCompatibilityStatus.UNKNOWN
-            }
-            status
-        }
+        val compatibilityMap = results.mapValues { (_, response) -> compatibilityStatus(response) }
 
         // Update state with compatibility map (merge with existing)
         _state.update { currentState ->
@@ -611,4 +532,13 @@ class LibraryViewModel @Inject constructor(
             currentState.copy(compatibilityMap = mergedMap)
         }
     }
+
+    /** How a report is labelled in the library; LibraryDao's compatibility filter uses the same rules. */
+    private fun compatibilityStatus(response: GameCompatibilityService.GameCompatibilityResponse) = when {
+        response.isNotWorking -> GameCompatibilityStatus.NOT_COMPATIBLE
+        !response.hasBeenTried -> GameCompatibilityStatus.UNKNOWN
+        response.gpuPlayableCount > 0 -> GameCompatibilityStatus.GPU_COMPATIBLE
+        response.totalPlayableCount > 0 -> GameCompatibilityStatus.COMPATIBLE
+        else -> GameCompatibilityStatus.UNKNOWN
+    }
 }
@@ -386,7 +386,7 @@ class MainViewModel @Inject constructor(
 
             val gameId = ContainerUtils.extractGameIdFromContainerId(appId)
 
-            SteamService.getAppInfoOf(gameId)?.let { appInfo ->
+            SteamService.findAppInfo(gameId)?.let { appInfo ->
                 // TODO: this should not be a search, the app should have been launched with a specific launch config that we then use to compare
                 val launchConfig = SteamService.getWindowsLaunchInfos(gameId).firstOrNull {
                     val gameExe = Paths.get(it.executable.replace('\\', '/')).name.lowercase()
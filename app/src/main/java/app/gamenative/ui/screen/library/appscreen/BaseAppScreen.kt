@@ -85,6 +85,14 @@ abstract class BaseAppScreen {
      */
     abstract fun isValidToDownload(context: Context, libraryItem: LibraryItem): Boolean
 
+    /**
+     * Check if the game can be downloaded/installed (suspend version)
+     * Override this if the check has to wait for the database
+     */
+    open suspend fun isValidToDownloadSuspend(context: Context, libraryItem: LibraryItem): Boolean {
+        return isValidToDownload(context, libraryItem)
+    }
+
     /**
      * Check if the game is currently downloading
      */
@@ -426,7 +434,7 @@ abstract class BaseAppScreen {
      * Hook called after images are fetched. Override in subclasses for post-processing
      * (e.g., icon extraction for Custom Games).
      */
-    protected open fun onAfterFetchImages(context: Context, libraryItem: LibraryItem, gameFolderPath: String) {
+    protected open suspend fun onAfterFetchImages(context: Context, libraryItem: LibraryItem, gameFolderPath: String) {
         // Default: no post-processing
     }
 
@@ -560,7 +568,7 @@ abstract class BaseAppScreen {
 
         suspend fun performStateRefresh(includeUpdatePending: Boolean) {
             isInstalledState = isInstalled(context, libraryItem)
-            isValidToDownloadState = isValidToDownload(context, libraryItem)
+            isValidToDownloadState = isValidToDownloadSuspend(context, libraryItem)
             val currentlyDownloading = isDownloading(context, libraryItem)
             isDownloadingState = currentlyDownloading
             downloadProgressState = getDownloadProgress(context, libraryItem)
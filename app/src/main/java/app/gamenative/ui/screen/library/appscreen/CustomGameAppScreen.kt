@@ -241,7 +241,7 @@ class CustomGameAppScreen : BaseAppScreen() {
         return path
     }
 
-    override fun onAfterFetchImages(context: Context, libraryItem: LibraryItem, gameFolderPath: String) {
+    override suspend fun onAfterFetchImages(context: Context, libraryItem: LibraryItem, gameFolderPath: String) {
         // Extract icon from executable after fetching images
         Timber.tag("CustomGameAppScreen").d("onAfterFetchImages called - appId: ${libraryItem.appId}, gameFolderPath: $gameFolderPath")
 
@@ -319,7 +319,7 @@ class CustomGameAppScreen : BaseAppScreen() {
                     }
 
                     // If that didn't work, try finding a unique executable
-                    val uniqueExeRel = CustomGameScanner.findUniqueExeRelativeToFolder(gameFolder)
+                    val uniqueExeRel = CustomGameScanner.exeFiles(gameFolder).singleOrNull()
                     Timber.tag("CustomGameAppScreen").d("Unique executable found: ${uniqueExeRel ?: "null"}")
 
                     if (!uniqueExeRel.isNullOrEmpty()) {
@@ -503,6 +503,7 @@ class CustomGameAppScreen : BaseAppScreen() {
                                             val manualFolders = PrefManager.customGameManualFolders.toMutableSet()
                                             manualFolders.remove(folderPath)
                                             PrefManager.customGameManualFolders = manualFolders
+                                            CustomGameScanner.forgetFolder(File(folderPath))
                                         }
                                         CustomGameScanner.invalidateCache()
                                     }
@@ -35,7 +35,6 @@ import app.gamenative.ui.enums.DialogType
 import app.gamenative.ui.screen.library.GameMigrationDialog
 import app.gamenative.utils.BestConfigService
 import app.gamenative.utils.ContainerUtils
-import app.gamenative.utils.GameCompatibilityCache
 import app.gamenative.utils.GameCompatibilityService
 import app.gamenative.utils.ManifestInstaller
 import app.gamenative.utils.MarkerUtils
@@ -362,9 +361,11 @@ class SteamAppScreen : BaseAppScreen() {
         libraryItem: LibraryItem
     ): GameDisplayInfo {
         val gameId = libraryItem.gameId
-        val appInfo = remember(libraryItem.appId) {
-            SteamService.getAppInfoOf(gameId)
-        } ?: return GameDisplayInfo(
+        // Follows PICS updates; only the first frame of an uncached app falls back to the library item
+        val appInfoState = remember(libraryItem.appId) {
+            SteamService.observeAppInfo(gameId)
+        }.collectAsState(initial = SteamService.getCachedAppInfoOf(gameId))
+        val appInfo = appInfoState.value ?: return GameDisplayInfo(
             name = libraryItem.name,
             developer = "",
             releaseDate = 0L,
@@ -466,7 +467,8 @@ class SteamAppScreen : BaseAppScreen() {
         var compatibilityColor by remember { mutableStateOf<ULong?>(null) }
         LaunchedEffect(isInstalled, gameId, appInfo.name) {
             try {
-                val cachedResponse = GameCompatibilityCache.getCached(appInfo.name)
+                val gpuName = withContext(Dispatchers.IO) { GPUInformation.getRenderer(context) }.orEmpty()
+                val cachedResponse = SteamService.getCachedCompatibility(appInfo.name, gpuName)
                 if (cachedResponse != null) {
                     val message = GameCompatibilityService.getCompatibilityMessageFromResponse(context, cachedResponse)
                     compatibilityMessage = message.text
@@ -505,7 +507,13 @@ class SteamAppScreen : BaseAppScreen() {
     }
 
     override fun isValidToDownload(context: Context, libraryItem: LibraryItem): Boolean {
-        val appInfo = SteamService.getAppInfoOf(libraryItem.gameId) ?: return false
+        // Called during composition: only what's cached, the refresh below settles the rest
+        val appInfo = SteamService.getCachedAppInfoOf(libraryItem.gameId) ?: return false
+        return appInfo.branches.isNotEmpty() && appInfo.depots.isNotEmpty()
+    }
+
+    override suspend fun isValidToDownloadSuspend(context: Context, libraryItem: LibraryItem): Boolean {
+        val appInfo = SteamService.findAppInfo(libraryItem.gameId) ?: return false
         return appInfo.branches.isNotEmpty() && appInfo.depots.isNotEmpty()
     }
 
@@ -608,11 +616,13 @@ class SteamAppScreen : BaseAppScreen() {
         onClickPlay: (Boolean) -> Unit
     ) {
         val gameId = libraryItem.gameId
-        val appInfo = SteamService.getAppInfoOf(gameId)
-        PostHog.capture(
-            event = "container_opened",
-            properties = mapOf("game_name" to (appInfo?.name ?: ""))
-        )
+        CoroutineScope(Dispatchers.IO).launch {
+            val appInfo = SteamService.findAppInfo(gameId)
+            PostHog.capture(
+                event = "container_opened",
+                properties = mapOf("game_name" to (appInfo?.name ?: ""))
+            )
+        }
         super.onRunContainerClick(context, libraryItem, onClickPlay)
     }
 
@@ -655,11 +665,13 @@ class SteamAppScreen : BaseAppScreen() {
             )
         } else {
             // Already installed: launch app
-            val appInfo = SteamService.getAppInfoOf(gameId)
-            PostHog.capture(
-                event = "game_launched",
-                properties = mapOf("game_name" to (appInfo?.name ?: ""))
-            )
+            CoroutineScope(Dispatchers.IO).launch {
+                val appInfo = SteamService.findAppInfo(gameId)
+                PostHog.capture(
+                    event = "game_launched",
+                    properties = mapOf("game_name" to (appInfo?.name ?: ""))
+                )
+            }
             onClickPlay(false)
         }
     }
@@ -801,8 +813,13 @@ class SteamAppScreen : BaseAppScreen() {
     ): List<AppMenuOption> {
         val gameId = libraryItem.gameId
         val appId = libraryItem.appId
-        val appInfo = SteamService.getAppInfoOf(gameId) ?: return emptyList()
-        val isDownloadInProgress = SteamService.getDownloadingAppInfoOf(gameId) != null
+        val appInfoState = remember(appId) {
+            SteamService.observeAppInfo(gameId)
+        }.collectAsState(initial = SteamService.getCachedAppInfoOf(gameId))
+        val isDownloadInProgress by produceState(false, appId) {
+            value = SteamService.findDownloadingAppInfo(gameId) != null
+        }
+        val appInfo = appInfoState.value ?: return emptyList()
 
         if (!isInstalled || isDownloadInProgress) {
             return emptyList()
@@ -1013,9 +1030,9 @@ class SteamAppScreen : BaseAppScreen() {
     ) {
         val context = LocalContext.current
         val gameId = libraryItem.gameId
-        val appInfo = remember(libraryItem.appId) {
-            SteamService.getAppInfoOf(gameId)
-        }
+        val appInfo by remember(libraryItem.appId) {
+            SteamService.observeAppInfo(gameId)
+        }.collectAsState(initial = SteamService.getCachedAppInfoOf(gameId))
 
         // Track uninstall dialog state
         var showUninstallDialog by remember { mutableStateOf(shouldShowUninstallDialog(libraryItem.appId)) }
@@ -1256,7 +1273,7 @@ class SteamAppScreen : BaseAppScreen() {
             }
             try {
                 val info = withContext(Dispatchers.IO) {
-                    val depots = SteamService.getDownloadableDepots(gameId)
+                    val depots = SteamService.findDownloadableDepots(gameId)
                     Timber.i("There are ${depots.size} depots belonging to ${libraryItem.appId}")
                     val availableBytes = StorageUtils.getAvailableSpace(SteamService.defaultStoragePath)
                     val downloadBytes = depots.values.sumOf {
@@ -1557,19 +1574,17 @@ class SteamAppScreen : BaseAppScreen() {
                 onInstall = { dlcAppIds ->
                     hideGameManagerDialog(gameId)
 
-                    val installedApp = SteamService.getInstalledApp(gameId)
-                    if (installedApp != null) {
-                        // Remove markers if the app is already installed
-                        MarkerUtils.removeMarker(getAppDirPath(gameId), Marker.STEAM_DLL_REPLACED)
-                        MarkerUtils.removeMarker(getAppDirPath(gameId), Marker.STEAM_DLL_RESTORED)
-                        MarkerUtils.removeMarker(getAppDirPath(gameId), Marker.STEAM_COLDCLIENT_USED)
-                    }
-
                     PostHog.capture(
                         event = "game_install_started",
                         properties = mapOf("game_name" to (appInfo?.name ?: ""))
                     )
                     CoroutineScope(Dispatchers.IO).launch {
+                        if (SteamService.findInstalledApp(gameId) != null) {
+                            // Remove markers if the app is already installed
+                            MarkerUtils.removeMarker(getAppDirPath(gameId), Marker.STEAM_DLL_REPLACED)
+                            MarkerUtils.removeMarker(getAppDirPath(gameId), Marker.STEAM_DLL_RESTORED)
+                            MarkerUtils.removeMarker(getAppDirPath(gameId), Marker.STEAM_COLDCLIENT_USED)
+                        }
                         SteamService.downloadApp(gameId, dlcAppIds, isUpdateOrVerify = false)
                     }
                 },
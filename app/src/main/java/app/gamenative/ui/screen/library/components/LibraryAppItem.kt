@@ -7,6 +7,7 @@ import androidx.compose.foundation.clickable
 import androidx.compose.foundation.interaction.MutableInteractionSource
 import androidx.compose.foundation.layout.Arrangement
 import androidx.compose.foundation.layout.Box
+import androidx.compose.foundation.layout.BoxWithConstraints
 import androidx.compose.foundation.layout.Column
 import androidx.compose.foundation.layout.PaddingValues
 import androidx.compose.foundation.layout.Row
@@ -74,6 +75,7 @@ import app.gamenative.ui.icons.Steam
 import app.gamenative.ui.internal.fakeAppInfo
 import app.gamenative.ui.theme.PluviaTheme
 import app.gamenative.ui.util.ListItemImage
+import app.gamenative.utils.ArtworkTile
 import app.gamenative.utils.CustomGameScanner
 import java.io.File
 import timber.log.Timber
@@ -192,86 +194,8 @@ internal fun AppItem(
                         460 / 215f
                     }
 
-                    // Helper function to find SteamGridDB images for Custom Games
-                    fun findSteamGridDBImage(imageType: String): String? {
-                        if (appInfo.gameSource == GameSource.CUSTOM_GAME) {
-                            val gameFolderPath = CustomGameScanner.getFolderPathFromAppId(appInfo.appId)
-                            gameFolderPath?.let { path ->
-                                val folder = java.io.File(path)
-                                val imageFile = folder.listFiles()?.firstOrNull { file ->
-                                    file.name.startsWith("steamgriddb_$imageType") &&
-                                        (
-                                            file.name.endsWith(".png", ignoreCase = true) ||
-                                                file.name.endsWith(".jpg", ignoreCase = true) ||
-                                                file.name.endsWith(".webp", ignoreCase = true)
-                                            )
-                                }
-                                return imageFile?.let { android.net.Uri.fromFile(it).toString() }
-                            }
-                        }
-                        return null
-                    }
-
                     val imageUrl = remember(appInfo.appId, paneType, imageRefreshCounter) {
-                        val url = when (appInfo.gameSource) {
-                            GameSource.CUSTOM_GAME -> {
-                                // For Custom Games, use SteamGridDB images
-                                when (paneType) {
-                                    PaneType.GRID_CAPSULE -> {
-                                        // Vertical grid for capsule
-                                        findSteamGridDBImage("grid_capsule")
-                                            ?: "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId +
-                                            "/library_600x900.jpg"
-                                    }
-
-                                    PaneType.GRID_HERO -> {
-                                        // Horizontal grid for hero view
-                                        findSteamGridDBImage("grid_hero")
-                                            ?: "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId +
-                                            "/header.jpg"
-                                    }
-
-                                    else -> {
-                                        // For list view, use heroes endpoint (not grid_hero)
-                                        val gameFolderPath = CustomGameScanner.getFolderPathFromAppId(appInfo.appId)
-                                        val heroUrl = gameFolderPath?.let { path ->
-                                            val folder = java.io.File(path)
-                                            val heroFile = folder.listFiles()?.firstOrNull { file ->
-                                                file.name.startsWith("steamgriddb_hero") &&
-                                                    !file.name.contains("grid") &&
-                                                    (
-                                                        file.name.endsWith(".png", ignoreCase = true) ||
-                                                            file.name.endsWith(".jpg", ignoreCase = true) ||
-                                                            file.name.endsWith(".webp", ignoreCase = true)
-                                                        )
-                                            }
-                                            heroFile?.let { android.net.Uri.fromFile(it).toString() }
-                                        }
-                                        heroUrl
-                                            ?: "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId +
-                                            "/header.jpg"
-                                    }
-                                }
-                            }
-
-                            GameSource.GOG -> {
-                                appInfo.iconHash
-                            }
-
-                            GameSource.EPIC -> {
-                                appInfo.iconHash
-                            }
-
-                            GameSource.STEAM -> {
-                                // For Steam games, use standard Steam URLs
-                                if (paneType == PaneType.GRID_CAPSULE) {
-                                    "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId + "/library_600x900.jpg"
-                                } else {
-                                    "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId + "/header.jpg"
-                                }
-                            }
-                        }
-                        url
+                        gridArtworkUrl(appInfo, paneType)
                     }
 
                     // Reset alpha and hideText when image URL changes (e.g., when new images are fetched)
@@ -282,13 +206,17 @@ internal fun AppItem(
                         }
                     }
 
-                    Box {
+                    BoxWithConstraints {
+                        // Loaded as a tile scaled to the cell's width, cached on disk
+                        val tileWidth = if (constraints.hasBoundedWidth) constraints.maxWidth else 0
                         ListItemImage(
                             modifier = Modifier.aspectRatio(aspectRatio),
                             imageModifier = Modifier
                                 .clip(RoundedCornerShape(3.dp))
                                 .alpha(alpha),
-                            image = { imageUrl },
+                            image = {
+                                if (imageUrl.isNullOrEmpty() || tileWidth == 0) imageUrl else ArtworkTile(imageUrl, tileWidth)
+                            },
                             onFailure = {
                                 hideText = false
                                 alpha = 0.1f
@@ -455,6 +383,90 @@ internal fun AppItem(
     }
 }
 
+/**
+ * Artwork URL of [appInfo] for a grid [paneType]: SteamGridDB images in a Custom Game's folder
+ * when it has them, otherwise the store's.
+ */
+internal fun gridArtworkUrl(appInfo: LibraryItem, paneType: PaneType): String? {
+    fun findSteamGridDBImage(imageType: String): String? {
+        if (appInfo.gameSource == GameSource.CUSTOM_GAME) {
+            val gameFolderPath = CustomGameScanner.getFolderPathFromAppId(appInfo.appId)
+            gameFolderPath?.let { path ->
+                val folder = java.io.File(path)
+                val imageFile = folder.listFiles()?.firstOrNull { file ->
+                    file.name.startsWith("steamgriddb_$imageType") &&
+                        (
+                            file.name.endsWith(".png", ignoreCase = true) ||
+                                file.name.endsWith(".jpg", ignoreCase = true) ||
+                                file.name.endsWith(".webp", ignoreCase = true)
+                            )
+                }
+                return imageFile?.let { android.net.Uri.fromFile(it).toString() }
+            }
+        }
+        return null
+    }
+
+    return when (appInfo.gameSource) {
+        GameSource.CUSTOM_GAME -> {
+            // For Custom Games, use SteamGridDB images
+            when (paneType) {
+                PaneType.GRID_CAPSULE -> {
+                    // Vertical grid for capsule
+                    findSteamGridDBImage("grid_capsule")
+                        ?: "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId +
+                        "/library_600x900.jpg"
+                }
+
+                PaneType.GRID_HERO -> {
+                    // Horizontal grid for hero view
+                    findSteamGridDBImage("grid_hero")
+                        ?: "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId +
+                        "/header.jpg"
+                }
+
+                else -> {
+                    // For list view, use heroes endpoint (not grid_hero)
+                    val gameFolderPath = CustomGameScanner.getFolderPathFromAppId(appInfo.appId)
+                    val heroUrl = gameFolderPath?.let { path ->
+                        val folder = java.io.File(path)
+                        val heroFile = folder.listFiles()?.firstOrNull { file ->
+                            file.name.startsWith("steamgriddb_hero") &&
+                                !file.name.contains("grid") &&
+                                (
+                                    file.name.endsWith(".png", ignoreCase = true) ||
+                                        file.name.endsWith(".jpg", ignoreCase = true) ||
+                                        file.name.endsWith(".webp", ignoreCase = true)
+                                    )
+                        }
+                        heroFile?.let { android.net.Uri.fromFile(it).toString() }
+                    }
+                    heroUrl
+                        ?: "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId +
+                        "/header.jpg"
+                }
+            }
+        }
+
+        GameSource.GOG -> {
+            appInfo.iconHash
+        }
+
+        GameSource.EPIC -> {
+            appInfo.iconHash
+        }
+
+        GameSource.STEAM -> {
+            // For Steam games, use standard Steam URLs
+            if (paneType == PaneType.GRID_CAPSULE) {
+                "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId + "/library_600x900.jpg"
+            } else {
+                "https://shared.steamstatic.com/store_item_assets/steam/apps/" + appInfo.gameId + "/header.jpg"
+            }
+        }
+    }
+}
+
 @Composable
 internal fun GameInfoBlock(
     modifier: Modifier,
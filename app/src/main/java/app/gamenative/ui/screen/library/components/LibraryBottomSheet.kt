@@ -59,7 +59,7 @@ fun LibraryBottomSheet(
         ) {
             AppFilter.entries.forEach { appFilter ->
                 // TODO properly fix this (and the one below)
-                if (appFilter.code !in listOf(0x01, 0x20)) {
+                if (appFilter.code !in listOf(0x01, 0x20, 0x40)) {
                     FlowFilterChip(
                         onClick = { onFilterChanged(appFilter) },
                         label = { Text(text = appFilter.displayText) },
@@ -76,7 +76,7 @@ fun LibraryBottomSheet(
         Spacer(modifier = Modifier.height(8.dp))
         FlowRow {
             AppFilter.entries.forEach { appFilter ->
-                if (appFilter.code in listOf(0x01, 0x20)) {
+                if (appFilter.code in listOf(0x01, 0x20, 0x40)) {
                     FlowFilterChip(
                         onClick = { onFilterChanged(appFilter) },
                         label = { Text(text = appFilter.displayText) },
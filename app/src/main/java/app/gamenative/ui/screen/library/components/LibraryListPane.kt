@@ -60,11 +60,15 @@ import androidx.compose.runtime.remember
 import androidx.compose.runtime.setValue
 import androidx.compose.ui.draw.alpha
 import androidx.compose.ui.input.pointer.pointerInteropFilter
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.withContext
 import androidx.compose.material3.adaptive.currentWindowAdaptiveInfo
 import androidx.compose.runtime.mutableIntStateOf
 import androidx.compose.runtime.snapshotFlow
 import app.gamenative.PrefManager
+import app.gamenative.utils.ArtworkPrefetchPolicy
+import app.gamenative.utils.ArtworkTiles
 import app.gamenative.utils.DeviceUtils
 import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.distinctUntilChanged
@@ -185,6 +189,28 @@ internal fun LibraryListPane(
             }
     }
 
+    // Prefetch artwork tiles for the page the user is scrolling towards
+    val prefetchPolicy = remember { ArtworkPrefetchPolicy(pageSize = PrefManager.itemsPerPage) }
+    LaunchedEffect(listState, state.appInfoList, paneType) {
+        prefetchPolicy.reset()
+        if (paneType == PaneType.LIST) return@LaunchedEffect
+        val artwork = ArtworkTiles.cache(context)
+        snapshotFlow {
+            val visible = listState.layoutInfo.visibleItemsInfo
+            Triple(visible.firstOrNull()?.index ?: -1, visible.lastOrNull()?.index ?: -1, visible.firstOrNull()?.size?.width ?: 0)
+        }
+            .distinctUntilChanged()
+            .collect { (first, last, width) ->
+                if (width == 0) return@collect
+                val items = prefetchPolicy.onScroll(first, last, state.appInfoList.size).mapNotNull { state.appInfoList.getOrNull(it) }
+                if (items.isEmpty()) return@collect
+                val urls = withContext(Dispatchers.IO) {
+                    items.mapNotNull { item -> gridArtworkUrl(item, paneType)?.takeIf { it.isNotEmpty() } }
+                }
+                artwork.prefetch(urls, width)
+            }
+    }
+
     LaunchedEffect(isViewWide, paneType) {
         // Set initial paneType at first launch depending on orientation
         if (paneType == PaneType.UNDECIDED) {
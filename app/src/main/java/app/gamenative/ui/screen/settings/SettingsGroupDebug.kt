@@ -30,6 +30,7 @@ import com.alorma.compose.settings.ui.SettingsMenuLink
 import com.alorma.compose.settings.ui.SettingsSwitch
 import app.gamenative.PrefManager
 import app.gamenative.ui.theme.settingsTileColorsAlt
+import app.gamenative.utils.ArtworkTiles
 import com.winlator.PrefManager as WinlatorPrefManager
 import java.io.File
 import kotlinx.serialization.decodeFromString
@@ -257,6 +258,7 @@ fun SettingsGroupDebug() {
                 onLongClick = {
                     context.imageLoader.diskCache?.clear()
                     context.imageLoader.memoryCache?.clear()
+                    ArtworkTiles.cache(context).clear()
                 },
                 onClick = {
                     Toast.makeText(context, "Long click to activate", Toast.LENGTH_SHORT).show()
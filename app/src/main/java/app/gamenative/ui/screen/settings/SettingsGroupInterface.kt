@@ -574,6 +574,46 @@ fun SettingsGroupInterface(
             }
         }
 
+        // Rate limits applied by DownloadGovernor, in KiB/s (0 = no limit of its own)
+        val speedLimitValues = remember { listOf(0, 512, 1024, 2048, 5120, 10240, 25600) }
+        val speedLimitLabels = speedLimitValues.map { kbps ->
+            if (kbps == 0) {
+                stringResource(R.string.settings_download_limit_unlimited)
+            } else {
+                val mbps = if (kbps % 1024 == 0) (kbps / 1024).toString() else (kbps / 1024f).toString()
+                stringResource(R.string.settings_download_limit_mbps, mbps)
+            }
+        }
+        var speedLimitIndex by rememberSaveable {
+            mutableStateOf(speedLimitValues.indexOf(PrefManager.downloadSpeedLimitKbps).takeIf { it >= 0 } ?: 0)
+        }
+        SettingsListDropdown(
+            colors = settingsTileColorsAlt(),
+            title = { Text(text = stringResource(R.string.settings_download_limit_title)) },
+            subtitle = { Text(text = stringResource(R.string.settings_download_limit_subtitle)) },
+            items = speedLimitLabels,
+            value = speedLimitIndex,
+            onItemSelected = { index ->
+                speedLimitIndex = index
+                PrefManager.downloadSpeedLimitKbps = speedLimitValues[index]
+            },
+        )
+        val gameplayLimitLabels = listOf(stringResource(R.string.settings_download_limit_same)) + speedLimitLabels.drop(1)
+        var gameplayLimitIndex by rememberSaveable {
+            mutableStateOf(speedLimitValues.indexOf(PrefManager.gameplayDownloadSpeedLimitKbps).takeIf { it >= 0 } ?: 0)
+        }
+        SettingsListDropdown(
+            colors = settingsTileColorsAlt(),
+            title = { Text(text = stringResource(R.string.settings_download_gameplay_limit_title)) },
+            subtitle = { Text(text = stringResource(R.string.settings_download_gameplay_limit_subtitle)) },
+            items = gameplayLimitLabels,
+            value = gameplayLimitIndex,
+            onItemSelected = { index ->
+                gameplayLimitIndex = index
+                PrefManager.gameplayDownloadSpeedLimitKbps = speedLimitValues[index]
+            },
+        )
+
         val ctx = LocalContext.current
         val sm = ctx.getSystemService(StorageManager::class.java)
 
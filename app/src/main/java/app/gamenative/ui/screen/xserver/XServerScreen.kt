@@ -77,6 +77,7 @@ import app.gamenative.utils.ContainerUtils
 import app.gamenative.utils.CustomGameScanner
 import app.gamenative.utils.SteamTokenLogin
 import app.gamenative.utils.SteamUtils
+import app.gamenative.utils.SteamlessCache
 import com.posthog.PostHog
 import com.winlator.alsaserver.ALSAClient
 import com.winlator.container.Container
@@ -155,7 +156,6 @@ import java.io.IOException
 import java.nio.file.Files
 import java.nio.file.Paths
 import java.nio.file.StandardCopyOption
-import java.nio.file.StandardCopyOption.REPLACE_EXISTING
 import java.util.Arrays
 import java.util.Locale
 import java.util.concurrent.atomic.AtomicBoolean
@@ -2548,58 +2548,62 @@ private fun unpackExecutableFile(
                     if (exePaths.size > 1) {
                         PluviaApp.events.emit(AndroidEvent.SetBootingSplashText("Handling DRM (${index + 1}/${exePaths.size})"))
                     }
-                    var batchFile: File? = null
-                    try {
-                        // Normalize path: use forward slashes for Unix format, backslashes for Windows
-                        val normalizedPath = executablePath.replace('/', '\\')
-                        val windowsPath = "A:\\$normalizedPath"
-
-                        // Create a batch file that Wine can execute, to handle paths with spaces in them
-                        batchFile = File(imageFs.getRootDir(), "tmp/steamless_wrapper.bat")
-                        batchFile.parentFile?.mkdirs()
-                        batchFile.writeText("@echo off\r\nz:\\Steamless\\Steamless.CLI.exe \"$windowsPath\"\r\n")
-
-                        val slCmd = "wine z:\\tmp\\steamless_wrapper.bat"
-                        val slOutput = guestProgramLauncherComponent.execShellCommand(slCmd)
-                        output.append(slOutput)
-                        Timber.i("Finished processing executable. Result: $output")
-                    } catch (e: Exception) {
-                        Timber.e(e, "Error running Steamless on $executablePath")
-                        output.append("Error processing $executablePath: ${e.message}\n")
-                    } finally {
-                        batchFile?.delete()
+                    val unixPath = executablePath.replace('\\', '/')
+                    val exe = File(imageFs.wineprefix + "/dosdevices/a:/" + unixPath)
+                    val originalExe = File(
+                        imageFs.wineprefix + "/dosdevices/a:/" + unixPath + ".original.exe",
+                    )
+                    val windowsPathForLog = "A:\\${executablePath.replace('/', '\\')}"
+
+                    // Steamless only runs on executable versions it hasn't seen before
+                    val unpackedExe = try {
+                        SteamlessCache.shared.unpack(exe) {
+                            var batchFile: File? = null
+                            try {
+                                // Normalize path: use forward slashes for Unix format, backslashes for Windows
+                                val normalizedPath = executablePath.replace('/', '\\')
+                                val windowsPath = "A:\\$normalizedPath"
+
+                                // Create a batch file that Wine can execute, to handle paths with spaces in them
+                                batchFile = File(imageFs.getRootDir(), "tmp/steamless_wrapper.bat")
+                                batchFile.parentFile?.mkdirs()
+                                batchFile.writeText("@echo off\r\nz:\\Steamless\\Steamless.CLI.exe \"$windowsPath\"\r\n")
+
+                                val slCmd = "wine z:\\tmp\\steamless_wrapper.bat"
+                                val slOutput = guestProgramLauncherComponent.execShellCommand(slCmd)
+                                output.append(slOutput)
+                                Timber.i("Finished processing executable. Result: $output")
+                                SteamlessCache.isConclusive(exe, slOutput)
+                            } catch (e: Exception) {
+                                Timber.e(e, "Error running Steamless on $executablePath")
+                                output.append("Error processing $executablePath: ${e.message}\n")
+                                false
+                            } finally {
+                                batchFile?.delete()
+                            }
+                        }
+                    } catch (e: IOException) {
+                        Timber.w(e, "Could not read $windowsPathForLog, skipping Steamless")
+                        null
                     }
 
                     // Process file moving for the executable
+                    if (unpackedExe == null) {
+                        Timber.i("Nothing to unpack for $windowsPathForLog")
+                        continue
+                    }
                     try {
-                        val unixPath = executablePath.replace('\\', '/')
-                        val exe = File(imageFs.wineprefix + "/dosdevices/a:/" + unixPath)
-                        val unpackedExe = File(
-                            imageFs.wineprefix + "/dosdevices/a:/" + unixPath + ".unpacked.exe",
-                        )
-                        val originalExe = File(
-                            imageFs.wineprefix + "/dosdevices/a:/" + unixPath + ".original.exe",
-                        )
-
-                        val windowsPathForLog = "A:\\${executablePath.replace('/', '\\')}"
                         Timber.i("Moving files for $windowsPathForLog")
-                        if (exe.exists() && unpackedExe.exists()) {
-                            if (originalExe.exists()) {
-                                Timber.i("Original backup exists for $windowsPathForLog; skipping overwrite")
-                            } else {
-                                Files.copy(exe.toPath(), originalExe.toPath(), REPLACE_EXISTING)
-                            }
-                            Files.copy(unpackedExe.toPath(), exe.toPath(), REPLACE_EXISTING)
-                            Timber.i("Successfully moved files for $windowsPathForLog")
-                        } else {
-                            val errorMsg =
-                                "Either exe or unpacked exe does not exist for $windowsPathForLog. Exe: ${exe.exists()}, Unpacked: ${unpackedExe.exists()}"
-                            Timber.w(errorMsg)
+                        if (originalExe.exists()) {
+                            Timber.i("Original backup exists for $windowsPathForLog; skipping overwrite")
                         }
+                        SteamlessCache.installUnpacked(exe, unpackedExe, originalExe)
+                        Timber.i("Successfully moved files for $windowsPathForLog")
                     } catch (e: Exception) {
                         Timber.e(e, "Error moving files for $executablePath")
                     }
                 }
+                SteamlessCache.shared.save()
             }
         } else {
             Timber.i("Skipping Steamless (launchRealSteam=${container.isLaunchRealSteam}, useLegacyDRM=${container.isUseLegacyDRM}, unpackFiles=${container.isUnpackFiles})")
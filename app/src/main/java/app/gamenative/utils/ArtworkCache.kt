@@ -0,0 +1,256 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.io.IOException
+import java.net.URI
+import java.net.URISyntaxException
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import timber.log.Timber
+
+/**
+ * On-disk cache of library artwork scaled down to tile size, so grid tiles decode a small image
+ * instead of the full-size artwork on every cold start.
+ *
+ * Tiles are keyed by image URL and width bucket ([bucketFor]) and fetched once per key, however
+ * many requests race for it. Local `file://` artwork is keyed by its size and mtime as well
+ * ([sourceKey]), since it's rewritten in place when replaced. Fetches run at most [parallelism] at
+ * a time. Once the cache grows past [maxBytes] the least recently used tiles are evicted; recency
+ * survives restarts through the tiles' mtimes. Images [scale] can't handle are kept as fetched.
+ *
+ * The tiles already on disk are listed on first use, not when the cache is created. [cached] and
+ * [size] may do that listing and stat tiles, so call them off the main thread; [prefetch] does its
+ * disk work in the background.
+ *
+ * @param fetch downloads or reads the full-size image, null if it's unavailable
+ * @param scale re-encodes an image at the given width, null if it can't
+ */
+class ArtworkCache(
+    private val dir: File,
+    private val fetch: suspend (url: String) -> ByteArray?,
+    private val scale: (bytes: ByteArray, width: Int) -> ByteArray?,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES,
+    private val parallelism: Int = DEFAULT_PARALLELISM,
+    private val clock: () -> Long = System::currentTimeMillis,
+) {
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 64L * 1024 * 1024
+        const val DEFAULT_PARALLELISM = 4
+
+        /** Tile widths in pixels; a request is served by the smallest bucket at least as wide */
+        val WIDTH_BUCKETS = intArrayOf(160, 240, 320, 480, 640, 960, 1280)
+
+        private const val SUFFIX = ".tile"
+
+        // Recency is written to the tile's mtime at most this often, not on every hit
+        private const val TOUCH_INTERVAL_MS = 60_000L
+
+        private const val FILE_SCHEME = "file://"
+
+        fun bucketFor(widthPx: Int): Int = WIDTH_BUCKETS.firstOrNull { it >= widthPx } ?: WIDTH_BUCKETS.last()
+
+        /**
+         * The file a `file://` artwork URL points at, null for remote artwork. URLs from
+         * Uri.fromFile are percent-encoded; ones made by prefixing a raw path may not even be
+         * valid URIs, and are taken as they are.
+         */
+        fun localFile(url: String): File? {
+            if (!url.startsWith(FILE_SCHEME)) return null
+            return try {
+                File(URI(url))
+            } catch (e: URISyntaxException) {
+                File(url.removePrefix(FILE_SCHEME))
+            } catch (e: IllegalArgumentException) {
+                File(url.removePrefix(FILE_SCHEME))
+            }
+        }
+
+        /**
+         * What identifies the image at [url]: the URL itself, plus size and mtime for local files,
+         * so a tile of replaced artwork isn't served for the new one.
+         */
+        fun sourceKey(url: String): String {
+            val file = localFile(url) ?: return url
+            return "$url#${file.length()}-${file.lastModified()}"
+        }
+    }
+
+    private class Entry(val size: Long, var touched: Long)
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val permits = Semaphore(parallelism)
+    private val inFlight = ConcurrentHashMap<String, Deferred<File?>>()
+
+    // Tile file name -> entry, least recently used first
+    private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+    private var totalBytes = 0L
+    private var loaded = false
+    private var prefetchJob: Job? = null
+
+    /** Bytes of tiles on disk */
+    val size: Long get() = synchronized(entries) {
+        ensureLoaded()
+        totalBytes
+    }
+
+    private fun fileName(url: String, bucket: Int) = "${sourceKey(url).sha1Hex()}_$bucket$SUFFIX"
+
+    /** The tile of [url] at [widthPx] if it's cached, without fetching it */
+    fun cached(url: String, widthPx: Int): File? {
+        val name = fileName(url, bucketFor(widthPx))
+        val file = File(dir, name)
+        synchronized(entries) {
+            ensureLoaded()
+            val entry = entries[name] ?: return null
+            if (!file.isFile) {
+                // Cleared behind our back, e.g. by the system
+                entries.remove(name)
+                totalBytes -= entry.size
+                return null
+            }
+            val now = clock()
+            if (now - entry.touched >= TOUCH_INTERVAL_MS) {
+                entry.touched = now
+                file.setLastModified(now)
+            }
+        }
+        return file
+    }
+
+    /** The tile of [url] at [widthPx], fetched and scaled first if needed; null if it can't be fetched */
+    suspend fun tile(url: String, widthPx: Int): File? {
+        cached(url, widthPx)?.let { return it }
+        val bucket = bucketFor(widthPx)
+        val name = fileName(url, bucket)
+        val deferred = inFlight.computeIfAbsent(name) {
+            scope.async(start = CoroutineStart.LAZY) {
+                try {
+                    fetchTile(url, bucket, name)
+                } finally {
+                    inFlight.remove(name)
+                }
+            }
+        }
+        return deferred.await()
+    }
+
+    /**
+     * Fetches the tiles of [urls] in the background, in order and [parallelism] at a time, skipping
+     * the ones already cached. A newer call replaces an unfinished one, as the user has scrolled on;
+     * tiles already being fetched are still finished and cached. Safe to call from the main thread.
+     */
+    fun prefetch(urls: List<String>, widthPx: Int) {
+        synchronized(this) {
+            prefetchJob?.cancel()
+            if (urls.isEmpty()) return
+            prefetchJob = scope.launch {
+                val missing = urls.distinct().filter { cached(it, widthPx) == null }
+                missing.chunked(parallelism).forEach { batch ->
+                    batch.map { url -> async { tile(url, widthPx) } }.awaitAll()
+                }
+            }
+        }
+    }
+
+    /** Waits for the current prefetch, if any */
+    internal suspend fun awaitPrefetch() {
+        synchronized(this) { prefetchJob }?.join()
+    }
+
+    /** Drops every tile */
+    fun clear() {
+        synchronized(entries) {
+            ensureLoaded()
+            entries.keys.forEach { File(dir, it).delete() }
+            entries.clear()
+            totalBytes = 0L
+        }
+    }
+
+    private suspend fun fetchTile(url: String, bucket: Int, name: String): File? = permits.withPermit {
+        // A racing request may have stored it while this one waited
+        cached(url, bucket)?.let { return@withPermit it }
+
+        val original = try {
+            fetch(url)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Timber.w(e, "Could not fetch artwork $url")
+            null
+        } ?: return@withPermit null
+
+        val bytes = try {
+            scale(original, bucket)
+        } catch (e: Exception) {
+            Timber.w(e, "Could not scale artwork $url")
+            null
+        } ?: original
+        store(name, bytes)
+    }
+
+    private fun store(name: String, bytes: ByteArray): File? {
+        val file = File(dir, name)
+        try {
+            dir.mkdirs()
+            val tmp = File(dir, "$name.tmp")
+            tmp.writeBytes(bytes)
+            if (!tmp.renameTo(file)) {
+                tmp.delete()
+                return null
+            }
+        } catch (e: IOException) {
+            Timber.w(e, "Could not cache artwork tile $name")
+            return null
+        }
+
+        val now = clock()
+        file.setLastModified(now)
+        synchronized(entries) {
+            ensureLoaded()
+            entries.put(name, Entry(bytes.size.toLong(), now))?.let { totalBytes -= it.size }
+            totalBytes += bytes.size
+            trim()
+        }
+        return file
+    }
+
+    // Evicts least recently used tiles down to maxBytes, always keeping the newest one
+    private fun trim() {
+        val iterator = entries.entries.iterator()
+        while (totalBytes > maxBytes && entries.size > 1 && iterator.hasNext()) {
+            val (name, entry) = iterator.next()
+            iterator.remove()
+            totalBytes -= entry.size
+            File(dir, name).delete()
+        }
+    }
+
+    // Called holding the entries lock
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        val files = dir.listFiles() ?: return
+        files.filter { it.name.endsWith(".tmp") }.forEach { it.delete() }
+        files.filter { it.isFile && it.name.endsWith(SUFFIX) }
+                .map { Triple(it.name, it.length(), it.lastModified()) }
+                .sortedBy { it.third }
+            .forEach { (name, size, lastModified) ->
+                entries[name] = Entry(size, lastModified)
+                totalBytes += size
+            }
+        trim()
+    }
+}
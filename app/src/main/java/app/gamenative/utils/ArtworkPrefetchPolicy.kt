@@ -0,0 +1,34 @@
+package app.gamenative.utils
+
+/**
+ * Decides which library items to prefetch artwork for as the user scrolls: the [pageSize] items
+ * past the visible ones in the direction of travel. The whole page is handed out whenever it moves,
+ * as a newer prefetch replaces the one still running; a page already handed out isn't repeated
+ * until [reset], e.g. when the list is filtered again.
+ */
+class ArtworkPrefetchPolicy(private val pageSize: Int) {
+
+    private var lastFirstVisible = -1
+    private var lastAhead = emptyList<Int>()
+
+    fun reset() {
+        lastFirstVisible = -1
+        lastAhead = emptyList()
+    }
+
+    /** Indices of items to prefetch now that [firstVisible]..[lastVisible] of [itemCount] are shown */
+    fun onScroll(firstVisible: Int, lastVisible: Int, itemCount: Int): List<Int> {
+        if (itemCount <= 0 || firstVisible < 0 || lastVisible < firstVisible) return emptyList()
+        val scrollingUp = lastFirstVisible >= 0 && firstVisible < lastFirstVisible
+        lastFirstVisible = firstVisible
+
+        val ahead = if (scrollingUp) {
+            (firstVisible - 1 downTo (firstVisible - pageSize).coerceAtLeast(0)).toList()
+        } else {
+            (lastVisible + 1 until minOf(itemCount, lastVisible + 1 + pageSize)).toList()
+        }
+        if (lastAhead.containsAll(ahead)) return emptyList()
+        lastAhead = ahead
+        return ahead
+    }
+}
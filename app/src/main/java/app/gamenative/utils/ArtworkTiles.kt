@@ -0,0 +1,114 @@
+package app.gamenative.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.os.Build
+import coil.ImageLoader
+import coil.decode.DataSource
+import coil.decode.ImageSource
+import coil.fetch.FetchResult
+import coil.fetch.Fetcher
+import coil.fetch.SourceResult
+import coil.key.Keyer
+import coil.request.Options
+import com.github.penfeizhou.animation.apng.decode.APNGParser
+import com.github.penfeizhou.animation.io.StreamReader
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import okhttp3.Request
+import okio.FileSystem
+import okio.Path.Companion.toOkioPath
+
+/** Library artwork at [url], shown as a tile [widthPx] wide and loaded through [ArtworkCache] */
+data class ArtworkTile(val url: String, val widthPx: Int)
+
+/**
+ * The app's [ArtworkCache] and its Coil hooks: with [TileFetcher] and [TileKeyer] added to the
+ * image loader, request an [ArtworkTile] instead of the artwork URL.
+ */
+object ArtworkTiles {
+    private const val CACHE_DIR = "artwork_tiles"
+    private const val WEBP_QUALITY = 85
+
+    @Volatile
+    private var cache: ArtworkCache? = null
+
+    fun cache(context: Context): ArtworkCache = cache ?: synchronized(this) {
+        cache ?: ArtworkCache(File(context.cacheDir, CACHE_DIR), ::fetchOriginal, ::scaleToWidth).also { cache = it }
+    }
+
+    private suspend fun fetchOriginal(url: String): ByteArray? {
+        ArtworkCache.localFile(url)?.let { file ->
+            return file.takeIf { it.isFile }?.readBytes()
+        }
+        val request = Request.Builder().url(url).build()
+        return Net.http.newCall(request).awaitResponse { response ->
+            if (response.isSuccessful) response.body?.bytes() else null
+        }
+    }
+
+    /**
+     * [bytes] downscaled to [width] and encoded as WebP, or null to keep them as they are: when the
+     * image is no wider than that already, animated, or not something BitmapFactory decodes.
+     */
+    private fun scaleToWidth(bytes: ByteArray, width: Int): ByteArray? {
+        if (isAnimated(bytes)) return null
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.size, bounds)
+        if (bounds.outWidth <= width || bounds.outHeight <= 0) return null
+
+        // Decode at the smallest power-of-two reduction still at least as wide, then scale exactly
+        var sampleSize = 1
+        while (bounds.outWidth / (sampleSize * 2) >= width) sampleSize *= 2
+        val options = BitmapFactory.Options().apply { inSampleSize = sampleSize }
+        val decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.size, options) ?: return null
+        val height = (decoded.height.toLong() * width / decoded.width).toInt().coerceAtLeast(1)
+        val scaled = if (decoded.width == width) decoded else Bitmap.createScaledBitmap(decoded, width, height, true)
+
+        val format = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bitmap.CompressFormat.WEBP_LOSSY
+        } else {
+            @Suppress("DEPRECATION")
+            Bitmap.CompressFormat.WEBP
+        }
+        val out = ByteArrayOutputStream(bytes.size / 4)
+        val compressed = scaled.compress(format, WEBP_QUALITY, out)
+        if (scaled !== decoded) scaled.recycle()
+        decoded.recycle()
+        return if (compressed) out.toByteArray() else null
+    }
+
+    // GIFs and APNGs would lose their animation as a single WebP frame
+    private fun isAnimated(bytes: ByteArray): Boolean {
+        if (bytes.size >= 4 && String(bytes, 0, 4, Charsets.US_ASCII) == "GIF8") return true
+        return try {
+            APNGParser.isAPNG(StreamReader(bytes.inputStream()))
+        } catch (e: Exception) {
+            false
+        }
+    }
+
+    class TileFetcher(private val tile: ArtworkTile, private val cache: ArtworkCache) : Fetcher {
+        override suspend fun fetch(): FetchResult {
+            val file = cache.tile(tile.url, tile.widthPx) ?: throw IOException("Artwork unavailable: ${tile.url}")
+            return SourceResult(
+                source = ImageSource(file.toOkioPath(), FileSystem.SYSTEM),
+                mimeType = null,
+                dataSource = DataSource.DISK,
+            )
+        }
+
+        class Factory(private val cache: ArtworkCache) : Fetcher.Factory<ArtworkTile> {
+            override fun create(data: ArtworkTile, options: Options, imageLoader: ImageLoader): Fetcher =
+                TileFetcher(data, cache)
+        }
+    }
+
+    /** Memory-cache key: one entry per image and width bucket, as tiles are keyed on disk */
+    class TileKeyer : Keyer<ArtworkTile> {
+        override fun key(data: ArtworkTile, options: Options): String =
+            "${ArtworkCache.sourceKey(data.url)}@${ArtworkCache.bucketFor(data.widthPx)}"
+    }
+}
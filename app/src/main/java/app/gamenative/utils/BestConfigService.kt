@@ -4,13 +4,22 @@ import android.content.Context
 import androidx.compose.ui.graphics.Color
 import app.gamenative.PrefManager
 import app.gamenative.R
+import app.gamenative.service.DownloadService
 import com.winlator.box86_64.Box86_64PresetManager
 import com.winlator.container.Container
 import com.winlator.container.ContainerData
 import com.winlator.contents.ContentProfile
 import com.winlator.fexcore.FEXCorePresetManager
 import com.winlator.core.KeyValueSet
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeout
 import kotlinx.serialization.json.Json
@@ -21,8 +30,11 @@ import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
+import org.json.JSONArray
 import org.json.JSONObject
 import timber.log.Timber
+import java.io.File
+import java.io.IOException
 import java.util.Locale
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.ConcurrentHashMap
@@ -34,13 +46,46 @@ object BestConfigService {
     private const val API_BASE_URL = "https://gamenative-best-config-worker.gamenative.workers.dev/api/best-config"
     private const val TIMEOUT_SECONDS = 10L
 
+    private const val CACHE_DIR = "best_config"
+    private const val BATCH_SIZE = 25
+    private const val FALLBACK_PARALLELISM = 4
+
+    // Configs are served from the cache this long before they're revalidated with the API
+    private const val CACHE_TTL_MS = 24 * 60 * 60 * 1000L
+
+    // Answers meaning the API has no batch endpoint, so configs are looked up one by one
+    private val BATCH_UNSUPPORTED_CODES = setOf(404, 405, 501)
+
     private val httpClient = OkHttpClient.Builder()
         .connectTimeout(10, TimeUnit.SECONDS)
         .readTimeout(10, TimeUnit.SECONDS)
         .build()
 
-    // In-memory cache keyed by "${gameName}_${gpuName}"
-    private val cache = ConcurrentHashMap<String, BestConfigResponse>()
+    /** Overridden by tests to talk to a local server */
+    internal var apiBaseUrl = API_BASE_URL
+
+    /** Where fetched configs are kept between runs; defaults to a folder in the app's cache dir */
+    internal var cacheDir: File? = null
+        get() = field ?: DownloadService.cacheSubdir(CACHE_DIR)
+
+    internal var clock: () -> Long = System::currentTimeMillis
+
+    private class CachedConfig(
+        val response: BestConfigResponse,
+        val body: String,
+        val etag: String?,
+        val fetchedAt: Long,
+    )
+
+    // In-memory cache keyed by "${gameName}_${gpuName}", backed by a file per key in cacheDir
+    private val cache = ConcurrentHashMap<String, CachedConfig>()
+
+    // Lookups under way, so concurrent ones for the same key share a single request
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val inFlight = ConcurrentHashMap<String, Deferred<BestConfigResponse?>>()
+
+    @Volatile
+    private var batchSupported = true
 
     // Last missing content description from validation (e.g. "DXVK 1.10.3")
     private var lastMissingContentDescription: String? = null
@@ -76,21 +121,103 @@ object BestConfigService {
 
     /**
      * Fetches best configuration for a game.
-     * Returns cached response if available, otherwise makes API call.
+     * Returns the cached response while it's fresh, otherwise makes API call: revalidated with the
+     * cached ETag when there is one, and falling back to the stale response if the API can't be
+     * reached. Concurrent calls for the same game and GPU share one request.
      */
     suspend fun fetchBestConfig(
         gameName: String,
         gpuName: String
     ): BestConfigResponse? = withContext(Dispatchers.IO) {
-        val cacheKey = "${gameName}_${gpuName}"
+        val cacheKey = cacheKey(gameName, gpuName)
 
         // Check cache first
-        cache[cacheKey]?.let {
+        cached(cacheKey)?.takeIf(::isFresh)?.let {
             Timber.tag("BestConfigService").d("Using cached config for $cacheKey")
-            return@withContext it
+            return@withContext it.response
         }
 
-        try {
+        val deferred = inFlight.computeIfAbsent(cacheKey) {
+            scope.async(start = CoroutineStart.LAZY) {
+                try {
+                    fetchAndCache(gameName, gpuName, cacheKey)
+                } finally {
+                    inFlight.remove(cacheKey)
+                }
+            }
+        }
+        deferred.await()
+    }
+
+    /**
+     * Best configs for [gameNames] on [gpuName], e.g. for a page of the library. Fresh cached configs
+     * are served as they are and the rest fetched [BATCH_SIZE] games per request; games the API
+     * has no config for are left out.
+     */
+    suspend fun fetchBestConfigs(
+        gameNames: List<String>,
+        gpuName: String
+    ): Map<String, BestConfigResponse> = fetchBestConfigs(gameNames, gpuName, singleLookups = true)
+
+    /**
+     * Warms the cache for [gameNames] on [gpuName] ahead of them being opened, e.g. for the page of
+     * the library being shown. Only the batch endpoint is used: when the API has none, or a batch
+     * fails, nothing is fetched game by game, as that would cost a request per game on every page.
+     */
+    suspend fun prefetchBestConfigs(
+        gameNames: List<String>,
+        gpuName: String
+    ): Map<String, BestConfigResponse> {
+        if (!batchSupported) return emptyMap()
+        return fetchBestConfigs(gameNames, gpuName, singleLookups = false)
+    }
+
+    private suspend fun fetchBestConfigs(
+        gameNames: List<String>,
+        gpuName: String,
+        singleLookups: Boolean,
+    ): Map<String, BestConfigResponse> = withContext(Dispatchers.IO) {
+        val result = mutableMapOf<String, BestConfigResponse>()
+        val missing = mutableListOf<String>()
+        for (gameName in gameNames.distinct()) {
+            val entry = cached(cacheKey(gameName, gpuName))
+            if (entry != null && isFresh(entry)) result[gameName] = entry.response else missing += gameName
+        }
+
+        // Lookups already under way are joined rather than asked for again
+        val (pending, toFetch) = missing.partition { inFlight.containsKey(cacheKey(it, gpuName)) }
+        val single = pending.toMutableList()
+        for (chunk in toFetch.chunked(BATCH_SIZE)) {
+            val fetched = if (batchSupported) fetchBatch(chunk, gpuName) else null
+            if (fetched != null) result += fetched else single += chunk
+        }
+        if (!singleLookups) return@withContext result
+
+        val permits = Semaphore(FALLBACK_PARALLELISM)
+        single.map { gameName ->
+            async { permits.withPermit { gameName to fetchBestConfig(gameName, gpuName) } }
+        }.awaitAll().forEach { (gameName, response) ->
+            if (response != null) result[gameName] = response
+        }
+        result
+    }
+
+    /** Drops the in-memory cache, as after a restart; configs on disk are kept */
+    internal fun clearMemoryCache() {
+        cache.clear()
+        batchSupported = true
+    }
+
+    private fun cacheKey(gameName: String, gpuName: String) = "${gameName}_${gpuName}"
+
+    private fun isFresh(entry: CachedConfig): Boolean = clock() - entry.fetchedAt in 0 until CACHE_TTL_MS
+
+    private suspend fun fetchAndCache(gameName: String, gpuName: String, cacheKey: String): BestConfigResponse? {
+        val stale = cached(cacheKey)
+        // A batch may have fetched it while this lookup was queued
+        if (stale != null && isFresh(stale)) return stale.response
+
+        return try {
             withTimeout(TIMEOUT_SECONDS * 1000) {
                 val requestBody = JSONObject().apply {
                     put("gameName", gameName)
@@ -101,51 +228,164 @@ object BestConfigService {
                 val body = requestBody.toString().toRequestBody(mediaType)
 
                 val request = Request.Builder()
-                    .url(API_BASE_URL)
+                    .url(apiBaseUrl)
                     .post(body)
                     .header("Content-Type", "application/json")
+                    .apply { stale?.etag?.let { header("If-None-Match", it) } }
                     .build()
 
-                val response = httpClient.newCall(request).execute()
-
-                if (!response.isSuccessful) {
-                    Timber.tag("BestConfigService")
-                        .w("API request failed - HTTP ${response.code}")
-                    return@withTimeout null
+                httpClient.newCall(request).awaitResponse { response ->
+                    when {
+                        response.code == 304 && stale != null -> {
+                            store(cacheKey, CachedConfig(stale.response, stale.body, stale.etag, clock()))
+                            Timber.tag("BestConfigService").d("Cached config for $cacheKey is still current")
+                            stale.response
+                        }
+                        !response.isSuccessful -> {
+                            Timber.tag("BestConfigService")
+                                .w("API request failed - HTTP ${response.code}")
+                            stale?.response
+                        }
+                        else -> {
+                            val responseBody = response.body?.string() ?: return@awaitResponse stale?.response
+                            val bestConfigResponse = parseResponse(responseBody)
+
+                            // Cache the response
+                            store(cacheKey, CachedConfig(bestConfigResponse, responseBody, response.header("ETag"), clock()))
+
+                            Timber.tag("BestConfigService")
+                                .d("Fetched best config for $gameName on $gpuName (matchType: ${bestConfigResponse.matchType})")
+
+                            bestConfigResponse
+                        }
+                    }
                 }
+            }
+        } catch (e: java.util.concurrent.TimeoutException) {
+            Timber.tag("BestConfigService")
+                .e(e, "Timeout while fetching best config")
+            stale?.response
+        } catch (e: Exception) {
+            Timber.tag("BestConfigService")
+                .e(e, "Error fetching best config: ${e.message}")
+            stale?.response
+        }
+    }
 
-                val responseBody = response.body?.string() ?: return@withTimeout null
-                val jsonResponse = JSONObject(responseBody)
-
-                val bestConfigJson = jsonResponse.getJSONObject("bestConfig")
-                val bestConfig = Json.parseToJsonElement(bestConfigJson.toString()).jsonObject
+    // Configs for gameNames from the batch endpoint, or null if it has none or the request failed
+    private suspend fun fetchBatch(gameNames: List<String>, gpuName: String): Map<String, BestConfigResponse>? {
+        return try {
+            withTimeout(TIMEOUT_SECONDS * 1000) {
+                val requestBody = JSONObject().apply {
+                    put("gameNames", JSONArray(gameNames))
+                    put("gpuName", gpuName)
+                }
 
-                val bestConfigResponse = BestConfigResponse(
-                    bestConfig = bestConfig,
-                    matchType = jsonResponse.getString("matchType"),
-                    matchedGpu = jsonResponse.getString("matchedGpu"),
-                    matchedDeviceId = jsonResponse.getInt("matchedDeviceId")
-                )
+                val mediaType = "application/json".toMediaType()
+                val body = requestBody.toString().toRequestBody(mediaType)
 
-                // Cache the response
-                cache[cacheKey] = bestConfigResponse
+                val request = Request.Builder()
+                    .url("$apiBaseUrl/batch")
+                    .post(body)
+                    .header("Content-Type", "application/json")
+                    .build()
 
-                Timber.tag("BestConfigService")
-                    .d("Fetched best config for $gameName on $gpuName (matchType: ${bestConfigResponse.matchType})")
+                httpClient.newCall(request).awaitResponse { response ->
+                    if (response.code in BATCH_UNSUPPORTED_CODES) {
+                        Timber.tag("BestConfigService")
+                            .i("No batch endpoint (HTTP ${response.code}), fetching configs one by one")
+                        batchSupported = false
+                        return@awaitResponse null
+                    }
+                    if (!response.isSuccessful) throw IOException("HTTP ${response.code}")
+
+                    val jsonResponse = JSONObject(response.body?.string() ?: throw IOException("Empty response"))
+                    val fetchedAt = clock()
+                    val result = mutableMapOf<String, BestConfigResponse>()
+                    for (gameName in gameNames) {
+                        val item = jsonResponse.optJSONObject(gameName) ?: continue
+                        val itemBody = item.toString()
+                        val bestConfigResponse = try {
+                            parseResponse(itemBody)
+                        } catch (e: Exception) {
+                            Timber.tag("BestConfigService").w(e, "Malformed config for $gameName in batch")
+                            continue
+                        }
+                        store(cacheKey(gameName, gpuName), CachedConfig(bestConfigResponse, itemBody, null, fetchedAt))
+                        result[gameName] = bestConfigResponse
+                    }
 
-                bestConfigResponse
+                    Timber.tag("BestConfigService")
+                        .d("Fetched best configs for ${result.size} of ${gameNames.size} games on $gpuName")
+                    result
+                }
             }
-        } catch (e: java.util.concurrent.TimeoutException) {
+        } catch (e: Exception) {
+            // The chunk goes through single lookups instead, which fall back to stale configs
             Timber.tag("BestConfigService")
-                .e(e, "Timeout while fetching best config")
+                .w(e, "Error fetching best configs: ${e.message}")
             null
+        }
+    }
+
+    private fun parseResponse(responseBody: String): BestConfigResponse {
+        val jsonResponse = JSONObject(responseBody)
+
+        val bestConfigJson = jsonResponse.getJSONObject("bestConfig")
+        val bestConfig = Json.parseToJsonElement(bestConfigJson.toString()).jsonObject
+
+        return BestConfigResponse(
+            bestConfig = bestConfig,
+            matchType = jsonResponse.getString("matchType"),
+            matchedGpu = jsonResponse.getString("matchedGpu"),
+            matchedDeviceId = jsonResponse.getInt("matchedDeviceId")
+        )
+    }
+
+    private fun cacheFile(cacheKey: String): File? = cacheDir?.let { File(it, cacheKey.sha1Hex() + ".json") }
+
+    // The entry for cacheKey from memory, or from disk on the first lookup after a restart
+    private fun cached(cacheKey: String): CachedConfig? {
+        cache[cacheKey]?.let { return it }
+        val file = cacheFile(cacheKey)?.takeIf { it.isFile } ?: return null
+        return try {
+            val json = JSONObject(file.readText())
+            // Keys are hashed for the file name, so a collision shows up here
+            if (json.getString("key") != cacheKey) return null
+            val body = json.getString("body")
+            CachedConfig(
+                response = parseResponse(body),
+                body = body,
+                etag = json.optString("etag").takeIf { it.isNotEmpty() },
+                fetchedAt = json.getLong("fetchedAt"),
+            ).also { cache.putIfAbsent(cacheKey, it) }
         } catch (e: Exception) {
-            Timber.tag("BestConfigService")
-                .e(e, "Error fetching best config: ${e.message}")
+            Timber.tag("BestConfigService").w(e, "Dropping unreadable cached config for $cacheKey")
+            file.delete()
             null
         }
     }
 
+    private fun store(cacheKey: String, entry: CachedConfig) {
+        cache[cacheKey] = entry
+        val file = cacheFile(cacheKey) ?: return
+        try {
+            file.parentFile?.mkdirs()
+            val tmp = File(file.path + ".tmp")
+            tmp.writeText(
+                JSONObject()
+                    .put("key", cacheKey)
+                    .put("fetchedAt", entry.fetchedAt)
+                    .put("etag", entry.etag.orEmpty())
+                    .put("body", entry.body)
+                    .toString(),
+            )
+            if (!tmp.renameTo(file)) tmp.delete()
+        } catch (e: IOException) {
+            Timber.tag("BestConfigService").w(e, "Could not cache config for $cacheKey")
+        }
+    }
+
     /**
      * Gets user-friendly compatibility message based on match type.
      */
@@ -0,0 +1,51 @@
+package app.gamenative.utils
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import timber.log.Timber
+
+/**
+ * A cache kept as one binary file, starting with a [magic] number and a format [version].
+ *
+ * A file of another format or version reads as if it was missing. Writes go to a temp file that's
+ * renamed over the old one, so a crash mid-write leaves the previous contents.
+ */
+internal class BinaryCacheFile(val file: File, private val magic: Int, private val version: Int) {
+
+    /** What [block] makes of the file, or null if it's missing, of another format or unreadable */
+    fun <T> read(block: DataInputStream.() -> T?): T? {
+        if (!file.isFile) return null
+        return try {
+            DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                if (input.readInt() != magic || input.readInt() != version) null else input.block()
+            }
+        } catch (e: IOException) {
+            Timber.w(e, "Ignoring unreadable cache ${file.name}")
+            null
+        }
+    }
+
+    /** Replaces the file with what [block] writes; false, keeping the old file, if that failed */
+    fun write(block: DataOutputStream.() -> Unit): Boolean {
+        val tmp = File(file.parentFile, file.name + ".tmp")
+        try {
+            file.parentFile?.mkdirs()
+            DataOutputStream(BufferedOutputStream(tmp.outputStream())).use { out ->
+                out.writeInt(magic)
+                out.writeInt(version)
+                out.block()
+            }
+            if (tmp.renameTo(file)) return true
+        } catch (e: IOException) {
+            Timber.w(e, "Could not save cache ${file.name}")
+        }
+        tmp.delete()
+        return false
+    }
+
+    fun delete(): Boolean = file.delete()
+}
@@ -0,0 +1,279 @@
+package app.gamenative.utils
+
+import app.gamenative.PrefManager
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.pow
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.selects.onTimeout
+import kotlinx.coroutines.selects.select
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.double
+import kotlinx.serialization.json.int
+import kotlinx.serialization.json.jsonObject
+import kotlinx.serialization.json.jsonPrimitive
+import kotlinx.serialization.json.long
+import kotlinx.serialization.json.put
+import kotlinx.serialization.json.putJsonObject
+import timber.log.Timber
+
+/**
+ * Picks CDN hosts for chunk downloads based on observed health.
+ *
+ * Each host keeps an EWMA of throughput and of its error rate; errors decay with a half-life so a
+ * host that misbehaved earlier gets another chance. Requests go to the best-scoring healthy host,
+ * with the score divided by the host's in-flight count so parallel chunks spread across hosts.
+ * When a request outlives the recent p95 latency, [fetch] hedges it with a duplicate on another
+ * host and keeps whichever finishes first. Scores are persisted via [persist] so the next session
+ * starts from what the last one learned.
+ */
+@Singleton
+class CdnSelector(
+    private val clock: () -> Long,
+    private val loadScores: () -> String,
+    private val saveScores: (String) -> Unit,
+) {
+    @Inject
+    constructor() : this(
+        clock = System::currentTimeMillis,
+        loadScores = { PrefManager.cdnHostScores },
+        saveScores = { PrefManager.cdnHostScores = it },
+    )
+
+    companion object {
+        private const val ALPHA = 0.3
+        private const val ERROR_HALF_LIFE_MS = 5 * 60 * 1000L
+        private const val UNHEALTHY_ERROR_SCORE = 0.75
+        private const val STRAGGLER_PENALTY = 0.5
+        private const val LATENCY_WINDOW = 128
+        private const val MIN_LATENCY_SAMPLES = 16
+        private const val MIN_HEDGE_DELAY_MS = 500L
+    }
+
+    private class HostStats {
+        var throughput = 0.0 // bytes per second, 0 until the first success
+        var errorScore = 0.0
+        var updatedAtMs = 0L
+        var samples = 0
+        val inFlight = AtomicInteger()
+    }
+
+    private val hosts = ConcurrentHashMap<String, HostStats>()
+    private val loaded = AtomicBoolean(false)
+
+    private val latencies = LongArray(LATENCY_WINDOW)
+    private var latencyCount = 0
+    private var latencyNext = 0
+
+    private fun stats(host: String): HostStats {
+        ensureLoaded()
+        return hosts.getOrPut(host) { HostStats() }
+    }
+
+    private fun decayedErrorScore(stats: HostStats, nowMs: Long): Double {
+        val ageMs = (nowMs - stats.updatedAtMs).coerceAtLeast(0L)
+        return stats.errorScore * 0.5.pow(ageMs.toDouble() / ERROR_HALF_LIFE_MS)
+    }
+
+    fun recordSuccess(host: String, bytes: Long, durationMs: Long) {
+        val stats = stats(host)
+        val nowMs = clock()
+        val sample = bytes * 1000.0 / durationMs.coerceAtLeast(1L)
+        synchronized(stats) {
+            stats.throughput = if (stats.samples == 0) sample else ALPHA * sample + (1 - ALPHA) * stats.throughput
+            stats.errorScore = decayedErrorScore(stats, nowMs) * (1 - ALPHA)
+            stats.updatedAtMs = nowMs
+            stats.samples++
+        }
+        synchronized(latencies) {
+            latencies[latencyNext] = durationMs
+            latencyNext = (latencyNext + 1) % LATENCY_WINDOW
+            if (latencyCount < LATENCY_WINDOW) latencyCount++
+        }
+    }
+
+    fun recordFailure(host: String, penalty: Double = 1.0) {
+        val stats = stats(host)
+        val nowMs = clock()
+        synchronized(stats) {
+            stats.errorScore = decayedErrorScore(stats, nowMs) * (1 - ALPHA) + ALPHA * penalty
+            stats.updatedAtMs = nowMs
+        }
+    }
+
+    fun errorScore(host: String): Double {
+        val stats = stats(host)
+        return synchronized(stats) { decayedErrorScore(stats, clock()) }
+    }
+
+    fun throughput(host: String): Double {
+        val stats = stats(host)
+        return synchronized(stats) { stats.throughput }
+    }
+
+    /**
+     * Delay after which a still-running request is hedged, or null while there are too few
+     * latency samples to know what "slow" means.
+     */
+    fun hedgeDelayMs(): Long? {
+        val sorted = synchronized(latencies) {
+            if (latencyCount < MIN_LATENCY_SAMPLES) return null
+            latencies.copyOf(latencyCount)
+        }
+        sorted.sort()
+        val p95 = sorted[((sorted.size - 1) * 95) / 100]
+        return p95.coerceAtLeast(MIN_HEDGE_DELAY_MS)
+    }
+
+    /**
+     * Index into [hosts] of the best host to send the next request to, skipping [exclude].
+     * Hosts without samples are scored optimistically so each gets tried at least once.
+     */
+    fun choose(hosts: List<String>, exclude: Set<Int> = emptySet()): Int? {
+        val nowMs = clock()
+        val candidates = hosts.indices.filter { it !in exclude }
+        if (candidates.isEmpty()) return null
+
+        val snapshot = candidates.associateWith { index ->
+            val stats = stats(hosts[index])
+            synchronized(stats) {
+                Triple(stats.throughput.takeIf { stats.samples > 0 }, decayedErrorScore(stats, nowMs), stats.inFlight.get())
+            }
+        }
+        val optimistic = snapshot.values.mapNotNull { it.first }.maxOrNull() ?: 1.0
+        val healthy = candidates.filter { snapshot.getValue(it).second < UNHEALTHY_ERROR_SCORE }
+        return healthy.ifEmpty { candidates }.maxByOrNull { index ->
+            val (throughput, errorScore, inFlight) = snapshot.getValue(index)
+            val health = 1 - errorScore
+            (throughput ?: optimistic) * health * health / (1 + inFlight)
+        }
+    }
+
+    /**
+     * Runs [attempt] against the best candidate, hedging to a second host once the request passes
+     * [hedgeDelayMs] and falling through the remaining hosts on failure. [attempt] must be
+     * cancellable (see [awaitResponse]); losers are cancelled as soon as one attempt succeeds.
+     * Throws the last failure when every candidate has failed.
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    suspend fun <C, T> fetch(
+        candidates: List<C>,
+        hostOf: (C) -> String,
+        sizeOf: (T) -> Long,
+        attempt: suspend (C) -> T,
+    ): T = coroutineScope {
+        require(candidates.isNotEmpty()) { "No CDN hosts available" }
+        val hostNames = candidates.map(hostOf)
+        val outcomes = Channel<Pair<Int, Result<T>>>(Channel.UNLIMITED)
+        val running = mutableMapOf<Int, Job>()
+        val tried = mutableSetOf<Int>()
+        val startedAt = mutableMapOf<Int, Long>()
+        var lastError: Throwable? = null
+        var hedged = false
+
+        fun launchNext(): Boolean {
+            val index = choose(hostNames, tried) ?: return false
+            tried += index
+            startedAt[index] = clock()
+            val stats = stats(hostNames[index])
+            stats.inFlight.incrementAndGet()
+            running[index] = launch {
+                try {
+                    val result = runCatching { attempt(candidates[index]) }
+                    result.exceptionOrNull()?.let { if (it is CancellationException) throw it }
+                    outcomes.trySend(index to result)
+                } finally {
+                    stats.inFlight.decrementAndGet()
+                }
+            }
+            return true
+        }
+
+        launchNext()
+        while (running.isNotEmpty()) {
+            val hedgeDelay = if (!hedged && running.size == 1) hedgeDelayMs() else null
+            val outcome = select {
+                outcomes.onReceive { it }
+                if (hedgeDelay != null) {
+                    onTimeout(hedgeDelay) { null }
+                }
+            }
+
+            if (outcome == null) {
+                hedged = true
+                val slow = running.keys.first()
+                if (launchNext()) {
+                    Timber.tag("CDN").d("Hedging slow request on ${hostNames[slow]} after ${hedgeDelay}ms")
+                }
+                continue
+            }
+
+            val (index, result) = outcome
+            running.remove(index)
+            val host = hostNames[index]
+            result.onSuccess { value ->
+                recordSuccess(host, sizeOf(value), clock() - startedAt.getValue(index))
+                running.forEach { (straggler, job) ->
+                    recordFailure(hostNames[straggler], STRAGGLER_PENALTY)
+                    job.cancel()
+                }
+                return@coroutineScope value
+            }
+
+            val error = result.exceptionOrNull()!!
+            recordFailure(host)
+            lastError = error
+            Timber.tag("CDN").w("Request to $host failed: ${error.message}")
+            if (running.isEmpty()) {
+                launchNext()
+            }
+        }
+        throw lastError!!
+    }
+
+    private fun ensureLoaded() {
+        if (!loaded.compareAndSet(false, true)) return
+        try {
+            val root = Json.parseToJsonElement(loadScores()).jsonObject
+            for ((host, element) in root) {
+                val entry = element.jsonObject
+                hosts.getOrPut(host) { HostStats() }.apply {
+                    throughput = entry.getValue("throughput").jsonPrimitive.double
+                    errorScore = entry.getValue("errorScore").jsonPrimitive.double
+                    updatedAtMs = entry.getValue("updatedAt").jsonPrimitive.long
+                    samples = entry.getValue("samples").jsonPrimitive.int
+                }
+            }
+        } catch (e: Exception) {
+            Timber.tag("CDN").w(e, "Failed to load host scores")
+        }
+    }
+
+    /** Saves current host scores so the next session starts from them. */
+    fun persist() {
+        ensureLoaded()
+        val json = buildJsonObject {
+            for ((host, stats) in hosts) {
+                synchronized(stats) {
+                    if (stats.samples == 0 && stats.errorScore == 0.0) return@synchronized
+                    putJsonObject(host) {
+                        put("throughput", stats.throughput)
+                        put("errorScore", stats.errorScore)
+                        put("updatedAt", stats.updatedAtMs)
+                        put("samples", stats.samples)
+                    }
+                }
+            }
+        }
+        saveScores(json.toString())
+    }
+}
@@ -0,0 +1,119 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.json.JSONObject
+import timber.log.Timber
+
+/**
+ * Disk cache of GET response bodies revalidated with `If-None-Match` / `If-Modified-Since`.
+ *
+ * Store APIs answer with the validators but OkHttp's own cache won't store responses to requests
+ * carrying an Authorization header, so library detail calls would always download the full body.
+ * Here an unchanged entry costs a 304 and the body comes from disk.
+ *
+ * Bodies past [maxBytes] in total are dropped least recently used first, by file mtime, which a
+ * 304 bumps.
+ */
+class ConditionalResponseCache(
+    private val dir: File,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES,
+) {
+
+    companion object {
+        // Room for the details of a few thousand games
+        const val DEFAULT_MAX_BYTES = 32L * 1024 * 1024
+    }
+
+    /** A response body; [notModified] when the server answered 304 and it came from disk */
+    data class Body(val text: String, val notModified: Boolean)
+
+    private fun key(url: String): String =
+        MessageDigest.getInstance("SHA-1").digest(url.toByteArray()).joinToString("") { "%02x".format(it) }
+
+    private fun bodyFile(key: String) = File(dir, "$key.body")
+
+    private fun metaFile(key: String) = File(dir, "$key.meta")
+
+    // Bytes of bodies on disk, counted on the first store; guarded by this
+    private var size = -1L
+
+    /**
+     * Executes [request], adding the validators of a cached response for the same URL. Fails on
+     * non-2xx answers, and on a 304 when the cached body has gone missing.
+     */
+    suspend fun fetch(client: OkHttpClient, request: Request): Result<Body> = runCatching {
+        val key = key(request.url.toString())
+        val meta = runCatching { JSONObject(metaFile(key).readText()) }.getOrNull()
+        val cachedBody = bodyFile(key).takeIf { meta != null && it.isFile }
+
+        val conditional = request.newBuilder().apply {
+            if (cachedBody != null) {
+                meta!!.optString("etag").takeIf { it.isNotEmpty() }?.let { header("If-None-Match", it) }
+                meta.optString("lastModified").takeIf { it.isNotEmpty() }?.let { header("If-Modified-Since", it) }
+            }
+        }.build()
+
+        client.newCall(conditional).awaitResponse { response ->
+            when {
+                response.code == 304 && cachedBody != null -> {
+                    cachedBody.setLastModified(System.currentTimeMillis())
+                    Body(cachedBody.readText(), notModified = true)
+                }
+                !response.isSuccessful -> throw IOException("HTTP ${response.code}")
+                else -> {
+                    val text = response.body?.string().orEmpty()
+                    val etag = response.header("ETag")
+                    val lastModified = response.header("Last-Modified")
+                    if (etag != null || lastModified != null) {
+                        store(key, text, etag, lastModified)
+                    }
+                    Body(text, notModified = false)
+                }
+            }
+        }
+    }
+
+    @Synchronized
+    private fun store(key: String, text: String, etag: String?, lastModified: String?) {
+        val body = bodyFile(key)
+        try {
+            dir.mkdirs()
+            val replaced = body.length()
+            body.writeText(text)
+            // Validators are written last, so they never describe a body that isn't on disk
+            metaFile(key).writeText(
+                JSONObject().put("etag", etag.orEmpty()).put("lastModified", lastModified.orEmpty()).toString(),
+            )
+            size = if (size < 0) bodies().sumOf { it.length() } else size + body.length() - replaced
+        } catch (e: IOException) {
+            Timber.w(e, "Could not cache response $key")
+            metaFile(key).delete()
+        }
+        if (size > maxBytes) trim()
+    }
+
+    private fun bodies(): List<File> = dir.listFiles { file -> file.name.endsWith(".body") }.orEmpty().toList()
+
+    /** Drops the least recently used entries until the bodies are down to three quarters of [maxBytes] */
+    private fun trim() {
+        val bodies = bodies().sortedBy { it.lastModified() }
+        size = bodies.sumOf { it.length() }
+        for (body in bodies) {
+            if (size <= maxBytes * 3 / 4) break
+            val length = body.length()
+            // Validators first, so they never describe a body that isn't on disk
+            metaFile(body.nameWithoutExtension).delete()
+            if (body.delete()) size -= length
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        dir.deleteRecursively()
+        size = 0
+    }
+}
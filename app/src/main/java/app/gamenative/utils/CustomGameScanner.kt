@@ -16,13 +16,30 @@ import app.gamenative.events.AndroidEvent
 import app.gamenative.service.DownloadService
 import com.winlator.container.ContainerManager
 import java.io.File
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.abs
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
 import org.json.JSONObject
 import timber.log.Timber
 
 object CustomGameScanner {
 
+    /** How many Custom Game folders [scanFolders] works on at once */
+    const val SCAN_PARALLELISM = 4
+
+    // Executables count in a game folder and its direct subfolders
+    private const val EXE_SEARCH_DEPTH = 2
+
+    // Executables found per folder path by the last scan, for lookups that mustn't touch the disk
+    private val scannedExeFiles = ConcurrentHashMap<String, List<String>>()
+
     // Default root path for Custom Games. Always use the app's external storage sandbox
     // (Android/data/<package>/CustomGames) when available; fall back to internal only if external is unavailable.
     // This ensures the folder is visible via MTP/file managers.
@@ -119,8 +136,8 @@ object CustomGameScanner {
             return steamGridLogo.absolutePath
         }
 
-        // 2) If we can uniquely identify an exe, try extracting embedded icon(s)
-        val uniqueExeRel = findUniqueExeRelativeToFolder(folder)
+        // 2) If the last scan found a unique exe, try extracting embedded icon(s)
+        val uniqueExeRel = scannedExeFiles[folder.absolutePath]?.singleOrNull()
         if (!uniqueExeRel.isNullOrEmpty()) {
             val exeFile = File(folder, uniqueExeRel.replace('/', File.separatorChar))
             if (exeFile.exists()) {
@@ -288,40 +305,15 @@ object CustomGameScanner {
      */
     fun findUniqueExeRelativeToFolder(folderPath: String): String? = findUniqueExeRelativeToFolder(File(folderPath))
 
-    fun findUniqueExeRelativeToFolder(folder: File): String? {
-        if (!folder.exists() || !folder.isDirectory) return null
-
-        fun File.isValidExe(): Boolean = this.isFile && this.name.endsWith(".exe", ignoreCase = true) &&
-            !this.name.startsWith("unins", ignoreCase = true)
-
-        val candidates = mutableListOf<String>()
-
-        folder.listFiles { f ->
-            f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-                !f.name.startsWith("unins", ignoreCase = true)
-        }?.forEach { f ->
-            candidates.add(f.name)
-        }
-
-        val subDirs = folder.listFiles { f -> f.isDirectory } ?: emptyArray()
-        for (sd in subDirs) {
-            sd.listFiles { f ->
-                f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-                    !f.name.startsWith("unins", ignoreCase = true)
-            }?.forEach { f ->
-                val rel = sd.name + "/" + f.name
-                candidates.add(rel)
-            }
-        }
-
-        // Keep only unique items
-        val unique = candidates.distinct()
-        return if (unique.size == 1) unique.first() else null
-    }
+    fun findUniqueExeRelativeToFolder(folder: File): String? = findAllValidExeFiles(folder).singleOrNull()
 
     /**
      * Find all valid executable files in a game folder.
-     * Returns a list of relative paths to all valid .exe files (excluding uninstallers).
+     * Returns a list of relative paths to all valid .exe files (excluding uninstallers and files
+     * without a PE header).
+     *
+     * Blocks while changed directories are listed, so it's for callers already off the main
+     * thread that can't suspend, like container setup; coroutines use [exeFiles].
      *
      * @param folderPath The path to the game folder
      * @return List of relative executable paths, or empty list if folder doesn't exist
@@ -331,30 +323,54 @@ object CustomGameScanner {
     fun findAllValidExeFiles(folder: File): List<String> {
         if (!folder.exists() || !folder.isDirectory) return emptyList()
 
-        fun File.isValidExe(): Boolean = this.isFile && this.name.endsWith(".exe", ignoreCase = true) &&
-            !this.name.startsWith("unins", ignoreCase = true)
+        // Executables in the folder itself, then in its direct subfolders
+        val exeFiles = InstallFileIndex.of(folder, maxDepth = EXE_SEARCH_DEPTH).find { entry ->
+            entry.flags and InstallFileIndex.FLAG_EXECUTABLE != 0 && !entry.name.startsWith("unins", ignoreCase = true)
+        }.map { it.path }
+        scannedExeFiles[folder.absolutePath] = exeFiles
+        return exeFiles
+    }
+
+    /**
+     * Like [findAllValidExeFiles], on the IO dispatcher. Folders unchanged since they were last
+     * scanned cost a few stat calls; only new or changed executables are probed.
+     */
+    suspend fun exeFiles(folder: File): List<String> = withContext(Dispatchers.IO) { findAllValidExeFiles(folder) }
 
-        val candidates = mutableListOf<String>()
+    /** Drops what's known about [folder], e.g. once it's removed from the library */
+    fun forgetFolder(folder: File) {
+        scannedExeFiles.remove(folder.absolutePath)
+        InstallFileIndex.remove(folder)
+    }
 
-        folder.listFiles { f ->
-            f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-                !f.name.startsWith("unins", ignoreCase = true)
-        }?.forEach { f ->
-            candidates.add(f.name)
-        }
+    /** One Custom Game folder as [scanFolders] found it */
+    data class ScanResult(
+        val item: LibraryItem,
+        val exeFiles: List<String>,
+        /** Whether an icon was extracted from the game's executable during this scan */
+        val iconExtracted: Boolean,
+    )
 
-        val subDirs = folder.listFiles { f -> f.isDirectory } ?: emptyArray()
-        for (sd in subDirs) {
-            sd.listFiles { f ->
-                f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-                    !f.name.startsWith("unins", ignoreCase = true)
-            }?.forEach { f ->
-                val rel = sd.name + "/" + f.name
-                candidates.add(rel)
+    /**
+     * Scans the Custom Game folders, emitting each as soon as its executables are known and its
+     * icon is extracted. Up to [SCAN_PARALLELISM] folders are scanned, and their executables
+     * probed, at once.
+     */
+    fun scanFolders(folderPaths: Collection<String> = PrefManager.customGameManualFolders): Flow<ScanResult> = channelFlow {
+        // Items first and one at a time, as new folders are handed unique IDs
+        val items = folderPaths.distinct().mapNotNull { path -> createLibraryItemFromFolder(path)?.let { path to it } }
+        val permits = Semaphore(SCAN_PARALLELISM)
+        coroutineScope {
+            items.forEach { (path, item) ->
+                launch(Dispatchers.IO) {
+                    permits.withPermit {
+                        val folder = File(path)
+                        val exeFiles = exeFiles(folder)
+                        send(ScanResult(item, exeFiles, extractIcon(folder, exeFiles)))
+                    }
+                }
             }
         }
-
-        return candidates.distinct()
     }
 
     /**
@@ -447,33 +463,30 @@ object CustomGameScanner {
         return items
     }
 
-    private fun handleCustomGameDetection(folder: File, appId: String, idPart: Int) {
-        CustomGameCache.addEntry(idPart, folder.absolutePath)
+    /**
+     * Extracts the icon of the game's only executable next to it, unless the folder already has an
+     * extracted icon or it's up to date. Returns whether one was extracted.
+     */
+    private fun extractIcon(folder: File, exeFiles: List<String>): Boolean {
+        try {
+            val hasExtractedIcon = folder.listFiles { file ->
+                file.isFile && file.name.endsWith(".extracted.ico", ignoreCase = true)
+            }?.isNotEmpty() == true
+            if (hasExtractedIcon) return false
 
-        kotlinx.coroutines.CoroutineScope(kotlinx.coroutines.Dispatchers.IO).launch {
-            try {
-                val hasExtractedIcon = folder.listFiles { file ->
-                    file.isFile && file.name.endsWith(".extracted.ico", ignoreCase = true)
-                }?.isNotEmpty() == true
-
-                if (!hasExtractedIcon) {
-                    val uniqueExeRel = findUniqueExeRelativeToFolder(folder)
-                    if (!uniqueExeRel.isNullOrEmpty()) {
-                        val exeFile = File(folder, uniqueExeRel.replace('/', File.separatorChar))
-                        if (exeFile.exists()) {
-                            val outIco = File(exeFile.parentFile, exeFile.nameWithoutExtension + ".extracted.ico")
-                            if (!outIco.exists() || outIco.lastModified() < exeFile.lastModified()) {
-                                if (ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)) {
-                                    Timber.tag("CustomGameScanner").d("Extracted icon for ${folder.name} from ${exeFile.name}")
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (e: Exception) {
-                Timber.tag("CustomGameScanner").d(e, "Icon extraction failed for ${folder.name}")
+            val uniqueExeRel = exeFiles.singleOrNull() ?: return false
+            val exeFile = File(folder, uniqueExeRel.replace('/', File.separatorChar))
+            if (!exeFile.exists()) return false
+            val outIco = File(exeFile.parentFile, exeFile.nameWithoutExtension + ".extracted.ico")
+            if (outIco.exists() && outIco.lastModified() >= exeFile.lastModified()) return false
+            if (ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)) {
+                Timber.tag("CustomGameScanner").d("Extracted icon for ${folder.name} from ${exeFile.name}")
+                return true
             }
+        } catch (e: Exception) {
+            Timber.tag("CustomGameScanner").d(e, "Icon extraction failed for ${folder.name}")
         }
+        return false
     }
 
     fun createLibraryItemFromFolder(folderPath: String): LibraryItem? {
@@ -486,7 +499,7 @@ object CustomGameScanner {
         val idPart = getOrGenerateGameId(folder)
         val appId = "${GameSource.CUSTOM_GAME.name}_$idPart"
 
-        handleCustomGameDetection(folder, appId, idPart)
+        CustomGameCache.addEntry(idPart, folder.absolutePath)
 
         return LibraryItem(
             index = 0,
@@ -1,17 +1,24 @@
 package app.gamenative.utils
 
+import app.gamenative.service.DownloadService
 import timber.log.Timber
 import java.io.File
-import java.io.RandomAccessFile
+import java.io.IOException
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
 
 /**
- * Minimal PE resource parser to extract icon(s) from a Windows EXE/DLL.
+ * Minimal PE resource parser to extract the main icon from a Windows EXE/DLL.
  *
- * It reads the resource directory, finds RT_GROUP_ICON (14) and RT_ICON (3),
- * rebuilds a standard .ico file containing all images referenced by the group,
- * and writes it to [outIcoFile].
+ * It seeks through the headers, the section table and the resource directory, finds the first
+ * RT_GROUP_ICON (14), picks the image that best fits [PREFERRED_SIZE] and reads only that RT_ICON (3)
+ * entry, so the cost doesn't grow with the size of the executable. The image is written to
+ * [outIcoFile] as a single-image .ico.
+ *
+ * Results, including executables without an icon, are cached on disk keyed by path, size and mtime.
  *
  * Notes/limits:
  * - Designed for common PE32/PE32+ files that store icons in the standard
@@ -25,204 +32,248 @@ object ExeIconExtractor {
     private const val RT_GROUP_CURSOR = 12
     private const val RT_GROUP_ICON = 14
 
+    /** Edge length in pixels the chosen image should have; 256 is the largest an .ico can describe */
+    const val PREFERRED_SIZE = 256
+
+    // Guards against corrupt headers asking for huge reads
+    private const val MAX_DIRECTORY_ENTRIES = 4096
+    private const val MAX_ICON_BYTES = 4 * 1024 * 1024
+
+    private const val CACHE_DIR = "exe_icons"
+
+    /** Where extracted icons are cached; defaults to a folder in the app's cache dir */
+    internal var cacheDir: File? = null
+        get() = field ?: DownloadService.cacheSubdir(CACHE_DIR)
+
+    private class Icon(
+        val width: Int,
+        val height: Int,
+        val colorCount: Int,
+        val planes: Int,
+        val bitCount: Int,
+        val data: ByteArray,
+    )
+
     fun tryExtractMainIcon(exeFile: File, outIcoFile: File): Boolean {
+        val cacheKey = cacheKey(exeFile)
+        val dir = cacheDir
+        if (cacheKey != null && dir != null) {
+            val cachedIco = File(dir, "$cacheKey.ico")
+            if (File(dir, "$cacheKey.none").isFile) return false
+            if (cachedIco.isFile && copy(cachedIco, outIcoFile)) return true
+        }
+
+        val icon = try {
+            readMainIcon(exeFile)
+        } catch (e: Exception) {
+            // Not cached: the file may be readable next time
+            Timber.w(e, "EXE icon extraction failed for ${exeFile.name}")
+            return false
+        }
+
+        if (cacheKey != null && dir != null) {
+            try {
+                dir.mkdirs()
+                if (icon != null) writeIco(File(dir, "$cacheKey.ico"), icon) else File(dir, "$cacheKey.none").createNewFile()
+            } catch (e: IOException) {
+                Timber.w(e, "Could not cache icon of ${exeFile.name}")
+            }
+        }
+        if (icon == null) return false
+
         return try {
-            RandomAccessFile(exeFile, "r").use { raf ->
-                val size = raf.length()
-                if (size < 0x100) return false
-                val buf = ByteArray(size.coerceAtMost(Int.MAX_VALUE.toLong()).toInt())
-                raf.readFully(buf)
-                val bb = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN)
-
-                val peHeaderOff = bb.getInt(0x3C)
-                if (peHeaderOff <= 0 || peHeaderOff + 4 > bb.capacity()) return false
-                if (bb.get(peHeaderOff).toInt() != 'P'.code || bb.get(peHeaderOff + 1).toInt() != 'E'.code) return false
-
-                val coffStart = peHeaderOff + 4
-                val numberOfSections = bb.getShort(coffStart + 2).toInt() and 0xFFFF
-                val sizeOfOptionalHeader = bb.getShort(coffStart + 16).toInt() and 0xFFFF
-                val optionalHeaderStart = coffStart + 20
-                val magic = bb.getShort(optionalHeaderStart).toInt() and 0xFFFF
+            writeIco(outIcoFile, icon)
+            true
+        } catch (e: IOException) {
+            Timber.w(e, "Could not write icon of ${exeFile.name}")
+            false
+        }
+    }
+
+    private fun cacheKey(exeFile: File): String? {
+        if (!exeFile.isFile) return null
+        val key = "${exeFile.absolutePath}|${exeFile.length()}|${exeFile.lastModified()}"
+        return MessageDigest.getInstance("SHA-1").digest(key.toByteArray()).joinToString("") { "%02x".format(it) }
+    }
+
+    private fun copy(from: File, to: File): Boolean = try {
+        from.copyTo(to, overwrite = true)
+        true
+    } catch (e: IOException) {
+        false
+    }
+
+    /** The best-fitting image of the first icon group, or null if the file has none */
+    private fun readMainIcon(exeFile: File): Icon? =
+        FileChannel.open(exeFile.toPath(), StandardOpenOption.READ).use { PeResources.open(it)?.mainIcon() }
+
+    private class PeResources(
+        private val channel: FileChannel,
+        private val size: Long,
+        private val sections: List<Section>,
+        private val rootRva: Long,
+    ) {
+        class Section(val virtualAddress: Long, val sizeOfRawData: Long, val pointerToRawData: Long)
+
+        class DirEntry(val id: Int, val offset: Long, val isSubdir: Boolean, val isNamed: Boolean)
+
+        companion object {
+            fun open(channel: FileChannel): PeResources? {
+                val size = channel.size()
+                if (size < 0x100) return null
+                val peHeaderOff = uint(read(channel, size, 0x3C, 4) ?: return null, 0)
+                val coff = read(channel, size, peHeaderOff, 4 + 20 + 2) ?: return null
+                if (coff.getInt(0) != 0x00004550) return null // "PE\0\0"
+                val numberOfSections = ushort(coff, 4 + 2)
+                val sizeOfOptionalHeader = ushort(coff, 4 + 16)
+                val optionalHeaderStart = peHeaderOff + 4 + 20
                 // Optional header data directories location depends on PE32/PE32+
-                val dataDirectoriesStart = optionalHeaderStart + when (magic) {
+                val dataDirectoriesStart = optionalHeaderStart + when (ushort(coff, 4 + 20)) {
                     0x10B -> 96 // PE32
                     0x20B -> 112 // PE32+
-                    else -> return false
+                    else -> return null
                 }
-                val resourceDirRva = bb.getInt(dataDirectoriesStart + 2 * 8) // index 2 = IMAGE_DIRECTORY_ENTRY_RESOURCE
-                val resourceDirSize = bb.getInt(dataDirectoriesStart + 2 * 8 + 4)
-
-                // Sections table
-                var secTable = optionalHeaderStart + sizeOfOptionalHeader
-                if (secTable + numberOfSections * 40 > bb.capacity()) return false
-
-                fun rvaToFileOffset(rva: Int): Int {
-                    for (i in 0 until numberOfSections) {
-                        val base = secTable + i * 40
-                        val virtualAddress = bb.getInt(base + 12)
-                        val sizeOfRawData = bb.getInt(base + 16)
-                        val pointerToRawData = bb.getInt(base + 20)
-                        if (rva >= virtualAddress && rva < virtualAddress + sizeOfRawData &&
-                            pointerToRawData > 0
-                        ) {
-                            val off = pointerToRawData + (rva - virtualAddress)
-                            if (off >= 0 && off < bb.capacity()) return off
-                        }
-                    }
-                    return -1
+                // index 2 = IMAGE_DIRECTORY_ENTRY_RESOURCE
+                val resourceDir = read(channel, size, dataDirectoriesStart + 2 * 8, 8) ?: return null
+                val resourceDirRva = uint(resourceDir, 0)
+                if (resourceDirRva == 0L) return null
+
+                val table = read(channel, size, optionalHeaderStart + sizeOfOptionalHeader, numberOfSections * 40)
+                    ?: return null
+                val sections = (0 until numberOfSections).map { i ->
+                    Section(uint(table, i * 40 + 12), uint(table, i * 40 + 16), uint(table, i * 40 + 20))
                 }
+                return PeResources(channel, size, sections, resourceDirRva)
+            }
 
-                val resRootOff = rvaToFileOffset(resourceDirRva)
-                if (resRootOff < 0 || resRootOff + 16 > bb.capacity()) return false
-
-                // Resource directory traversal helpers
-                data class Dir(val off: Int)
-                data class Entry(val nameOrId: Int, val dataOrSubdirRva: Int, val isSubdir: Boolean, val isNamed: Boolean)
-
-                fun readDirectory(offset: Int): Pair<List<Entry>, Int> {
-                    val entryCountNamed = bb.getShort(offset + 12).toInt() and 0xFFFF
-                    val entryCountId = bb.getShort(offset + 14).toInt() and 0xFFFF
-                    val total = entryCountNamed + entryCountId
-                    val entries = ArrayList<Entry>(total)
-                    var eoff = offset + 16
-                    repeat(total) {
-                        if (eoff + 8 > bb.capacity()) return Pair(emptyList(), 0)
-                        val name = bb.getInt(eoff)
-                        val dataRva = bb.getInt(eoff + 4)
-                        val isDir = (dataRva and 0x80000000.toInt()) != 0
-                        val isNamed = (name and 0x80000000.toInt()) != 0
-                        entries.add(Entry(name, dataRva and 0x7FFFFFFF.toInt(), isDir, isNamed))
-                        eoff += 8
-                    }
-                    return Pair(entries, total)
+            private fun read(channel: FileChannel, size: Long, offset: Long, length: Int): ByteBuffer? {
+                if (offset < 0 || length < 0 || offset + length > size) return null
+                val buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN)
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, offset + buf.position()) < 0) return null
                 }
+                return buf.flip() as ByteBuffer
+            }
 
-                fun subdirOffset(dirRva: Int): Int {
-                    val off = rvaToFileOffset(resourceDirRva + dirRva)
-                    return if (off >= 0) off else -1
+            private fun ushort(buf: ByteBuffer, index: Int): Int = buf.getShort(index).toInt() and 0xFFFF
+
+            private fun uint(buf: ByteBuffer, index: Int): Long = buf.getInt(index).toLong() and 0xFFFFFFFFL
+        }
+
+        private fun read(offset: Long, length: Int): ByteBuffer? = read(channel, size, offset, length)
+
+        private fun rvaToFileOffset(rva: Long): Long {
+            for (section in sections) {
+                if (rva >= section.virtualAddress && rva < section.virtualAddress + section.sizeOfRawData &&
+                    section.pointerToRawData > 0
+                ) {
+                    val off = section.pointerToRawData + (rva - section.virtualAddress)
+                    if (off < size) return off
                 }
+            }
+            return -1
+        }
 
-                // Locate RT_GROUP_ICON node: Type(14) -> first ID -> first LANG
-                val (typeEntries, _) = readDirectory(resRootOff)
-                val groupType = typeEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == RT_GROUP_ICON }
-                    ?: return false
-                if (!groupType.isSubdir) return false
-                val groupTypeDirOff = subdirOffset(groupType.dataOrSubdirRva)
-                if (groupTypeDirOff < 0) return false
-                val (idEntries, _) = readDirectory(groupTypeDirOff)
-                val groupId = idEntries.firstOrNull() ?: return false
-                if (!groupId.isSubdir) return false
-                val groupIdDirOff = subdirOffset(groupId.dataOrSubdirRva)
-                if (groupIdDirOff < 0) return false
-                val (langEntries, _) = readDirectory(groupIdDirOff)
-                val groupLang = langEntries.firstOrNull() ?: return false
-                val groupDataEntryOff = rvaToFileOffset(resourceDirRva + groupLang.dataOrSubdirRva)
-                if (groupDataEntryOff < 0 || groupDataEntryOff + 16 > bb.capacity()) return false
-                val groupDataRva = bb.getInt(groupDataEntryOff)
-                val groupSize = bb.getInt(groupDataEntryOff + 4)
-                val groupDataOff = rvaToFileOffset(groupDataRva)
-                if (groupDataOff < 0 || groupDataOff + groupSize > bb.capacity()) return false
-
-                // Parse GRPICONDIR
-                val reserved = bb.getShort(groupDataOff).toInt() and 0xFFFF
-                val type = bb.getShort(groupDataOff + 2).toInt() and 0xFFFF
-                val count = bb.getShort(groupDataOff + 4).toInt() and 0xFFFF
-                if (reserved != 0 || type != 1 || count <= 0 || count > 64) return false
-
-                data class GroupEntry(
-                    val width: Int,
-                    val height: Int,
-                    val colorCount: Int,
-                    val planes: Int,
-                    val bitCount: Int,
-                    val bytesInRes: Int,
-                    val id: Int,
+        /** Entries of the resource directory at [offset], relative to the resource root */
+        private fun readDirectory(offset: Long): List<DirEntry> {
+            val dirOff = rvaToFileOffset(rootRva + offset)
+            val header = read(dirOff, 16) ?: return emptyList()
+            val total = ushort(header, 12) + ushort(header, 14)
+            if (total == 0 || total > MAX_DIRECTORY_ENTRIES) return emptyList()
+            val buf = read(dirOff + 16, total * 8) ?: return emptyList()
+            return (0 until total).map { i ->
+                val name = buf.getInt(i * 8)
+                val data = buf.getInt(i * 8 + 4)
+                DirEntry(
+                    id = name and 0x7FFFFFFF,
+                    offset = (data and 0x7FFFFFFF).toLong(),
+                    isSubdir = data < 0,
+                    isNamed = name < 0,
                 )
+            }
+        }
 
-                val groupEntries = ArrayList<GroupEntry>(count)
-                var ptr = groupDataOff + 6
-                repeat(count) {
-                    if (ptr + 14 > groupDataOff + groupSize) return false
-                    val w = bb.get(ptr).toInt() and 0xFF
-                    val h = bb.get(ptr + 1).toInt() and 0xFF
-                    val cc = bb.get(ptr + 2).toInt() and 0xFF
-                    /* reserved */
-                    val planes = bb.getShort(ptr + 4).toInt() and 0xFFFF
-                    val bitcount = bb.getShort(ptr + 6).toInt() and 0xFFFF
-                    val bytes = bb.getInt(ptr + 8)
-                    val id = bb.getShort(ptr + 12).toInt() and 0xFFFF
-                    groupEntries.add(GroupEntry(w, h, cc, planes, bitcount, bytes, id))
-                    ptr += 14
-                }
+        /** Data of the first language of the first resource below [entry], following Type -> ID -> Lang */
+        private fun readData(entry: DirEntry, maxLength: Int): ByteBuffer? {
+            if (!entry.isSubdir) return null
+            val lang = readDirectory(entry.offset).firstOrNull() ?: return null
+            if (lang.isSubdir) return null
+            val dataEntry = read(rvaToFileOffset(rootRva + lang.offset), 16) ?: return null
+            val dataSize = uint(dataEntry, 4)
+            if (dataSize <= 0 || dataSize > maxLength) return null
+            return read(rvaToFileOffset(uint(dataEntry, 0)), dataSize.toInt())
+        }
 
-                // Build map of RT_ICON id -> data
-                val iconType = typeEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == RT_ICON }
-                    ?: return false
-                if (!iconType.isSubdir) return false
-                val iconTypeDirOff = subdirOffset(iconType.dataOrSubdirRva)
-                if (iconTypeDirOff < 0) return false
-                val (iconIdEntries, _) = readDirectory(iconTypeDirOff)
-
-                fun findIconDataById(id: Int): ByteArray? {
-                    val idEntry = iconIdEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == id } ?: return null
-                    if (!idEntry.isSubdir) return null
-                    val langDirOff = subdirOffset(idEntry.dataOrSubdirRva)
-                    if (langDirOff < 0) return null
-                    val (langs, _) = readDirectory(langDirOff)
-                    val lang = langs.firstOrNull() ?: return null
-                    val dataEntryOff = rvaToFileOffset(resourceDirRva + lang.dataOrSubdirRva)
-                    if (dataEntryOff < 0 || dataEntryOff + 16 > bb.capacity()) return null
-                    val dataRva = bb.getInt(dataEntryOff)
-                    val dataSize = bb.getInt(dataEntryOff + 4)
-                    val dataOff = rvaToFileOffset(dataRva)
-                    if (dataOff < 0 || dataOff + dataSize > bb.capacity()) return null
-                    val bytes = ByteArray(dataSize)
-                    System.arraycopy(buf, dataOff, bytes, 0, dataSize)
-                    return bytes
-                }
+        fun mainIcon(): Icon? {
+            val types = readDirectory(0)
+            val groupType = types.firstOrNull { !it.isNamed && it.id == RT_GROUP_ICON }?.takeIf { it.isSubdir } ?: return null
+            val iconType = types.firstOrNull { !it.isNamed && it.id == RT_ICON }?.takeIf { it.isSubdir } ?: return null
 
-                // Build ICO: header + entries + concatenated images
-                val images = ArrayList<ByteArray>(groupEntries.size)
-                val entriesBytes = ByteArray(groupEntries.size * 16)
-                var imageOffset = 6 + entriesBytes.size // after header+entries
-                var ei = 0
-                for (ge in groupEntries) {
-                    val data = findIconDataById(ge.id) ?: continue
-                    images.add(data)
-                    val base = ei * 16
-                    entriesBytes[base + 0] = ge.width.coerceAtMost(255).toByte()
-                    entriesBytes[base + 1] = ge.height.coerceAtMost(255).toByte()
-                    entriesBytes[base + 2] = ge.colorCount.coerceAtMost(255).toByte()
-                    entriesBytes[base + 3] = 0 // reserved
-                    putShort(entriesBytes, base + 4, ge.planes)
-                    putShort(entriesBytes, base + 6, ge.bitCount)
-                    putInt(entriesBytes, base + 8, data.size)
-                    putInt(entriesBytes, base + 12, imageOffset)
-                    imageOffset += data.size
-                    ei++
-                }
-                if (images.isEmpty()) return false
-
-                val out = ByteArray(6 + entriesBytes.size + images.sumOf { it.size })
-                // ICONDIR
-                putShort(out, 0, 0) // reserved
-                putShort(out, 2, 1) // type ico
-                putShort(out, 4, images.size)
-                // entries
-                System.arraycopy(entriesBytes, 0, out, 6, entriesBytes.size)
-                // images
-                var off = 6 + entriesBytes.size
-                for (img in images) {
-                    System.arraycopy(img, 0, out, off, img.size)
-                    off += img.size
-                }
+            // Parse GRPICONDIR of the first group
+            val groupId = readDirectory(groupType.offset).firstOrNull() ?: return null
+            val group = readData(groupId, 6 + 14 * 64) ?: return null
+            val count = ushort(group, 4)
+            if (ushort(group, 0) != 0 || ushort(group, 2) != 1 || count <= 0 || count > 64) return null
+            if (group.limit() < 6 + count * 14) return null
 
-                outIcoFile.outputStream().use { it.write(out) }
-                true
+            class GroupEntry(val width: Int, val height: Int, val colorCount: Int, val planes: Int, val bitCount: Int, val id: Int) {
+                // A 0 byte in the directory means 256
+                val edge get() = if (width == 0) 256 else width
             }
-        } catch (e: Exception) {
-            Timber.w(e, "EXE icon extraction failed for ${exeFile.name}")
-            false
+            val entries = (0 until count).map { i ->
+                val ptr = 6 + i * 14
+                GroupEntry(
+                    width = group.get(ptr).toInt() and 0xFF,
+                    height = group.get(ptr + 1).toInt() and 0xFF,
+                    colorCount = group.get(ptr + 2).toInt() and 0xFF,
+                    planes = ushort(group, ptr + 4),
+                    bitCount = ushort(group, ptr + 6),
+                    id = ushort(group, ptr + 12),
+                )
+            }
+
+            // Smallest image at least PREFERRED_SIZE wide, else the largest; deeper colors first
+            val ranked = entries.sortedWith(
+                compareBy<GroupEntry> { if (it.edge >= PREFERRED_SIZE) 0 else 1 }
+                    .thenBy { if (it.edge >= PREFERRED_SIZE) it.edge else -it.edge }
+                    .thenByDescending { it.bitCount },
+            )
+            val iconIds = readDirectory(iconType.offset)
+            for (entry in ranked) {
+                val idEntry = iconIds.firstOrNull { !it.isNamed && it.id == entry.id } ?: continue
+                val data = readData(idEntry, MAX_ICON_BYTES) ?: continue
+                val bytes = ByteArray(data.remaining()).also { data.get(it) }
+                return Icon(entry.width, entry.height, entry.colorCount, entry.planes, entry.bitCount, bytes)
+            }
+            return null
+        }
+    }
+
+    private fun writeIco(file: File, icon: Icon) {
+        val header = ByteArray(6 + 16)
+        // ICONDIR
+        putShort(header, 0, 0) // reserved
+        putShort(header, 2, 1) // type ico
+        putShort(header, 4, 1)
+        // ICONDIRENTRY
+        header[6] = icon.width.coerceAtMost(255).toByte()
+        header[7] = icon.height.coerceAtMost(255).toByte()
+        header[8] = icon.colorCount.coerceAtMost(255).toByte()
+        header[9] = 0 // reserved
+        putShort(header, 10, icon.planes)
+        putShort(header, 12, icon.bitCount)
+        putInt(header, 14, icon.data.size)
+        putInt(header, 18, header.size)
+
+        // Written to a temp file first so readers never see half an icon
+        val tmp = File(file.parentFile, file.name + ".tmp")
+        tmp.outputStream().use {
+            it.write(header)
+            it.write(icon.data)
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete()
+            throw IOException("Could not move icon to ${file.absolutePath}")
         }
     }
 
@@ -0,0 +1,141 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * File digests remembered across runs, so files that haven't changed since they were last hashed
+ * aren't read again. An entry is reused only while the file keeps its size, mtime and file key
+ * (device and inode where the platform has them); files modified within a couple of seconds of
+ * being hashed aren't remembered, as a coarse mtime could hide a later write.
+ *
+ * Changed files are hashed in a streaming fashion, a few at a time.
+ *
+ * @param file where the cache is kept, or null to keep it in memory only
+ * @param algorithm the [MessageDigest] algorithm, e.g. "SHA-1", or the name of what [hasher] computes
+ * @param hasher computes a file's digest; defaults to [algorithm] over its raw contents
+ */
+class FileHashCache(
+    file: File?,
+    private val algorithm: String,
+    private val hasher: (Path) -> ByteArray = { digest(it, algorithm) },
+) {
+
+    private class Entry(val size: Long, val mtimeNanos: Long, val fileKey: String, val hash: ByteArray)
+
+    companion object {
+        private const val MAGIC = 0x47_4E_48_43 // "GNHC"
+        private const val VERSION = 1
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val MTIME_SETTLE_NANOS = 2_000_000_000L
+
+        const val DEFAULT_PARALLELISM = 4
+
+        /** Streams [path] through a fresh [algorithm] digest */
+        fun digest(path: Path, algorithm: String): ByteArray {
+            val digest = MessageDigest.getInstance(algorithm)
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                val buffer = ByteBuffer.allocate(BUFFER_SIZE)
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip()
+                    digest.update(buffer)
+                    buffer.clear()
+                }
+            }
+            return digest.digest()
+        }
+    }
+
+    private val cacheFile = file?.let { BinaryCacheFile(it, MAGIC, VERSION) }
+    private val entries = HashMap<String, Entry>()
+
+    // Paths looked up since loading; the rest is dropped on save
+    private val seen = HashSet<String>()
+    private var dirty = false
+
+    init {
+        load()
+    }
+
+    /** Digest of [path], from the cache when the file is unchanged */
+    fun hash(path: Path): ByteArray {
+        val key = path.toAbsolutePath().toString()
+        val attrs = Files.readAttributes(path, BasicFileAttributes::class.java)
+        val size = attrs.size()
+        val mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+        val fileKey = attrs.fileKey()?.toString().orEmpty()
+
+        synchronized(this) {
+            seen += key
+            val cached = entries[key]
+            if (cached != null && cached.size == size && cached.mtimeNanos == mtime && cached.fileKey == fileKey) {
+                return cached.hash
+            }
+        }
+
+        val hash = hasher(path)
+        synchronized(this) {
+            val settled = System.currentTimeMillis() * 1_000_000 - mtime >= MTIME_SETTLE_NANOS
+            if (settled) entries[key] = Entry(size, mtime, fileKey, hash) else entries.remove(key)
+            dirty = true
+        }
+        return hash
+    }
+
+    /** Digests of [paths] in order, at most [parallelism] files being read at a time */
+    suspend fun hashAll(paths: List<Path>, parallelism: Int = DEFAULT_PARALLELISM): List<ByteArray> = coroutineScope {
+        val permits = Semaphore(parallelism)
+        paths.map { path -> async(Dispatchers.IO) { permits.withPermit { hash(path) } } }.awaitAll()
+    }
+
+    /** Writes the cache back, keeping only the files looked up since it was loaded */
+    @Synchronized
+    fun save() {
+        val cacheFile = cacheFile ?: return
+        if (!dirty && seen.size == entries.size) return
+        entries.keys.retainAll(seen)
+        val saved = cacheFile.write {
+            writeUTF(algorithm)
+            writeInt(entries.size)
+            for ((path, entry) in entries) {
+                writeUTF(path)
+                writeLong(entry.size)
+                writeLong(entry.mtimeNanos)
+                writeUTF(entry.fileKey)
+                writeShort(entry.hash.size)
+                write(entry.hash)
+            }
+        }
+        if (saved) dirty = false
+    }
+
+    private fun load() {
+        val saved = cacheFile?.read {
+            if (readUTF() != algorithm) return@read null
+            HashMap<String, Entry>().apply {
+                repeat(readInt()) {
+                    val path = readUTF()
+                    val size = readLong()
+                    val mtime = readLong()
+                    val fileKey = readUTF()
+                    val hash = ByteArray(readUnsignedShort()).also { readFully(it) }
+                    put(path, Entry(size, mtime, fileKey, hash))
+                }
+            }
+        } ?: return
+        entries.putAll(saved)
+    }
+}
@@ -1,188 +1,105 @@
 package app.gamenative.utils
 
-import app.gamenative.PrefManager
-import kotlinx.serialization.Serializable
-import kotlinx.serialization.encodeToString
-import kotlinx.serialization.decodeFromString
-import kotlinx.serialization.json.Json
+import app.gamenative.data.GameCompatibilityEntry
+import app.gamenative.db.dao.GameCompatibilityDao
+import javax.inject.Inject
+import javax.inject.Singleton
 import timber.log.Timber
 
 /**
- * Persistent cache for game compatibility responses with 7-day TTL.
- * Uses lazy expiration - checks expiration on access, not on load (optimizes performance).
+ * Persistent cache for game compatibility responses, keyed by game and GPU, with a 6-hour TTL.
+ *
+ * Entries live in the game_compatibility table. Lookups take a whole page of games in one query,
+ * writes store a whole batch in one transaction, and the table is capped at [maxEntries] by
+ * evicting the least recently used entries.
  */
-object GameCompatibilityCache {
-    private const val CACHE_TTL_MS = 6 * 60 * 60 * 1000L // 6 hours
-
-    private val inMemoryCache = mutableMapOf<String, GameCompatibilityService.GameCompatibilityResponse>()
-    private val timestamps = mutableMapOf<String, Long>()
-    private var cacheLoaded = false
-
-    @Serializable
-    data class CachedCompatibilityResponse(
-        val response: GameCompatibilityResponseData,
-        val timestamp: Long
-    )
+@Singleton
+class GameCompatibilityCache(
+    private val dao: GameCompatibilityDao,
+    private val clock: () -> Long,
+    private val ttlMs: Long = CACHE_TTL_MS,
+    private val maxEntries: Int = MAX_ENTRIES,
+) {
+    @Inject
+    constructor(dao: GameCompatibilityDao) : this(dao, System::currentTimeMillis)
+
+    companion object {
+        const val CACHE_TTL_MS = 6 * 60 * 60 * 1000L // 6 hours
+        const val MAX_ENTRIES = 2_000
+    }
 
-    @Serializable
-    data class GameCompatibilityResponseData(
-        val gameName: String,
-        val totalPlayableCount: Int,
-        val gpuPlayableCount: Int,
-        val avgRating: Float,
-        val hasBeenTried: Boolean,
-        val isNotWorking: Boolean
+    private fun GameCompatibilityEntry.toResponse() = GameCompatibilityService.GameCompatibilityResponse(
+        gameName = gameName,
+        totalPlayableCount = totalPlayableCount,
+        gpuPlayableCount = gpuPlayableCount,
+        avgRating = avgRating,
+        hasBeenTried = hasBeenTried,
+        isNotWorking = isNotWorking,
     )
 
     /**
-     * Converts GameCompatibilityService.GameCompatibilityResponse to serializable format
+     * Unexpired responses for those of [gameNames] that are cached for [gpuName], by game name.
+     * With [includeExpired], expired responses that haven't been evicted yet are returned too.
      */
-    private fun GameCompatibilityService.GameCompatibilityResponse.toData(): GameCompatibilityResponseData {
-        return GameCompatibilityResponseData(
-            gameName = this.gameName,
-            totalPlayableCount = this.totalPlayableCount,
-            gpuPlayableCount = this.gpuPlayableCount,
-            avgRating = this.avgRating,
-            hasBeenTried = this.hasBeenTried,
-            isNotWorking = this.isNotWorking
-        )
+    suspend fun getCached(
+        gameNames: Collection<String>,
+        gpuName: String,
+        includeExpired: Boolean = false,
+    ): Map<String, GameCompatibilityService.GameCompatibilityResponse> {
+        if (gameNames.isEmpty()) return emptyMap()
+        return try {
+            val now = clock()
+            val expiredAt = if (includeExpired) Long.MIN_VALUE else now - ttlMs
+            dao.findFresh(gpuName, gameNames, expiredAt = expiredAt, now = now)
+                .associate { it.gameName to it.toResponse() }
+        } catch (e: Exception) {
+            Timber.tag("GameCompatibilityCache").e(e, "Failed to read cached compatibility")
+            emptyMap()
+        }
     }
 
     /**
-     * Converts serializable format back to GameCompatibilityService.GameCompatibilityResponse
+     * Gets the cached compatibility response for a game on [gpuName], if available and not expired.
      */
-    private fun GameCompatibilityResponseData.toResponse(): GameCompatibilityService.GameCompatibilityResponse {
-        return GameCompatibilityService.GameCompatibilityResponse(
-            gameName = this.gameName,
-            totalPlayableCount = this.totalPlayableCount,
-            gpuPlayableCount = this.gpuPlayableCount,
-            avgRating = this.avgRating,
-            hasBeenTried = this.hasBeenTried,
-            isNotWorking = this.isNotWorking
-        )
-    }
+    suspend fun getCached(gameName: String, gpuName: String): GameCompatibilityService.GameCompatibilityResponse? =
+        getCached(listOf(gameName), gpuName)[gameName]
 
     /**
-     * Loads cache from persistent storage into memory.
-     * Only parses JSON, no expiration filtering (lazy expiration).
+     * Caches compatibility responses fetched for [gpuName], by game name.
      */
-    private fun loadCache() {
-        if (cacheLoaded) return
-
+    suspend fun cacheAll(responses: Map<String, GameCompatibilityService.GameCompatibilityResponse>, gpuName: String) {
         try {
-            val cacheJson = PrefManager.gameCompatibilityCache
-            if (cacheJson.isEmpty() || cacheJson == "{}") {
-                cacheLoaded = true
-                return
-            }
-
-            val cacheMap = Json.decodeFromString<Map<String, CachedCompatibilityResponse>>(cacheJson)
-
-            // Load all entries into memory (no expiration check here - lazy expiration)
-            // Store both response and timestamp for expiration checking
-            cacheMap.forEach { (gameName, cached) ->
-                inMemoryCache[gameName] = cached.response.toResponse()
-                timestamps[gameName] = cached.timestamp
+            val now = clock()
+            val entries = responses.map { (gameName, response) ->
+                GameCompatibilityEntry(
+                    gameName = gameName,
+                    gpuName = gpuName,
+                    totalPlayableCount = response.totalPlayableCount,
+                    gpuPlayableCount = response.gpuPlayableCount,
+                    avgRating = response.avgRating,
+                    hasBeenTried = response.hasBeenTried,
+                    isNotWorking = response.isNotWorking,
+                    cachedAt = now,
+                    lastAccess = now,
+                )
             }
-
-            Timber.tag("GameCompatibilityCache").d("Loaded ${inMemoryCache.size} cached entries from persistent storage")
-            cacheLoaded = true
-        } catch (e: Exception) {
-            Timber.tag("GameCompatibilityCache").e(e, "Failed to load cache from persistent storage")
-            cacheLoaded = true // Mark as loaded to avoid retrying
-        }
-    }
-
-    /**
-     * Saves cache to persistent storage.
-     */
-    private fun saveCache() {
-        try {
-            val now = System.currentTimeMillis()
-            val cacheMap = inMemoryCache.mapValues { (gameName, response) ->
-                val timestamp = timestamps[gameName] ?: now
-                CachedCompatibilityResponse(response.toData(), timestamp)
-            }
-            val cacheJson = Json.encodeToString(cacheMap)
-            PrefManager.gameCompatibilityCache = cacheJson
-            Timber.tag("GameCompatibilityCache").d("Saved ${cacheMap.size} entries to persistent storage")
+            dao.putAll(entries, expiredAt = now - ttlMs, maxEntries = maxEntries)
+            Timber.tag("GameCompatibilityCache").d("Cached ${entries.size} compatibility entries")
         } catch (e: Exception) {
-            Timber.tag("GameCompatibilityCache").e(e, "Failed to save cache to persistent storage")
-        }
-    }
-
-    /**
-     * Gets cached compatibility response for a game, if available and not expired.
-     * Uses lazy expiration - checks expiration on access.
-     */
-    fun getCached(gameName: String): GameCompatibilityService.GameCompatibilityResponse? {
-        loadCache()
-
-        val cached = inMemoryCache[gameName] ?: return null
-        val timestamp = timestamps[gameName] ?: return null
-
-        // Lazy expiration check - only check when accessing
-        val now = System.currentTimeMillis()
-        if (now - timestamp >= CACHE_TTL_MS) {
-            // Expired - remove from cache
-            inMemoryCache.remove(gameName)
-            timestamps.remove(gameName)
-            Timber.tag("GameCompatibilityCache").d("Removed expired cache entry for: $gameName")
-            return null
+            Timber.tag("GameCompatibilityCache").e(e, "Failed to cache compatibility")
         }
-
-        return cached
-    }
-
-    /**
-     * Caches a compatibility response for a game.
-     */
-    fun cache(gameName: String, response: GameCompatibilityService.GameCompatibilityResponse) {
-        loadCache()
-        val now = System.currentTimeMillis()
-        inMemoryCache[gameName] = response
-        timestamps[gameName] = now
-        saveCache()
-        Timber.tag("GameCompatibilityCache").d("Cached compatibility for: $gameName")
     }
 
     /**
-     * Caches multiple compatibility responses at once.
+     * Clears the entire cache.
      */
-    fun cacheAll(responses: Map<String, GameCompatibilityService.GameCompatibilityResponse>) {
-        loadCache()
-        val now = System.currentTimeMillis()
-        inMemoryCache.putAll(responses)
-        responses.keys.forEach { gameName ->
-            timestamps[gameName] = now
-        }
-        saveCache()
-        Timber.tag("GameCompatibilityCache").d("Cached ${responses.size} compatibility entries")
-    }
-
-    /**
-     * Checks if a game's compatibility is cached and not expired.
-     */
-    fun isCached(gameName: String): Boolean {
-        loadCache()
-        return getCached(gameName) != null
-    }
-
-    /**
-     * Clears the entire cache (both memory and persistent storage).
-     */
-    fun clear() {
-        inMemoryCache.clear()
-        timestamps.clear()
-        PrefManager.gameCompatibilityCache = "{}"
+    suspend fun clear() {
+        dao.deleteAll()
         Timber.tag("GameCompatibilityCache").d("Cache cleared")
     }
 
     /**
-     * Gets the current cache size.
+     * Gets the current cache size, including expired entries not evicted yet.
      */
-    fun size(): Int {
-        loadCache()
-        return inMemoryCache.size
-    }
+    suspend fun size(): Int = dao.count()
 }
@@ -0,0 +1,9 @@
+package app.gamenative.utils
+
+import java.security.MessageDigest
+
+/**
+ * Lowercase hex SHA-1 of the string's UTF-8 bytes, e.g. to name a cache file after a URL or path
+ */
+fun String.sha1Hex(): String =
+    MessageDigest.getInstance("SHA-1").digest(toByteArray()).joinToString("") { "%02x".format(it) }
@@ -0,0 +1,310 @@
+package app.gamenative.utils
+
+import app.gamenative.service.DownloadService
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.security.MessageDigest
+import timber.log.Timber
+
+/**
+ * Persistent listing of every file below an install directory, so lookups like "where are the
+ * steam_api DLLs" or "how big is this game" don't walk the whole tree on each launch.
+ *
+ * The first refresh lists the whole tree, which is fine for a game the app installed but not for a
+ * folder the user picked, like a shared Downloads or SD card root. Those are indexed with a
+ * `maxDepth`, so only their first few levels are ever listed.
+ *
+ * A refresh re-lists only directories whose mtime changed since they were indexed, which catches
+ * files being added, removed or renamed. Files rewritten in place keep their directory's mtime, so
+ * pass `statFiles = true` where their sizes must be exact, e.g. right after a download.
+ * Symlinked directories are not followed. Executables are flagged only if they have a PE header,
+ * which is checked again only for new or changed files.
+ *
+ * The index is saved in the app's cache dir, and the most recently used ones are kept in memory.
+ */
+class InstallFileIndex private constructor(
+    val root: File,
+    private val indexFile: BinaryCacheFile?,
+    /** Levels of directories listed, 1 for just the root */
+    val maxDepth: Int,
+) {
+
+    /** A file or directory below [root]; [path] is relative and '/'-separated */
+    class Entry(val path: String, val size: Long, val lastModified: Long, val flags: Int) {
+        val name: String get() = path.substringAfterLast('/')
+
+        /** Number of path segments, 1 for direct children of the root */
+        val depth: Int get() = path.count { it == '/' } + 1
+
+        val isDirectory: Boolean get() = flags and FLAG_DIRECTORY != 0
+
+        val isFile: Boolean get() = !isDirectory
+
+        override fun toString() = path
+    }
+
+    private class Dir(
+        /** mtime when listed, or [UNSTABLE] if it was too recent to trust */
+        val lastModified: Long,
+        val files: List<Entry>,
+        val subdirs: List<String>,
+    ) {
+        val size: Long = files.sumOf { it.size }
+    }
+
+    companion object {
+        const val FLAG_DIRECTORY = 1
+        const val FLAG_EXECUTABLE = 2
+        const val FLAG_LIBRARY = 4
+
+        private const val MAGIC = 0x47_4E_46_49 // "GNFI"
+        private const val VERSION = 2
+        private const val CACHE_DIR = "install_file_index"
+
+        // A directory changed within this window of being listed may change again without a new
+        // mtime on file systems with coarse timestamps, so it's listed again next time
+        private const val MTIME_SETTLE_MS = 2_000L
+        private const val UNSTABLE = Long.MIN_VALUE
+
+        // Indexes kept in memory; the least recently used are dropped past this and reloaded from disk
+        internal const val MAX_INDEXES = 16
+
+        private val indexes = object : LinkedHashMap<String, InstallFileIndex>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, InstallFileIndex>): Boolean =
+                size > MAX_INDEXES
+        }
+
+        /** Where indexes are saved; defaults to a folder in the app's cache dir */
+        internal var indexDir: File? = null
+            get() = field ?: DownloadService.cacheSubdir(CACHE_DIR)
+
+        private const val PE_SIGNATURE = 0x50450000 // "PE\0\0"
+
+        /**
+         * The index of [root], loaded from disk the first time and brought up to date before it's
+         * returned. Pass [statFiles] to also pick up files rewritten in place, and [maxDepth] to
+         * list only that many levels of a folder the app doesn't own.
+         */
+        fun of(root: File, statFiles: Boolean = false, maxDepth: Int = Int.MAX_VALUE): InstallFileIndex {
+            val key = root.absolutePath
+            val index = synchronized(indexes) {
+                indexes[key]?.takeIf { it.maxDepth == maxDepth } ?: run {
+                    val file = indexDir?.let { BinaryCacheFile(File(it, sha1(key) + ".idx"), MAGIC, VERSION) }
+                    InstallFileIndex(root.absoluteFile, file, maxDepth).also { indexes[key] = it }
+                }
+            }
+            index.refresh(statFiles)
+            return index
+        }
+
+        fun of(rootPath: String, statFiles: Boolean = false, maxDepth: Int = Int.MAX_VALUE): InstallFileIndex =
+            of(File(rootPath), statFiles, maxDepth)
+
+        /** Drops the index of [root], e.g. once the install is deleted */
+        fun remove(root: File) {
+            synchronized(indexes) { indexes.remove(root.absolutePath) }?.indexFile?.delete()
+        }
+
+        private fun sha1(text: String): String =
+            MessageDigest.getInstance("SHA-1").digest(text.toByteArray()).joinToString("") { "%02x".format(it) }
+
+        private fun fileFlags(file: File): Int = when {
+            // Kept when unreadable, as it may still launch
+            file.name.endsWith(".exe", ignoreCase = true) -> if (isPeExecutable(file) != false) FLAG_EXECUTABLE else 0
+            file.name.endsWith(".dll", ignoreCase = true) -> FLAG_LIBRARY
+            else -> 0
+        }
+
+        /** Whether [file] starts with a DOS header pointing at a PE signature; null if it can't be read */
+        internal fun isPeExecutable(file: File): Boolean? = try {
+            RandomAccessFile(file, "r").use { raf ->
+                val length = raf.length()
+                if (length < 0x40 || raf.readUnsignedShort() != 0x4D5A) return false // "MZ"
+                raf.seek(0x3C)
+                val peOffset = Integer.reverseBytes(raf.readInt()).toLong() and 0xFFFFFFFFL
+                if (peOffset + 4 > length) return false
+                raf.seek(peOffset)
+                raf.readInt() == PE_SIGNATURE
+            }
+        } catch (e: IOException) {
+            Timber.w(e, "Could not probe ${file.name}")
+            null
+        }
+
+        /** Translates a glob ('*', '?', '**' spanning directories) over relative paths into a Regex */
+        internal fun globToRegex(glob: String, ignoreCase: Boolean): Regex {
+            val sb = StringBuilder()
+            var i = 0
+            while (i < glob.length) {
+                val c = glob[i]
+                when {
+                    glob.startsWith("**/", i) -> { sb.append("(?:.*/)?"); i += 2 }
+                    glob.startsWith("**", i) -> { sb.append(".*"); i++ }
+                    c == '*' -> sb.append("[^/]*")
+                    c == '?' -> sb.append("[^/]")
+                    else -> sb.append(Regex.escape(c.toString()))
+                }
+                i++
+            }
+            return if (ignoreCase) Regex(sb.toString(), RegexOption.IGNORE_CASE) else Regex(sb.toString())
+        }
+    }
+
+    // Relative dir path ("" for the root) -> its listing
+    private val dirs = HashMap<String, Dir>()
+    private var dirty = false
+    private var loaded = false
+
+    /** Total size of all files, as of the last refresh */
+    @get:Synchronized
+    var totalSize: Long = 0L
+        private set
+
+    /** Brings the index up to date with the disk and saves it if anything changed */
+    @Synchronized
+    fun refresh(statFiles: Boolean = false) {
+        if (!loaded) {
+            load()
+            loaded = true
+        }
+        if (!root.isDirectory) {
+            if (dirs.isNotEmpty()) {
+                dirs.clear()
+                totalSize = 0L
+                dirty = true
+            }
+        } else {
+            refreshDir("", root, 1, statFiles, System.currentTimeMillis())
+        }
+        if (dirty) save()
+    }
+
+    private fun refreshDir(rel: String, dir: File, depth: Int, statFiles: Boolean, now: Long) {
+        val lastModified = dir.lastModified()
+        val old = dirs[rel]
+        val current = if (old != null && old.lastModified == lastModified && (!statFiles || filesUnchanged(old))) {
+            old
+        } else {
+            list(rel, dir, old, lastModified, now).also { listed ->
+                dirs[rel] = listed
+                totalSize += listed.size - (old?.size ?: 0L)
+                dirty = true
+                if (old != null) {
+                    val kept = listed.subdirs.toHashSet()
+                    old.subdirs.filterNot { it in kept }.forEach { removeTree(child(rel, it)) }
+                }
+            }
+        }
+        if (depth >= maxDepth) return
+        for (name in current.subdirs) {
+            refreshDir(child(rel, name), File(dir, name), depth + 1, statFiles, now)
+        }
+    }
+
+    private fun filesUnchanged(dir: Dir): Boolean = dir.files.all { entry ->
+        val file = File(root, entry.path)
+        file.length() == entry.size && file.lastModified() == entry.lastModified
+    }
+
+    private fun list(rel: String, dir: File, old: Dir?, lastModified: Long, now: Long): Dir {
+        val known = old?.files?.associateBy { it.path }.orEmpty()
+        val files = ArrayList<Entry>()
+        val subdirs = ArrayList<String>()
+        for (file in dir.listFiles() ?: emptyArray()) {
+            val path = child(rel, file.name)
+            if (file.isDirectory) {
+                if (Files.isSymbolicLink(file.toPath())) continue
+                subdirs += file.name
+            } else if (file.isFile) {
+                val size = file.length()
+                val mtime = file.lastModified()
+                val flags = known[path]?.takeIf { it.size == size && it.lastModified == mtime }?.flags ?: fileFlags(file)
+                files += Entry(path, size, mtime, flags)
+            }
+        }
+        val stable = if (now - lastModified < MTIME_SETTLE_MS) UNSTABLE else lastModified
+        return Dir(stable, files, subdirs)
+    }
+
+    private fun removeTree(rel: String) {
+        val dir = dirs.remove(rel) ?: return
+        totalSize -= dir.size
+        dir.subdirs.forEach { removeTree(child(rel, it)) }
+    }
+
+    private fun child(rel: String, name: String) = if (rel.isEmpty()) name else "$rel/$name"
+
+    /** Every file and directory at most [maxDepth] segments deep, parents before their children */
+    @Synchronized
+    fun entries(maxDepth: Int = Int.MAX_VALUE): List<Entry> {
+        val out = ArrayList<Entry>()
+        fun visit(rel: String, depth: Int) {
+            val dir = dirs[rel] ?: return
+            if (depth > maxDepth) return
+            out.addAll(dir.files)
+            for (name in dir.subdirs) {
+                val path = child(rel, name)
+                out += Entry(path, 0L, dirs[path]?.lastModified ?: 0L, FLAG_DIRECTORY)
+                visit(path, depth + 1)
+            }
+        }
+        visit("", 1)
+        return out
+    }
+
+    /** Entries at most [maxDepth] segments deep matching [predicate] */
+    fun find(maxDepth: Int = Int.MAX_VALUE, predicate: (Entry) -> Boolean): List<Entry> =
+        entries(maxDepth).filter(predicate)
+
+    /** Files whose relative path matches [glob], e.g. `bin/steam_api*.dll`; `**` spans directories */
+    fun glob(glob: String, ignoreCase: Boolean = true): List<Entry> {
+        val regex = globToRegex(glob, ignoreCase)
+        return entries().filter { it.isFile && regex.matches(it.path) }
+    }
+
+    fun file(entry: Entry): File = File(root, entry.path)
+
+    private fun load() {
+        val saved = indexFile?.read {
+            if (readUTF() != root.path || readInt() != maxDepth) return@read null
+            val dirs = HashMap<String, Dir>()
+            repeat(readInt()) {
+                val rel = readUTF()
+                val lastModified = readLong()
+                val files = List(readInt()) {
+                    val path = child(rel, readUTF())
+                    Entry(path, readLong(), readLong(), readInt())
+                }
+                val subdirs = List(readInt()) { readUTF() }
+                dirs[rel] = Dir(lastModified, files, subdirs)
+            }
+            dirs
+        } ?: return
+        dirs.putAll(saved)
+        totalSize = dirs.values.sumOf { it.size }
+    }
+
+    private fun save() {
+        val saved = indexFile?.write {
+            writeUTF(root.path)
+            writeInt(maxDepth)
+            writeInt(dirs.size)
+            for ((rel, dir) in dirs) {
+                writeUTF(rel)
+                writeLong(dir.lastModified)
+                writeInt(dir.files.size)
+                for (entry in dir.files) {
+                    writeUTF(entry.name)
+                    writeLong(entry.size)
+                    writeLong(entry.lastModified)
+                    writeInt(entry.flags)
+                }
+                writeInt(dir.subdirs.size)
+                dir.subdirs.forEach { writeUTF(it) }
+            }
+        } ?: return
+        if (saved) dirty = false
+    }
+}
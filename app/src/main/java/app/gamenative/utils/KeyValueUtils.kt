@@ -159,6 +159,8 @@ fun KeyValue.generateSteamApp(): SteamApp {
                 )
             },
         ),
+        // Same rule as SteamService.getAppDirName
+        dirName = this["config"]["installdir"].value.orEmpty().ifEmpty { this["common"]["name"].value.orEmpty() },
     )
 }
 
@@ -1,7 +1,14 @@
 package app.gamenative.utils
 
-import okhttp3.OkHttpClient
 import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import okhttp3.Call
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import okhttp3.coroutines.executeAsync
 
 object Net {
     val http: OkHttpClient by lazy {
@@ -15,3 +22,27 @@ object Net {
             .build()
     }
 }
+
+/**
+ * Executes the call and hands the response to [block], which may read the body.
+ *
+ * Unlike a blocking `execute()`, cancelling the calling coroutine cancels the call itself, so a
+ * request abandoned mid-body (e.g. the loser of a hedged CDN race) releases its socket right away.
+ * The request goes through OkHttp's [executeAsync]; [block] runs on [Dispatchers.IO] since body
+ * reads block, and the response is closed when it returns.
+ */
+suspend fun <T> Call.awaitResponse(block: (Response) -> T): T {
+    val call = this
+    return executeAsync().use { response ->
+        coroutineScope {
+            val read = async(Dispatchers.IO) { block(response) }
+            try {
+                read.await()
+            } catch (e: CancellationException) {
+                // executeAsync only cancels while waiting for the headers; this unblocks the body read
+                call.cancel()
+                throw e
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+import timber.log.Timber
+
+/**
+ * Finds the Steam interface version strings (`SteamUser021`, `SteamNetworkingSockets012`, ...)
+ * baked into a steam_api(64).dll.
+ *
+ * A string counts when it is a whole run of printable ASCII, at least 10 long, made of "Steam" in
+ * any case, one or more letters and exactly three digits. The DLL is mapped and run through a small
+ * state machine in one pass; only matches are turned into Strings.
+ *
+ * Results are cached in [cacheDir] by the DLL's SHA-1, since most games ship one of a handful of
+ * steam_api builds.
+ */
+internal class SteamInterfaceScanner(private val cacheDir: File?) {
+
+    companion object {
+        private const val PREFIX = "steam"
+        private const val MIN_LENGTH = 10
+        private const val DIGITS = 3
+
+        // States past the "steam" prefix; 0 until PREFIX.length count matched prefix characters
+        private const val NEED_LETTER = 5
+        private const val LETTERS = 6
+        private const val DIGIT_1 = 7
+        private const val DIGIT_3 = DIGIT_1 + DIGITS - 1
+        private const val DEAD = -1
+
+        private fun isLetter(ch: Int) = (ch or 0x20) in 'a'.code..'z'.code
+
+        private fun isDigit(ch: Int) = ch in '0'.code..'9'.code
+
+        private fun next(state: Int, ch: Int): Int = when {
+            state == DEAD -> DEAD
+            state < PREFIX.length -> if ((ch or 0x20) == PREFIX[state].code) state + 1 else DEAD
+            state == NEED_LETTER -> if (isLetter(ch)) LETTERS else DEAD
+            state == LETTERS -> if (isLetter(ch)) LETTERS else if (isDigit(ch)) DIGIT_1 else DEAD
+            state < DIGIT_3 -> if (isDigit(ch)) state + 1 else DEAD
+            else -> DEAD
+        }
+
+        /** Interface names in [buffer] between its position and limit, sorted */
+        fun scan(buffer: ByteBuffer): List<String> {
+            val found = sortedSetOf<String>()
+            var state = 0
+            var start = buffer.position()
+
+            fun endRun(end: Int) {
+                if (state == DIGIT_3 && end - start >= MIN_LENGTH) {
+                    val bytes = ByteArray(end - start) { buffer.get(start + it) }
+                    found += String(bytes, Charsets.US_ASCII)
+                }
+            }
+
+            for (i in buffer.position() until buffer.limit()) {
+                val ch = buffer.get(i).toInt() and 0xFF
+                if (ch in 0x20..0x7E) {
+                    state = next(state, ch)
+                } else {
+                    endRun(i)
+                    state = 0
+                    start = i + 1
+                }
+            }
+            endRun(buffer.limit())
+            return found.toList()
+        }
+    }
+
+    /** Interface names found in [dllPath], from the cache when this DLL was scanned before */
+    fun scan(dllPath: Path): List<String> = FileChannel.open(dllPath, StandardOpenOption.READ).use { channel ->
+        val size = channel.size()
+        if (size > Int.MAX_VALUE) throw IOException("$dllPath is too large to scan")
+        val mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+
+        val sha1 = MessageDigest.getInstance("SHA-1").apply { update(mapped.duplicate()) }.digest()
+        val cacheFile = cacheDir?.let { File(it, sha1.joinToString("") { b -> "%02x".format(b) } + ".txt") }
+        if (cacheFile != null && cacheFile.isFile) {
+            return@use cacheFile.readLines().filter { it.isNotEmpty() }
+        }
+
+        val found = scan(mapped)
+        if (cacheFile != null) {
+            try {
+                cacheFile.parentFile?.mkdirs()
+                val tmp = File(cacheFile.parentFile, cacheFile.name + ".tmp")
+                Files.write(tmp.toPath(), found)
+                if (!tmp.renameTo(cacheFile)) tmp.delete()
+            } catch (e: IOException) {
+                Timber.w(e, "Could not cache steam interfaces of ${dllPath.fileName}")
+            }
+        }
+        found
+    }
+}
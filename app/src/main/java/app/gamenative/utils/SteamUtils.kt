@@ -8,6 +8,7 @@ import app.gamenative.data.DepotInfo
 import app.gamenative.data.SteamApp
 import app.gamenative.enums.Marker
 import app.gamenative.enums.SpecialGameSaveMapping
+import app.gamenative.service.DownloadService
 import app.gamenative.service.SteamService
 import app.gamenative.service.SteamService.Companion.getAppDirName
 import app.gamenative.service.SteamService.Companion.getAppInfoOf
@@ -78,42 +79,23 @@ object SteamUtils {
      */
     fun removeSpecialChars(s: String): String = s.replace(Regex("[^\\u0000-\\u007F]"), "")
 
+    private val interfaceScanner by lazy {
+        SteamInterfaceScanner(DownloadService.cacheSubdir("steam_interfaces"))
+    }
+
     private fun generateInterfacesFile(dllPath: Path) {
         val outFile = dllPath.parent.resolve("steam_interfaces.txt")
         if (Files.exists(outFile)) return          // already generated on a previous boot
 
-        // -------- read DLL into memory ----------------------------------------
-        val bytes = Files.readAllBytes(dllPath)
-        val strings = mutableSetOf<String>()
-
-        val sb = StringBuilder()
-        fun flush() {
-            if (sb.length >= 10) {                 // only consider reasonably long strings
-                val candidate = sb.toString()
-                if (candidate.matches(Regex("^Steam[A-Za-z]+[0-9]{3}\$", RegexOption.IGNORE_CASE)))
-                    strings += candidate
-            }
-            sb.setLength(0)
-        }
-
-        for (b in bytes) {
-            val ch = b.toInt() and 0xFF
-            if (ch in 0x20..0x7E) {                // printable ASCII
-                sb.append(ch.toChar())
-            } else {
-                flush()
-            }
-        }
-        flush()                                    // catch trailing string
+        val strings = interfaceScanner.scan(dllPath)
 
         if (strings.isEmpty()) {
             Timber.w("No Steam interface strings found in ${dllPath.fileName}")
             return
         }
 
-        val sorted = strings.sorted()
-        Files.write(outFile, sorted)
-        Timber.i("Generated steam_interfaces.txt (${sorted.size} interfaces)")
+        Files.write(outFile, strings)
+        Timber.i("Generated steam_interfaces.txt (${strings.size} interfaces)")
     }
 
     private fun copyOriginalSteamDll(dllPath: Path, appDirPath: String): String? {
@@ -163,9 +145,11 @@ object SteamUtils {
         // Get ticket once for all DLLs
         val ticketBase64 = SteamService.instance?.getEncryptedAppTicketBase64(steamAppId)
 
-        rootPath.toFile().walkTopDown().maxDepth(10).forEach { file ->
+        val index = InstallFileIndex.of(rootPath.toFile())
+        index.find(maxDepth = 10) { it.isFile && it.name.startsWith("steam_api", ignoreCase = true) }.forEach { entry ->
+            val file = index.file(entry)
             val path = file.toPath()
-            if (!file.isFile || !path.name.startsWith("steam_api", ignoreCase = true)) return@forEach
+            if (!file.isFile) return@forEach
 
             val is64Bit = path.name.equals("steam_api64.dll", ignoreCase = true)
             val is32Bit = path.name.equals("steam_api.dll", ignoreCase = true)
@@ -493,7 +477,8 @@ object SteamUtils {
                     exe.lastModified() != unpackedExe.lastModified()
 
                 if (areFilesDifferent) {
-                    Files.copy(unpackedExe.toPath(), exe.toPath(), StandardCopyOption.REPLACE_EXISTING)
+                    // Takes the unpacked file's mtime, so this isn't repeated on every launch
+                    SteamlessCache.installUnpacked(exe, unpackedExe)
                     Timber.i("Restored unpacked executable from ${unpackedExe.name} to ${exe.name}")
                 } else {
                     Timber.i("Unpacked executable is already current, no restore needed")
@@ -654,18 +639,12 @@ object SteamUtils {
             return 0L
         }
 
-        var size = 0L
-        try {
-            directory.walkTopDown().forEach { file ->
-                if (file.isFile()) {
-                    size += file.length()
-                }
-            }
+        return try {
+            InstallFileIndex.of(directory).totalSize
         } catch (e: Exception) {
             Timber.w(e, "Error calculating directory size")
+            0L
         }
-
-        return size
     }
 
     /**
@@ -722,9 +701,13 @@ object SteamUtils {
     fun putBackSteamDlls(appDirPath: String) {
         val rootPath = Paths.get(appDirPath)
 
-        rootPath.toFile().walkTopDown().maxDepth(10).forEach { file ->
+        val index = InstallFileIndex.of(rootPath.toFile())
+        index.find(maxDepth = 10) {
+            it.isFile && it.name.startsWith("steam_api", ignoreCase = true) && it.name.endsWith(".orig", ignoreCase = true)
+        }.forEach { entry ->
+            val file = index.file(entry)
             val path = file.toPath()
-            if (!file.isFile || !path.name.startsWith("steam_api", ignoreCase = true) || !path.name.endsWith(".orig", ignoreCase = true)) return@forEach
+            if (!file.isFile) return@forEach
 
             val is64Bit = path.name.equals("steam_api64.dll.orig", ignoreCase = true)
             val is32Bit = path.name.equals("steam_api.dll.orig", ignoreCase = true)
@@ -0,0 +1,152 @@
+package app.gamenative.utils
+
+import app.gamenative.service.DownloadService
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * Remembers what Steamless made of each game executable, by a SHA-256 of its contents, so a given
+ * version of an executable goes through Steamless once instead of on every unpack.
+ *
+ * Steamless writes its output next to the executable as `<exe>.unpacked.exe`; that file is what's
+ * reused, once it's checked to still hash to what Steamless wrote. Executables Steamless found
+ * nothing to unpack in are remembered as such, and so is the unpacked output once it's installed.
+ *
+ * @param indexFile where the index is saved, or null to keep it in memory only
+ * @param hashes digests of the executables, so unchanged ones aren't read again
+ */
+internal class SteamlessCache(
+    indexFile: File?,
+    private val hashes: FileHashCache,
+) {
+
+    companion object {
+        private const val MAGIC = 0x47_4E_53_4C // "GNSL"
+        private const val VERSION = 1
+        private const val CACHE_DIR = "steamless"
+        private const val UNPACKED_SUFFIX = ".unpacked.exe"
+
+        // Executable versions remembered; the least recently used are forgotten past this
+        private const val MAX_ENTRIES = 1024
+
+        // Output recorded for executables there's nothing (more) to unpack in
+        private const val NOTHING = ""
+
+        // What Steamless.CLI prints when none of its unpackers recognise the file
+        private const val NO_PACKER_FOUND = "All unpackers failed to unpack file"
+
+        val shared: SteamlessCache by lazy {
+            val dir = DownloadService.cacheSubdir(CACHE_DIR)
+            SteamlessCache(
+                dir?.let { File(it, "index.bin") },
+                FileHashCache(dir?.let { File(it, "hashes.bin") }, "SHA-256"),
+            )
+        }
+
+        /** Where Steamless puts what it unpacked from [exe] */
+        fun unpackedFile(exe: File): File = File(exe.path + UNPACKED_SUFFIX)
+
+        /**
+         * Whether a Steamless run on [exe] that printed [output] settled what there is to unpack:
+         * either it wrote the unpacked file, or it found no packer it knows. Anything else, like
+         * Wine failing to start it or Steamless crashing, is worth another try next launch.
+         */
+        fun isConclusive(exe: File, output: String): Boolean =
+            unpackedFile(exe).isFile || output.contains(NO_PACKER_FOUND, ignoreCase = true)
+
+        /**
+         * Puts [unpacked] in place of [exe], first moving [exe] to [backup] unless there's a backup
+         * already. The backup is a rename rather than a copy, so only the unpacked file is written,
+         * and [exe] takes [unpacked]'s mtime so the two can be compared without reading them.
+         */
+        fun installUnpacked(exe: File, unpacked: File, backup: File? = null) {
+            val tmp = File(exe.path + ".tmp")
+            var movedToBackup = false
+            try {
+                if (backup != null && !backup.exists() && exe.isFile) {
+                    movedToBackup = exe.renameTo(backup)
+                    if (!movedToBackup) Files.copy(exe.toPath(), backup.toPath())
+                }
+                Files.copy(unpacked.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING)
+                Files.move(tmp.toPath(), exe.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            } catch (e: IOException) {
+                tmp.delete()
+                if (movedToBackup && !exe.exists()) backup!!.renameTo(exe)
+                throw e
+            }
+            exe.setLastModified(unpacked.lastModified())
+        }
+
+        private fun hex(bytes: ByteArray): String = bytes.joinToString("") { "%02x".format(it) }
+    }
+
+    // Executable hash -> hash of what Steamless unpacked from it, or NOTHING
+    private val entries = object : LinkedHashMap<String, String>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>): Boolean = size > MAX_ENTRIES
+    }
+    private val cacheFile = indexFile?.let { BinaryCacheFile(it, MAGIC, VERSION) }
+    private var dirty = false
+
+    init {
+        load()
+    }
+
+    /**
+     * Unpacks [exe] with [steamless] unless this version of it was seen before, and returns the
+     * unpacked file to install in its place, or null if there's nothing to install. [steamless]
+     * returns whether its run was conclusive (see [isConclusive]); other runs aren't remembered,
+     * so a failure isn't taken for nothing to unpack.
+     *
+     * @throws IOException if [exe] can't be read
+     */
+    fun unpack(exe: File, steamless: () -> Boolean): File? {
+        val input = hex(hashes.hash(exe.toPath()))
+        val unpacked = unpackedFile(exe)
+        when (val known = synchronized(entries) { entries[input] }) {
+            null -> Unit
+            NOTHING -> return null
+            else -> if (unpacked.isFile && hex(hashes.hash(unpacked.toPath())) == known) return unpacked
+        }
+
+        // Whatever is there was unpacked from another version, or has changed since
+        unpacked.delete()
+        if (!steamless()) return null
+
+        val output = if (unpacked.isFile) hex(hashes.hash(unpacked.toPath())) else NOTHING
+        synchronized(entries) {
+            entries[input] = output
+            // Once installed, the unpacked executable has nothing more to unpack
+            if (output != NOTHING) entries[output] = NOTHING
+            dirty = true
+        }
+        return unpacked.takeIf { output != NOTHING }
+    }
+
+    private fun load() {
+        val loaded = cacheFile?.read {
+            val index = LinkedHashMap<String, String>()
+            repeat(readInt()) { index[readUTF()] = readUTF() }
+            index
+        } ?: return
+        entries.putAll(loaded)
+    }
+
+    /** Writes the index and hashes out if anything changed since they were loaded or last saved */
+    fun save() {
+        hashes.save()
+        val file = cacheFile ?: return
+        synchronized(entries) {
+            if (!dirty) return
+            val saved = file.write {
+                writeInt(entries.size)
+                for ((input, output) in entries) {
+                    writeUTF(input)
+                    writeUTF(output)
+                }
+            }
+            if (saved) dirty = false
+        }
+    }
+}
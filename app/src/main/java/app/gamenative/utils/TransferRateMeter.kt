@@ -0,0 +1,72 @@
+package app.gamenative.utils
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lock-free transfer rate meter backed by a fixed ring of one-second buckets.
+ *
+ * Every [record] touches exactly one bucket, so an update costs O(1) regardless of how many
+ * samples land in the window, and memory is fixed at construction. Rolling a bucket over to a
+ * new second races benignly with concurrent adders: a few bytes may be dropped from the *rate*,
+ * which is only used for speed/ETA display. Exact byte totals must be tracked separately.
+ */
+class TransferRateMeter(private val windowSeconds: Int = 30) {
+    private val bucketBytes = AtomicLongArray(windowSeconds)
+    private val bucketSecond = AtomicLongArray(LongArray(windowSeconds) { -1L })
+    private val firstSampleMs = AtomicLong(-1L)
+
+    val bucketCount: Int get() = windowSeconds
+
+    fun record(bytes: Long, nowMs: Long) {
+        firstSampleMs.compareAndSet(-1L, nowMs)
+
+        val second = nowMs / 1000L
+        val slot = (second % windowSeconds).toInt()
+        val stamp = bucketSecond.get(slot)
+        if (stamp != second) {
+            if (stamp > second) return // sample older than the bucket's current second
+            if (bucketSecond.compareAndSet(slot, stamp, second)) {
+                bucketBytes.set(slot, 0L)
+            } else if (bucketSecond.get(slot) != second) {
+                return
+            }
+        }
+        if (bytes > 0L) {
+            bucketBytes.addAndGet(slot, bytes)
+        }
+    }
+
+    /**
+     * Average throughput over the last [window] seconds (or since the first sample, if that is
+     * more recent), in bytes per second. Returns 0 when there is nothing to measure yet.
+     */
+    fun bytesPerSecond(nowMs: Long, window: Int = windowSeconds): Double {
+        val firstMs = firstSampleMs.get()
+        if (firstMs < 0L) return 0.0
+
+        val span = window.coerceIn(1, windowSeconds)
+        val second = nowMs / 1000L
+        val oldestSecond = second - span + 1
+        var total = 0L
+        for (slot in 0 until windowSeconds) {
+            val stamp = bucketSecond.get(slot)
+            if (stamp in oldestSecond..second) {
+                total += bucketBytes.get(slot)
+            }
+        }
+        if (total <= 0L) return 0.0
+
+        val elapsedMs = minOf(nowMs - oldestSecond * 1000L, nowMs - firstMs)
+        if (elapsedMs <= 0L) return 0.0
+        return total * 1000.0 / elapsedMs
+    }
+
+    fun reset() {
+        for (slot in 0 until windowSeconds) {
+            bucketSecond.set(slot, -1L)
+            bucketBytes.set(slot, 0L)
+        }
+        firstSampleMs.set(-1L)
+    }
+}
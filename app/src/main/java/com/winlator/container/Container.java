@@ -680,6 +680,7 @@ public class Container {
 
             if (!WineInfo.isMainWineVersion(wineVersion)) data.put("wineVersion", wineVersion);
             FileUtils.writeString(getConfigFile(), data.toString());
+            ContainerCatalog.forget(getConfigFile());
         }
         catch (JSONException e) {
             Log.e("Container", "Failed to save data: " + e);
@@ -0,0 +1,189 @@
+package com.winlator.container;
+
+import android.util.Log;
+
+import com.winlator.core.FileUtils;
+import com.winlator.xenvironment.ImageFs;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the containers in a home dir, kept in {@link #INDEX_FILE} next to them. Each entry
+ * holds the container's id, name and the mtime and size of its config, so callers can find out
+ * which containers exist without parsing every config. An entry is trusted only while the config
+ * file still has that mtime and size.
+ *
+ * Config contents are also cached for the whole process, so the many short-lived
+ * {@link ContainerManager}s don't read an unchanged config from disk again.
+ */
+final class ContainerCatalog {
+    static final String INDEX_FILE = ".containers.json";
+
+    private static final class CachedConfig {
+        final long mtime;
+        final long size;
+        final String content;
+
+        CachedConfig(long mtime, long size, String content) {
+            this.mtime = mtime;
+            this.size = size;
+            this.content = content;
+        }
+    }
+
+    // Config file path -> its content as of the stored mtime and size
+    private static final ConcurrentHashMap<String, CachedConfig> configs = new ConcurrentHashMap<>();
+
+    static final class Entry {
+        final String id;
+        final long mtime;
+        final long size;
+        /** Null when the config is missing, empty or doesn't parse */
+        final String name;
+
+        Entry(String id, long mtime, long size, String name) {
+            this.id = id;
+            this.mtime = mtime;
+            this.size = size;
+            this.name = name;
+        }
+
+        boolean isValid() {
+            return name != null;
+        }
+    }
+
+    private final File homeDir;
+    private final File indexFile;
+    // Containers on disk in directory order; null entries haven't been checked against their config yet
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private boolean dirty;
+
+    ContainerCatalog(File homeDir) {
+        this.homeDir = homeDir;
+        this.indexFile = new File(homeDir, INDEX_FILE);
+
+        HashMap<String, Entry> indexed = readIndex();
+        String prefix = ImageFs.USER + "-";
+        File[] files = homeDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.isDirectory() || !file.getName().startsWith(prefix)) continue;
+                String id = file.getName().substring(prefix.length());
+                Entry entry = indexed.remove(id);
+                File configFile = new File(file, ".container");
+                boolean fresh = entry != null && entry.mtime == configFile.lastModified() && entry.size == configFile.length();
+                entries.put(id, fresh ? entry : null);
+                if (!fresh) dirty = true;
+            }
+        }
+        if (!indexed.isEmpty()) dirty = true;
+    }
+
+    private HashMap<String, Entry> readIndex() {
+        HashMap<String, Entry> indexed = new HashMap<>();
+        if (!indexFile.isFile()) return indexed;
+        try {
+            JSONArray array = new JSONArray(FileUtils.readString(indexFile));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.getJSONObject(i);
+                String id = item.getString("id");
+                String name = item.isNull("name") ? null : item.getString("name");
+                indexed.put(id, new Entry(id, item.getLong("mtime"), item.getLong("size"), name));
+            }
+        }
+        catch (Exception e) {
+            Log.w("ContainerCatalog", "Ignoring unreadable container index: " + e.getMessage());
+            indexed.clear();
+        }
+        return indexed;
+    }
+
+    File getConfigFile(String id) {
+        return new File(new File(homeDir, ImageFs.USER + "-" + id), ".container");
+    }
+
+    /** Ids of every container dir, in directory order */
+    synchronized ArrayList<String> getIds() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /** The entry for {@code id}, or null if it isn't indexed or its config changed since */
+    synchronized Entry get(String id) {
+        return entries.get(id);
+    }
+
+    synchronized boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /** Indexes {@code id} with the current mtime and size of its config */
+    synchronized void put(String id, String name) {
+        File configFile = getConfigFile(id);
+        entries.put(id, new Entry(id, configFile.lastModified(), configFile.length(), name));
+        dirty = true;
+    }
+
+    synchronized void remove(String id) {
+        if (entries.remove(id) != null) dirty = true;
+        forget(getConfigFile(id));
+    }
+
+    /** Writes the index back if anything changed, leaving out containers not checked yet */
+    synchronized void save() {
+        if (!dirty) return;
+        try {
+            JSONArray array = new JSONArray();
+            for (Entry entry : entries.values()) {
+                if (entry == null) continue;
+                JSONObject item = new JSONObject();
+                item.put("id", entry.id);
+                item.put("name", entry.name != null ? entry.name : JSONObject.NULL);
+                item.put("mtime", entry.mtime);
+                item.put("size", entry.size);
+                array.put(item);
+            }
+            if (FileUtils.writeString(indexFile, array.toString())) dirty = false;
+        }
+        catch (Exception e) {
+            Log.w("ContainerCatalog", "Could not write container index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Content of {@code configFile}, from memory while the file's mtime and size are unchanged.
+     * Null if the file can't be read.
+     */
+    static String readConfig(File configFile) {
+        String path = configFile.getPath();
+        long mtime = configFile.lastModified();
+        long size = configFile.length();
+        CachedConfig cached = configs.get(path);
+        if (cached != null && cached.mtime == mtime && cached.size == size) return cached.content;
+
+        byte[] bytes = FileUtils.read(configFile);
+        if (bytes == null) {
+            configs.remove(path);
+            return null;
+        }
+        String content = new String(bytes, StandardCharsets.UTF_8);
+        configs.put(path, new CachedConfig(mtime, size, content));
+        return content;
+    }
+
+    /**
+     * Drops the cached content of {@code configFile}. Called after writing it, since a rewrite
+     * within the file system's mtime resolution can keep both mtime and size.
+     */
+    static void forget(File configFile) {
+        configs.remove(configFile.getPath());
+    }
+}
@@ -29,59 +29,91 @@ import org.json.JSONObject;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 public class ContainerManager {
     private final ArrayList<Container> containers = new ArrayList<>();
+    // Containers parsed so far, by id; null values are containers whose config couldn't be loaded
+    private final HashMap<String, Container> parsed = new HashMap<>();
+    private boolean containersLoaded;
     private final File homeDir;
     private final Context context;
+    private final ContainerCatalog catalog;
 
     public ContainerManager(Context context) {
+        this(context, new File(ImageFs.find(context).getRootDir(), "home"));
+    }
+
+    ContainerManager(Context context, File homeDir) {
         this.context = context;
-        File rootDir = ImageFs.find(context).getRootDir();
-        homeDir = new File(rootDir, "home");
-        loadContainers();
+        this.homeDir = homeDir;
+        // Only the index is read here; configs are parsed when a container is first asked for
+        catalog = new ContainerCatalog(homeDir);
     }
 
     public ArrayList<Container> getContainers() {
+        loadContainers();
         return containers;
     }
 
-    private void loadContainers() {
+    /**
+     * Parses the configs not parsed yet, in parallel, and fills {@link #containers} in directory order.
+     */
+    private synchronized void loadContainers() {
+        if (containersLoaded) return;
+
+        ArrayList<String> ids = catalog.getIds();
+        List<String> pending = ids.stream().filter(id -> !parsed.containsKey(id)).collect(Collectors.toList());
+        List<Container> loaded = pending.parallelStream().map(this::parseContainer).collect(Collectors.toList());
+        for (int i = 0; i < pending.size(); i++) parsed.put(pending.get(i), loaded.get(i));
+
         containers.clear();
+        for (String id : ids) {
+            Container container = parsed.get(id);
+            if (container != null) containers.add(container);
+        }
+        containersLoaded = true;
+        catalog.save();
+    }
 
-        File[] files = homeDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    if (file.getName().startsWith(ImageFs.USER+"-")) {
-                        String containerId = file.getName().replace(ImageFs.USER+"-", "");
-                        Container container = new Container(containerId);
-                        container.setRootDir(new File(homeDir, ImageFs.USER+"-"+container.id));
-                        try {
-                            File configFile = container.getConfigFile();
-                            String configContent = FileUtils.readString(configFile);
-                            
-                            if (configContent == null || configContent.trim().isEmpty()) {
-                                Log.w("ContainerManager", "Container config file is null or empty, skipping: " + containerId);
-                                continue;
-                            }
-                            
-                            JSONObject data = new JSONObject(configContent);
-                            container.loadData(data);
-                            containers.add(container);
-                        } catch (Exception e) {
-                            // Catch ALL exceptions (NullPointerException, JSONException, etc.)
-                            Log.w("ContainerManager", "Could not load container " + containerId + ": " + e.getMessage());
-                            // Continue loading other containers
-                        }
-                    }
-                }
+    /** Loads one container from its config, or returns null if the config is missing or broken */
+    private Container parseContainer(String containerId) {
+        Container container = new Container(containerId);
+        container.setRootDir(new File(homeDir, ImageFs.USER+"-"+container.id));
+        try {
+            File configFile = container.getConfigFile();
+            String configContent = ContainerCatalog.readConfig(configFile);
+
+            if (configContent == null || configContent.trim().isEmpty()) {
+                Log.w("ContainerManager", "Container config file is null or empty, skipping: " + containerId);
+                catalog.put(containerId, null);
+                return null;
             }
+
+            JSONObject data = new JSONObject(configContent);
+            container.loadData(data);
+            catalog.put(containerId, container.getName());
+            return container;
+        } catch (Exception e) {
+            // Catch ALL exceptions (NullPointerException, JSONException, etc.)
+            Log.w("ContainerManager", "Could not load container " + containerId + ": " + e.getMessage());
+            catalog.put(containerId, null);
+            return null;
         }
     }
 
+    /** Records a container this manager created, keeping the list and index in step */
+    private synchronized void addContainer(Container container) {
+        parsed.put(container.id, container);
+        if (containersLoaded) containers.add(container);
+        catalog.put(container.id, container.getName());
+        catalog.save();
+    }
+
     public void activateContainer(Container container) {
         container.setRootDir(new File(homeDir, ImageFs.USER+"-"+container.id));
         File file = new File(homeDir, ImageFs.USER);
@@ -184,7 +216,7 @@ public class ContainerManager {
             }
 
             container.saveData();
-            containers.add(container);
+            addContainer(container);
             return container;
         }
         catch (JSONException e) {
@@ -231,7 +263,7 @@ public class ContainerManager {
         dstContainer.setWineVersion(srcContainer.getWineVersion());
         dstContainer.saveData();
 
-        containers.add(dstContainer);
+        addContainer(dstContainer);
     }
 
     private String generateUniqueContainerId(String baseId) {
@@ -251,13 +283,18 @@ public class ContainerManager {
         return candidateId;
     }
 
-    private void removeContainer(Container container) {
-        if (FileUtils.delete(container.getRootDir())) containers.remove(container);
+    private synchronized void removeContainer(Container container) {
+        if (FileUtils.delete(container.getRootDir())) {
+            containers.remove(container);
+            parsed.remove(container.id);
+            catalog.remove(container.id);
+            catalog.save();
+        }
     }
 
     public ArrayList<Shortcut> loadShortcuts() {
         ArrayList<Shortcut> shortcuts = new ArrayList<>();
-        for (Container container : containers) {
+        for (Container container : getContainers()) {
             File desktopDir = container.getDesktopDir();
             File[] files = desktopDir.listFiles();
             if (files != null) {
@@ -272,13 +309,22 @@ public class ContainerManager {
     }
 
     public boolean hasContainer(String id) {
-        for (Container container : containers) if (container.id.equals(id)) return true;
-        return false;
+        synchronized (this) {
+            if (parsed.containsKey(id)) return parsed.get(id) != null;
+        }
+        // The index answers without parsing while the config is unchanged
+        ContainerCatalog.Entry entry = catalog.get(id);
+        if (entry != null) return entry.isValid();
+        return getContainerById(id) != null;
     }
 
-    public Container getContainerById(String id) {
-        for (Container container : containers) if (container.id.equals(id)) return container;
-        return null;
+    public synchronized Container getContainerById(String id) {
+        if (parsed.containsKey(id)) return parsed.get(id);
+        if (containersLoaded || !catalog.contains(id)) return null;
+        Container container = parseContainer(id);
+        parsed.put(id, container);
+        catalog.save();
+        return container;
     }
 
     /**
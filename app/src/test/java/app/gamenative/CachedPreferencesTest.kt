@@ -0,0 +1,201 @@
+package app.gamenative
+
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.PreferenceDataStoreFactory
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.emptyPreferences
+import androidx.datastore.preferences.core.intPreferencesKey
+import androidx.datastore.preferences.core.preferencesOf
+import androidx.datastore.preferences.core.stringPreferencesKey
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.flow.receiveAsFlow
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class CachedPreferencesTest {
+
+    private lateinit var dir: File
+    private lateinit var scope: CoroutineScope
+    private lateinit var store: CountingDataStore
+    private lateinit var prefs: CachedPreferences
+
+    private val name = stringPreferencesKey("name")
+    private val count = intPreferencesKey("count")
+
+    /** Counts how many edits actually reach the file, and how often the data is collected. */
+    private class CountingDataStore(private val delegate: DataStore<Preferences>) : DataStore<Preferences> {
+        val writes = AtomicInteger()
+        val collections = AtomicInteger()
+
+        override val data: Flow<Preferences> = delegate.data.onStart { collections.incrementAndGet() }
+
+        override suspend fun updateData(transform: suspend (t: Preferences) -> Preferences): Preferences {
+            writes.incrementAndGet()
+            return delegate.updateData(transform)
+        }
+    }
+
+    @Before
+    fun setUp() {
+        dir = Files.createTempDirectory("prefs").toFile()
+        open()
+    }
+
+    @After
+    fun tearDown() {
+        close()
+        dir.deleteRecursively()
+    }
+
+    private fun open() {
+        scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+        store = CountingDataStore(
+            PreferenceDataStoreFactory.create(scope = scope) { File(dir, "test.preferences_pb") },
+        )
+        prefs = CachedPreferences(store, scope).apply { start() }
+    }
+
+    private fun close() = runBlocking {
+        scope.coroutineContext[Job]!!.cancelAndJoin()
+    }
+
+    private fun reopen() {
+        close()
+        open()
+    }
+
+    @Test
+    fun writesAreVisibleAtOnceAndPersisted() = runBlocking {
+        prefs[name] = "pluvia"
+        prefs[count] = 3
+        assertEquals("pluvia", prefs[name])
+        assertEquals(3, prefs[count])
+
+        prefs.remove(name)
+        assertNull(prefs[name])
+
+        prefs.flush()
+        reopen()
+        assertNull(prefs[name])
+        assertEquals(3, prefs[count])
+    }
+
+    @Test
+    fun burstsOfWritesAreCoalesced() = runBlocking {
+        repeat(1_000) { prefs[count] = it }
+        assertEquals(999, prefs[count])
+
+        prefs.flush()
+        assertTrue("${store.writes.get()} edits", store.writes.get() < 20)
+
+        reopen()
+        assertEquals(999, prefs[count])
+    }
+
+    @Test
+    fun concurrentWritersAllLand() = runBlocking {
+        val threads = (0 until 8).map { t ->
+            thread {
+                repeat(250) { i -> prefs[intPreferencesKey("t${t}_$i")] = i }
+            }
+        }
+        threads.forEach { it.join() }
+        prefs.flush()
+
+        for (t in 0 until 8) {
+            assertEquals(249, prefs[intPreferencesKey("t${t}_249")])
+        }
+        val onDisk = store.data.first()
+        assertEquals(2_000, onDisk.asMap().size)
+    }
+
+    @Test
+    fun clearDropsEarlierWritesOnly() = runBlocking {
+        prefs[name] = "before"
+        prefs.flush()
+        prefs[count] = 1
+        prefs.clear()
+        prefs[name] = "after"
+
+        assertNull(prefs[count])
+        assertEquals("after", prefs[name])
+
+        prefs.flush()
+        val onDisk = store.data.first()
+        assertEquals(mapOf<Preferences.Key<*>, Any>(name to "after"), onDisk.asMap())
+    }
+
+    @Test
+    fun emissionsFromBeforeAClearAreSkipped() = runBlocking {
+        // Emits only when told to, so a value from before the write can arrive after it. A send
+        // returns once the collector has taken the value, so the one before it has been handled.
+        val emissions = Channel<Preferences>()
+        val manual = object : DataStore<Preferences> {
+            var stored = preferencesOf(name to "old")
+            override val data = emissions.receiveAsFlow()
+            override suspend fun updateData(transform: suspend (t: Preferences) -> Preferences) =
+                transform(stored).also { stored = it }
+        }
+        val cached = CachedPreferences(manual, scope).apply { start() }
+        emissions.send(manual.stored)
+        withTimeout(5_000) { while (cached[name] != "old") delay(10) }
+
+        cached.clear()
+        cached.flush()
+        val stale = preferencesOf(name to "old")
+        emissions.send(stale)
+        emissions.send(stale)
+        assertEquals(emptyPreferences(), manual.stored)
+        assertNull(cached[name])
+
+        // Once our write shows up, changes made elsewhere come through again
+        emissions.send(manual.stored)
+        emissions.send(preferencesOf(count to 7))
+        withTimeout(5_000) { while (cached[count] != 7) delay(10) }
+        assertNull(cached[name])
+    }
+
+    @Test
+    fun collectorPicksUpChangesMadeElsewhere() = runBlocking {
+        prefs[count] = 1
+        prefs.flush()
+
+        store.edit { it[name] = "external" }
+
+        withTimeout(5_000) {
+            while (prefs[name] != "external") delay(10)
+        }
+        assertEquals(1, prefs[count])
+    }
+
+    @Test
+    fun readsDoNotCollectTheDataStore() = runBlocking {
+        prefs[count] = 42
+        prefs.flush()
+        // Make sure the collector has delivered, so reads hit the snapshot
+        withTimeout(5_000) { while (store.data.first()[count] != 42) delay(10) }
+        val collections = store.collections.get()
+
+        repeat(10_000) { assertEquals(42, prefs[count]) }
+
+        assertEquals(collections, store.collections.get())
+    }
+}
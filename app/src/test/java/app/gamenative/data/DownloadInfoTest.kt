@@ -0,0 +1,107 @@
+package app.gamenative.data
+
+import app.gamenative.utils.TransferRateMeter
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Assert.*
+import org.junit.Test
+
+class DownloadInfoTest {
+
+    private fun newDownloadInfo() = DownloadInfo(gameId = 1, downloadingAppIds = CopyOnWriteArrayList())
+
+    @Test
+    fun concurrentUpdatesProduceExactTotal() {
+        val downloadInfo = newDownloadInfo()
+        val threads = 16
+        val updatesPerThread = 100_000
+        val bytesPerUpdate = 8192L
+        downloadInfo.setTotalExpectedBytes(threads * updatesPerThread * bytesPerUpdate)
+
+        val pool = Executors.newFixedThreadPool(threads)
+        val start = CountDownLatch(1)
+        repeat(threads) {
+            pool.execute {
+                start.await()
+                repeat(updatesPerThread) { downloadInfo.updateBytesDownloaded(bytesPerUpdate) }
+            }
+        }
+        start.countDown()
+        pool.shutdown()
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS))
+
+        assertEquals(threads * updatesPerThread * bytesPerUpdate, downloadInfo.getBytesDownloaded())
+        assertEquals(1f, downloadInfo.getProgress(), 0f)
+    }
+
+    @Test
+    fun updateCostDoesNotGrowWithSampleCount() {
+        // The speed window is a fixed ring: a million updates across a minute of virtual time
+        // must not allocate more buckets, and the rate only reflects the window.
+        val meter = TransferRateMeter(windowSeconds = 30)
+        val startMs = 1_000_000L
+        for (i in 0 until 1_000_000) {
+            meter.record(100L, startMs + i * 60_000L / 1_000_000)
+        }
+        assertEquals(30, meter.bucketCount)
+
+        val nowMs = startMs + 60_000L
+        // ~1M updates over 60s at 100 bytes each => ~1.67 MB/s
+        val rate = meter.bytesPerSecond(nowMs)
+        assertEquals(100.0 * 1_000_000 / 60.0, rate, rate * 0.05)
+    }
+
+    @Test
+    fun etaUsesWindowedRate() {
+        val downloadInfo = newDownloadInfo()
+        downloadInfo.setTotalExpectedBytes(20_000_000L)
+        val startMs = System.currentTimeMillis()
+        // 1 MB/s for 10 seconds
+        for (i in 1..100) {
+            downloadInfo.updateBytesDownloaded(100_000L, startMs + i * 100L)
+        }
+        val eta = downloadInfo.getEstimatedTimeRemaining(nowMs = startMs + 10_000L)
+        assertNotNull(eta)
+        // 10 MB remaining at ~1 MB/s
+        assertEquals(10_000.0, eta!!.toDouble(), 1_500.0)
+    }
+
+    @Test
+    fun listenerNotificationsAreCoalesced() {
+        val downloadInfo = newDownloadInfo()
+        downloadInfo.setTotalExpectedBytes(1_000_000_000L)
+        val notifications = AtomicInteger()
+        downloadInfo.addProgressListener { notifications.incrementAndGet() }
+
+        val startMs = System.currentTimeMillis()
+        // 10k updates spread over one virtual second
+        for (i in 0 until 10_000) {
+            downloadInfo.updateBytesDownloaded(1_000L, startMs + i / 10)
+        }
+        val maxExpected = 1000 / DownloadInfo.PROGRESS_EMIT_INTERVAL_MS + 1
+        assertTrue("Got ${notifications.get()} notifications", notifications.get() <= maxExpected)
+
+        // Terminal progress always reaches listeners
+        val before = notifications.get()
+        downloadInfo.setProgress(1f)
+        assertEquals(before + 1, notifications.get())
+    }
+
+    @Test
+    fun completingByteUpdateIsNeverCoalesced() {
+        val downloadInfo = newDownloadInfo()
+        downloadInfo.setTotalExpectedBytes(2_000L)
+        val emitted = CopyOnWriteArrayList<Float>()
+        downloadInfo.addProgressListener { emitted.add(it) }
+
+        val nowMs = System.currentTimeMillis()
+        downloadInfo.updateBytesDownloaded(1_000L, nowMs)
+        // Well inside the throttle interval of the previous update.
+        downloadInfo.updateBytesDownloaded(1_000L, nowMs + 1)
+
+        assertEquals(listOf(0.5f, 1f), emitted)
+    }
+}
@@ -0,0 +1,34 @@
+package app.gamenative.db
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import java.io.File
+import org.json.JSONObject
+
+/**
+ * Creates [dbName] at [version] from the schema Room exported for it, as an existing install would
+ * have it, and hands the database to [block] to fill in before Room opens it.
+ */
+internal fun createDatabaseFromSchema(context: Context, dbName: String, version: Int, block: (SQLiteDatabase) -> Unit) {
+    val schema = JSONObject(File("schemas/app.gamenative.db.PluviaDatabase/$version.json").readText())
+        .getJSONObject("database")
+    val sqlite = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(dbName).apply { parentFile?.mkdirs() }, null)
+    sqlite.use {
+        val entities = schema.getJSONArray("entities")
+        for (i in 0 until entities.length()) {
+            val entity = entities.getJSONObject(i)
+            val tableName = entity.getString("tableName")
+            it.execSQL(entity.getString("createSql").replace("\${TABLE_NAME}", tableName))
+            val indices = entity.optJSONArray("indices") ?: continue
+            for (j in 0 until indices.length()) {
+                it.execSQL(indices.getJSONObject(j).getString("createSql").replace("\${TABLE_NAME}", tableName))
+            }
+        }
+        val setup = schema.getJSONArray("setupQueries")
+        for (i in 0 until setup.length()) {
+            it.execSQL(setup.getString(i))
+        }
+        it.version = version
+        block(it)
+    }
+}
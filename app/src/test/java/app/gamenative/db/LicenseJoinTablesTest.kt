@@ -0,0 +1,204 @@
+package app.gamenative.db
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.DepotInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamLicense
+import app.gamenative.db.migration.ROOM_MIGRATION_V12_to_V13
+import app.gamenative.db.migration.ROOM_MIGRATION_V13_to_V14
+import app.gamenative.db.migration.ROOM_MIGRATION_V14_to_V15
+import app.gamenative.db.migration.ROOM_MIGRATION_V15_to_V16
+import app.gamenative.db.migration.ROOM_MIGRATION_V16_to_V17
+import app.gamenative.enums.OS
+import app.gamenative.enums.OSArch
+import `in`.dragonbra.javasteam.enums.ELicenseFlags
+import `in`.dragonbra.javasteam.enums.ELicenseType
+import `in`.dragonbra.javasteam.enums.EPaymentMethod
+import java.util.Date
+import java.util.EnumSet
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class LicenseJoinTablesTest {
+
+    private lateinit var context: Context
+    private val dbName = "license-join-test.db"
+    private var db: PluviaDatabase? = null
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        context.deleteDatabase(dbName)
+    }
+
+    @After
+    fun tearDown() {
+        db?.close()
+        context.deleteDatabase(dbName)
+    }
+
+    private fun license(packageId: Int, appIds: List<Int>, type: ELicenseType = ELicenseType.SinglePurchase) = SteamLicense(
+        packageId = packageId,
+        lastChangeNumber = 1,
+        timeCreated = Date(0),
+        timeNextProcess = Date(0),
+        minuteLimit = 0,
+        minutesUsed = 0,
+        paymentMethod = EPaymentMethod.None,
+        licenseFlags = EnumSet.noneOf(ELicenseFlags::class.java),
+        purchaseCode = "",
+        licenseType = type,
+        territoryCode = 0,
+        accessToken = 0L,
+        ownerAccountId = emptyList(),
+        masterPackageID = 0,
+        appIds = appIds,
+        depotIds = appIds.map { it + 1 },
+    )
+
+    private fun dlc(id: Int, baseAppId: Int, withDepots: Boolean) = SteamApp(
+        id = id,
+        dlcForAppId = baseAppId,
+        depots = if (!withDepots) {
+            emptyMap()
+        } else {
+            mapOf(
+                id + 1 to DepotInfo(
+                    depotId = id + 1,
+                    dlcAppId = id,
+                    depotFromApp = 0,
+                    sharedInstall = false,
+                    osList = EnumSet.of(OS.windows),
+                    osArch = OSArch.Arch64,
+                    manifests = emptyMap(),
+                    encryptedManifests = emptyMap(),
+                ),
+            )
+        },
+    )
+
+    private fun inMemoryDb() = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+        .allowMainThreadQueries()
+        .build()
+        .also { db = it }
+
+    private fun insertV12License(sqlite: SQLiteDatabase, packageId: Int, appIds: String, depotIds: String, type: Int = 1) {
+        sqlite.execSQL(
+            "INSERT INTO steam_license (packageId, last_change_number, time_created, time_next_process, minute_limit, " +
+                "minutes_used, payment_method, license_flags, purchase_code, license_type, territory_code, access_token, " +
+                "owner_account_id, master_package_id, app_ids, depot_ids) " +
+                "VALUES (?, 0, 0, 0, 0, 0, 0, 0, '', ?, 0, 0, '[]', 0, ?, ?)",
+            arrayOf<Any>(packageId, type, appIds, depotIds),
+        )
+    }
+
+    @Test
+    fun migrationFromV12BackFillsJoinTables() = runBlocking {
+        createDatabaseFromSchema(context, dbName, version = 12) { sqlite ->
+            insertV12License(sqlite, packageId = 10, appIds = "[100,101,102]", depotIds = "[1001,1002]")
+            insertV12License(sqlite, packageId = 11, appIds = "[101]", depotIds = "[]")
+            insertV12License(sqlite, packageId = 12, appIds = "[200]", depotIds = "[2001]", type = 0) // NoLicense
+        }
+
+        // Room validates the migrated schema against the entities when it opens the db
+        val migrated = Room.databaseBuilder(context, PluviaDatabase::class.java, dbName)
+            .addMigrations(
+                ROOM_MIGRATION_V12_to_V13,
+                ROOM_MIGRATION_V13_to_V14,
+                ROOM_MIGRATION_V14_to_V15,
+                ROOM_MIGRATION_V15_to_V16,
+                ROOM_MIGRATION_V16_to_V17,
+            )
+            .allowMainThreadQueries()
+            .build()
+            .also { db = it }
+        val licenseDao = migrated.steamLicenseDao()
+
+        assertTrue(licenseDao.hasLicenseForApp(100))
+        assertTrue(licenseDao.hasLicenseForApp(101))
+        assertFalse(licenseDao.hasLicenseForApp(200))
+        assertFalse(licenseDao.hasLicenseForApp(999))
+        assertEquals(listOf(10), licenseDao.findPackagesForDepot(1002))
+        assertEquals(listOf(12), licenseDao.findPackagesForDepot(2001))
+        // The list columns are kept as they were
+        assertEquals(listOf(100, 101, 102), licenseDao.findLicense(10)!!.appIds)
+    }
+
+    @Test
+    fun joinTablesFollowLicenseWrites() = runBlocking {
+        val licenseDao = inMemoryDb().steamLicenseDao()
+
+        licenseDao.insertAll(listOf(license(1, listOf(10, 11)), license(2, listOf(20))))
+        assertTrue(licenseDao.hasLicenseForApp(11))
+
+        licenseDao.updateApps(1, listOf(12))
+        assertFalse(licenseDao.hasLicenseForApp(11))
+        assertTrue(licenseDao.hasLicenseForApp(12))
+
+        licenseDao.updateDepots(2, listOf(500))
+        assertEquals(listOf(2), licenseDao.findPackagesForDepot(500))
+        assertTrue(licenseDao.findPackagesForDepot(21).isEmpty())
+
+        licenseDao.deleteStaleLicenses(listOf(2))
+        assertFalse(licenseDao.hasLicenseForApp(20))
+        assertTrue(licenseDao.findPackagesForDepot(500).isEmpty())
+
+        licenseDao.deleteAll()
+        assertFalse(licenseDao.hasLicenseForApp(12))
+    }
+
+    @Test
+    fun dlcQueriesUseJoinTable() = runBlocking {
+        val database = inMemoryDb()
+        database.steamAppDao().insertAll(
+            listOf(
+                dlc(101, baseAppId = 100, withDepots = true), // owned, downloadable
+                dlc(102, baseAppId = 100, withDepots = false), // owned, hidden
+                dlc(103, baseAppId = 100, withDepots = true), // not owned
+                dlc(201, baseAppId = 200, withDepots = true), // other game
+            ),
+        )
+        database.steamLicenseDao().insertAll(
+            listOf(
+                license(1, listOf(100, 101, 102, 201)),
+                license(2, listOf(103), type = ELicenseType.NoLicense),
+            ),
+        )
+
+        assertEquals(listOf(101), database.steamAppDao().findDownloadableDLCApps(100)!!.map { it.id })
+        assertEquals(listOf(102), database.steamAppDao().findHiddenDLCApps(100)!!.map { it.id })
+    }
+
+    @Test
+    fun dlcQueryPlanUsesIndexes() {
+        val database = inMemoryDb()
+        val plan = database.openHelper.readableDatabase.query(
+            "EXPLAIN QUERY PLAN " +
+                "SELECT * FROM steam_app AS app WHERE dlc_for_app_id = ? AND depots <> X'A0' AND " +
+                " EXISTS (" +
+                "   SELECT 1 FROM license_app AS la " +
+                "     INNER JOIN steam_license AS license ON license.packageId = la.package_id " +
+                "     WHERE la.app_id = app.id AND license.license_type <> 0" +
+                ")",
+            arrayOf<Any?>(100),
+        ).use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+            buildList { while (cursor.moveToNext()) add(cursor.getString(detail)) }
+        }
+
+        val text = plan.joinToString("\n")
+        assertTrue(text, plan.any { it.contains("index_steam_app_dlc_for_app_id") })
+        assertTrue(text, plan.any { it.contains("COVERING INDEX index_license_app_app_id_package_id") })
+        assertTrue(text, plan.any { it.startsWith("SEARCH license USING INTEGER PRIMARY KEY") })
+        assertFalse(text, plan.any { it.startsWith("SCAN") })
+    }
+}
@@ -0,0 +1,189 @@
+package app.gamenative.db
+
+import android.content.ContentValues
+import android.content.Context
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.BranchInfo
+import app.gamenative.data.DepotInfo
+import app.gamenative.data.ManifestInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.db.migration.ROOM_MIGRATION_V12_to_V13
+import app.gamenative.db.migration.ROOM_MIGRATION_V13_to_V14
+import app.gamenative.db.migration.ROOM_MIGRATION_V14_to_V15
+import app.gamenative.db.migration.ROOM_MIGRATION_V15_to_V16
+import app.gamenative.db.migration.ROOM_MIGRATION_V16_to_V17
+import app.gamenative.enums.OS
+import app.gamenative.enums.OSArch
+import java.util.Date
+import java.util.EnumSet
+import kotlinx.coroutines.runBlocking
+import kotlinx.serialization.json.Json
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class SteamAppCborMigrationTest {
+
+    private lateinit var context: Context
+    private val dbName = "steam-app-cbor-test.db"
+    private var db: PluviaDatabase? = null
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        context.deleteDatabase(dbName)
+    }
+
+    @After
+    fun tearDown() {
+        db?.close()
+        context.deleteDatabase(dbName)
+    }
+
+    private val depots = mapOf(
+        11 to DepotInfo(
+            depotId = 11,
+            dlcAppId = 0,
+            depotFromApp = 0,
+            sharedInstall = false,
+            osList = EnumSet.of(OS.windows),
+            osArch = OSArch.Arch64,
+            manifests = mapOf("public" to ManifestInfo("public", gid = 7_654_321_987_654_321, size = 3_000_000_000, download = 1_200_000_000)),
+            encryptedManifests = emptyMap(),
+            language = "english",
+        ),
+        12 to DepotInfo(
+            depotId = 12,
+            dlcAppId = 20,
+            depotFromApp = 0,
+            sharedInstall = true,
+            osList = EnumSet.of(OS.linux, OS.macos),
+            osArch = OSArch.Arch32,
+            manifests = emptyMap(),
+            encryptedManifests = mapOf("beta" to ManifestInfo("beta", gid = -1, size = 0, download = 0)),
+        ),
+    )
+
+    private val branches = mapOf(
+        "public" to BranchInfo("public", buildId = 1_234_567, pwdRequired = false, timeUpdated = Date(1_700_000_000_000)),
+        "beta" to BranchInfo("beta", buildId = 1_234_999, pwdRequired = true, timeUpdated = Date(1_710_000_000_000)),
+    )
+
+    /**
+     * [app] as a version 16 steam_app row: every column is what Room writes today except depots and
+     * branches, which version 16 kept as JSON text. [depotsJson] and [branchesJson] override those.
+     */
+    private fun v16Row(
+        app: SteamApp,
+        depotsJson: String = Json.encodeToString(app.depots),
+        branchesJson: String = Json.encodeToString(app.branches),
+    ): ContentValues {
+        val current = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+        try {
+            runBlocking { current.steamAppDao().insert(app) }
+            return current.openHelper.readableDatabase.query("SELECT * FROM steam_app").use { cursor ->
+                assertTrue(cursor.moveToFirst())
+                ContentValues().apply {
+                    for (i in 0 until cursor.columnCount) {
+                        val column = cursor.getColumnName(i)
+                        when (cursor.getType(i)) {
+                            Cursor.FIELD_TYPE_INTEGER -> put(column, cursor.getLong(i))
+                            Cursor.FIELD_TYPE_FLOAT -> put(column, cursor.getDouble(i))
+                            Cursor.FIELD_TYPE_BLOB -> put(column, cursor.getBlob(i))
+                            Cursor.FIELD_TYPE_NULL -> putNull(column)
+                            else -> put(column, cursor.getString(i))
+                        }
+                    }
+                    put("depots", depotsJson)
+                    put("branches", branchesJson)
+                }
+            }
+        } finally {
+            current.close()
+        }
+    }
+
+    private fun migrate(vararg rows: ContentValues): PluviaDatabase {
+        createDatabaseFromSchema(context, dbName, version = 16) { sqlite ->
+            for (row in rows) sqlite.insertOrThrow("steam_app", null, row)
+        }
+        // Room validates the migrated schema against the entities when it opens the db
+        return Room.databaseBuilder(context, PluviaDatabase::class.java, dbName)
+            .addMigrations(
+                ROOM_MIGRATION_V12_to_V13,
+                ROOM_MIGRATION_V13_to_V14,
+                ROOM_MIGRATION_V14_to_V15,
+                ROOM_MIGRATION_V15_to_V16,
+                ROOM_MIGRATION_V16_to_V17,
+            )
+            .allowMainThreadQueries()
+            .build()
+            .also { db = it }
+    }
+
+    private fun PluviaDatabase.longs(sql: String): List<Long> =
+        openHelper.readableDatabase.query(sql).use { cursor ->
+            buildList { while (cursor.moveToNext()) add(cursor.getLong(0)) }
+        }
+
+    @Test
+    fun depotsAndBranchesAreConvertedToCbor() = runBlocking {
+        val app = SteamApp(id = 10, name = "Game", lastChangeNumber = 42, dirName = "Game", depots = depots, branches = branches)
+        val migrated = migrate(v16Row(app))
+
+        val found = migrated.steamAppDao().findApp(10)!!
+        assertEquals(depots, found.depots)
+        assertEquals(branches, found.branches)
+        assertEquals(42, found.lastChangeNumber)
+        assertEquals(app.copy(depots = emptyMap(), branches = emptyMap()), found.copy(depots = emptyMap(), branches = emptyMap()))
+        assertEquals(listOf(10L), migrated.longs("SELECT id FROM steam_app WHERE typeof(depots) = 'blob' AND typeof(branches) = 'blob'"))
+    }
+
+    @Test
+    fun emptyMapsBecomeTheEmptyCborMap() = runBlocking {
+        val migrated = migrate(v16Row(SteamApp(id = 20, name = "Soundtrack", lastChangeNumber = 7)))
+
+        // The DLC queries rely on apps without depots being stored as exactly X'A0'
+        assertEquals(listOf(20L), migrated.longs("SELECT id FROM steam_app WHERE depots = X'A0' AND branches = X'A0'"))
+        val found = migrated.steamAppDao().findApp(20)!!
+        assertTrue(found.depots.isEmpty())
+        assertTrue(found.branches.isEmpty())
+        assertEquals(7, found.lastChangeNumber)
+    }
+
+    @Test
+    fun unparseableJsonIsRefetched() = runBlocking {
+        val migrated = migrate(
+            v16Row(SteamApp(id = 30, lastChangeNumber = 9), depotsJson = "{\"31\":"),
+            v16Row(SteamApp(id = 40, lastChangeNumber = 9, depots = depots), branchesJson = "[]"),
+        )
+
+        // Kept, but with no change number so the next PICS pass fills it in again
+        for (id in listOf(30, 40)) {
+            val found = migrated.steamAppDao().findApp(id)!!
+            assertEquals(0, found.lastChangeNumber)
+        }
+        assertTrue(migrated.steamAppDao().findApp(30)!!.depots.isEmpty())
+        assertEquals(depots, migrated.steamAppDao().findApp(40)!!.depots)
+        assertTrue(migrated.steamAppDao().findApp(40)!!.branches.isEmpty())
+    }
+
+    @Test
+    fun dlcIndexIsRecreated() {
+        val migrated = migrate(v16Row(SteamApp(id = 50)))
+
+        assertEquals(
+            listOf(1L),
+            migrated.longs("SELECT count(*) FROM sqlite_master WHERE type = 'index' AND name = 'index_steam_app_dlc_for_app_id'"),
+        )
+    }
+}
@@ -0,0 +1,109 @@
+package app.gamenative.db.converters
+
+import app.gamenative.data.BranchInfo
+import app.gamenative.data.DepotInfo
+import app.gamenative.data.ManifestInfo
+import app.gamenative.enums.OS
+import app.gamenative.enums.OSArch
+import java.util.Date
+import java.util.EnumSet
+import kotlin.random.Random
+import kotlinx.serialization.json.Json
+import org.junit.Assert.*
+import org.junit.Test
+
+class AppConverterTest {
+
+    private val converter = AppConverter()
+
+    private fun manifest(random: Random) = ManifestInfo(
+        name = "public",
+        gid = random.nextLong(),
+        size = random.nextLong(0, 50_000_000_000),
+        download = random.nextLong(0, 20_000_000_000),
+    )
+
+    private fun depots(appId: Int, random: Random): Map<Int, DepotInfo> =
+        (1..random.nextInt(1, 9)).associate { n ->
+            val depotId = appId + n
+            depotId to DepotInfo(
+                depotId = depotId,
+                dlcAppId = if (n > 6) appId + 100 else 0,
+                depotFromApp = 0,
+                sharedInstall = n == 8,
+                osList = EnumSet.of(if (n % 2 == 0) OS.windows else OS.linux),
+                osArch = OSArch.Arch64,
+                manifests = mapOf("public" to manifest(random)),
+                encryptedManifests = if (n == 1) mapOf("beta" to manifest(random)) else emptyMap(),
+                language = if (n > 4) "german" else "",
+            )
+        }
+
+    private fun branches(random: Random): Map<String, BranchInfo> =
+        listOf("public", "beta", "previous").take(random.nextInt(1, 4)).associateWith {
+            BranchInfo(it, random.nextLong(1, 20_000_000), it == "beta", Date(random.nextLong(0, 1_800_000_000_000)))
+        }
+
+    /** A synthetic library of [count] apps, as the depot and branch maps PICS fills in */
+    private fun library(count: Int): List<Pair<Map<Int, DepotInfo>, Map<String, BranchInfo>>> {
+        val random = Random(7)
+        return List(count) { depots(it * 1000, random) to branches(random) }
+    }
+
+    @Test
+    fun depotsAndBranchesRoundTrip() {
+        for ((depots, branches) in library(50)) {
+            assertEquals(depots, converter.toDepots(converter.fromDepots(depots)))
+            assertEquals(branches, converter.toBranches(converter.fromBranches(branches)))
+        }
+    }
+
+    @Test
+    fun emptyMapIsTheBytesQueriesLookFor() {
+        assertArrayEquals(byteArrayOf(0xA0.toByte()), converter.fromDepots(emptyMap()))
+        assertEquals("X'A0'", AppConverter.EMPTY_MAP)
+        assertTrue(converter.toDepots(byteArrayOf(0xA0.toByte())).isEmpty())
+    }
+
+    @Test
+    fun untouchedMapsAreWrittenBackAsRead() {
+        val depots = library(1).single().first
+        val bytes = converter.fromDepots(depots)
+
+        val read = converter.toDepots(bytes)
+
+        // Same array back, nothing decoded or encoded
+        assertSame(bytes, converter.fromDepots(read))
+        assertEquals(read, converter.toDepots(bytes.copyOf()))
+        assertEquals(depots, read)
+        assertEquals(depots.hashCode(), read.hashCode())
+    }
+
+    @Test
+    fun cborIsSmallerThanJson() {
+        val library = library(5_000)
+        val jsonBytes = library.sumOf { (depots, branches) ->
+            Json.encodeToString(depots).toByteArray().size + Json.encodeToString(branches).toByteArray().size
+        }
+        val cborBytes = library.sumOf { (depots, branches) ->
+            converter.fromDepots(depots).size + converter.fromBranches(branches).size
+        }
+
+        assertTrue("cbor $cborBytes bytes vs json $jsonBytes", cborBytes < jsonBytes)
+    }
+
+    @Test
+    fun mapsAreDecodedOnlyWhenLookedAt() {
+        var decodes = 0
+        val rows = library(100).map { (depots, _) ->
+            LazyDecodedMap(converter.fromDepots(depots)) { bytes -> decodes++; converter.toDepots(bytes).toMap() }
+        }
+
+        // What a library listing pays: rows are read and written back, depots never looked at
+        rows.forEach { converter.fromDepots(it) }
+        assertEquals(0, decodes)
+
+        rows.forEach { it.size; it.keys }
+        assertEquals(rows.size, decodes)
+    }
+}
@@ -0,0 +1,329 @@
+package app.gamenative.db.dao
+
+import android.content.Context
+import androidx.room.Room
+import androidx.sqlite.db.SupportSQLiteQuery
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.EpicGame
+import app.gamenative.data.GOGGame
+import app.gamenative.data.GameCompatibilityEntry
+import app.gamenative.data.GameCompatibilityStatus
+import app.gamenative.data.GameSource
+import app.gamenative.data.LibraryFilter
+import app.gamenative.data.LibraryRow
+import app.gamenative.data.SteamApp
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.enums.AppType
+import kotlin.system.measureTimeMillis
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import timber.log.Timber
+
+@RunWith(RobolectricTestRunner::class)
+class LibraryDaoTest {
+
+    private lateinit var db: PluviaDatabase
+    private lateinit var dao: LibraryDao
+
+    private val steamCount = 20_000
+    private val accountId = 1000
+    private val familyId = 2000
+    private val words = listOf("Portal", "Dark", "Souls", "Quest", "Legend", "Space", "Tactics", "Racing", "Farm", "Night")
+
+    // Every 50th app has a folder in the install dir
+    private val installedDirs = (1..steamCount).filter { it % 50 == 0 }.map { "dir$it" }.toHashSet()
+
+    private val baseFilter = LibraryFilter(
+        appTypes = setOf(AppType.game),
+        includeShared = true,
+        accountId = accountId,
+        ownerIds = listOf(accountId, familyId),
+        installedSteamDirs = installedDirs,
+    )
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+        dao = db.libraryDao()
+
+        runBlocking {
+            db.steamAppDao().insertAll((1..steamCount).map { steamApp(it) })
+            (1..200).forEach { db.gogGameDao().insert(gogGame(it)) }
+            db.epicGameDao().insertAll((1..200).map { epicGame(it) })
+        }
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private fun nameOf(i: Int) = "${words[i % words.size]} ${words[(i / 10) % words.size].lowercase()} $i"
+
+    private fun steamApp(id: Int) = SteamApp(
+        id = id,
+        packageId = id,
+        name = nameOf(id),
+        type = if (id % 7 == 0) AppType.tool else AppType.game,
+        // Every 4th app is borrowed from a family member
+        ownerAccountId = if (id % 4 == 0) listOf(familyId) else listOf(accountId),
+        clientIconHash = "hash$id",
+        dirName = "dir$id",
+    )
+
+    private fun gogGame(i: Int) = GOGGame(
+        id = "gog$i",
+        title = nameOf(i + 50_000),
+        isInstalled = i % 10 == 0,
+        imageUrl = if (i % 2 == 0) "https://img/$i" else "",
+        iconUrl = "icon$i",
+        exclude = i == 1,
+    )
+
+    private fun epicGame(i: Int) = EpicGame(
+        id = i,
+        catalogId = "cat$i",
+        appName = "app$i",
+        title = nameOf(i + 60_000),
+        namespace = if (i == 1) "ue" else "ns$i",
+        isInstalled = i % 20 == 0,
+        artCover = "cover$i",
+    )
+
+    /** All rows for [filter], walking keyset pages of [pageSize]. */
+    private suspend fun allPages(filter: LibraryFilter, pageSize: Int): List<LibraryRow> {
+        val out = mutableListOf<LibraryRow>()
+        while (true) {
+            val page = dao.page(filter, out.lastOrNull(), pageSize)
+            out += page
+            if (page.size < pageSize) return out
+        }
+    }
+
+    @Test
+    fun keysetPagesMatchInMemoryFiltering() = runBlocking {
+        val apps = (1..steamCount).map { steamApp(it) }
+        val expectedSteam = apps
+            .filter { it.type == AppType.game }
+            .map {
+                LibraryRow(
+                    source = GameSource.STEAM,
+                    id = it.id.toString(),
+                    name = it.name,
+                    iconHash = it.clientIconHash,
+                    installed = it.dirName in installedDirs,
+                    shared = !it.ownerAccountId.contains(accountId),
+                )
+            }
+
+        val rows = allPages(baseFilter, pageSize = 97)
+
+        assertEquals(expectedSteam.size + 199 + 199, rows.size)
+        assertEquals(rows.sortedWith(LibraryRow.ORDER), rows)
+        assertEquals(expectedSteam.sortedWith(LibraryRow.ORDER), rows.filter { it.source == GameSource.STEAM })
+        // Installed rows of every store come first
+        assertTrue(rows.takeWhile { it.installed }.size == rows.count { it.installed })
+        assertEquals("https://img/2", rows.single { it.source == GameSource.GOG && it.id == "gog2" }.iconHash)
+        assertEquals("icon3", rows.single { it.source == GameSource.GOG && it.id == "gog3" }.iconHash)
+        assertNull(rows.firstOrNull { it.id == "gog1" || (it.source == GameSource.EPIC && it.id == "1") })
+    }
+
+    @Test
+    fun filtersAndCountsAgree() = runBlocking {
+        val filter = baseFilter.copy(installedOnly = true, includeShared = false)
+
+        val rows = allPages(filter, pageSize = 50)
+        val counts = dao.counts(filter).associateBy { it.source }
+
+        assertTrue(rows.all { it.installed && !it.shared })
+        assertTrue(rows.filter { it.source == GameSource.STEAM }.all { it.id.toInt() % 50 == 0 && it.id.toInt() % 4 != 0 })
+        assertEquals(rows.count { it.source == GameSource.STEAM }, counts.getValue(GameSource.STEAM).total)
+        assertEquals(20, counts.getValue(GameSource.GOG).total)
+        assertEquals(10, counts.getValue(GameSource.EPIC).installed)
+
+        // Owned by nobody we know: no Steam rows at all
+        assertTrue(dao.page(baseFilter.copy(ownerIds = listOf(42)), null, 10).none { it.source == GameSource.STEAM })
+        // No app types selected hides Steam; no sources hides everything
+        assertNull(dao.counts(baseFilter.copy(appTypes = emptySet())).firstOrNull { it.source == GameSource.STEAM })
+        assertTrue(dao.page(baseFilter.copy(sources = emptySet()), null, 10).isEmpty())
+    }
+
+    @Test
+    fun searchMatchesWordPrefixes() = runBlocking {
+        val rows = allPages(baseFilter.copy(query = "port souls"), pageSize = 100)
+
+        // Any word order, each word a prefix; Steam through the full text index, GOG and Epic alike
+        fun matches(name: String) = name.lowercase().split(" ").let { tokens ->
+            tokens.any { it.startsWith("port") } && "souls" in tokens
+        }
+        val expected = (1..steamCount).filter { it % 7 != 0 && matches(nameOf(it)) }.map { GameSource.STEAM to "$it" } +
+            (2..200).filter { matches(nameOf(it + 50_000)) }.map { GameSource.GOG to "gog$it" } +
+            (2..200).filter { matches(nameOf(it + 60_000)) }.map { GameSource.EPIC to "$it" }
+        assertEquals(expected.toSet(), rows.map { it.source to it.id }.toSet())
+        assertTrue(rows.any { it.source == GameSource.GOG } && rows.any { it.source == GameSource.EPIC })
+
+        // Punctuation only falls back to a LIKE match, with wildcards escaped
+        assertTrue(dao.page(baseFilter.copy(query = "%"), null, 10).isEmpty())
+    }
+
+    @Test
+    fun searchReadsPunctuationAsWordBreaksInEveryStore() = runBlocking {
+        db.steamAppDao().insertAll(listOf(steamApp(1).copy(name = "Half-Life 2")))
+        db.gogGameDao().insert(gogGame(2).copy(title = "Half-Life: Alyx"))
+        db.epicGameDao().insertAll(listOf(epicGame(2).copy(title = "Baldur's Gate 3: Half-life edition")))
+        val all = setOf(GameSource.STEAM to "1", GameSource.GOG to "gog2", GameSource.EPIC to "2")
+
+        for (query in listOf("life", "LIFE HALF", "half-l")) {
+            assertEquals(query, all, dao.page(baseFilter.copy(query = query), null, 10).map { it.source to it.id }.toSet())
+        }
+        // Words only match from their start
+        assertTrue(dao.page(baseFilter.copy(query = "alf"), null, 10).isEmpty())
+        assertTrue(dao.page(baseFilter.copy(query = "ife"), null, 10).isEmpty())
+    }
+
+    @Test
+    fun foldersNamedAfterTheAppCountAsInstalled() = runBlocking {
+        // Installed before its install_dir was known, so the folder has the app's name
+        db.steamAppDao().insertAll(listOf(steamApp(3).copy(name = "Old Install")))
+        val filter = baseFilter.copy(installedOnly = true, installedSteamDirs = installedDirs + "Old Install")
+
+        val rows = allPages(filter, pageSize = 100)
+
+        assertTrue(rows.any { it.source == GameSource.STEAM && it.id == "3" })
+        assertEquals(rows.count { it.source == GameSource.STEAM }, dao.counts(filter).single { it.source == GameSource.STEAM }.total)
+    }
+
+    @Test
+    fun installedFoldersBindAsOneArgument() = runBlocking {
+        // Far more folders than SQLite allows bound variables on older devices
+        val dirs = (1..steamCount).map { "dir$it" }.toHashSet()
+        val filter = baseFilter.copy(installedOnly = true, installedSteamDirs = dirs)
+
+        val query = LibraryQueries.page(filter, null, 10)!!
+        assertTrue(query.argCount < 20)
+        val steamGames = (1..steamCount).count { it % 7 != 0 }
+        assertEquals(steamGames, dao.counts(filter).single { it.source == GameSource.STEAM }.total)
+    }
+
+    private fun report(gameName: String, gpuName: String, gpuPlayable: Int = 0, playable: Int = 0, notWorking: Boolean = false) =
+        GameCompatibilityEntry(
+            gameName = gameName,
+            gpuName = gpuName,
+            totalPlayableCount = playable + gpuPlayable,
+            gpuPlayableCount = gpuPlayable,
+            avgRating = 4f,
+            hasBeenTried = true,
+            isNotWorking = notWorking,
+            cachedAt = 0L,
+            lastAccess = 0L,
+        )
+
+    @Test
+    fun compatibilityFiltersAndCountsInSql() = runBlocking {
+        val gpu = "Adreno 740"
+        db.gameCompatibilityDao().putAll(
+            listOf(
+                report(nameOf(1), gpu, gpuPlayable = 2),
+                report(nameOf(2), gpu, playable = 1),
+                report(nameOf(3), gpu, playable = 5, notWorking = true),
+                report(nameOf(5), "Mali-G710", playable = 3),
+                report(nameOf(50_002), gpu, playable = 1),
+                report(nameOf(60_004), gpu, gpuPlayable = 1),
+            ),
+            expiredAt = Long.MIN_VALUE,
+            maxEntries = 100,
+        )
+        val filter = baseFilter.copy(
+            compatibility = setOf(GameCompatibilityStatus.COMPATIBLE, GameCompatibilityStatus.GPU_COMPATIBLE),
+            gpuName = gpu,
+        )
+
+        val rows = allPages(filter, pageSize = 2)
+        val counts = dao.counts(filter).associateBy { it.source }
+
+        // Reports for other GPUs and games that don't work are left out, as are games without one
+        assertEquals(
+            setOf(GameSource.STEAM to "1", GameSource.STEAM to "2", GameSource.GOG to "gog2", GameSource.EPIC to "4"),
+            rows.map { it.source to it.id }.toSet(),
+        )
+        assertEquals(2, counts.getValue(GameSource.STEAM).total)
+        assertEquals(1, counts.getValue(GameSource.GOG).total)
+        assertEquals(1, counts.getValue(GameSource.EPIC).total)
+
+        val unknown = baseFilter.copy(compatibility = setOf(GameCompatibilityStatus.UNKNOWN), gpuName = gpu)
+        assertEquals(steamCount - steamCount / 7 - 3, dao.counts(unknown).single { it.source == GameSource.STEAM }.total)
+    }
+
+    @Test
+    fun searchIndexFollowsAppWrites() = runBlocking {
+        val app = db.steamAppDao().findApp(123)!!
+        db.steamAppDao().update(app.copy(name = "Zyzzyva Adventure"))
+
+        assertEquals(listOf("123"), dao.page(baseFilter.copy(query = "zyzz"), null, 10).map { it.id })
+        assertTrue(dao.page(baseFilter.copy(query = nameOf(123)), null, 10).none { it.id == "123" })
+
+        db.steamAppDao().insertAll(listOf(app.copy(name = "Quux Blaster")))
+        assertEquals(listOf("123"), dao.page(baseFilter.copy(query = "quux"), null, 10).map { it.id })
+        assertTrue(dao.page(baseFilter.copy(query = "zyzz"), null, 10).isEmpty())
+
+        db.steamAppDao().deleteAll()
+        assertTrue(dao.page(baseFilter.copy(query = "quux"), null, 10).isEmpty())
+    }
+
+    @Test
+    fun searchPlanUsesFullTextIndex() {
+        val query = LibraryQueries.page(baseFilter.copy(sources = setOf(GameSource.STEAM), query = "dark"), null, 50)!!
+        val explain = object : SupportSQLiteQuery by query {
+            override val sql = "EXPLAIN QUERY PLAN " + query.sql
+        }
+        val plan = db.openHelper.readableDatabase.query(explain).use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+            buildList { while (cursor.moveToNext()) add(cursor.getString(detail)) }
+        }
+
+        val text = plan.joinToString("\n")
+        assertTrue(text, plan.any { it.contains("steam_app_fts VIRTUAL TABLE") })
+        assertTrue(text, plan.any { it.contains("steam_app USING INTEGER PRIMARY KEY") })
+    }
+
+    /**
+     * Logs how long a search and the first page take against loading and filtering the whole
+     * library in memory, as the library did before it paged in SQL.
+     */
+    @Test
+    fun benchmarkPageQueriesAgainstLoadingTheWholeLibrary() = runBlocking {
+        // Warm up both paths
+        db.steamAppDao().getAllOwnedApps().first()
+        dao.page(baseFilter, null, 50)
+
+        var fullRows = 0
+        val fullMs = measureTimeMillis {
+            val all = db.steamAppDao().getAllOwnedApps().first()
+            fullRows = all.filter { it.name.contains("dark", ignoreCase = true) }.take(50).size
+        }
+        var searchRows = 0
+        val searchMs = measureTimeMillis {
+            searchRows = dao.page(baseFilter.copy(query = "dark"), null, 50).size
+        }
+        var firstPageRows = 0
+        val firstPageMs = measureTimeMillis { firstPageRows = dao.page(baseFilter, null, 50).size }
+        val countMs = measureTimeMillis { dao.counts(baseFilter) }
+
+        Timber.i(
+            "Library with $steamCount Steam apps: full load + filter ${fullMs}ms, search page ${searchMs}ms, " +
+                "first page ${firstPageMs}ms, counts ${countMs}ms",
+        )
+        assertEquals(50, fullRows)
+        assertEquals(50, searchRows)
+        assertEquals(50, firstPageRows)
+    }
+}
@@ -0,0 +1,162 @@
+package app.gamenative.db.dao
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.DepotInfo
+import app.gamenative.data.ManifestInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamLicense
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.enums.OS
+import app.gamenative.enums.OSArch
+import `in`.dragonbra.javasteam.enums.ELicenseFlags
+import `in`.dragonbra.javasteam.enums.ELicenseType
+import `in`.dragonbra.javasteam.enums.EPaymentMethod
+import java.util.Date
+import java.util.EnumSet
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class PicsChangeNumberQueriesTest {
+
+    private lateinit var db: PluviaDatabase
+    private val selects = AtomicInteger()
+
+    private val appCount = 2500
+    private val licenseCount = 1200
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .setQueryCallback(
+                { sql, _ -> if (isSteamTableRead(sql)) selects.incrementAndGet() },
+                Executor { it.run() },
+            )
+            .build()
+
+        runBlocking {
+            db.steamAppDao().insertAll((1..appCount).map { app(it) })
+            db.steamLicenseDao().insertAll((1..licenseCount).map { license(it) })
+        }
+        selects.set(0)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    // Only count our reads, not Room's own invalidation tracking queries
+    private fun isSteamTableRead(sql: String) =
+        sql.trimStart().startsWith("SELECT", ignoreCase = true) && sql.contains("FROM steam_")
+
+    /** An app row with enough depots to make decoding the full row realistic. */
+    private fun app(id: Int) = SteamApp(
+        id = id,
+        packageId = id % licenseCount + 1,
+        lastChangeNumber = id * 10,
+        name = "App $id",
+        depots = (0 until 8).associate { d ->
+            val depotId = id * 100 + d
+            depotId to DepotInfo(
+                depotId = depotId,
+                dlcAppId = 0,
+                depotFromApp = 0,
+                sharedInstall = false,
+                osList = EnumSet.of(OS.windows),
+                osArch = OSArch.Arch64,
+                manifests = mapOf("public" to ManifestInfo("public", depotId * 7L, 1_000_000L, 500_000L)),
+                encryptedManifests = emptyMap(),
+            )
+        },
+    )
+
+    private fun license(packageId: Int) = SteamLicense(
+        packageId = packageId,
+        lastChangeNumber = packageId * 3,
+        timeCreated = Date(0),
+        timeNextProcess = Date(0),
+        minuteLimit = 0,
+        minutesUsed = 0,
+        paymentMethod = EPaymentMethod.None,
+        licenseFlags = EnumSet.of(ELicenseFlags.Borrowed),
+        purchaseCode = "",
+        licenseType = ELicenseType.SinglePurchase,
+        territoryCode = 0,
+        accessToken = 0L,
+        ownerAccountId = listOf(packageId),
+        masterPackageID = 0,
+        appIds = listOf(packageId),
+    )
+
+    @Test
+    fun appChangeNumbersAreFetchedInChunks() = runBlocking {
+        val ids = (1..appCount + 100).toList() // the last 100 are not in the db
+
+        val batched = db.steamAppDao().findChangeNumbers(ids)
+
+        assertEquals(3, selects.get()) // 2600 ids in chunks of 999
+        assertEquals(appCount, batched.size)
+        assertEquals(420, batched.getValue(42).lastChangeNumber)
+        assertEquals(42 % licenseCount + 1, batched.getValue(42).packageId)
+        assertNull(batched[appCount + 1])
+    }
+
+    @Test
+    fun batchedLookupNeedsFewerQueriesThanPerAppLookup() = runBlocking {
+        val ids = (1..appCount).toList()
+
+        ids.forEach { id -> db.steamAppDao().findApp(id)!!.lastChangeNumber }
+        val perAppSelects = selects.getAndSet(0)
+
+        db.steamAppDao().findChangeNumbers(ids)
+        val batchedSelects = selects.get()
+
+        assertEquals(appCount, perAppSelects)
+        assertEquals(3, batchedSelects)
+    }
+
+    @Test
+    fun licenseProjectionsMatchFullRows() = runBlocking {
+        val ids = (1..licenseCount).toList()
+
+        val changeNumbers = db.steamLicenseDao().findChangeNumbers(ids + listOf(-1))
+        val ownership = db.steamLicenseDao().findOwnership(ids)
+
+        assertEquals(4, selects.get()) // two chunks each
+        assertEquals(licenseCount, changeNumbers.size)
+        assertEquals(30, changeNumbers.getValue(10).lastChangeNumber)
+        assertEquals(listOf(10), ownership.getValue(10).ownerAccountId)
+        assertEquals(EnumSet.of(ELicenseFlags.Borrowed), ownership.getValue(10).licenseFlags)
+    }
+
+    @Test
+    fun assignPackageUpdatesExistingAndInsertsStubs() = runBlocking {
+        val existing = (1..1500).toList()
+        val missing = (appCount + 1..appCount + 10).toList()
+
+        db.steamAppDao().assignPackage(7, existing + missing)
+
+        // 2 chunks to find existing rows; writes don't go through SELECTs
+        assertEquals(2, selects.get())
+        val updated = db.steamAppDao().findApp(1200)!!
+        assertEquals(7, updated.packageId)
+        assertEquals(12000, updated.lastChangeNumber)
+        assertEquals(8, updated.depots.size)
+        val stub = db.steamAppDao().findApp(appCount + 5)!!
+        assertEquals(7, stub.packageId)
+        assertTrue(stub.depots.isEmpty())
+        assertEquals(1600 % licenseCount + 1, db.steamAppDao().findApp(1600)!!.packageId)
+    }
+}
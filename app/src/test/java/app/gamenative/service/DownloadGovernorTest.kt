@@ -0,0 +1,184 @@
+package app.gamenative.service
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceUntilIdle
+import kotlinx.coroutines.test.currentTime
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.*
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class DownloadGovernorTest {
+
+    private var gameRunning = false
+
+    private fun TestScope.newGovernor(
+        limit: Long = 0L,
+        gameplayLimit: Long = 0L,
+        connections: Int = 8,
+        gameplayConnections: Int = 2,
+    ) = DownloadGovernor(
+        clock = { testScheduler.currentTime },
+        isGameSessionActive = { gameRunning },
+        bandwidthLimit = { limit },
+        gameplayBandwidthLimit = { gameplayLimit },
+        connectionBudget = connections,
+        gameplayConnectionBudget = gameplayConnections,
+    )
+
+    /** Pulls [total] bytes through the governor in [block]-sized reads. */
+    private suspend fun DownloadGovernor.transfer(handle: DownloadGovernor.Handle, total: Long, block: Long = 64 * 1024L) {
+        var remaining = total
+        while (remaining > 0) {
+            val n = minOf(block, remaining)
+            acquireBandwidth(handle, n)
+            remaining -= n
+        }
+    }
+
+    @Test
+    fun sharedRateLimitHoldsAcrossDownloads() = runTest {
+        val rate = 1_000_000L
+        val governor = newGovernor(limit = rate)
+        val first = governor.register("a")
+        val second = governor.register("b")
+
+        launch { governor.transfer(first, 5_000_000) }
+        launch { governor.transfer(second, 5_000_000) }
+        advanceUntilIdle()
+
+        // 10 MB at 1 MB/s, minus the one second burst the bucket starts with
+        assertEquals(9_000.0, currentTime.toDouble(), 200.0)
+    }
+
+    @Test
+    fun unlimitedRateNeverDelays() = runTest {
+        val governor = newGovernor()
+        val handle = governor.register("a")
+
+        governor.transfer(handle, 100_000_000)
+
+        assertEquals(0L, currentTime)
+    }
+
+    @Test
+    fun connectionBudgetCapsConcurrentRequests() = runTest {
+        val governor = newGovernor(connections = 3)
+        val handle = governor.register("a")
+        var running = 0
+        var peak = 0
+
+        repeat(10) {
+            launch {
+                governor.withConnection(handle) {
+                    running++
+                    peak = maxOf(peak, running)
+                    delay(100)
+                    running--
+                }
+            }
+        }
+        advanceUntilIdle()
+
+        assertEquals(3, peak)
+        assertEquals(400L, currentTime)
+    }
+
+    @Test
+    fun earlierDownloadsGetConnectionsFirst() = runTest {
+        val governor = newGovernor(connections = 1)
+        val first = governor.register("first")
+        val second = governor.register("second")
+        val order = mutableListOf<String>()
+
+        launch { governor.withConnection(second) { delay(100) } }
+        runCurrent()
+        launch { governor.withConnection(second) { order += "second" } }
+        launch { governor.withConnection(first) { order += "first" } }
+        runCurrent()
+        assertTrue(order.isEmpty())
+
+        advanceUntilIdle()
+        assertEquals(listOf("first", "second"), order)
+    }
+
+    @Test
+    fun laterDownloadsYieldBandwidthToEarlierOnes() = runTest {
+        val governor = newGovernor(limit = 1_000_000L)
+        val first = governor.register("first")
+        val second = governor.register("second")
+        var firstDoneAt = 0L
+        var secondDoneAt = 0L
+
+        launch {
+            governor.transfer(second, 3_000_000)
+            secondDoneAt = currentTime
+        }
+        launch {
+            governor.transfer(first, 3_000_000)
+            firstDoneAt = currentTime
+        }
+        advanceUntilIdle()
+
+        assertTrue("first=$firstDoneAt second=$secondDoneAt", firstDoneAt < secondDoneAt)
+    }
+
+    @Test
+    fun prioritiesFollowTheQueue() = runTest {
+        val governor = newGovernor()
+        val handles = listOf("a", "b", "c", "d").map { governor.register(it) }
+        assertEquals(
+            listOf(DownloadPriority.HIGH, DownloadPriority.NORMAL, DownloadPriority.LOW, DownloadPriority.LOW),
+            handles.map { it.priority },
+        )
+
+        // Once the first finishes, the rest move up
+        handles.first().close()
+        assertEquals(
+            listOf(DownloadPriority.HIGH, DownloadPriority.NORMAL, DownloadPriority.LOW),
+            handles.drop(1).map { it.priority },
+        )
+    }
+
+    @Test
+    fun gameSessionLowersRateAndConnections() = runTest {
+        val governor = newGovernor(limit = 0L, gameplayLimit = 500_000L, connections = 8, gameplayConnections = 2)
+        val handle = governor.register("a")
+        gameRunning = true
+
+        assertEquals(2, governor.currentConnectionBudget())
+        assertEquals(500_000L, governor.currentBandwidthLimit())
+
+        governor.transfer(handle, 2_500_000)
+        // 2.5 MB at 0.5 MB/s with a 0.5 MB burst
+        assertEquals(4_000.0, currentTime.toDouble(), 100.0)
+
+        gameRunning = false
+        assertEquals(8, governor.currentConnectionBudget())
+        assertEquals(0L, governor.currentBandwidthLimit())
+    }
+
+    @Test
+    fun selfDownloadingTransfersAreToldHowLongToHoldBack() = runTest {
+        val governor = newGovernor(limit = 1_000_000L)
+        val steam = governor.register("steam:1")
+        val epic = governor.register("epic:game")
+
+        // The first second's worth fits the burst, the next chunk has to wait for it
+        assertEquals(0L, steam.reserveTransfer(1_000_000))
+        assertEquals(500L, steam.reserveTransfer(500_000))
+
+        // Bytes the higher priority download reported also hold back the lower one
+        var epicDoneAt = 0L
+        launch {
+            governor.acquireBandwidth(epic, 500_000)
+            epicDoneAt = currentTime
+        }
+        advanceUntilIdle()
+        assertEquals(1_000L, epicDoneAt)
+    }
+}
@@ -0,0 +1,180 @@
+package app.gamenative.service
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.utils.ConditionalResponseCache
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class LibraryDetailRefresherTest {
+
+    /**
+     * Serves /products/{id} with an ETag per product version, answering If-None-Match with a 304
+     * and every id in [failing] with a 503.
+     */
+    private class ProductEndpoint : Dispatcher() {
+        val versions = ConcurrentHashMap<String, Int>()
+        val failing = ConcurrentHashMap.newKeySet<String>()
+        val fullResponses = AtomicInteger()
+        val notModified = AtomicInteger()
+        val maxInFlight = AtomicInteger()
+        private val inFlight = AtomicInteger()
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+            try {
+                Thread.sleep(20)
+                val id = request.requestUrl!!.pathSegments.last()
+                if (id in failing) return MockResponse().setResponseCode(503)
+                val version = versions[id] ?: 1
+                val etag = "\"$id-v$version\""
+                if (request.getHeader("If-None-Match") == etag) {
+                    notModified.incrementAndGet()
+                    return MockResponse().setResponseCode(304).setHeader("ETag", etag)
+                }
+                fullResponses.incrementAndGet()
+                return MockResponse()
+                    .setHeader("ETag", etag)
+                    .setBody(JSONObject().put("id", id).put("title", "Game $id v$version").toString())
+            } finally {
+                inFlight.decrementAndGet()
+            }
+        }
+    }
+
+    private val products = ProductEndpoint()
+    private lateinit var server: MockWebServer
+    private lateinit var client: OkHttpClient
+    private lateinit var cacheDir: File
+
+    @Before
+    fun setUp() {
+        cacheDir = File(ApplicationProvider.getApplicationContext<Context>().cacheDir, "details")
+        server = MockWebServer()
+        server.dispatcher = products
+        server.start()
+        client = OkHttpClient.Builder().readTimeout(10, TimeUnit.SECONDS).build()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        cacheDir.deleteRecursively()
+    }
+
+    private fun cache(maxBytes: Long = ConditionalResponseCache.DEFAULT_MAX_BYTES) =
+        ConditionalResponseCache(cacheDir, maxBytes)
+
+    private suspend fun fetchTitle(cache: ConditionalResponseCache, id: String): String? {
+        val request = Request.Builder().url(server.url("/products/$id")).addHeader("Authorization", "Bearer token").build()
+        return cache.fetch(client, request).getOrNull()?.let { JSONObject(it.text).getString("title") }
+    }
+
+    @Test
+    fun fetchesInParallelWithinTheLimitAndStreamsBatches() = runBlocking(Dispatchers.IO) {
+        val ids = (1..60).map { "$it" }
+        val cache = cache()
+        val batches = mutableListOf<List<String>>()
+        var requestsAtFirstBatch = -1
+
+        val count = LibraryDetailRefresher.refresh(
+            keys = ids,
+            concurrency = 4,
+            batchSize = 10,
+            fetch = { fetchTitle(cache, it) },
+            upsert = { batch ->
+                if (batches.isEmpty()) requestsAtFirstBatch = server.requestCount
+                batches += batch
+            },
+        )
+
+        assertEquals(60, count)
+        assertEquals(ids.map { "Game $it v1" }.toSet(), batches.flatten().toSet())
+        assertTrue(batches.all { it.size <= 10 })
+        assertTrue("max in flight ${products.maxInFlight.get()}", products.maxInFlight.get() in 2..4)
+        // The first games reached the db long before the last request went out
+        assertTrue("first batch after $requestsAtFirstBatch requests", requestsAtFirstBatch < 40)
+    }
+
+    @Test
+    fun failedFetchesAreSkipped() = runBlocking(Dispatchers.IO) {
+        products.failing += setOf("2", "5")
+        val stored = mutableListOf<String>()
+
+        val count = LibraryDetailRefresher.refresh(
+            keys = (1..6).map { "$it" },
+            fetch = { fetchTitle(cache(), it) },
+            upsert = { stored += it },
+        )
+
+        assertEquals(4, count)
+        assertEquals(setOf("Game 1 v1", "Game 3 v1", "Game 4 v1", "Game 6 v1"), stored.toSet())
+    }
+
+    @Test
+    fun unchangedDetailsAreRevalidatedInsteadOfDownloaded() = runBlocking(Dispatchers.IO) {
+        val ids = (1..20).map { "$it" }
+        LibraryDetailRefresher.refresh(ids, fetch = { fetchTitle(cache(), it) }, upsert = {})
+        assertEquals(20, products.fullResponses.get())
+
+        // A later refresh, e.g. after the db was cleared, with one product changed upstream
+        products.versions["7"] = 2
+        val stored = mutableListOf<String>()
+        LibraryDetailRefresher.refresh(ids, fetch = { fetchTitle(cache(), it) }, upsert = { stored += it })
+
+        assertEquals(21, products.fullResponses.get())
+        assertEquals(19, products.notModified.get())
+        assertEquals(20, stored.size)
+        assertTrue("Game 7 v2" in stored)
+        assertTrue("Game 8 v1" in stored)
+    }
+
+    @Test
+    fun failuresAreNotCached() = runBlocking(Dispatchers.IO) {
+        products.failing += "3"
+        assertNull(fetchTitle(cache(), "3"))
+
+        products.failing -= "3"
+        assertEquals("Game 3 v1", fetchTitle(cache(), "3"))
+        assertEquals("Game 3 v1", fetchTitle(cache(), "3"))
+        assertEquals(1, products.fullResponses.get())
+        assertEquals(1, products.notModified.get())
+    }
+
+    @Test
+    fun cacheIsTrimmedToItsLimit() = runBlocking(Dispatchers.IO) {
+        // Each body is about 30 bytes
+        val cache = cache(maxBytes = 300)
+        for (id in 1..40) assertEquals("Game $id v1", fetchTitle(cache, "$id"))
+
+        val files = cacheDir.listFiles()!!
+        val bodies = files.filter { it.name.endsWith(".body") }
+        assertTrue("${bodies.sumOf { it.length() }} bytes cached", bodies.sumOf { it.length() } <= 300)
+        assertTrue(bodies.size in 5..10)
+        assertEquals(bodies.map { it.nameWithoutExtension }.toSet(), files.filter { it.name.endsWith(".meta") }.map { it.nameWithoutExtension }.toSet())
+
+        // The latest entry is still there; trimmed ones are downloaded again
+        assertEquals("Game 40 v1", fetchTitle(cache, "40"))
+        assertEquals(1, products.notModified.get())
+        assertEquals("Game 1 v1", fetchTitle(cache, "1"))
+        assertEquals(41, products.fullResponses.get())
+    }
+}
@@ -259,6 +259,8 @@ class SteamAutoCloudTest {
             // Ignore cleanup errors
         }
 
+        File(DownloadService.baseCacheDirPath, "save_hashes").deleteRecursively()
+
         // Close database
         db.close()
 
@@ -1155,5 +1157,103 @@ class SteamAutoCloudTest {
         assertNotNull("Change number should exist", changeNumber)
         assertEquals("Change number should be updated", (matchingChangeNumber + 1).toLong(), changeNumber!!.changeNumber)
     }
-}
 
+    /** Cloud at [changeNumber] with no new files; uploads move it to [changeNumber] + 1 */
+    private fun mockCloudAt(changeNumber: Long) {
+        val fileList = mock<AppFileChangeList>()
+        whenever(fileList.currentChangeNumber).thenReturn(changeNumber)
+        whenever(fileList.isOnlyDelta).thenReturn(false)
+        whenever(fileList.appBuildIDHwm).thenReturn(0)
+        whenever(fileList.pathPrefixes).thenReturn(listOf("%WinMyDocuments%/My Games/TestGame/Steam/76561198025127569"))
+        whenever(fileList.machineNames).thenReturn(emptyList())
+        whenever(fileList.files).thenReturn(emptyList())
+        every { mockSteamCloud.getAppFileListChange(any(), any(), any()) } returns
+            CompletableFuture.completedFuture(fileList)
+
+        val batch = mock<`in`.dragonbra.javasteam.steam.handlers.steamcloud.AppUploadBatchResponse>()
+        whenever(batch.batchID).thenReturn(1)
+        whenever(batch.appChangeNumber).thenReturn(changeNumber + 1)
+        every { mockSteamCloud.beginAppUploadBatch(any(), any(), any(), any(), any(), any(), any()) } returns
+            CompletableFuture.completedFuture(batch)
+    }
+
+    private suspend fun syncDocuments(): PostSyncInfo {
+        val documents = File(ImageFs.find(context).wineprefix, "dosdevices/c:/users/xuser/Documents")
+        return SteamAutoCloud.syncUserFiles(
+            appInfo = db.steamAppDao().findApp(steamAppId)!!,
+            clientId = clientId,
+            steamInstance = mockSteamService,
+            steamCloud = mockSteamCloud,
+            preferredSave = SaveLocation.None,
+            prefixToPath = { prefix -> if (prefix == "WinMyDocuments") documents.absolutePath else tempDir.absolutePath },
+        ).await()!!
+    }
+
+    /** Backdates every save file, as if written well before the sync */
+    private fun settleSaveFiles() {
+        saveFilesDir.listFiles()!!.forEach { it.setLastModified(System.currentTimeMillis() - 60_000) }
+    }
+
+    @Test
+    fun testHashCacheKeepsSyncDecisions() = runBlocking {
+        settleSaveFiles()
+
+        // First sync uploads everything and remembers the hashes
+        mockCloudAt(0)
+        val first = syncDocuments()
+        assertEquals(5, first.filesUploaded)
+        val cacheFile = File(DownloadService.baseCacheDirPath, "save_hashes/$steamAppId")
+        assertTrue("Hash cache should be saved", cacheFile.isFile)
+
+        // Nothing changed: up to date, from cached hashes
+        mockCloudAt(1)
+        val second = syncDocuments()
+        assertEquals(SyncResult.UpToDate, second.syncResult)
+        assertEquals(0, second.filesUploaded)
+
+        // A save rewritten with new content and mtime is hashed again and uploaded
+        File(saveFilesDir, "SaveData_0.sav").writeBytes("savedata0 content, longer now".toByteArray())
+        File(saveFilesDir, "SaveData_0.sav").setLastModified(System.currentTimeMillis() - 30_000)
+        val third = syncDocuments()
+        assertEquals(SyncResult.Success, third.syncResult)
+        assertEquals(1, third.filesUploaded)
+        assertEquals(2L, db.appChangeNumbersDao().getByAppId(steamAppId)!!.changeNumber)
+    }
+
+    @Test
+    fun testHashCacheSeesReplacedFilesWithSameSizeAndMtime() = runBlocking {
+        settleSaveFiles()
+        mockCloudAt(0)
+        assertEquals(5, syncDocuments().filesUploaded)
+
+        // Atomically replaced by a same-sized file carrying the old mtime: only the file key differs
+        val save = File(saveFilesDir, "SaveData_1.sav")
+        val mtime = save.lastModified()
+        val replacement = File(saveFilesDir, "SaveData_1.tmp")
+        replacement.writeBytes("savedata1 CONTENT".toByteArray())
+        replacement.setLastModified(mtime)
+        assertTrue(replacement.renameTo(save))
+        assertEquals("savedata1 content".length.toLong(), save.length())
+
+        mockCloudAt(1)
+        val result = syncDocuments()
+        assertEquals(SyncResult.Success, result.syncResult)
+        assertEquals(1, result.filesUploaded)
+    }
+
+    @Test
+    fun testFreshlyWrittenSavesAreNotTrustedFromCache() = runBlocking {
+        // Written just now, as at game exit: hashed but not remembered
+        mockCloudAt(0)
+        assertEquals(5, syncDocuments().filesUploaded)
+
+        // Rewritten in place with the same size and mtime, which a coarse clock would allow
+        val save = File(saveFilesDir, "AutoSaveData.sav")
+        val mtime = save.lastModified()
+        save.writeBytes("AUTOSAVE content".toByteArray())
+        save.setLastModified(mtime)
+
+        mockCloudAt(1)
+        assertEquals(1, syncDocuments().filesUploaded)
+    }
+}
@@ -0,0 +1,190 @@
+package app.gamenative.service
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.AppInfo
+import app.gamenative.data.DownloadingAppInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.db.PluviaDatabase
+import java.util.concurrent.Executors
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class SteamDataCacheTest {
+
+    private lateinit var db: PluviaDatabase
+    private lateinit var cache: SteamDataCache
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+        cache = SteamDataCache(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    /** Waits for the invalidation observer, which Room runs asynchronously after a write */
+    private suspend fun <T> eventually(read: suspend () -> T, done: (T) -> Boolean): T = withTimeout(5_000) {
+        var value = read()
+        while (!done(value)) {
+            delay(10)
+            value = read()
+        }
+        value
+    }
+
+    @Test
+    fun hitsReturnWithoutSuspending() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 1, name = "Portal"))
+        assertEquals("Portal", cache.app(1)?.name)
+
+        var name: String? = null
+        val job = CoroutineScope(Dispatchers.Unconfined).launch(start = CoroutineStart.UNDISPATCHED) {
+            name = cache.app(1)?.name
+        }
+
+        // An undispatched coroutine that never suspends has finished by the time launch returns
+        assertTrue(job.isCompleted)
+        assertEquals("Portal", name)
+        assertEquals("Portal", cache.peekApp(1)?.value?.name)
+    }
+
+    @Test
+    fun missesDoNotBlockTheCallingThread() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 2, name = "Half-Life"))
+        val caller = Executors.newSingleThreadExecutor().asCoroutineDispatcher()
+        try {
+            val events = mutableListOf<String>()
+            withContext(caller) {
+                val miss = async { cache.app(2).also { events += "miss" } }
+                // Only runs if the miss gave the thread back while it queried the database
+                val other = async { events += "other" }
+                awaitAll(miss, other)
+                assertEquals("Half-Life", miss.await()?.name)
+            }
+            assertEquals(listOf("other", "miss"), events)
+        } finally {
+            caller.close()
+        }
+    }
+
+    @Test
+    fun writesInvalidateCachedRows() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 3, name = "Before"))
+        assertEquals("Before", cache.app(3)?.name)
+        assertNull(cache.installedApp(3))
+
+        db.steamAppDao().update(SteamApp(id = 3, name = "After"))
+        db.appInfoDao().insert(AppInfo(id = 3, isDownloaded = true, downloadedDepots = listOf(31)))
+
+        assertEquals("After", eventually({ cache.app(3) }) { it?.name == "After" }?.name)
+        assertEquals(listOf(31), eventually({ cache.installedApp(3) }) { it != null }?.downloadedDepots)
+    }
+
+    @Test
+    fun concurrentReadersSettleOnTheLastWrite() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 4, name = "v0"))
+
+        withContext(Dispatchers.Default) {
+            val readers = List(8) {
+                async {
+                    repeat(200) { assertNotNull(cache.app(4)) }
+                }
+            }
+            val writer = async {
+                for (v in 1..50) db.steamAppDao().update(SteamApp(id = 4, name = "v$v"))
+            }
+            (readers + writer).awaitAll()
+        }
+
+        // No reader may have put back a row the last write replaced
+        assertEquals("v50", eventually({ cache.app(4) }) { it?.name == "v50" }?.name)
+        delay(100)
+        assertEquals("v50", cache.app(4)?.name)
+    }
+
+    @Test
+    fun downloadStateIsVisibleBeforeItIsWritten() = runBlocking {
+        val info = DownloadingAppInfo(5, dlcAppIds = listOf(51, 52))
+
+        cache.setDownloadingApp(5, info)
+
+        assertNull(db.downloadingAppInfoDao().getDownloadingApp(5))
+        assertEquals(info, cache.downloadingApp(5))
+
+        cache.setDownloadingApp(5, null)
+        assertNull(cache.downloadingApp(5))
+    }
+
+    @Test
+    fun reportedWritesAreVisibleAtOnce() = runBlocking {
+        assertNull(cache.installedApp(7))
+        assertNull(cache.downloadingApp(7))
+
+        val installed = AppInfo(id = 7, isDownloaded = true, downloadedDepots = listOf(71))
+        db.appInfoDao().insert(installed)
+        cache.installedAppWritten(7, installed)
+        db.downloadingAppInfoDao().insert(DownloadingAppInfo(7))
+        cache.downloadingAppWritten(7, DownloadingAppInfo(7))
+
+        // No waiting for the invalidation observer
+        assertEquals(installed, cache.installedApp(7))
+        assertEquals(DownloadingAppInfo(7), cache.downloadingApp(7))
+
+        db.appInfoDao().deleteApp(7)
+        cache.installedAppWritten(7, null)
+        assertNull(cache.installedApp(7))
+    }
+
+    @Test
+    fun downloadStateOutlivesInvalidationsUntilItIsWritten() = runBlocking {
+        val info = DownloadingAppInfo(8, dlcAppIds = listOf(81))
+        cache.setDownloadingApp(8, info)
+
+        // Another download's row changes, which drops the cached download state
+        assertNull(cache.downloadingApp(9))
+        db.downloadingAppInfoDao().insert(DownloadingAppInfo(9))
+        eventually({ cache.downloadingApp(9) }) { it != null }
+
+        assertNull(db.downloadingAppInfoDao().getDownloadingApp(8))
+        assertEquals(info, cache.downloadingApp(8))
+
+        cache.setDownloadingApp(8, null)
+        cache.downloadingAppWritten(8, null)
+        assertNull(cache.downloadingApp(8))
+    }
+
+    @Test
+    fun observeAppEmitsChanges() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 6, name = "Old"))
+        assertEquals("Old", cache.observeApp(6).first()?.name)
+
+        db.steamAppDao().update(SteamApp(id = 6, name = "New"))
+
+        assertEquals("New", withTimeout(5_000) { cache.observeApp(6).first { it?.name == "New" } }?.name)
+    }
+}
@@ -0,0 +1,200 @@
+package app.gamenative.service
+
+import app.gamenative.service.SteamExePicker.DepotFiles
+import app.gamenative.service.SteamExePicker.ManifestFile
+import kotlin.random.Random
+import org.junit.Assert.*
+import org.junit.Test
+
+class SteamExePickerTest {
+
+    private fun file(path: String, size: Long = 50_000_000, exeFlag: Boolean = true) = ManifestFile(path, size, exeFlag)
+
+    /**
+     * The scan SteamService.getInstalledExe did before picks were indexed, kept here to check
+     * the picker still chooses the same file.
+     */
+    private object LegacyScan {
+        private val UE_SHIPPING = Regex(""".*-win(32|64)(-shipping)?\.exe$""", RegexOption.IGNORE_CASE)
+        private val UE_BINARIES = Regex(""".*/binaries/win(32|64)/.*\.exe$""", RegexOption.IGNORE_CASE)
+        private val NEGATIVE_KEYWORDS = listOf(
+            "crash", "handler", "viewer", "compiler", "tool",
+            "setup", "unins", "eac", "launcher", "steam",
+        )
+        private val GENERIC_NAME = Regex("^[a-z]\\d{1,3}\\.exe$", RegexOption.IGNORE_CASE)
+
+        private fun fuzzyMatch(a: String, b: String): Boolean {
+            val cleanA = a.replace(Regex("[^a-z]"), "")
+            val cleanB = b.replace(Regex("[^a-z]"), "")
+            return cleanA.take(5) == cleanB.take(5)
+        }
+
+        private fun scoreExe(file: ManifestFile, gameName: String, hasExeFlag: Boolean): Int {
+            var s = 0
+            val path = file.path.lowercase()
+            if (UE_SHIPPING.matches(path)) s += 300
+            if (UE_BINARIES.containsMatchIn(path)) s += 250
+            if (!path.contains('/')) s += 200
+            if (path.contains(gameName) || fuzzyMatch(path, gameName)) s += 100
+            if (NEGATIVE_KEYWORDS.any { it in path }) s -= 150
+            if (GENERIC_NAME.matches(file.path)) s -= 200
+            if (hasExeFlag) s += 50
+            return s
+        }
+
+        private fun ManifestFile.isStub(): Boolean {
+            val generic = Regex("^[a-z]\\d{1,3}\\.exe$", RegexOption.IGNORE_CASE)
+            val bad = listOf("launcher", "steam", "crash", "handler", "setup", "unins", "eac")
+            val n = path.lowercase()
+            return generic.matches(n) || bad.any { it in n } || size < 1_000_000
+        }
+
+        private fun choosePrimaryExe(files: List<ManifestFile>, gameName: String): ManifestFile? =
+            files.maxWithOrNull { a, b ->
+                val sa = scoreExe(a, gameName, a.exeFlag)
+                val sb = scoreExe(b, gameName, b.exeFlag)
+                when {
+                    sa != sb -> sa - sb
+                    else -> (a.size - b.size).toInt()
+                }
+            }
+
+        fun pick(depots: List<DepotFiles>, launchTargets: Set<String>, installDir: String): String? {
+            val flagged = mutableListOf<Pair<ManifestFile, Long>>()
+            var largestDepotSize = 0L
+            for (depot in depots) {
+                if (depot.depotSize > largestDepotSize) largestDepotSize = depot.depotSize
+                depot.files.firstOrNull { f -> f.path.lowercase() in launchTargets && !f.isStub() }
+                    ?.let { return it.path.replace('\\', '/') }
+                depot.files.filter { it.exeFlag || it.path.endsWith(".exe", true) }
+                    .forEach { flagged += it to depot.depotSize }
+            }
+            choosePrimaryExe(
+                flagged.map { it.first }.let { pool ->
+                    val noStubs = pool.filterNot { it.isStub() }
+                    if (noStubs.isNotEmpty()) noStubs else pool
+                },
+                installDir.lowercase(),
+            )?.let { return it.path.replace('\\', '/') }
+            flagged.filter { it.second == largestDepotSize }
+                .maxByOrNull { it.first.size }
+                ?.let { return it.first.path.replace('\\', '/') }
+            return null
+        }
+    }
+
+    // Manifests shaped like real games
+    private val fixtures: List<Triple<List<DepotFiles>, Set<String>, String>> = listOf(
+        // Unreal game: the shipping binary beats the bootstrap exe in the root
+        Triple(
+            listOf(
+                DepotFiles(
+                    8_000_000_000,
+                    listOf(
+                        file("Stray.exe", size = 300_000),
+                        file("Hk_project/Binaries/Win64/Stray-Win64-Shipping.exe", size = 80_000_000),
+                        file("Engine/Binaries/ThirdParty/CrashReportClient.exe", size = 20_000_000),
+                        file("Hk_project/Content/Paks/pakchunk0.pak", size = 7_000_000_000, exeFlag = false),
+                    ),
+                ),
+            ),
+            setOf("stray.exe"),
+            "Stray",
+        ),
+        // Launch entry that is a real binary wins outright
+        Triple(
+            listOf(
+                DepotFiles(
+                    2_000_000_000,
+                    listOf(
+                        file("bin/x64/game.exe", size = 40_000_000),
+                        file("Portal2.exe", size = 9_000_000),
+                    ),
+                ),
+            ),
+            setOf("portal2.exe"),
+            "Portal 2",
+        ),
+        // Launch entry is a launcher stub: fall through to the scorer
+        Triple(
+            listOf(
+                DepotFiles(500_000_000, listOf(file("Launcher.exe", size = 5_000_000), file("redist/vcredist_x64.exe"))),
+                DepotFiles(4_000_000_000, listOf(file("Witcher/bin/witcher3.exe", size = 60_000_000), file("unins000.exe"))),
+            ),
+            setOf("launcher.exe"),
+            "The Witcher 3",
+        ),
+        // Only stubs: the best stub is still picked
+        Triple(
+            listOf(DepotFiles(10_000_000, listOf(file("a1.exe", size = 10_000), file("setup.exe", size = 20_000)))),
+            emptySet(),
+            "Tiny",
+        ),
+        // Equal scores: the bigger file wins
+        Triple(
+            listOf(DepotFiles(1_000_000_000, listOf(file("one.exe", size = 2_000_000), file("two.exe", size = 3_000_000)))),
+            emptySet(),
+            "Numbers",
+        ),
+        // No executables at all
+        Triple(
+            listOf(DepotFiles(1_000_000, listOf(file("data.bin", exeFlag = false)))),
+            emptySet(),
+            "Data",
+        ),
+    )
+
+    @Test
+    fun picksMatchTheLegacyScanOnFixtures() {
+        for ((depots, targets, installDir) in fixtures) {
+            assertEquals(installDir, LegacyScan.pick(depots, targets, installDir), SteamExePicker.pick(depots, targets, installDir).executable)
+        }
+    }
+
+    @Test
+    fun picksMatchTheLegacyScanOnRandomManifests() {
+        val random = Random(42)
+        val names = listOf("game", "Game-Win64-Shipping", "launcher", "crashhandler", "b12", "tool", "mygame", "setup", "start")
+        val dirs = listOf("", "bin/", "Binaries/Win64/", "redist/", "MyGame/Binaries/Win32/")
+
+        repeat(500) {
+            val depots = List(random.nextInt(1, 4)) {
+                DepotFiles(
+                    depotSize = random.nextLong(1_000_000, 10_000_000_000),
+                    files = List(random.nextInt(0, 12)) {
+                        val ext = if (random.nextInt(4) == 0) ".dll" else ".exe"
+                        file(
+                            path = dirs.random(random) + names.random(random) + ext,
+                            // Distinct sizes, so equal-score ties break the same way
+                            size = random.nextLong(100_000, 200_000_000),
+                            exeFlag = random.nextBoolean(),
+                        )
+                    },
+                )
+            }
+            val targets = if (random.nextBoolean()) setOf("bin/game.exe", "mygame.exe") else emptySet()
+
+            assertEquals(
+                depots.toString(),
+                LegacyScan.pick(depots, targets, "MyGame"),
+                SteamExePicker.pick(depots, targets, "MyGame").executable,
+            )
+        }
+    }
+
+    @Test
+    fun candidatesKeepScoresAndDepotSizes() {
+        val (depots, targets, installDir) = fixtures.first()
+
+        val pick = SteamExePicker.pick(depots, targets, installDir)
+
+        assertEquals("Hk_project/Binaries/Win64/Stray-Win64-Shipping.exe", pick.executable)
+        assertEquals(3, pick.candidates.size)
+        val shipping = pick.candidates.single { it.path.endsWith("Shipping.exe") }
+        assertEquals(80_000_000, shipping.size)
+        assertEquals(8_000_000_000, shipping.depotSize)
+        assertFalse(shipping.stub)
+        assertTrue(pick.candidates.single { it.path == "Stray.exe" }.stub)
+        assertEquals(pick.candidates.maxOf { it.score }, shipping.score)
+    }
+}
@@ -0,0 +1,196 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.FileManifest
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class EpicSavePackerTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var saveDir: File
+
+    // Chunk and manifest blobs uploaded so far, by their path under the save set
+    private val blobs = ConcurrentHashMap<String, ByteArray>()
+    private val inFlight = AtomicInteger()
+    private val maxInFlight = AtomicInteger()
+    private val linkRequests = AtomicInteger()
+
+    @Before
+    fun setUp() {
+        saveDir = Files.createTempDirectory("epic-saves").toFile()
+        server = MockWebServer()
+        // savesync answers a POST of file names with a write link per name; PUTs to those land in blobs
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val path = request.requestUrl!!.encodedPath
+                return when {
+                    request.method == "POST" && path == "/api/v1/access/egstore/savesync/account/Game/" -> {
+                        linkRequests.incrementAndGet()
+                        assertEquals("Bearer token", request.getHeader("Authorization"))
+                        val names = JSONObject(request.body.readUtf8()).getJSONArray("files")
+                        val files = JSONObject()
+                        for (i in 0 until names.length()) {
+                            val name = names.getString(i)
+                            files.put(name, JSONObject().put("writeLink", server.url("/blob/$name").toString()))
+                        }
+                        MockResponse().setBody(JSONObject().put("files", files).toString())
+                    }
+
+                    request.method == "PUT" && path.startsWith("/blob/") -> {
+                        val now = inFlight.incrementAndGet()
+                        maxInFlight.accumulateAndGet(now) { a, b -> maxOf(a, b) }
+                        try {
+                            Thread.sleep(20)
+                            blobs[path.removePrefix("/blob/")] = request.body.readByteArray()
+                            MockResponse()
+                        } finally {
+                            inFlight.decrementAndGet()
+                        }
+                    }
+
+                    else -> MockResponse().setResponseCode(404)
+                }
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        saveDir.deleteRecursively()
+    }
+
+    private fun packer(knownChunks: Map<String, app.gamenative.service.epic.manifest.ChunkInfo> = emptyMap()) =
+        EpicSavePacker(
+            writeLinks = { names ->
+                EpicCloudSavesManager.requestWriteLinks("account", "token", "Game", names, server.url("/").toString().trimEnd('/'))
+            },
+            upload = EpicCloudSavesManager::uploadFile,
+            knownChunks = knownChunks,
+        )
+
+    /** A save set of [count] files up to [maxSize] bytes each, some nested, one empty */
+    private fun writeSaves(seed: Int, count: Int, maxSize: Int): List<File> {
+        val random = Random(seed)
+        val files = (0 until count).map { i ->
+            val name = if (i % 5 == 0) "slot$i/data_$i.sav" else "save_$i.sav"
+            File(saveDir, name).apply {
+                parentFile!!.mkdirs()
+                writeBytes(random.nextBytes(if (i % 3 == 0) random.nextInt(4096) else random.nextInt(maxSize)))
+            }
+        }
+        val empty = File(saveDir, "empty.sav").apply { writeBytes(ByteArray(0)) }
+        return (files + empty).sortedBy { it.name.lowercase() }
+    }
+
+    private fun restore(file: FileManifest, chunks: Map<String, ByteArray>): ByteArray {
+        val out = ByteArray(file.fileSize.toInt())
+        for (part in file.chunkParts) {
+            val data = chunks.getValue(part.guidStr)
+            data.copyInto(out, part.fileOffset.toInt(), part.offset, part.offset + part.size)
+        }
+        return out
+    }
+
+    /** Checks every packed file can be rebuilt from the uploaded chunks */
+    private fun assertRestores(packed: EpicSavePacker.Packed) {
+        val chunks = packed.chunks.associate { chunk ->
+            val blob = blobs[chunk.getPath()] ?: error("Chunk ${chunk.getPath()} was never uploaded")
+            chunk.guidStr to EpicCloudSavesManager.decompressChunk(blob)
+        }
+        chunks.values.forEach { assertEquals(EpicSavePacker.CHUNK_SIZE, it.size) }
+        for (file in packed.files) {
+            val expected = File(saveDir, file.filename).readBytes()
+            assertArrayEquals(file.filename, expected, restore(file, chunks))
+            assertArrayEquals(file.filename, MessageDigest.getInstance("SHA-1").digest(expected), file.hash)
+        }
+    }
+
+    @Test
+    fun packsLargeSaveSetsThatRestoreByteForByte() = runBlocking {
+        val files = writeSaves(seed = 1, count = 30, maxSize = 3 * 1024 * 1024)
+        val total = files.sumOf { it.length() }
+
+        val packed = packer().pack(saveDir, files)
+
+        assertEquals(files.size - 1, packed.files.size)
+        assertFalse(packed.files.any { it.filename == "empty.sav" })
+        assertEquals(files.filter { it.length() > 0 }.map { it.relativeTo(saveDir).invariantSeparatorsPath }, packed.files.map { it.filename })
+        assertEquals(((total + EpicSavePacker.CHUNK_SIZE - 1) / EpicSavePacker.CHUNK_SIZE).toInt(), packed.chunks.size)
+        assertEquals(packed.chunks.size, packed.chunksUploaded)
+        assertEquals(0, packed.chunksReused)
+        assertRestores(packed)
+        assertTrue("chunks should upload concurrently", maxInFlight.get() > 1)
+        assertTrue(maxInFlight.get() <= EpicSavePacker.DEFAULT_PARALLELISM)
+    }
+
+    @Test
+    fun skipsChunksAlreadyInTheCloud() = runBlocking {
+        val files = writeSaves(seed = 2, count = 20, maxSize = 2 * 1024 * 1024)
+        val first = packer().pack(saveDir, files)
+        val requestsBefore = linkRequests.get()
+
+        // Only the last file changes, so every chunk before it packs the same
+        val changed = files.last { it.length() > 0 }
+        changed.writeBytes(Random(3).nextBytes(changed.length().toInt()))
+
+        val second = packer(EpicSavePacker.indexBySha(first.chunks)).pack(saveDir, files)
+
+        assertTrue(second.chunksReused > 0)
+        assertTrue(second.chunksUploaded in 1..3)
+        assertEquals(first.chunks.size, second.chunksReused + second.chunksUploaded)
+        assertEquals(second.chunksUploaded, linkRequests.get() - requestsBefore)
+        assertEquals(first.chunks.take(second.chunksReused).map { it.guidStr }, second.chunks.take(second.chunksReused).map { it.guidStr })
+        assertRestores(second)
+    }
+
+    @Test
+    fun identicalSaveSetsUploadNothing() = runBlocking {
+        val files = writeSaves(seed = 4, count = 10, maxSize = 1024 * 1024)
+        val first = packer().pack(saveDir, files)
+        blobs.clear()
+
+        val second = packer(EpicSavePacker.indexBySha(first.chunks)).pack(saveDir, files)
+
+        assertEquals(0, second.chunksUploaded)
+        assertTrue(blobs.isEmpty())
+        assertEquals(first.chunks.map { it.guidStr }, second.chunks.map { it.guidStr })
+    }
+
+    @Test
+    fun failedChunkUploadFailsThePack() {
+        val files = writeSaves(seed = 5, count = 10, maxSize = 2 * 1024 * 1024)
+        server.dispatcher.let { inner ->
+            server.dispatcher = object : Dispatcher() {
+                override fun dispatch(request: RecordedRequest): MockResponse =
+                    if (request.method == "PUT" && blobs.size >= 2) MockResponse().setResponseCode(500) else inner.dispatch(request)
+            }
+        }
+
+        try {
+            runBlocking { packer().pack(saveDir, files) }
+            fail("pack should fail when a chunk can't be uploaded")
+        } catch (e: IOException) {
+            assertTrue(e.message!!.startsWith("Failed to upload chunk"))
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package app.gamenative.service.epic.manifest
+
+import java.io.File
+import java.nio.file.Files
+import java.security.MessageDigest
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class ChunkReusePlannerTest {
+
+    private val windowSize = 256
+
+    // Chunk contents keyed by GUID; identical GUIDs always carry identical bytes
+    private val chunkData = mutableMapOf<Int, ByteArray>()
+
+    private lateinit var root: File
+
+    private data class Part(val guid: Int, val offset: Int, val size: Int)
+
+    @Before
+    fun setUp() {
+        root = Files.createTempDirectory("chunk-reuse").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        root.deleteRecursively()
+    }
+
+    private fun data(guid: Int) = chunkData.getOrPut(guid) { Random(guid).nextBytes(windowSize) }
+
+    private fun guidOf(id: Int) = intArrayOf(0x1000 + id, id, 0, id * 7)
+
+    private fun sha1(bytes: ByteArray): ByteArray = MessageDigest.getInstance("SHA-1").digest(bytes)
+
+    private fun contents(parts: List<Part>): ByteArray =
+        parts.fold(ByteArray(0)) { acc, it -> acc + data(it.guid).copyOfRange(it.offset, it.offset + it.size) }
+
+    private fun rowOf(manifest: CompactManifest, id: Int) =
+        manifest.chunks.indexOf(guidOf(id).joinToString("-") { "%08x".format(it) })
+
+    /** Builds a manifest fixture from file name -> parts, with every referenced chunk in the CDL. */
+    private fun manifest(files: Map<String, List<Part>>): CompactManifest {
+        val manifest = JsonManifest()
+        val guids = files.values.flatten().map { it.guid }.distinct()
+        manifest.chunkDataList = ChunkDataList(
+            elements = guids.map { id ->
+                ChunkInfo(guid = guidOf(id), shaHash = sha1(data(id)), windowSize = windowSize, fileSize = 100L + id)
+            }.toMutableList(),
+        )
+        manifest.fileManifestList = FileManifestList(
+            elements = files.map { (name, parts) ->
+                var fileOffset = 0L
+                FileManifest(
+                    filename = name,
+                    hash = sha1(contents(parts)),
+                    chunkParts = parts.map { part ->
+                        ChunkPart(guidOf(part.guid), part.offset, part.size, fileOffset).also { fileOffset += part.size }
+                    }.toMutableList(),
+                    fileSize = parts.sumOf { it.size.toLong() },
+                )
+            }.toMutableList(),
+        )
+        return CompactManifest.from(manifest)
+    }
+
+    /** Writes the files of [files] into [dir] exactly as the assembler would. */
+    private fun install(dir: File, files: Map<String, List<Part>>): InstalledChunkSource {
+        files.forEach { (name, parts) ->
+            val file = File(dir, name)
+            file.parentFile?.mkdirs()
+            file.writeBytes(contents(parts))
+        }
+        return InstalledChunkSource(dir, manifest(files))
+    }
+
+    private fun assertReadsMatch(target: CompactManifest, plan: ChunkReusePlan, id: Int) {
+        val chunk = rowOf(target, id)
+        val slices = plan.slicesFor(chunk)
+        assertNotNull("chunk $chunk should be reusable", slices)
+        val rebuilt = File(root, "rebuilt-$chunk")
+        ChunkReusePlanner.materialize(slices!!, windowSize, rebuilt)
+        val bytes = rebuilt.readBytes()
+        assertEquals(windowSize, bytes.size)
+
+        for (f in target.files.indices) {
+            val file = target.files[f]
+            for (p in 0 until file.partCount) {
+                if (file.partChunk(p) != chunk) continue
+                val offset = file.partOffset(p)
+                val size = file.partSize(p)
+                assertArrayEquals(
+                    data(id).copyOfRange(offset, offset + size),
+                    bytes.copyOfRange(offset, offset + size),
+                )
+            }
+        }
+    }
+
+    @Test
+    fun dlcReusesChunksCoveredByBaseInstall() {
+        val base = install(
+            File(root, "base"),
+            mapOf(
+                "Game.exe" to listOf(Part(1, 0, 256), Part(2, 0, 100)),
+                "Data/pak0.pak" to listOf(Part(2, 100, 156), Part(3, 0, 64)),
+            ),
+        )
+        val dlc = manifest(
+            mapOf(
+                // Chunk 1 whole, chunk 2 straddling the two base files, chunk 4 is new
+                "DLC/extra.pak" to listOf(Part(1, 0, 256), Part(2, 50, 120), Part(4, 0, 200)),
+            ),
+        )
+
+        val plan = ChunkReusePlanner.plan(dlc, listOf(base))
+
+        assertEquals(2, plan.reusableChunks)
+        assertNull(plan.slicesFor(rowOf(dlc, 4)))
+        assertEquals(dlc.chunks.fileSize(rowOf(dlc, 1)) + dlc.chunks.fileSize(rowOf(dlc, 2)), plan.bytesSaved)
+        assertReadsMatch(dlc, plan, 1)
+        assertReadsMatch(dlc, plan, 2)
+    }
+
+    @Test
+    fun partiallyCoveredChunkIsDownloaded() {
+        val base = install(File(root, "base"), mapOf("a.bin" to listOf(Part(5, 0, 128))))
+        val target = manifest(mapOf("b.bin" to listOf(Part(5, 64, 128))))
+
+        val plan = ChunkReusePlanner.plan(target, listOf(base))
+
+        assertEquals(0, plan.reusableChunks)
+        assertEquals(0L, plan.bytesSaved)
+    }
+
+    @Test
+    fun rangesCanBeStitchedAcrossInstalls() {
+        val first = install(File(root, "first"), mapOf("a.bin" to listOf(Part(6, 0, 100))))
+        val second = install(File(root, "second"), mapOf("b.bin" to listOf(Part(6, 80, 176))))
+        val target = manifest(mapOf("c.bin" to listOf(Part(6, 0, 256))))
+
+        val plan = ChunkReusePlanner.plan(target, listOf(first, second))
+
+        assertEquals(1, plan.reusableChunks)
+        assertReadsMatch(target, plan, 6)
+    }
+
+    @Test
+    fun modifiedInstalledFilesAreNotUsed() {
+        val baseDir = File(root, "base")
+        val base = install(baseDir, mapOf("a.bin" to listOf(Part(7, 0, 256))))
+        File(baseDir, "a.bin").appendBytes(byteArrayOf(1, 2, 3))
+        val target = manifest(mapOf("b.bin" to listOf(Part(7, 0, 256))))
+
+        assertEquals(0, ChunkReusePlanner.plan(target, listOf(base)).reusableChunks)
+    }
+
+    @Test
+    fun noSourcesMeansEmptyPlan() {
+        val target = manifest(mapOf("b.bin" to listOf(Part(8, 0, 256))))
+        assertSame(ChunkReusePlan.EMPTY, ChunkReusePlanner.plan(target, emptyList()))
+    }
+
+    @Test
+    fun wholeWindowIsCheckedAgainstTheChunkHash() {
+        val baseDir = File(root, "base")
+        val base = install(baseDir, mapOf("a.bin" to listOf(Part(9, 0, 256))))
+        val target = manifest(mapOf("b.bin" to listOf(Part(9, 0, 256))))
+        val chunk = rowOf(target, 9)
+        val output = File(root, "chunk")
+
+        assertTrue(ChunkReusePlanner.plan(target, listOf(base)).rebuild(chunk, windowSize, sha1(data(9)), output))
+        assertArrayEquals(data(9), output.readBytes())
+
+        // Same size, different bytes: patched or damaged since it was installed
+        File(baseDir, "a.bin").writeBytes(ByteArray(256))
+        assertFalse(ChunkReusePlanner.plan(target, listOf(base)).rebuild(chunk, windowSize, sha1(data(9)), output))
+        assertFalse(output.exists())
+    }
+
+    @Test
+    fun onlyTheReusedWindowIsChecked() {
+        val baseDir = File(root, "base")
+        val base = install(baseDir, mapOf("a.bin" to listOf(Part(10, 0, 256), Part(11, 0, 64))))
+        val target = manifest(mapOf("b.bin" to listOf(Part(10, 32, 64))))
+        val chunk = rowOf(target, 10)
+        val output = File(root, "chunk")
+
+        // Bytes of the file outside the reused window don't matter
+        val elsewhere = File(baseDir, "a.bin").readBytes().also { it[300] = (it[300] + 1).toByte() }
+        File(baseDir, "a.bin").writeBytes(elsewhere)
+        assertTrue(ChunkReusePlanner.plan(target, listOf(base)).rebuild(chunk, windowSize, sha1(data(10)), output))
+        assertArrayEquals(data(10), output.readBytes())
+
+        // A byte the target doesn't read, but inside the window, rules the chunk out
+        val inWindow = elsewhere.also { it[200] = (it[200] + 1).toByte() }
+        File(baseDir, "a.bin").writeBytes(inWindow)
+        assertFalse(ChunkReusePlanner.plan(target, listOf(base)).rebuild(chunk, windowSize, sha1(data(10)), output))
+    }
+
+    @Test
+    fun windowsThatCannotBeCheckedAreDownloaded() {
+        // The installed file holds every byte the target reads, but not the rest of the window
+        val base = install(File(root, "base"), mapOf("a.bin" to listOf(Part(12, 0, 128))))
+        val target = manifest(mapOf("b.bin" to listOf(Part(12, 32, 64))))
+
+        assertNull(ChunkReusePlanner.plan(target, listOf(base)).slicesFor(rowOf(target, 12)))
+    }
+}
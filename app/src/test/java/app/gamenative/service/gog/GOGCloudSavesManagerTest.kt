@@ -0,0 +1,237 @@
+package app.gamenative.service.gog
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.GOGCredentials
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.security.MessageDigest
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.GZIPOutputStream
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.mockwebserver.SocketPolicy
+import okio.Buffer
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class GOGCloudSavesManagerTest {
+
+    private lateinit var context: Context
+    private lateinit var server: MockWebServer
+    private lateinit var manager: GOGCloudSavesManager
+    private lateinit var saveDir: File
+
+    private val credentials = GOGCredentials(accessToken = "token", refreshToken = "", userId = "user", username = "")
+
+    /** A save file on the cloud storage, which lists objects with the MD5 of their gzipped bytes */
+    private class StoredObject(val bytes: ByteArray, val lastModified: Instant)
+
+    // Objects under /v1/user/client/, by name
+    private val objects = ConcurrentHashMap<String, StoredObject>()
+    private val truncated = ConcurrentHashMap.newKeySet<String>()
+    private val uploads = AtomicInteger()
+    private val downloads = AtomicInteger()
+    private val inFlight = AtomicInteger()
+    private val maxInFlight = AtomicInteger()
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        saveDir = File(context.filesDir, "saves").apply { mkdirs() }
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                assertEquals("Bearer token", request.getHeader("Authorization"))
+                val path = request.requestUrl!!.encodedPath
+                if (request.method == "GET" && path == "/v1/user/client") return list()
+                if (!path.startsWith("/v1/user/client/")) return MockResponse().setResponseCode(404)
+                val name = path.removePrefix("/v1/user/client/")
+
+                val now = inFlight.incrementAndGet()
+                maxInFlight.accumulateAndGet(now) { a, b -> maxOf(a, b) }
+                try {
+                    Thread.sleep(20)
+                    return when (request.method) {
+                        "PUT" -> {
+                            uploads.incrementAndGet()
+                            val bytes = request.body.readByteArray()
+                            objects[name] = StoredObject(bytes, Instant.now())
+                            MockResponse().setResponseCode(201).setHeader("ETag", "\"${md5(bytes)}\"")
+                        }
+
+                        "GET" -> {
+                            val stored = objects[name] ?: return MockResponse().setResponseCode(404)
+                            downloads.incrementAndGet()
+                            MockResponse().setBody(Buffer().write(stored.bytes)).apply {
+                                if (name in truncated) setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY)
+                            }
+                        }
+
+                        else -> MockResponse().setResponseCode(405)
+                    }
+                } finally {
+                    inFlight.decrementAndGet()
+                }
+            }
+        }
+        server.start()
+        manager = GOGCloudSavesManager(context, server.url("/").toString().trimEnd('/'))
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        File(context.cacheDir, "gog_save_hashes").deleteRecursively()
+        saveDir.deleteRecursively()
+    }
+
+    private fun list(): MockResponse {
+        val items = JSONArray()
+        objects.forEach { (name, stored) ->
+            items.put(
+                JSONObject()
+                    .put("name", name)
+                    .put("hash", gzipMd5(stored.bytes))
+                    .put("last_modified", stored.lastModified.toString()),
+            )
+        }
+        return MockResponse().setBody(items.toString())
+    }
+
+    private fun md5(bytes: ByteArray): String =
+        MessageDigest.getInstance("MD5").digest(bytes).joinToString("") { "%02x".format(it) }
+
+    private fun gzipMd5(bytes: ByteArray): String {
+        val gzipped = ByteArrayOutputStream()
+        GZIPOutputStream(gzipped).use { it.write(bytes) }
+        return md5(gzipped.toByteArray())
+    }
+
+    /** A save folder of [count] files, a few of them around a megabyte, written a minute ago */
+    private fun writeSaves(count: Int) {
+        val random = Random(1)
+        repeat(count) { i ->
+            val name = if (i % 4 == 0) "slot$i/data.sav" else "save_$i.sav"
+            File(saveDir, name).apply {
+                parentFile!!.mkdirs()
+                writeBytes(random.nextBytes(if (i % 5 == 0) 1024 * 1024 + random.nextInt(4096) else random.nextInt(64 * 1024)))
+                setLastModified(System.currentTimeMillis() - 60_000)
+            }
+        }
+    }
+
+    private fun localFiles(): Map<String, ByteArray> = saveDir.walkTopDown()
+        .filter { it.isFile }
+        .associate { it.relativeTo(saveDir).invariantSeparatorsPath to it.readBytes() }
+
+    private fun sync(lastSyncTimestamp: Long = 0, preferredAction: String = "none"): Long = runBlocking {
+        manager.sync(saveDir.absolutePath, "saves", "client", credentials, lastSyncTimestamp, preferredAction)
+    }
+
+    @Test
+    fun firstSyncUploadsEverythingConcurrently() {
+        writeSaves(12)
+
+        assertTrue(sync() > 0)
+
+        assertEquals(12, uploads.get())
+        val local = localFiles()
+        assertEquals(local.keys.map { "saves/$it" }.toSet(), objects.keys)
+        local.forEach { (path, bytes) -> assertArrayEquals(path, bytes, objects.getValue("saves/$path").bytes) }
+        assertTrue("uploads should run concurrently", maxInFlight.get() > 1)
+        assertTrue(maxInFlight.get() <= GOGCloudSavesManager.TRANSFER_PARALLELISM)
+    }
+
+    @Test
+    fun identicalFilesAreNotTransferredAgain() {
+        writeSaves(8)
+        sync()
+        assertTrue(File(context.cacheDir, "gog_save_hashes").listFiles()!!.isNotEmpty())
+
+        // With no sync timestamp every cloud file looks newer, but the hashes match
+        assertTrue(sync(lastSyncTimestamp = 0) > 0)
+        assertEquals(8, uploads.get())
+        assertEquals(0, downloads.get())
+
+        // A forced download skips them too
+        sync(preferredAction = "download")
+        assertEquals(0, downloads.get())
+    }
+
+    @Test
+    fun conflictsTransferOnlyWhatChanged() {
+        writeSaves(8)
+        val lastSync = sync()
+        val later = Instant.ofEpochSecond(lastSync + 5)
+
+        // Changed locally, changed in the cloud, and new in the cloud
+        File(saveDir, "save_1.sav").apply {
+            writeBytes("local progress".toByteArray())
+            setLastModified(later.toEpochMilli())
+        }
+        objects["saves/save_2.sav"] = StoredObject("cloud progress".toByteArray(), later)
+        objects["saves/slot9/new.sav"] = StoredObject(Random(2).nextBytes(300_000), later)
+
+        assertTrue(sync(lastSyncTimestamp = lastSync) > 0)
+
+        assertEquals(9, uploads.get())
+        assertEquals(2, downloads.get())
+        assertArrayEquals("local progress".toByteArray(), objects.getValue("saves/save_1.sav").bytes)
+        val local = localFiles()
+        assertArrayEquals("cloud progress".toByteArray(), local.getValue("save_2.sav"))
+        assertArrayEquals(objects.getValue("saves/slot9/new.sav").bytes, local.getValue("slot9/new.sav"))
+        assertEquals(later.toEpochMilli(), File(saveDir, "save_2.sav").lastModified())
+        assertFalse(saveDir.walkTopDown().any { it.name.endsWith(".part") })
+    }
+
+    @Test
+    fun downloadsEverythingIntoAnEmptyFolder() {
+        val random = Random(3)
+        repeat(10) { i -> objects["saves/dir$i/save.sav"] = StoredObject(random.nextBytes(200_000), Instant.now()) }
+
+        assertTrue(sync() > 0)
+
+        assertEquals(10, downloads.get())
+        assertTrue(maxInFlight.get() in 2..GOGCloudSavesManager.TRANSFER_PARALLELISM)
+        val local = localFiles()
+        assertEquals(10, local.size)
+        local.forEach { (path, bytes) -> assertArrayEquals(path, objects.getValue("saves/$path").bytes, bytes) }
+    }
+
+    @Test
+    fun partialDownloadsAreNeitherKeptNorUploaded() {
+        objects["saves/whole.sav"] = StoredObject(Random(5).nextBytes(200_000), Instant.now())
+        objects["saves/cut.sav"] = StoredObject(Random(6).nextBytes(500_000), Instant.now())
+        truncated += "saves/cut.sav"
+        // Left behind by a sync that was killed mid-download
+        File(saveDir, "old.sav.part").writeBytes(Random(7).nextBytes(1000))
+
+        sync()
+
+        assertEquals(setOf("whole.sav", "old.sav.part"), saveDir.list()!!.toSet())
+        assertEquals(0, uploads.get())
+        assertFalse(objects.keys.any { it.endsWith(".part") })
+    }
+
+    @Test
+    fun streamedGzipMd5MatchesTheBufferedOne() {
+        val bytes = Random(4).nextBytes(3 * 1024 * 1024 + 17)
+        val file = File(saveDir, "big.sav").apply { writeBytes(bytes) }
+        val streamed = GOGCloudSavesManager.gzipMd5(file.toPath()).joinToString("") { "%02x".format(it) }
+        assertEquals(gzipMd5(bytes), streamed)
+    }
+}
@@ -320,6 +320,25 @@ class GOGManifestParserTest {
         assertEquals("https://cdn2.gog.com/product2/11/22/11223344aabbccdd", result["11223344aabbccdd"])
     }
 
+    @Test
+    fun testBuildChunkUrlsWithProducts_keepsAllCdnUrlsInOrder() {
+        val chunks = listOf("aabbccdd11223344")
+        val chunkToProductMap = mapOf("aabbccdd11223344" to "12345")
+        val productUrlMap = mapOf(
+            "12345" to listOf("https://cdn1.gog.com/product1", "https://cdn2.gog.com/product1")
+        )
+
+        val result = parser.buildChunkUrlsWithProducts(chunks, chunkToProductMap, productUrlMap)
+
+        assertEquals(
+            listOf(
+                "https://cdn1.gog.com/product1/aa/bb/aabbccdd11223344",
+                "https://cdn2.gog.com/product1/aa/bb/aabbccdd11223344",
+            ),
+            result["aabbccdd11223344"],
+        )
+    }
+
     @Test
     fun testBuildChunkUrlMapWithProducts_missingProduct() {
         val chunks = listOf("aabbccdd11223344")
@@ -0,0 +1,225 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class ArtworkCacheTest {
+
+    private lateinit var root: File
+
+    private var now = 1_700_000_000_000L
+
+    // Every URL serves 4 KB of artwork, unless it's listed as missing; file URLs serve the file
+    private val fetched = ConcurrentHashMap<String, AtomicInteger>()
+    private val missing = mutableSetOf<String>()
+
+    private suspend fun fetch(url: String): ByteArray? {
+        fetched.getOrPut(url) { AtomicInteger() }.incrementAndGet()
+        ArtworkCache.localFile(url)?.let { return it.readBytes() }
+        delay(20)
+        return if (url in missing) null else ByteArray(4096) { url.hashCode().toByte() }
+    }
+
+    // A tile is as many bytes as it is pixels wide
+    private var canScale = true
+    private fun scale(bytes: ByteArray, width: Int): ByteArray? = if (canScale) bytes.copyOf(width) else null
+
+    @Before
+    fun setUp() {
+        root = Files.createTempDirectory("artwork-cache").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        root.deleteRecursively()
+    }
+
+    private fun fetches() = fetched.values.sumOf { it.get() }
+
+    private fun cache(dir: File = File(root, "tiles"), maxBytes: Long = ArtworkCache.DEFAULT_MAX_BYTES) =
+        ArtworkCache(dir, ::fetch, ::scale, maxBytes = maxBytes, clock = { now })
+
+    private fun url(i: Int) = "https://cdn.example/apps/$i/library_600x900.jpg"
+
+    @Test
+    fun widthsShareBuckets() {
+        assertEquals(160, ArtworkCache.bucketFor(1))
+        assertEquals(320, ArtworkCache.bucketFor(300))
+        assertEquals(320, ArtworkCache.bucketFor(320))
+        assertEquals(480, ArtworkCache.bucketFor(321))
+        assertEquals(1280, ArtworkCache.bucketFor(4000))
+    }
+
+    @Test
+    fun tilesAreFetchedOnceAndStoredScaled() = runBlocking {
+        val cache = cache()
+
+        val tile = cache.tile(url(1), 300)!!
+        assertEquals(320L, tile.length())
+        assertEquals(tile, cache.tile(url(1), 310))
+        assertEquals(tile, cache.cached(url(1), 290))
+        assertEquals(1, fetches())
+
+        // Another size bucket is its own tile
+        assertEquals(640L, cache.tile(url(1), 600)!!.length())
+        assertEquals(2, fetches())
+    }
+
+    @Test
+    fun racingRequestsShareOneFetch() = runBlocking {
+        val cache = cache()
+
+        val tiles = coroutineScope { List(20) { async { cache.tile(url(it % 2), 200) } }.awaitAll() }
+
+        assertEquals(2, tiles.toSet().size)
+        assertEquals(1, fetched.getValue(url(0)).get())
+        assertEquals(1, fetched.getValue(url(1)).get())
+    }
+
+    @Test
+    fun unscalableImagesAreKeptAsFetched() = runBlocking {
+        canScale = false
+        assertEquals(4096L, cache().tile(url(1), 300)!!.length())
+    }
+
+    @Test
+    fun failedFetchesAreRetried() = runBlocking {
+        val cache = cache()
+        missing += url(1)
+        assertNull(cache.tile(url(1), 200))
+
+        missing.clear()
+        assertNotNull(cache.tile(url(1), 200))
+        assertEquals(2, fetched.getValue(url(1)).get())
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsedPastTheLimit() = runBlocking {
+        // Room for four 240-pixel tiles
+        val cache = cache(maxBytes = 4 * 240)
+        for (i in 0 until 4) {
+            cache.tile(url(i), 240)
+            now += 120_000
+        }
+        // Using the oldest makes the second oldest the one to go
+        cache.tile(url(0), 240)
+        now += 120_000
+
+        cache.tile(url(4), 240)
+
+        assertEquals(4L * 240, cache.size)
+        assertNotNull(cache.cached(url(0), 240))
+        assertNull(cache.cached(url(1), 240))
+        assertEquals(4, File(root, "tiles").listFiles()!!.size)
+    }
+
+    @Test
+    fun recencySurvivesARestart() = runBlocking {
+        val dir = File(root, "tiles")
+        val first = cache(dir, maxBytes = 3 * 240)
+        for (i in 0 until 3) {
+            first.tile(url(i), 240)
+            now += 120_000
+        }
+        first.cached(url(0), 240)
+        now += 120_000
+
+        // Reloaded with the same limit: tile 1 is now the least recently used
+        val second = cache(dir, maxBytes = 3 * 240)
+        assertEquals(3L * 240, second.size)
+        second.tile(url(3), 240)
+        assertNull(second.cached(url(1), 240))
+        assertNotNull(second.cached(url(0), 240))
+        assertEquals(4, fetches())
+
+        // A smaller limit trims on load
+        assertEquals(240L, cache(dir, maxBytes = 300).size)
+    }
+
+    @Test
+    fun tilesDeletedBehindItsBackAreFetchedAgain() = runBlocking {
+        val cache = cache()
+        cache.tile(url(1), 200)!!.delete()
+
+        assertNull(cache.cached(url(1), 200))
+        assertNotNull(cache.tile(url(1), 200))
+        assertEquals(2, fetches())
+        assertEquals(240L, cache.size)
+    }
+
+    @Test
+    fun replacedLocalArtworkGetsANewTile() = runBlocking {
+        val art = File(root, "grid.png").apply { writeBytes(ByteArray(4096) { 1 }); setLastModified(now - 60_000) }
+        val url = "file://${art.path}"
+        val cache = cache()
+        val key = ArtworkCache.sourceKey(url)
+
+        assertArrayEquals(ByteArray(320) { 1 }, cache.tile(url, 300)!!.readBytes())
+        assertNotNull(cache.cached(url, 300))
+        assertEquals(1, fetches())
+
+        // Same name, new image, as the SteamGridDB download writes it
+        art.writeBytes(ByteArray(4096) { 2 })
+        art.setLastModified(now)
+
+        assertNotEquals(key, ArtworkCache.sourceKey(url))
+        assertArrayEquals(ByteArray(320) { 2 }, cache.tile(url, 300)!!.readBytes())
+        assertEquals(2, fetches())
+    }
+
+    @Test
+    fun encodedFileUrlsPointAtTheFile() = runBlocking {
+        val art = File(root, "My Game/grid.png").apply {
+            parentFile!!.mkdirs()
+            writeBytes(ByteArray(4096) { 3 })
+            setLastModified(now - 60_000)
+        }
+        // As Uri.fromFile writes it, with the space escaped
+        val url = "file://${art.toURI().rawPath}"
+        assertTrue(url.contains("My%20Game"))
+        assertEquals(art, ArtworkCache.localFile(url))
+
+        val key = ArtworkCache.sourceKey(url)
+        art.setLastModified(now)
+        assertNotEquals(key, ArtworkCache.sourceKey(url))
+        assertArrayEquals(ByteArray(320) { 3 }, cache().tile(url, 300)!!.readBytes())
+    }
+
+    @Test
+    fun prefetchFetchesOnlyWhatIsMissing() = runBlocking {
+        val cache = cache()
+        cache.tile(url(0), 200)
+
+        cache.prefetch((0 until 10).map(::url), 200)
+        cache.awaitPrefetch()
+
+        assertEquals(10, fetches())
+        (0 until 10).forEach { assertEquals(1, fetched.getValue(url(it)).get()) }
+        (0 until 10).forEach { assertNotNull(cache.cached(url(it), 200)) }
+    }
+
+    @Test
+    fun newerPrefetchReplacesAnUnfinishedOne() = runBlocking {
+        val cache = cache()
+
+        // The user flings past the first page before much of it is fetched
+        cache.prefetch((0 until 40).map(::url), 200)
+        delay(30)
+        cache.prefetch((100 until 104).map(::url), 200)
+        cache.awaitPrefetch()
+
+        (100 until 104).forEach { assertNotNull(cache.cached(url(it), 200)) }
+        assertTrue("the stale page should be abandoned", fetches() < 40)
+    }
+}
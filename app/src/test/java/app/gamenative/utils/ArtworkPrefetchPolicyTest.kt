@@ -0,0 +1,54 @@
+package app.gamenative.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ArtworkPrefetchPolicyTest {
+
+    @Test
+    fun prefetchesThePageBelowWhenScrollingDown() {
+        val policy = ArtworkPrefetchPolicy(pageSize = 6)
+
+        assertEquals((12..17).toList(), policy.onScroll(firstVisible = 0, lastVisible = 11, itemCount = 100))
+        // The moved page replaces the previous prefetch, so it's handed out whole
+        assertEquals((14..19).toList(), policy.onScroll(firstVisible = 2, lastVisible = 13, itemCount = 100))
+        assertEquals(emptyList<Int>(), policy.onScroll(firstVisible = 2, lastVisible = 13, itemCount = 100))
+    }
+
+    @Test
+    fun pagesCutShortAreHandedOutAgain() {
+        val policy = ArtworkPrefetchPolicy(pageSize = 4)
+        policy.onScroll(firstVisible = 0, lastVisible = 9, itemCount = 100)
+        // Flinging on cancels the first prefetch before 10..13 were fetched, then the user comes back
+        policy.onScroll(firstVisible = 20, lastVisible = 29, itemCount = 100)
+
+        assertEquals(listOf(13, 12, 11, 10), policy.onScroll(firstVisible = 14, lastVisible = 23, itemCount = 100))
+    }
+
+    @Test
+    fun prefetchesThePageAboveWhenScrollingUp() {
+        val policy = ArtworkPrefetchPolicy(pageSize = 4)
+        policy.onScroll(firstVisible = 50, lastVisible = 61, itemCount = 100)
+
+        assertEquals(listOf(39, 38, 37, 36), policy.onScroll(firstVisible = 40, lastVisible = 51, itemCount = 100))
+    }
+
+    @Test
+    fun staysWithinTheList() {
+        val policy = ArtworkPrefetchPolicy(pageSize = 10)
+
+        assertEquals(listOf(18, 19), policy.onScroll(firstVisible = 6, lastVisible = 17, itemCount = 20))
+        assertEquals(listOf(1, 0), policy.onScroll(firstVisible = 2, lastVisible = 13, itemCount = 20))
+        assertEquals(emptyList<Int>(), policy.onScroll(firstVisible = 0, lastVisible = -1, itemCount = 0))
+    }
+
+    @Test
+    fun resetHandsItemsOutAgain() {
+        val policy = ArtworkPrefetchPolicy(pageSize = 3)
+        policy.onScroll(firstVisible = 0, lastVisible = 5, itemCount = 50)
+
+        policy.reset()
+
+        assertEquals(listOf(6, 7, 8), policy.onScroll(firstVisible = 0, lastVisible = 5, itemCount = 50))
+    }
+}
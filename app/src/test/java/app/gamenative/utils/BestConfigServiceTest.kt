@@ -7,10 +7,21 @@ import app.gamenative.PrefManager
 import com.winlator.container.Container
 import com.winlator.container.ContainerData
 import com.winlator.contents.AdrenotoolsManager
+import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.runBlocking
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.JsonObject
 import kotlinx.serialization.json.jsonObject
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.json.JSONObject
+import org.junit.After
 import org.junit.Assert.*
 import org.junit.Before
 import org.junit.Test
@@ -24,6 +35,14 @@ class BestConfigServiceTest {
     private lateinit var context: Context
     private lateinit var resources: Resources
 
+    // Local best-config API, answering with whatever api returns
+    private lateinit var server: MockWebServer
+    private lateinit var defaultApiBaseUrl: String
+    private var api: (RecordedRequest) -> MockResponse = { MockResponse().setResponseCode(500) }
+    private val singleLookups = AtomicInteger()
+    private val batchLookups = AtomicInteger()
+    private var now = 1_700_000_000_000L
+
     // Sample API responses from the user
     private val cs2Adreno735Response = """
         {"bestConfig":{"id":"STEAM_730","name":"","drives":"D:/storage/emulated/0/DownloadE:/data/data/app.gamenative/storageA:/data/user/0/app.gamenative/Steam/steamapps/common/Counter-Strike Global Offensive","lc_all":"en_US.utf8","cpuList":"0,1,2,3,4,5,6,7","envVars":"ZINK_DESCRIPTORS=lazy ZINK_DEBUG=compact MESA_SHADER_CACHE_DISABLE=false MESA_SHADER_CACHE_MAX_SIZE=512MB mesa_glthread=true WINEESYNC=1 MESA_VK_WSI_PRESENT_MODE=mailbox TU_DEBUG=noconform DXVK_FRAME_RATE=60","showFPS":true,"useDRI3":false,"emulator":"Box64","execArgs":"","forceDlc":false,"language":"english","rcfileId":0,"dxwrapper":"dxvk","extraData":{"dxwrapper":"dxvk-async-1.10.3","appVersion":"6","imgVersion":"24","audioDriver":"pulseaudio","box64Version":"0.3.6","desktopTheme":"LIGHT,IMAGE,#0277bd,640x480","wincomponents":"direct3d=1,directsound=1,directmusic=0,directshow=0,directplay=0,vcrun2010=1,wmdecoder=1,opengl=0","config_changed":"false","fexcoreVersion":"2507","startupSelection":"1","lastInstalledMainWrapper":"wrapper-leegao","discord_support_prompt_shown":"true"},"inputType":3,"steamType":"normal","wow64Mode":true,"screenSize":"640x480","audioDriver":"pulseaudio","box64Preset":"PERFORMANCE","box86Preset":"COMPATIBILITY","installPath":"","wineVersion":"proton-9.0-x86_64","box64Version":"0.3.6","box86Version":"0.3.2","cpuListWoW64":"0,1,2,3,4,5,6,7","desktopTheme":"LIGHT,IMAGE,#0277bd","useLegacyDRM":false,"midiSoundFont":"","wincomponents":"direct3d=1,directsound=1,directmusic=0,directshow=0,directplay=0,vcrun2010=1,wmdecoder=1,opengl=0","executablePath":"game/bin/win64/cs2.exe","fexcoreVersion":"2507","graphicsDriver":"wrapper-leegao","needsUnpacking":false,"dxwrapperConfig":"version=async-1.10.3,framerate=0,maxDeviceMemory=0,async=1,asyncCache=0,vkd3dVersion=2.6,vkd3dLevel=12_1","launchRealSteam":true,"sessionMetadata":{"avg_fps":113.9,"session_length_sec":208},"touchscreenMode":false,"containerVariant":"bionic","dinputMapperType":1,"sdlControllerAPI":true,"startupSelection":1,"allowSteamUpdates":true,"controllerMapping":"","disableMouseInput":false,"primaryController":1,"emulateKeyboardMouse":false,"graphicsDriverConfig":"version=System;blacklistedExtensions=;maxDeviceMemory=0;adrenotoolsTurnip=1;frameSync=Normal","graphicsDriverVersion":"","controllerEmulationBindings":{"A":"KEY_SPACE","B":"KEY_E","X":"KEY_Q","Y":"KEY_TAB","L1":"KEY_SHIFT_L","L2":"MOUSE_LEFT_BUTTON","L3":"NONE","R1":"KEY_CTRL_R","R2":"MOUSE_RIGHT_BUTTON","R3":"NONE","START":"KEY_ENTER","SELECT":"KEY_ESC","DPAD_UP":"KEY_UP","DPAD_DOWN":"KEY_DOWN","DPAD_LEFT":"KEY_LEFT","DPAD_RIGHT":"KEY_RIGHT"}},"matchType":"fallback_match","matchedGpu":"Mali-G57 MC2","matchedDeviceId":7929}
@@ -72,6 +91,30 @@ class BestConfigServiceTest {
 
         // Initialize PrefManager
         PrefManager.init(context)
+
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                if (request.path!!.endsWith("/batch")) batchLookups.incrementAndGet() else singleLookups.incrementAndGet()
+                return api(request)
+            }
+        }
+        server.start()
+        defaultApiBaseUrl = BestConfigService.apiBaseUrl
+        BestConfigService.apiBaseUrl = server.url("/api/best-config").toString()
+        BestConfigService.cacheDir = File(context.cacheDir, "best_config").apply { deleteRecursively() }
+        BestConfigService.clock = { now }
+        BestConfigService.clearMemoryCache()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        BestConfigService.apiBaseUrl = defaultApiBaseUrl
+        BestConfigService.cacheDir?.deleteRecursively()
+        BestConfigService.cacheDir = null
+        BestConfigService.clock = System::currentTimeMillis
+        BestConfigService.clearMemoryCache()
     }
 
     /**
@@ -1011,5 +1054,183 @@ class BestConfigServiceTest {
 
         assertTrue("Result should be empty map when wineVersion is missing from bestConfig", result == null || result.isEmpty())
     }
-}
 
+    // Answers single lookups from responses by game name, with an ETag per game
+    private fun serveConfigs(responses: Map<String, String>, batch: Boolean) {
+        api = { request ->
+            val body = JSONObject(request.body.clone().readUtf8())
+            when {
+                request.path!!.endsWith("/batch") && !batch -> MockResponse().setResponseCode(404)
+                request.path!!.endsWith("/batch") -> {
+                    val names = body.getJSONArray("gameNames")
+                    val result = JSONObject()
+                    for (i in 0 until names.length()) {
+                        responses[names.getString(i)]?.let { result.put(names.getString(i), JSONObject(it)) }
+                    }
+                    MockResponse().setBody(result.toString())
+                }
+                else -> {
+                    val gameName = body.getString("gameName")
+                    val etag = "\"${gameName.hashCode()}\""
+                    when {
+                        gameName !in responses -> MockResponse().setResponseCode(404)
+                        request.getHeader("If-None-Match") == etag -> MockResponse().setResponseCode(304)
+                        else -> MockResponse().setHeader("ETag", etag).setBody(responses.getValue(gameName))
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    fun fetchBestConfig_cachedConfigSurvivesRestart() = runBlocking {
+        serveConfigs(mapOf("Counter-Strike 2" to cs2MaliExactMatchResponse), batch = false)
+
+        val first = BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+        BestConfigService.clearMemoryCache()
+        val second = BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+
+        assertEquals("exact_gpu_match", first?.matchType)
+        assertEquals(first, second)
+        assertEquals(1, singleLookups.get())
+    }
+
+    @Test
+    fun fetchBestConfig_revalidatesExpiredConfigWithEtag() = runBlocking {
+        serveConfigs(mapOf("Counter-Strike 2" to cs2MaliExactMatchResponse), batch = false)
+        val first = BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+
+        now += 25 * 60 * 60 * 1000L
+        BestConfigService.clearMemoryCache()
+        val revalidated = BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+
+        assertEquals(first, revalidated)
+        assertEquals(2, singleLookups.get())
+        server.takeRequest()
+        assertNotNull(server.takeRequest().getHeader("If-None-Match"))
+
+        // The 304 makes the config fresh again
+        BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+        assertEquals(2, singleLookups.get())
+    }
+
+    @Test
+    fun fetchBestConfig_servesExpiredConfigWhenApiFails() = runBlocking {
+        serveConfigs(mapOf("Counter-Strike 2" to cs2MaliExactMatchResponse), batch = false)
+        BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+
+        now += 25 * 60 * 60 * 1000L
+        api = { MockResponse().setResponseCode(503) }
+
+        assertEquals("exact_gpu_match", BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")?.matchType)
+        assertNull(BestConfigService.fetchBestConfig("Dota 2", "Mali-G57 MC2"))
+    }
+
+    @Test
+    fun fetchBestConfig_concurrentLookupsShareOneRequest() = runBlocking {
+        api = { MockResponse().setBody(cs2MaliExactMatchResponse).setBodyDelay(200, java.util.concurrent.TimeUnit.MILLISECONDS) }
+
+        val results = coroutineScope {
+            List(10) { async { BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2") } }.awaitAll()
+        }
+
+        assertEquals(1, results.toSet().size)
+        assertNotNull(results.first())
+        assertEquals(1, singleLookups.get())
+    }
+
+    @Test
+    fun fetchBestConfigs_fetchesUncachedGamesInOneBatch() = runBlocking {
+        serveConfigs(
+            mapOf(
+                "Counter-Strike 2" to cs2MaliExactMatchResponse,
+                "Dota 2" to dota2Adreno830ExactMatchResponse,
+                "Hades II" to hades2Adreno835FamilyMatchResponse,
+            ),
+            batch = true,
+        )
+        BestConfigService.fetchBestConfig("Hades II", "Adreno (TM) 830")
+
+        val configs = BestConfigService.fetchBestConfigs(
+            listOf("Hades II", "Counter-Strike 2", "Dota 2", "Unknown Game"),
+            "Adreno (TM) 830",
+        )
+
+        assertEquals(setOf("Hades II", "Counter-Strike 2", "Dota 2"), configs.keys)
+        assertEquals("gpu_family_match", configs.getValue("Hades II").matchType)
+        assertEquals(1, batchLookups.get())
+        server.takeRequest()
+        val batchRequest = JSONObject(server.takeRequest().body.readUtf8())
+        assertEquals(3, batchRequest.getJSONArray("gameNames").length())
+
+        // Games fetched in the batch are cached for single lookups too
+        assertEquals(configs["Dota 2"], BestConfigService.fetchBestConfig("Dota 2", "Adreno (TM) 830"))
+        assertEquals(1, singleLookups.get())
+    }
+
+    @Test
+    fun fetchBestConfigs_fallsBackToSingleLookupsWithoutBatchEndpoint() = runBlocking {
+        serveConfigs(
+            mapOf(
+                "Counter-Strike 2" to cs2MaliExactMatchResponse,
+                "Dota 2" to dota2MaliResponse,
+                "Detective Dotson" to detectiveDotsonMaliResponse,
+            ),
+            batch = false,
+        )
+
+        val configs = BestConfigService.fetchBestConfigs(listOf("Counter-Strike 2", "Dota 2"), "Mali-G57 MC2")
+        assertEquals(setOf("Counter-Strike 2", "Dota 2"), configs.keys)
+        assertEquals(1, batchLookups.get())
+        assertEquals(2, singleLookups.get())
+
+        // The missing endpoint isn't asked for again
+        val more = BestConfigService.fetchBestConfigs(listOf("Dota 2", "Detective Dotson"), "Mali-G57 MC2")
+        assertEquals(setOf("Dota 2", "Detective Dotson"), more.keys)
+        assertEquals(1, batchLookups.get())
+        assertEquals(3, singleLookups.get())
+    }
+
+    @Test
+    fun prefetchBestConfigs_onlyUsesTheBatchEndpoint() = runBlocking {
+        serveConfigs(mapOf("Counter-Strike 2" to cs2MaliExactMatchResponse, "Dota 2" to dota2MaliResponse), batch = false)
+
+        assertTrue(BestConfigService.prefetchBestConfigs(listOf("Counter-Strike 2", "Dota 2"), "Mali-G57 MC2").isEmpty())
+        assertEquals(1, batchLookups.get())
+        assertEquals(0, singleLookups.get())
+
+        // Without a batch endpoint, later pages aren't prefetched at all
+        BestConfigService.prefetchBestConfigs(listOf("Dota 2"), "Mali-G57 MC2")
+        assertEquals(1, batchLookups.get())
+        assertEquals(0, singleLookups.get())
+    }
+
+    @Test
+    fun fetchBestConfigs_failedBatchFallsBackToSingleLookups() = runBlocking {
+        serveConfigs(mapOf("Counter-Strike 2" to cs2MaliExactMatchResponse), batch = false)
+        BestConfigService.fetchBestConfig("Counter-Strike 2", "Mali-G57 MC2")
+        now += 25 * 60 * 60 * 1000L
+        BestConfigService.clearMemoryCache()
+
+        // The batch endpoint errors out, and so does the single lookup of the expired game
+        api = { request ->
+            val body = JSONObject(request.body.clone().readUtf8())
+            when {
+                request.path!!.endsWith("/batch") -> MockResponse().setResponseCode(500)
+                body.getString("gameName") == "Dota 2" -> MockResponse().setBody(dota2MaliResponse)
+                else -> MockResponse().setResponseCode(503)
+            }
+        }
+
+        val configs = BestConfigService.fetchBestConfigs(listOf("Counter-Strike 2", "Dota 2"), "Mali-G57 MC2")
+
+        assertEquals(setOf("Counter-Strike 2", "Dota 2"), configs.keys)
+        assertEquals("exact_gpu_match", configs.getValue("Counter-Strike 2").matchType)
+        assertEquals(1, batchLookups.get())
+        assertEquals(3, singleLookups.get())
+
+        // A server error isn't a missing endpoint, so the next page tries the batch again
+        BestConfigService.fetchBestConfigs(listOf("Hades II"), "Mali-G57 MC2")
+        assertEquals(2, batchLookups.get())
+    }
+}
@@ -0,0 +1,148 @@
+package app.gamenative.utils
+
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class CdnSelectorTest {
+
+    private val body = "x".repeat(64 * 1024)
+    private val servers = mutableListOf<MockWebServer>()
+    private lateinit var client: OkHttpClient
+    private var savedScores = "{}"
+
+    private fun newSelector() = CdnSelector(
+        clock = System::currentTimeMillis,
+        loadScores = { savedScores },
+        saveScores = { savedScores = it },
+    )
+
+    /** Starts a stand-in CDN host; every [failEvery]th request fails and bodies take [delayMs]. */
+    private fun startHost(delayMs: Long = 0, failEvery: Int = 0): Pair<MockWebServer, AtomicInteger> {
+        val hits = AtomicInteger()
+        val server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val n = hits.incrementAndGet()
+                if (failEvery > 0 && n % failEvery == 0) {
+                    return MockResponse().setResponseCode(503)
+                }
+                return MockResponse().setBody(body).setBodyDelay(delayMs, TimeUnit.MILLISECONDS)
+            }
+        }
+        server.start()
+        servers += server
+        return server to hits
+    }
+
+    private suspend fun download(selector: CdnSelector, hosts: List<MockWebServer>, path: String): String =
+        selector.fetch(
+            candidates = hosts,
+            hostOf = { it.url("/").toString() },
+            sizeOf = { it.length.toLong() },
+        ) { server ->
+            val request = Request.Builder().url(server.url(path)).build()
+            client.newCall(request).awaitResponse { response ->
+                if (!response.isSuccessful) throw IOException("HTTP ${response.code}")
+                response.body.string()
+            }
+        }
+
+    @Before
+    fun setUp() {
+        client = OkHttpClient.Builder()
+            .dispatcher(okhttp3.Dispatcher().apply { maxRequestsPerHost = 32 })
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        servers.forEach { it.shutdown() }
+    }
+
+    @Test
+    fun trafficFavoursFastHealthyHost() = runBlocking(Dispatchers.IO) {
+        val (fast, fastHits) = startHost()
+        val (slow, slowHits) = startHost(delayMs = 150)
+        val (flaky, flakyHits) = startHost(failEvery = 2)
+        val hosts = listOf(slow, flaky, fast)
+        val selector = newSelector()
+
+        repeat(20) { batch ->
+            (0 until 4).map { i ->
+                async { download(selector, hosts, "/chunk/$batch/$i") }
+            }.awaitAll().forEach { assertEquals(body, it) }
+        }
+
+        assertTrue(
+            "fast=${fastHits.get()} slow=${slowHits.get()} flaky=${flakyHits.get()}",
+            fastHits.get() > slowHits.get() && fastHits.get() > flakyHits.get(),
+        )
+        val fastUrl = fast.url("/").toString()
+        val flakyUrl = flaky.url("/").toString()
+        assertTrue(selector.errorScore(flakyUrl) > selector.errorScore(fastUrl))
+    }
+
+    @Test
+    fun stragglerIsHedgedToAnotherHost() = runBlocking(Dispatchers.IO) {
+        val (stalled, _) = startHost(delayMs = 10_000)
+        val (healthy, healthyHits) = startHost()
+        val selector = newSelector()
+        val stalledUrl = stalled.url("/").toString()
+        val healthyUrl = healthy.url("/").toString()
+
+        // History says the stalled host is the faster one, and requests usually take ~50ms
+        repeat(20) {
+            selector.recordSuccess(stalledUrl, 1_000_000, 50)
+            selector.recordSuccess(healthyUrl, 100_000, 50)
+        }
+
+        val startMs = System.currentTimeMillis()
+        assertEquals(body, download(selector, listOf(stalled, healthy), "/chunk"))
+        val elapsedMs = System.currentTimeMillis() - startMs
+
+        assertEquals(1, healthyHits.get())
+        assertTrue("took ${elapsedMs}ms", elapsedMs < 5_000)
+        assertTrue(selector.errorScore(stalledUrl) > 0.0)
+    }
+
+    @Test
+    fun allHostsFailingSurfacesLastError() = runBlocking(Dispatchers.IO) {
+        val (first, firstHits) = startHost(failEvery = 1)
+        val (second, secondHits) = startHost(failEvery = 1)
+        val selector = newSelector()
+
+        val error = runCatching { download(selector, listOf(first, second), "/chunk") }.exceptionOrNull()
+
+        assertTrue(error is IOException)
+        assertEquals(1, firstHits.get())
+        assertEquals(1, secondHits.get())
+    }
+
+    @Test
+    fun scoresPersistAcrossSessions() {
+        val selector = newSelector()
+        selector.recordSuccess("https://good.example/", 1_000_000, 100)
+        selector.recordFailure("https://bad.example/")
+        selector.persist()
+
+        val restored = newSelector()
+        assertEquals(10_000_000.0, restored.throughput("https://good.example/"), 1.0)
+        assertTrue(restored.errorScore("https://bad.example/") > 0.2)
+        assertEquals(0, restored.choose(listOf("https://good.example/", "https://bad.example/")))
+    }
+}
@@ -0,0 +1,181 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ExeIconExtractorTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private lateinit var cacheDir: File
+
+    @Before
+    fun setUp() {
+        cacheDir = tmp.newFolder("icon-cache")
+        ExeIconExtractor.cacheDir = cacheDir
+    }
+
+    @After
+    fun tearDown() {
+        ExeIconExtractor.cacheDir = null
+    }
+
+    private class Image(val size: Int, val bitCount: Int, val fill: Byte, val length: Int = 1024)
+
+    /**
+     * Writes a PE32 file with one .rsrc section at [rsrcOffset] holding an icon group of [images],
+     * then grows the file to [totalSize] without writing the rest, as packed game data would.
+     */
+    private fun writePe(file: File, images: List<Image>, rsrcOffset: Long = 0x400, totalSize: Long = 0) {
+        val rsrcRva = 0x1000
+        val rsrc = ByteBuffer.allocate(64 * 1024 + images.sumOf { it.length }).order(ByteOrder.LITTLE_ENDIAN)
+        var next = 0
+        fun alloc(size: Int): Int = next.also { next = (next + size + 3) and 3.inv() }
+        fun dir(at: Int, vararg entries: Pair<Int, Int>) {
+            rsrc.putShort(at + 14, entries.size.toShort())
+            entries.forEachIndexed { i, (id, target) ->
+                rsrc.putInt(at + 16 + i * 8, id)
+                rsrc.putInt(at + 16 + i * 8 + 4, target)
+            }
+        }
+        fun subdir(offset: Int) = offset or 0x80000000.toInt()
+        // The entry of a type directory: ID -> Lang -> data entry
+        fun resource(id: Int, data: ByteArray): Pair<Int, Int> {
+            val langDir = alloc(16 + 8)
+            val entry = alloc(16)
+            val at = alloc(data.size)
+            rsrc.position(at)
+            rsrc.put(data)
+            rsrc.putInt(entry, rsrcRva + at)
+            rsrc.putInt(entry + 4, data.size)
+            dir(langDir, 0x409 to entry)
+            return id to subdir(langDir)
+        }
+
+        val root = alloc(16 + 2 * 8)
+        val iconTypeDir = alloc(16 + images.size * 8)
+        val groupTypeDir = alloc(16 + 8)
+        val icons = images.mapIndexed { i, image -> resource(i + 1, ByteArray(image.length) { image.fill }) }
+        dir(iconTypeDir, *icons.toTypedArray())
+
+        val group = ByteBuffer.allocate(6 + images.size * 14).order(ByteOrder.LITTLE_ENDIAN)
+        group.putShort(0).putShort(1).putShort(images.size.toShort())
+        images.forEachIndexed { i, image ->
+            val edge = (if (image.size >= 256) 0 else image.size).toByte()
+            group.put(edge).put(edge)
+                .put(0).put(0).putShort(1).putShort(image.bitCount.toShort())
+                .putInt(image.length).putShort((i + 1).toShort())
+        }
+        dir(groupTypeDir, resource(1, group.array()))
+        dir(root, 3 to subdir(iconTypeDir), 14 to subdir(groupTypeDir))
+        val rsrcSize = next
+
+        val headers = ByteBuffer.allocate(0x400).order(ByteOrder.LITTLE_ENDIAN)
+        headers.put(0, 'M'.code.toByte()).put(1, 'Z'.code.toByte()).putInt(0x3C, 0x80)
+        headers.putInt(0x80, 0x00004550)
+        headers.putShort(0x84, 0x14C).putShort(0x86, 1).putShort(0x94, 224)
+        val optional = 0x98
+        headers.putShort(optional, 0x10B)
+        headers.putInt(optional + 96 + 2 * 8, rsrcRva).putInt(optional + 96 + 2 * 8 + 4, rsrcSize)
+        val section = optional + 224
+        ".rsrc".forEachIndexed { i, c -> headers.put(section + i, c.code.toByte()) }
+        headers.putInt(section + 8, rsrcSize).putInt(section + 12, rsrcRva)
+        headers.putInt(section + 16, rsrcSize).putInt(section + 20, rsrcOffset.toInt())
+
+        RandomAccessFile(file, "rw").use { raf ->
+            raf.write(headers.array())
+            raf.seek(rsrcOffset)
+            raf.write(rsrc.array(), 0, rsrcSize)
+            if (totalSize > raf.length()) raf.setLength(totalSize)
+        }
+    }
+
+    private fun readIco(file: File): Triple<Int, Int, ByteArray> {
+        val buf = ByteBuffer.wrap(file.readBytes()).order(ByteOrder.LITTLE_ENDIAN)
+        assertEquals(1, buf.getShort(2).toInt())
+        assertEquals(1, buf.getShort(4).toInt())
+        val length = buf.getInt(14)
+        val offset = buf.getInt(18)
+        assertEquals(file.length(), (offset + length).toLong())
+        return Triple(buf.get(6).toInt() and 0xFF, buf.getShort(12).toInt(), file.readBytes().copyOfRange(offset, offset + length))
+    }
+
+    @Test
+    fun picksTheBestFittingImageOfTheGroup() {
+        val exe = tmp.newFile("game.exe")
+        writePe(exe, listOf(Image(32, 32, 1), Image(256, 8, 2), Image(256, 32, 3, length = 4096), Image(48, 32, 4)))
+        val ico = File(tmp.root, "game.ico")
+
+        assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, ico))
+
+        val (width, bitCount, data) = readIco(ico)
+        // 256 is stored as 0
+        assertEquals(0, width)
+        assertEquals(32, bitCount)
+        assertEquals(4096, data.size)
+        assertTrue(data.all { it == 3.toByte() })
+    }
+
+    @Test
+    fun fallsBackToTheLargestSmallerImage() {
+        val exe = tmp.newFile("old.exe")
+        writePe(exe, listOf(Image(16, 32, 1), Image(48, 8, 2), Image(32, 32, 3)))
+        val ico = File(tmp.root, "old.ico")
+
+        assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, ico))
+        assertEquals(48, readIco(ico).first)
+    }
+
+    @Test
+    fun readsIconsOfHugeSparseExecutables() {
+        // 6 GB with the resources 3.5 GB in, far beyond anything that could be read into a ByteArray
+        val exe = tmp.newFile("huge.exe")
+        writePe(exe, listOf(Image(256, 32, 7, length = 64 * 1024)), rsrcOffset = 0xD000_0000L, totalSize = 6L shl 30)
+        val ico = File(tmp.root, "huge.ico")
+
+        assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, ico))
+        assertEquals(64 * 1024, readIco(ico).third.size)
+    }
+
+    @Test
+    fun cachesIconsAndMissesByPathSizeAndMtime() {
+        val exe = tmp.newFile("cached.exe")
+        writePe(exe, listOf(Image(32, 32, 1)))
+        val first = File(tmp.root, "first.ico")
+        assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, first))
+        assertEquals(1, cacheDir.listFiles()!!.count { it.name.endsWith(".ico") })
+
+        // Served from the cache while the exe is unchanged, even though its resources are now gone
+        val mtime = exe.lastModified()
+        RandomAccessFile(exe, "rw").use { it.seek(0x400); it.write(ByteArray(64)) }
+        exe.setLastModified(mtime)
+        val second = File(tmp.root, "second.ico")
+        assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, second))
+        assertArrayEquals(first.readBytes(), second.readBytes())
+
+        // A new mtime means a new parse, and the miss is remembered too
+        exe.setLastModified(mtime + 2_000)
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(exe, File(tmp.root, "third.ico")))
+        assertEquals(1, cacheDir.listFiles()!!.count { it.name.endsWith(".none") })
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(exe, File(tmp.root, "third.ico")))
+    }
+
+    @Test
+    fun rejectsFilesThatAreNotPe() {
+        val notExe = tmp.newFile("readme.exe").apply { writeText("not a PE file ".repeat(100)) }
+        val truncated = tmp.newFile("truncated.exe").apply { writeBytes(ByteArray(0x40).also { it[0x3C] = 0x7F }) }
+
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(notExe, File(tmp.root, "a.ico")))
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(truncated, File(tmp.root, "b.ico")))
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(File(tmp.root, "missing.exe"), File(tmp.root, "c.ico")))
+    }
+}
@@ -0,0 +1,124 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Path
+import java.security.MessageDigest
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class FileHashCacheTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private val past = System.currentTimeMillis() - 60_000
+
+    private fun write(name: String, bytes: ByteArray, settled: Boolean = true): Path =
+        File(tmp.root, name).apply {
+            writeBytes(bytes)
+            if (settled) setLastModified(past)
+        }.toPath()
+
+    private fun sha1(bytes: ByteArray): ByteArray = MessageDigest.getInstance("SHA-1").digest(bytes)
+
+    // Files actually read, rather than answered from the cache
+    private var filesHashed = 0
+
+    private fun countingCache(file: File?, algorithm: String = "SHA-1") = FileHashCache(file, algorithm) {
+        filesHashed++
+        FileHashCache.digest(it, algorithm)
+    }
+
+    @Test
+    fun matchesADigestOfTheWholeFile() = runBlocking {
+        val random = Random(1)
+        val contents = listOf(0, 1, 65_535, 65_536, 65_537, 1_000_000).map { random.nextBytes(it) }
+        val paths = contents.mapIndexed { i, bytes -> write("file$i.sav", bytes) }
+
+        val hashes = FileHashCache(null, "SHA-1").hashAll(paths)
+
+        contents.zip(hashes).forEach { (bytes, hash) -> assertArrayEquals(sha1(bytes), hash) }
+    }
+
+    @Test
+    fun unchangedFilesAreNotReadAgain() {
+        val path = write("save.sav", "content".toByteArray())
+        val cache = countingCache(null)
+
+        val first = cache.hash(path)
+        val second = cache.hash(path)
+
+        assertArrayEquals(first, second)
+        assertEquals(1, filesHashed)
+    }
+
+    @Test
+    fun sizeMtimeOrReplacementInvalidatesAnEntry() {
+        val path = write("save.sav", "content".toByteArray())
+        val cache = countingCache(null)
+        cache.hash(path)
+
+        write("save.sav", "content, longer".toByteArray())
+        assertArrayEquals(sha1("content, longer".toByteArray()), cache.hash(path))
+
+        // Same size, different mtime
+        val file = path.toFile()
+        file.writeBytes("CONTENT, LONGER".toByteArray())
+        file.setLastModified(past - 10_000)
+        assertArrayEquals(sha1("CONTENT, LONGER".toByteArray()), cache.hash(path))
+
+        // Same size and mtime, but a new file renamed over the old one
+        val replacement = write("save.tmp", "Content, Longer".toByteArray())
+        replacement.toFile().setLastModified(past - 10_000)
+        assertTrue(replacement.toFile().renameTo(file))
+        assertArrayEquals(sha1("Content, Longer".toByteArray()), cache.hash(path))
+
+        assertEquals(4, filesHashed)
+    }
+
+    @Test
+    fun recentlyWrittenFilesAreNotRemembered() {
+        val path = write("save.sav", "content".toByteArray(), settled = false)
+        val cache = countingCache(null)
+
+        cache.hash(path)
+        cache.hash(path)
+
+        assertEquals(2, filesHashed)
+    }
+
+    @Test
+    fun persistsAndDropsFilesNoLongerLookedUp() = runBlocking {
+        val cacheFile = File(tmp.root, "cache/hashes")
+        val paths = (0 until 10).map { write("save$it.sav", "save $it".toByteArray()) }
+        FileHashCache(cacheFile, "SHA-1").apply { hashAll(paths) }.save()
+        assertTrue(cacheFile.isFile)
+
+        // Reloaded: nothing is read again, and only the files looked up are kept
+        val reloaded = countingCache(cacheFile)
+        reloaded.hashAll(paths.take(3))
+        assertEquals(0, filesHashed)
+        reloaded.save()
+
+        countingCache(cacheFile).hashAll(paths)
+        assertEquals(7, filesHashed)
+
+        // A cache written for another algorithm is ignored
+        filesHashed = 0
+        val md5 = countingCache(cacheFile, "MD5")
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest("save 0".toByteArray()), md5.hash(paths[0]))
+        assertEquals(1, filesHashed)
+    }
+
+    @Test
+    fun ignoresAnUnreadableCache() {
+        val cacheFile = File(tmp.root, "hashes").apply { writeBytes(byteArrayOf(1, 2, 3)) }
+        val path = write("save.sav", "content".toByteArray())
+
+        assertArrayEquals(sha1("content".toByteArray()), FileHashCache(cacheFile, "SHA-1").hash(path))
+    }
+}
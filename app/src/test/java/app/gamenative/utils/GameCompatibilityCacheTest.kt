@@ -0,0 +1,119 @@
+package app.gamenative.utils
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.db.PluviaDatabase
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class GameCompatibilityCacheTest {
+
+    private lateinit var db: PluviaDatabase
+    private var now = 1_000_000L
+
+    private val gpu = "Adreno (TM) 740"
+    private val ttl = 60_000L
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private fun cache(maxEntries: Int = 100) =
+        GameCompatibilityCache(db.gameCompatibilityDao(), { now }, ttlMs = ttl, maxEntries = maxEntries)
+
+    private fun response(name: String, gpuPlayable: Int = 1) = GameCompatibilityService.GameCompatibilityResponse(
+        gameName = name,
+        totalPlayableCount = 3,
+        gpuPlayableCount = gpuPlayable,
+        avgRating = 4.5f,
+        hasBeenTried = true,
+        isNotWorking = false,
+    )
+
+    @Test
+    fun bulkLookupReturnsCachedGamesForThatGpu() = runBlocking {
+        val cache = cache()
+        cache.cacheAll((1..40).associate { "Game $it" to response("Game $it") }, gpu)
+        cache.cacheAll(mapOf("Game 1" to response("Game 1", gpuPlayable = 0)), "Mali-G710")
+
+        val page = (31..50).map { "Game $it" }
+        val found = cache.getCached(page, gpu)
+
+        assertEquals((31..40).map { "Game $it" }.toSet(), found.keys)
+        assertEquals(response("Game 35"), found["Game 35"])
+        // Same game on another GPU is its own entry
+        assertEquals(1, cache.getCached("Game 1", gpu)!!.gpuPlayableCount)
+        assertEquals(0, cache.getCached("Game 1", "Mali-G710")!!.gpuPlayableCount)
+        assertTrue(cache.getCached(emptyList(), gpu).isEmpty())
+    }
+
+    @Test
+    fun bulkLookupHandlesMoreNamesThanSqliteVariables() = runBlocking {
+        val cache = cache(maxEntries = 5_000)
+        val names = (1..2_500).map { "Game $it" }
+        cache.cacheAll(names.associateWith { response(it) }, gpu)
+
+        assertEquals(names.toSet(), cache.getCached(names, gpu).keys)
+    }
+
+    @Test
+    fun expiredEntriesAreMissedAndEvicted() = runBlocking {
+        val cache = cache()
+        cache.cacheAll(mapOf("Old" to response("Old")), gpu)
+
+        now += ttl / 2
+        cache.cacheAll(mapOf("Newer" to response("Newer")), gpu)
+
+        now += ttl / 2
+        assertNull(cache.getCached("Old", gpu))
+        assertNotNull(cache.getCached("Newer", gpu))
+
+        // The next write drops what has expired
+        cache.cacheAll(mapOf("Newest" to response("Newest")), gpu)
+        assertEquals(2, cache.size())
+    }
+
+    @Test
+    fun leastRecentlyUsedEntriesAreEvictedFirst() = runBlocking {
+        val cache = cache(maxEntries = 3)
+        for (name in listOf("A", "B", "C")) {
+            cache.cacheAll(mapOf(name to response(name)), gpu)
+            now += 1
+        }
+
+        // Reading A makes B the least recently used
+        assertNotNull(cache.getCached("A", gpu))
+        now += 1
+        cache.cacheAll(mapOf("D" to response("D")), gpu)
+
+        assertEquals(3, cache.size())
+        assertEquals(setOf("A", "C", "D"), cache.getCached(listOf("A", "B", "C", "D"), gpu).keys)
+    }
+
+    @Test
+    fun clearEmptiesTheCache() = runBlocking {
+        val cache = cache()
+        cache.cacheAll(mapOf("A" to response("A")), gpu)
+
+        cache.clear()
+
+        assertEquals(0, cache.size())
+        assertNull(cache.getCached("A", gpu))
+    }
+}
@@ -0,0 +1,289 @@
+package app.gamenative.utils
+
+import java.io.File
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import timber.log.Timber
+
+class InstallFileIndexTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private lateinit var root: File
+    private lateinit var indexDir: File
+
+    @Before
+    fun setUp() {
+        root = tmp.newFolder("game")
+        indexDir = tmp.newFolder("index")
+        InstallFileIndex.indexDir = indexDir
+    }
+
+    @After
+    fun tearDown() {
+        InstallFileIndex.remove(root)
+        InstallFileIndex.indexDir = null
+    }
+
+    private fun write(path: String, size: Int = 10): File =
+        File(root, path).apply { parentFile!!.mkdirs(); writeBytes(ByteArray(size)) }
+
+    // The smallest file isPeExecutable accepts: "MZ", then e_lfanew pointing at "PE\0\0"
+    private val peHeader = ByteArray(0x80).apply {
+        this[0] = 'M'.code.toByte()
+        this[1] = 'Z'.code.toByte()
+        this[0x3C] = 0x40
+        this[0x40] = 'P'.code.toByte()
+        this[0x41] = 'E'.code.toByte()
+    }
+
+    private fun writeExe(path: String): File =
+        File(root, path).apply { parentFile!!.mkdirs(); writeBytes(peHeader) }
+
+    private fun InstallFileIndex.executables(): Set<String> =
+        find { it.flags and InstallFileIndex.FLAG_EXECUTABLE != 0 }.map { it.path }.toSet()
+
+    private fun buildTree(seed: Int, files: Int) {
+        val random = Random(seed)
+        val names = listOf("bin", "data", "maps", "sound", "x64", "Engine", "Binaries", "Win64")
+        repeat(files) { i ->
+            val depth = random.nextInt(5)
+            val dir = (0 until depth).joinToString("/") { names[random.nextInt(names.size)] }
+            val ext = listOf("exe", "dll", "pak", "txt", "info")[random.nextInt(5)]
+            write(if (dir.isEmpty()) "file$i.$ext" else "$dir/file$i.$ext", random.nextInt(4096))
+        }
+    }
+
+    /** Files and dirs a fresh walk finds, the way the index names them */
+    private fun walk(maxDepth: Int = Int.MAX_VALUE): Set<String> = root.walkTopDown().maxDepth(maxDepth)
+        .filter { it != root }
+        .map { it.relativeTo(root).invariantSeparatorsPath + if (it.isDirectory) "/" else "" }
+        .toSet()
+
+    private fun walkSize(): Long = root.walkTopDown().filter { it.isFile }.sumOf { it.length() }
+
+    private fun InstallFileIndex.paths(maxDepth: Int = Int.MAX_VALUE): Set<String> =
+        entries(maxDepth).map { it.path + if (it.isDirectory) "/" else "" }.toSet()
+
+    /** Pushes every directory's mtime into the past, so the index trusts it */
+    private fun settle() {
+        val past = System.currentTimeMillis() - 60_000
+        root.walkTopDown().filter { it.isDirectory }.forEach { it.setLastModified(past) }
+    }
+
+    private fun assertMatchesWalk(index: InstallFileIndex) {
+        assertEquals(walk(), index.paths())
+        assertEquals(walkSize(), index.totalSize)
+        for (depth in 1..4) assertEquals("depth $depth", walk(depth), index.paths(depth))
+    }
+
+    @Test
+    fun matchesAFreshWalk() {
+        buildTree(seed = 1, files = 2_000)
+        settle()
+
+        assertMatchesWalk(InstallFileIndex.of(root))
+        // Refreshed from the saved index this time
+        assertMatchesWalk(InstallFileIndex.of(root))
+    }
+
+    @Test
+    fun picksUpAddedRemovedAndRenamedFiles() {
+        buildTree(seed = 2, files = 500)
+        settle()
+        InstallFileIndex.of(root)
+
+        write("bin/new.exe", 1234)
+        write("brand/new/dir/steam_api64.dll", 99)
+        root.walkTopDown().filter { it.isFile && it.name.endsWith(".txt") }.take(20).forEach { it.delete() }
+        File(root, "maps").takeIf { it.isDirectory }?.deleteRecursively()
+        File(root, "data").takeIf { it.isDirectory }?.renameTo(File(root, "data_old"))
+
+        assertMatchesWalk(InstallFileIndex.of(root))
+    }
+
+    @Test
+    fun survivesAReloadFromDisk() {
+        buildTree(seed = 3, files = 300)
+        settle()
+        val built = InstallFileIndex.of(root).paths()
+        assertEquals(1, indexDir.listFiles()!!.count { it.name.endsWith(".idx") })
+
+        // Drop the in-memory copy but keep the saved one, then change the tree
+        val saved = indexDir.listFiles()!!.single()
+        val bytes = saved.readBytes()
+        InstallFileIndex.remove(root)
+        saved.writeBytes(bytes)
+        write("Binaries/Win64/Game-Win64-Shipping.exe", 4321)
+
+        val reloaded = InstallFileIndex.of(root)
+        assertTrue(built.all { it in reloaded.paths() })
+        assertMatchesWalk(reloaded)
+    }
+
+    @Test
+    fun onlyRecentlyUsedIndexesStayInMemory() {
+        write("Game.exe", 100)
+        settle()
+        val first = InstallFileIndex.of(root)
+        val others = List(InstallFileIndex.MAX_INDEXES) { tmp.newFolder("other$it") }
+        try {
+            others.forEach { InstallFileIndex.of(it) }
+
+            // Dropped from memory, then loaded from disk again
+            val reloaded = InstallFileIndex.of(root)
+            assertNotSame(first, reloaded)
+            assertEquals(100L, reloaded.totalSize)
+            assertSame(reloaded, InstallFileIndex.of(root))
+        } finally {
+            others.forEach { InstallFileIndex.remove(it) }
+        }
+    }
+
+    @Test
+    fun statFilesCatchesInPlaceRewrites() {
+        write("data/game.pak", 100)
+        settle()
+        InstallFileIndex.of(root)
+
+        // Same directory mtime, new size
+        val dirMtime = File(root, "data").lastModified()
+        write("data/game.pak", 5_000)
+        File(root, "data").setLastModified(dirMtime)
+
+        assertEquals(100L, InstallFileIndex.of(root).totalSize)
+        assertEquals(5_000L, InstallFileIndex.of(root, statFiles = true).totalSize)
+    }
+
+    @Test
+    fun recentlyChangedDirectoriesAreListedAgain() {
+        write("a.exe")
+        // Indexed within the same mtime tick as the write
+        InstallFileIndex.of(root)
+        val mtime = root.lastModified()
+        write("b.exe")
+        root.setLastModified(mtime)
+
+        assertEquals(setOf("a.exe", "b.exe"), InstallFileIndex.of(root).paths())
+    }
+
+    @Test
+    fun queriesByPredicateAndGlob() {
+        writeExe("Game.exe")
+        writeExe("unins000.exe")
+        write("bin/steam_api.dll")
+        write("bin/x64/steam_api64.dll")
+        write("goggame-123.info")
+        write("redist/goggame-456.info")
+        settle()
+        val index = InstallFileIndex.of(root)
+
+        assertEquals(setOf("Game.exe", "unins000.exe"), index.executables())
+        assertEquals(
+            setOf("bin/steam_api.dll", "bin/x64/steam_api64.dll"),
+            index.glob("**/STEAM_API*.dll").map { it.path }.toSet(),
+        )
+        assertEquals(listOf("goggame-123.info"), index.glob("*.info").map { it.path })
+        assertEquals(listOf("bin/steam_api.dll"), index.glob("bin/?team_api.dll").map { it.path })
+        assertTrue(index.glob("**/steam_api*.dll", ignoreCase = false).isNotEmpty())
+    }
+
+    @Test
+    fun emptiesWhenTheInstallIsGone() {
+        write("Game.exe", 500)
+        assertEquals(500L, InstallFileIndex.of(root).totalSize)
+
+        root.deleteRecursively()
+
+        val index = InstallFileIndex.of(root)
+        assertEquals(0L, index.totalSize)
+        assertTrue(index.entries().isEmpty())
+    }
+
+    @Test
+    fun depthLimitedIndexListsOnlyItsFirstLevels() {
+        buildTree(seed = 4, files = 1_000)
+        settle()
+
+        val index = InstallFileIndex.of(root, maxDepth = 2)
+
+        assertEquals(walk(2), index.paths())
+        // Files further down were never listed, so they don't count either
+        val shallowSize = root.walkTopDown().maxDepth(2).filter { it.isFile }.sumOf { it.length() }
+        assertEquals(shallowSize, index.totalSize)
+
+        // Asking for the whole tree builds a full index instead
+        assertMatchesWalk(InstallFileIndex.of(root))
+        assertEquals(walk(2), InstallFileIndex.of(root, maxDepth = 2).paths())
+    }
+
+    @Test
+    fun executablesNeedAPeHeader() {
+        writeExe("Game.exe")
+        write("fake.exe", 200)
+        writeExe("bin/Tool.exe")
+        write("bin/steam_api.dll")
+        settle()
+
+        val index = InstallFileIndex.of(root)
+
+        assertEquals(setOf("Game.exe", "bin/Tool.exe"), index.executables())
+        assertEquals(1, index.find { it.flags and InstallFileIndex.FLAG_LIBRARY != 0 }.size)
+    }
+
+    @Test
+    fun onlyNewOrChangedExecutablesAreProbedAgain() {
+        val game = writeExe("Game.exe")
+        settle()
+        InstallFileIndex.of(root)
+
+        // Same size and mtime, so its earlier probe stands even though the bytes no longer would pass
+        val mtime = game.lastModified()
+        game.writeBytes(ByteArray(peHeader.size))
+        game.setLastModified(mtime)
+        // A new file makes the directory get listed again
+        writeExe("Patch.exe")
+        write("broken.exe", 200)
+        settle()
+
+        assertEquals(setOf("Game.exe", "Patch.exe"), InstallFileIndex.of(root).executables())
+    }
+
+    @Test
+    fun rescanOfAnUnchangedShallowFolderIsCheap() {
+        // A Custom Game folder: executables at the top and one level down, a deep engine tree below
+        repeat(20) { d ->
+            writeExe("dir$d/Game$d.exe")
+            repeat(50) { write("dir$d/data/pak$it/file$it.pak", 64) }
+        }
+        writeExe("Launcher.exe")
+        settle()
+
+        var start = System.nanoTime()
+        val first = InstallFileIndex.of(root, maxDepth = 2).executables()
+        val firstMs = (System.nanoTime() - start) / 1_000_000.0
+        start = System.nanoTime()
+        val second = InstallFileIndex.of(root, maxDepth = 2).executables()
+        val secondMs = (System.nanoTime() - start) / 1_000_000.0
+
+        Timber.i("Shallow index of 21 dirs: first scan ${"%.1f".format(firstMs)} ms, rescan ${"%.1f".format(secondMs)} ms")
+
+        assertEquals(first, second)
+        assertEquals(21, first.size)
+        assertTrue(first.none { it.contains("/data/") })
+    }
+
+    @Test
+    fun rejectsFilesThatAreNotPe() {
+        assertEquals(false, InstallFileIndex.isPeExecutable(write("empty.exe", 0)))
+        assertEquals(false, InstallFileIndex.isPeExecutable(File(root, "text.exe").apply { writeText("MZ".repeat(100)) }))
+        assertEquals(true, InstallFileIndex.isPeExecutable(writeExe("game.exe")))
+        assertNull(InstallFileIndex.isPeExecutable(File(root, "missing.exe")))
+    }
+}
@@ -0,0 +1,109 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.ByteBuffer
+import kotlin.random.Random
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class SteamInterfaceScannerTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    /** The readAllBytes + Regex scan SteamUtils used before, kept as the reference for parity */
+    private fun legacyScan(bytes: ByteArray): List<String> {
+        val strings = mutableSetOf<String>()
+        val sb = StringBuilder()
+        fun flush() {
+            if (sb.length >= 10) {
+                val candidate = sb.toString()
+                if (candidate.matches(Regex("^Steam[A-Za-z]+[0-9]{3}\$", RegexOption.IGNORE_CASE))) {
+                    strings += candidate
+                }
+            }
+            sb.setLength(0)
+        }
+        for (b in bytes) {
+            val ch = b.toInt() and 0xFF
+            if (ch in 0x20..0x7E) sb.append(ch.toChar()) else flush()
+        }
+        flush()
+        return strings.sorted()
+    }
+
+    private val interfaces = listOf(
+        "SteamClient021", "SteamUser023", "SteamFriends017", "SteamUtils010", "SteamMatchMaking009",
+        "STEAMUSERSTATS_INTERFACE_VERSION012", "SteamApps008", "SteamNetworkingSockets012",
+        "SteamNetworkingUtils004", "STEAMREMOTESTORAGE_INTERFACE_VERSION016", "SteamInput006",
+        "SteamController008", "SteamUGC018", "STEAMHTMLSURFACE_INTERFACE_VERSION_005", "steamgameserver015",
+    )
+
+    // Near misses the scan must reject
+    private val decoys = listOf(
+        "SteamUser02", "SteamUser0231", "Steam123", "SteamX12", "MySteamUser021", "SteamUser021 ",
+        "Steam User021", "SteamUser1a21", "Stea", "SteamAPI_RestartAppIfNecessary", "SteamAB001",
+    )
+
+    /** A DLL-like blob: random binary with the strings dropped in, NUL or noise terminated */
+    private fun fixture(seed: Int, size: Int): ByteArray {
+        val random = Random(seed)
+        val bytes = random.nextBytes(size)
+        for (s in (interfaces + decoys).shuffled(random) + interfaces.shuffled(random).take(5)) {
+            val at = random.nextInt(size - s.length - 2) + 1
+            bytes[at - 1] = if (random.nextBoolean()) 0 else 0x90.toByte()
+            s.toByteArray().copyInto(bytes, at)
+            bytes[at + s.length] = 0
+        }
+        return bytes
+    }
+
+    @Test
+    fun matchesTheLegacyScanOnFixtureDlls() {
+        for (seed in 1..20) {
+            val bytes = fixture(seed, 256 * 1024)
+            val found = SteamInterfaceScanner.scan(ByteBuffer.wrap(bytes))
+            assertEquals("seed $seed", legacyScan(bytes), found)
+        }
+    }
+
+    @Test
+    fun matchesTheLegacyScanAtTheEdgesOfTheBuffer() {
+        for (s in interfaces + decoys + listOf("SteamAb123", "SteamA1234", "")) {
+            val bytes = s.toByteArray()
+            assertEquals(s, legacyScan(bytes), SteamInterfaceScanner.scan(ByteBuffer.wrap(bytes)))
+            val padded = byteArrayOf(0x7F) + bytes + byteArrayOf(0x0A)
+            assertEquals(s, legacyScan(padded), SteamInterfaceScanner.scan(ByteBuffer.wrap(padded)))
+        }
+    }
+
+    @Test
+    fun scansMappedDllsAndCachesByContent() {
+        val bytes = fixture(42, 2 * 1024 * 1024)
+        val dll = tmp.newFile("steam_api64.dll").apply { writeBytes(bytes) }
+        val cacheDir = File(tmp.root, "cache")
+        val scanner = SteamInterfaceScanner(cacheDir)
+
+        assertEquals(legacyScan(dll.readBytes()), scanner.scan(dll.toPath()))
+        assertEquals(1, cacheDir.listFiles()!!.size)
+
+        // Another game shipping the same steam_api build is answered from the cache
+        val copy = tmp.newFile("other_steam_api64.dll").apply { writeBytes(bytes) }
+        cacheDir.listFiles()!!.single().writeText("SteamCached001\n")
+        assertEquals(listOf("SteamCached001"), SteamInterfaceScanner(cacheDir).scan(copy.toPath()))
+
+        // A different build is scanned
+        val updated = tmp.newFile("updated_steam_api64.dll").apply { writeBytes(fixture(43, 1024 * 1024)) }
+        assertEquals(legacyScan(updated.readBytes()), scanner.scan(updated.toPath()))
+        assertEquals(2, cacheDir.listFiles()!!.size)
+    }
+
+    @Test
+    fun scansWithoutACacheDir() {
+        val bytes = fixture(7, 64 * 1024)
+        val dll = tmp.newFile("steam_api.dll").apply { writeBytes(bytes) }
+        assertEquals(legacyScan(bytes), SteamInterfaceScanner(null).scan(dll.toPath()))
+    }
+}
@@ -0,0 +1,176 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class SteamlessCacheTest {
+
+    private lateinit var root: File
+    private lateinit var game: File
+    private lateinit var indexDir: File
+
+    // "Unpacks" a protected exe by reversing its bytes and leaves others alone, as Steamless would
+    private var protected = true
+    private var fails = false
+    private val runs = mutableListOf<String>()
+
+    private fun steamless(exe: File): () -> Boolean = {
+        runs += exe.name
+        if (!fails && protected) SteamlessCache.unpackedFile(exe).writeBytes(exe.readBytes().reversedArray())
+        !fails
+    }
+
+    @Before
+    fun setUp() {
+        root = Files.createTempDirectory("steamless-cache").toFile()
+        game = File(root, "game").apply { mkdirs() }
+        indexDir = File(root, "cache")
+    }
+
+    @After
+    fun tearDown() {
+        root.deleteRecursively()
+    }
+
+    private fun cache() = SteamlessCache(
+        File(indexDir, "index.bin"),
+        FileHashCache(File(indexDir, "hashes.bin"), "SHA-256"),
+    )
+
+    private fun exe(name: String = "Game.exe", seed: Int = 1): File =
+        File(game, name).apply { writeBytes(Random(seed).nextBytes(200_000)) }
+
+    @Test
+    fun steamlessRunsOncePerExecutableVersion() {
+        val exe = exe()
+        val original = exe.readBytes()
+
+        val first = cache()
+        val unpacked = first.unpack(exe, steamless(exe))
+        first.save()
+        assertArrayEquals(original.reversedArray(), unpacked!!.readBytes())
+
+        // A later launch, e.g. after a container variant change, reuses the output
+        assertEquals(unpacked, cache().unpack(exe, steamless(exe)))
+        assertEquals(listOf("Game.exe"), runs)
+    }
+
+    @Test
+    fun installedOutputIsNotUnpackedAgain() {
+        val exe = exe()
+        val original = exe.readBytes()
+        val backup = File(game, "Game.exe.original.exe")
+        val cache = cache()
+
+        SteamlessCache.installUnpacked(exe, cache.unpack(exe, steamless(exe))!!, backup)
+        cache.save()
+
+        assertArrayEquals(original, backup.readBytes())
+        assertArrayEquals(original.reversedArray(), exe.readBytes())
+        assertEquals(SteamlessCache.unpackedFile(exe).lastModified(), exe.lastModified())
+
+        assertNull(cache().unpack(exe, steamless(exe)))
+        assertEquals(1, runs.size)
+    }
+
+    @Test
+    fun existingBackupIsKept() {
+        val exe = exe()
+        val backup = File(game, "Game.exe.original.exe").apply { writeText("first original") }
+
+        SteamlessCache.installUnpacked(exe, cache().unpack(exe, steamless(exe))!!, backup)
+
+        assertEquals("first original", backup.readText())
+        assertArrayEquals(SteamlessCache.unpackedFile(exe).readBytes(), exe.readBytes())
+        assertEquals(3, game.listFiles()!!.size)
+    }
+
+    @Test
+    fun unprotectedExecutablesAreRemembered() {
+        protected = false
+        val exe = exe()
+
+        cache().apply { assertNull(unpack(exe, steamless(exe))) }.save()
+        assertNull(cache().unpack(exe, steamless(exe)))
+        assertEquals(listOf("Game.exe"), runs)
+    }
+
+    @Test
+    fun failedRunsAreRetried() {
+        fails = true
+        val exe = exe()
+        assertNull(cache().unpack(exe, steamless(exe)))
+
+        fails = false
+        assertNotNull(cache().unpack(exe, steamless(exe)))
+        assertEquals(2, runs.size)
+    }
+
+    @Test
+    fun onlyConclusiveOutputIsRemembered() {
+        val exe = exe()
+        var output = "wine: Unhandled page fault on read access"
+        val steamless = { runs += exe.name; SteamlessCache.isConclusive(exe, output) }
+
+        // Steamless crashed before it got to the file
+        cache().apply { assertNull(unpack(exe, steamless)) }.save()
+
+        output = "[Steamless] All unpackers failed to unpack file."
+        cache().apply { assertNull(unpack(exe, steamless)) }.save()
+        assertNull(cache().unpack(exe, steamless))
+        assertEquals(2, runs.size)
+    }
+
+    @Test
+    fun updatedExecutableIsUnpackedAgain() {
+        val cache = cache()
+        val exe = exe(seed = 1)
+        cache.unpack(exe, steamless(exe))
+
+        exe(seed = 2)
+        val unpacked = cache.unpack(exe, steamless(exe))
+
+        assertArrayEquals(exe.readBytes().reversedArray(), unpacked!!.readBytes())
+        assertEquals(2, runs.size)
+    }
+
+    @Test
+    fun staleOutputOfAnotherVersionIsNeverInstalled() {
+        val exe = exe(seed = 1)
+        cache().apply { unpack(exe, steamless(exe)) }.save()
+
+        // The update drops the DRM, but the old version's output is still lying around
+        protected = false
+        exe(seed = 2)
+
+        assertNull(cache().unpack(exe, steamless(exe)))
+        assertFalse(SteamlessCache.unpackedFile(exe).exists())
+    }
+
+    @Test
+    fun changedOutputIsRegenerated() {
+        val exe = exe()
+        cache().apply { unpack(exe, steamless(exe)) }.save()
+        SteamlessCache.unpackedFile(exe).writeText("truncated")
+
+        val unpacked = cache().unpack(exe, steamless(exe))
+
+        assertArrayEquals(exe.readBytes().reversedArray(), unpacked!!.readBytes())
+        assertEquals(2, runs.size)
+    }
+
+    @Test
+    fun unreadableIndexStartsOver() {
+        val exe = exe()
+        cache().apply { unpack(exe, steamless(exe)) }.save()
+        File(indexDir, "index.bin").writeText("garbage")
+
+        assertNotNull(cache().unpack(exe, steamless(exe)))
+        assertEquals(2, runs.size)
+    }
+}
@@ -0,0 +1,130 @@
+package com.winlator.container
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import java.io.File
+import org.json.JSONObject
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import timber.log.Timber
+
+@RunWith(RobolectricTestRunner::class)
+class ContainerManagerTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private lateinit var context: Context
+    private lateinit var homeDir: File
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        homeDir = tmp.newFolder("home")
+    }
+
+    private fun configFile(id: String) = File(homeDir, "xuser-$id/.container")
+
+    private fun writeContainer(id: String, name: String = "Container $id") {
+        val file = configFile(id)
+        file.parentFile!!.mkdirs()
+        file.writeText(
+            JSONObject()
+                .put("id", id)
+                .put("name", name)
+                .put("screenSize", "1280x720")
+                .put("wincomponents", Container.DEFAULT_WINCOMPONENTS)
+                .put("envVars", Container.DEFAULT_ENV_VARS)
+                .toString(),
+        )
+    }
+
+    private fun manager() = ContainerManager(context, homeDir)
+
+    @Test
+    fun loadsTwoHundredContainersAndSkipsBrokenConfigs() {
+        repeat(200) { writeContainer("STEAM_$it") }
+        configFile("BROKEN").apply { parentFile!!.mkdirs(); writeText("{ not json") }
+        configFile("EMPTY").apply { parentFile!!.mkdirs(); writeText("") }
+
+        var start = System.nanoTime()
+        val cold = manager().getContainers()
+        val coldMs = (System.nanoTime() - start) / 1_000_000.0
+        start = System.nanoTime()
+        val warm = manager().getContainers()
+        val warmMs = (System.nanoTime() - start) / 1_000_000.0
+        start = System.nanoTime()
+        val lookup = manager().getContainerById("STEAM_150")
+        val lookupMs = (System.nanoTime() - start) / 1_000_000.0
+
+        Timber.i(
+            "200 containers: cold load ${"%.1f".format(coldMs)} ms, warm load ${"%.1f".format(warmMs)} ms, " +
+                "single lookup ${"%.1f".format(lookupMs)} ms",
+        )
+
+        assertEquals(200, cold.size)
+        assertEquals(cold.map { it.id }, warm.map { it.id })
+        assertEquals("Container STEAM_7", warm.single { it.id == "STEAM_7" }.name)
+        assertEquals("Container STEAM_150", lookup?.name)
+        assertTrue(File(homeDir, ContainerCatalog.INDEX_FILE).isFile)
+    }
+
+    @Test
+    fun indexAnswersExistenceWithoutLoadingEveryContainer() {
+        writeContainer("A")
+        writeContainer("B")
+        configFile("BROKEN").apply { parentFile!!.mkdirs(); writeText("{ not json") }
+        manager().getContainers()
+
+        val manager = manager()
+
+        assertTrue(manager.hasContainer("A"))
+        assertFalse(manager.hasContainer("BROKEN"))
+        assertFalse(manager.hasContainer("MISSING"))
+        assertNull(manager.getContainerById("BROKEN"))
+        // Containers handed out before the full load are the ones the full load returns
+        val b = manager.getContainerById("B")
+        assertSame(b, manager.getContainers().single { it.id == "B" })
+    }
+
+    @Test
+    fun changedConfigsAreReadAgain() {
+        writeContainer("A", name = "Before")
+        assertEquals("Before", manager().getContainerById("A")?.name)
+
+        writeContainer("A", name = "After!")
+        configFile("A").setLastModified(configFile("A").lastModified() + 2_000)
+
+        assertEquals("After!", manager().getContainerById("A")?.name)
+        assertTrue(manager().hasContainer("A"))
+    }
+
+    @Test
+    fun savedContainersAreNotServedFromTheCache() {
+        writeContainer("A", name = "Before")
+        val container = manager().getContainerById("A")!!
+
+        container.name = "Saved"
+        container.saveData()
+
+        assertEquals("Saved", manager().getContainerById("A")?.name)
+    }
+
+    @Test
+    fun removedDirsDropOutOfTheIndex() {
+        writeContainer("A")
+        writeContainer("B")
+        manager().getContainers()
+
+        File(homeDir, "xuser-B").deleteRecursively()
+
+        val manager = manager()
+        assertFalse(manager.hasContainer("B"))
+        assertEquals(listOf("A"), manager.getContainers().map { it.id })
+    }
+}